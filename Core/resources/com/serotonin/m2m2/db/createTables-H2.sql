@@ -261,6 +261,22 @@ CREATE TABLE pointValueAnnotations (
   PRIMARY KEY (pointValueId)
 );
 
+CREATE TABLE pointValueRollups (
+  dataPointId int NOT NULL,
+  rollupPeriod int NOT NULL,
+  ts bigint NOT NULL,
+  data longblob NOT NULL,
+  PRIMARY KEY (dataPointId, rollupPeriod, ts)
+);
+ALTER TABLE pointValueRollups ADD CONSTRAINT pointValueRollupsFk1 FOREIGN KEY (dataPointId) REFERENCES dataPoints (id) ON DELETE CASCADE;
+
+CREATE TABLE pointValueRollupStatus (
+  dataPointId int NOT NULL,
+  since bigint NOT NULL,
+  PRIMARY KEY (dataPointId)
+);
+ALTER TABLE pointValueRollupStatus ADD CONSTRAINT pointValueRollupStatusFk1 FOREIGN KEY (dataPointId) REFERENCES dataPoints (id) ON DELETE CASCADE;
+
 --
 --
 -- Event detectors
@@ -308,6 +324,16 @@ CREATE INDEX events_performance1 ON events (activeTs ASC);
 CREATE INDEX events_performance2 ON events (rtnApplicable ASC, rtnTs ASC);
 CREATE INDEX events_performance3 ON events (typeName ASC, subTypeName ASC, typeRef1 ASC);
 
+--
+--
+-- Blocks of ids reserved by the application from identity columns
+--
+CREATE TABLE identityBlocks (
+  tableName varchar(100) NOT NULL,
+  nextId bigint NOT NULL,
+  PRIMARY KEY (tableName)
+);
+
 --
 --
 -- Event handlers
@@ -263,6 +263,22 @@ create table pointValueAnnotations (
   primary key (pointValueId)
 );
 
+create table pointValueRollups (
+  dataPointId int not null,
+  rollupPeriod int not null,
+  ts bigint not null,
+  data image not null,
+  primary key (dataPointId, rollupPeriod, ts)
+);
+ALTER TABLE pointValueRollups ADD CONSTRAINT pointValueRollupsFk1 FOREIGN KEY (dataPointId) REFERENCES dataPoints (id) ON DELETE CASCADE;
+
+create table pointValueRollupStatus (
+  dataPointId int not null,
+  since bigint not null,
+  primary key (dataPointId)
+);
+ALTER TABLE pointValueRollupStatus ADD CONSTRAINT pointValueRollupStatusFk1 FOREIGN KEY (dataPointId) REFERENCES dataPoints (id) ON DELETE CASCADE;
+
 --
 --
 -- Event detectors
@@ -310,6 +326,16 @@ CREATE INDEX events_performance1 ON events (activeTs ASC);
 CREATE INDEX events_performance2 ON events (rtnApplicable ASC, rtnTs ASC);
 CREATE INDEX events_performance3 ON events (typeName ASC, subTypeName ASC, typeRef1 ASC);
 
+--
+--
+-- Blocks of ids reserved by the application from identity columns
+--
+create table identityBlocks (
+  tableName nvarchar(100) not null,
+  nextId bigint not null,
+  primary key (tableName)
+);
+
 --
 --
 -- Event handlers
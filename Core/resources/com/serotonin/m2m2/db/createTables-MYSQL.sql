@@ -267,6 +267,22 @@ create table pointValueAnnotations (
   primary key (pointValueId)
 ) engine=InnoDB;
 
+create table pointValueRollups (
+  dataPointId int not null,
+  rollupPeriod int not null,
+  ts bigint not null,
+  data longblob not null,
+  primary key (dataPointId, rollupPeriod, ts)
+) engine=InnoDB;
+ALTER TABLE pointValueRollups ADD CONSTRAINT pointValueRollupsFk1 FOREIGN KEY (dataPointId) REFERENCES dataPoints (id) ON DELETE CASCADE;
+
+create table pointValueRollupStatus (
+  dataPointId int not null,
+  since bigint not null,
+  primary key (dataPointId)
+) engine=InnoDB;
+ALTER TABLE pointValueRollupStatus ADD CONSTRAINT pointValueRollupStatusFk1 FOREIGN KEY (dataPointId) REFERENCES dataPoints (id) ON DELETE CASCADE;
+
 --
 --
 -- Event detectors
@@ -314,6 +330,16 @@ alter table events add index performance1 (activeTs ASC);
 ALTER TABLE events ADD INDEX events_performance2 (`rtnApplicable` ASC, `rtnTs` ASC);
 ALTER TABLE events ADD INDEX events_performance3 (`typeName` ASC, `subTypeName` ASC, `typeRef1` ASC);
 
+--
+--
+-- Blocks of ids reserved by the application from identity columns
+--
+create table identityBlocks (
+  tableName varchar(100) not null,
+  nextId bigint not null,
+  primary key (tableName)
+) engine=InnoDB;
+
 --
 --
 -- Event handlers
@@ -263,6 +263,22 @@ CREATE TABLE pointValueAnnotations (
   PRIMARY KEY (pointValueId)
 );
 
+CREATE TABLE pointValueRollups (
+  dataPointId integer NOT NULL,
+  rollupPeriod integer NOT NULL,
+  ts bigint NOT NULL,
+  data bytea NOT NULL,
+  PRIMARY KEY (dataPointId, rollupPeriod, ts)
+);
+ALTER TABLE pointValueRollups ADD CONSTRAINT pointValueRollupsFk1 FOREIGN KEY (dataPointId) REFERENCES dataPoints (id) ON DELETE CASCADE;
+
+CREATE TABLE pointValueRollupStatus (
+  dataPointId integer NOT NULL,
+  since bigint NOT NULL,
+  PRIMARY KEY (dataPointId)
+);
+ALTER TABLE pointValueRollupStatus ADD CONSTRAINT pointValueRollupStatusFk1 FOREIGN KEY (dataPointId) REFERENCES dataPoints (id) ON DELETE CASCADE;
+
 --
 --
 -- Event detectors
@@ -310,6 +326,16 @@ alter table events add index performance1 (activeTs ASC);
 ALTER TABLE events ADD INDEX events_performance2 (`rtnApplicable` ASC, `rtnTs` ASC);
 ALTER TABLE events ADD INDEX events_performance3 (`typeName` ASC, `subTypeName` ASC, `typeRef1` ASC);
 
+--
+--
+-- Blocks of ids reserved by the application from identity columns
+--
+CREATE TABLE identityBlocks (
+  tableName varchar(100) NOT NULL,
+  nextId bigint NOT NULL,
+  PRIMARY KEY (tableName)
+);
+
 --
 --
 -- Event handlers
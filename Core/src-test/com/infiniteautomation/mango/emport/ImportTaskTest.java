@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.emport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.infiniteautomation.mango.spring.service.DataPointService;
+import com.infiniteautomation.mango.spring.service.DataSourceService;
+import com.infiniteautomation.mango.spring.service.EventDetectorsService;
+import com.infiniteautomation.mango.spring.service.EventHandlerService;
+import com.infiniteautomation.mango.spring.service.JsonDataService;
+import com.infiniteautomation.mango.spring.service.MailingListService;
+import com.infiniteautomation.mango.spring.service.PermissionService;
+import com.infiniteautomation.mango.spring.service.PublisherService;
+import com.infiniteautomation.mango.spring.service.RoleService;
+import com.infiniteautomation.mango.spring.service.SystemPermissionService;
+import com.infiniteautomation.mango.spring.service.UsersService;
+import com.serotonin.json.JsonException;
+import com.serotonin.json.type.JsonObject;
+import com.serotonin.json.type.JsonTypeReader;
+import com.serotonin.json.type.JsonValue;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.MockMangoLifecycle;
+import com.serotonin.m2m2.MockMangoProperties;
+import com.serotonin.m2m2.MockRuntimeManager;
+import com.serotonin.m2m2.db.dao.DataPointDao;
+import com.serotonin.m2m2.db.dao.DataPointTagsDao;
+import com.serotonin.m2m2.db.dao.DataSourceDao;
+import com.serotonin.m2m2.i18n.ProcessMessage;
+import com.serotonin.m2m2.i18n.ProcessMessage.Level;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.dataPoint.DataPointWithEventDetectors;
+
+public class ImportTaskTest extends MangoTestBase {
+
+    //Whether each point was started while a transaction was open, the runtime manager outlives the test instances
+    private static final List<Boolean> startedInTransaction = Collections.synchronizedList(new ArrayList<>());
+
+    private String config;
+
+    @Override
+    @Before
+    public void before() {
+        super.before();
+        startedInTransaction.clear();
+        ((MockMangoProperties) Common.envProps).setProperty("db.import.batchSize", "5");
+        try (InputStream is = getClass().getResourceAsStream("/testMangoConfig.json")) {
+            config = IOUtils.toString(is, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    @Override
+    @After
+    public void after() {
+        ((MockMangoProperties) Common.envProps).setProperty("db.import.batchSize", "1");
+        super.after();
+    }
+
+    @Override
+    protected MockMangoLifecycle getLifecycle() {
+        MockMangoLifecycle lifecycle = super.getLifecycle();
+        lifecycle.setRuntimeManager(new MockRuntimeManager(true) {
+            @Override
+            public void startDataPoint(DataPointWithEventDetectors vo) {
+                startedInTransaction.add(TransactionSynchronizationManager.isActualTransactionActive());
+                super.startDataPoint(vo);
+            }
+        });
+        return lifecycle;
+    }
+
+    @Test
+    public void testStreamedImport() throws JsonException, IOException {
+        ImportTask task = runImport(new StringReader(config));
+        for (ProcessMessage message : task.getResponse().getMessages())
+            assertEquals(message.toString(Common.getTranslations()), Level.info, message.getLevel());
+
+        JsonObject root = new JsonTypeReader(config).read().toJsonObject();
+        int enabled = 0;
+        for (JsonValue value : root.getJsonArray("dataPoints")) {
+            JsonObject json = value.toJsonObject();
+            DataPointVO vo = DataPointDao.getInstance().getByXid(json.getString("xid"));
+            assertNotNull(json.getString("xid"), vo);
+            assertEquals(json.getString("name"), vo.getName());
+            assertEquals(vo.getName(), DataPointTagsDao.getInstance().getTagsForDataPointId(vo.getId()).get(DataPointTagsDao.NAME_TAG_KEY));
+
+            DataPointWithEventDetectors dp = Common.getBean(DataPointService.class).getWithEventDetectors(vo.getXid());
+            assertEquals(json.getJsonArray("eventDetectors").size(), dp.getEventDetectors().size());
+            if (json.getBoolean("enabled"))
+                enabled++;
+        }
+
+        //Each enabled point was started after its batch was committed
+        assertTrue(startedInTransaction.size() >= enabled);
+        assertFalse(startedInTransaction.contains(true));
+    }
+
+    @Test
+    public void testUnreadableStreamKeepsImportedSections() {
+        //Cut the configuration off part way through its data points
+        int cut = config.indexOf("\"xid\":\"DP_614346\"");
+        ImportTask task = runImport(new StringReader(config.substring(0, cut)));
+
+        boolean error = false;
+        for (ProcessMessage message : task.getResponse().getMessages())
+            if (message.getLevel() == Level.error)
+                error = true;
+        assertTrue(error);
+        assertTrue(task.isCompleted());
+
+        //The data sources and the first batch of points were imported, the batch being read at the cut was not
+        assertNotNull(DataSourceDao.getInstance().getByXid("DS_997094"));
+        assertNotNull(DataSourceDao.getInstance().getByXid("vmeters"));
+        assertNotNull(DataPointDao.getInstance().getByXid("DP_253536"));
+        assertNotNull(DataPointDao.getInstance().getByXid("DP_355369"));
+        assertNull(DataPointDao.getInstance().getByXid("DP_698831"));
+    }
+
+    private ImportTask runImport(Reader json) {
+        List<ImportTask> task = new ArrayList<>();
+        Common.getBean(PermissionService.class).runAsSystemAdmin(() -> {
+            task.add(new ImportTask(json,
+                    Common.getTranslations(),
+                    Common.getBean(RoleService.class),
+                    Common.getBean(UsersService.class),
+                    Common.getBean(MailingListService.class),
+                    Common.getBean(DataSourceService.class),
+                    Common.getBean(DataPointService.class),
+                    Common.getBean(PublisherService.class),
+                    Common.getBean(EventHandlerService.class),
+                    Common.getBean(JsonDataService.class),
+                    Common.getBean(EventDetectorsService.class),
+                    Common.getBean(SystemPermissionService.class),
+                    null, false));
+            task.get(0).run(Common.timer.currentTimeMillis());
+        });
+        return task.get(0);
+    }
+}
@@ -8,6 +8,7 @@ import static org.junit.Assert.*;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -140,6 +141,30 @@ public class PermissionPersistenceTest extends MangoTestBase {
 
     }
 
+    @Test
+    public void testCachedPermission() {
+        PermissionDao dao = Common.getBean(PermissionDao.class);
+
+        Set<Role> roles = this.createRoles(2).stream().map(r -> r.getRole()).collect(Collectors.toSet());
+        Integer anyId = dao.permissionId(MangoPermission.requireAnyRole(roles));
+        Integer allId = dao.permissionId(MangoPermission.requireAllRoles(roles));
+        Integer emptyId = dao.permissionId(new MangoPermission());
+
+        dao.loadIntoCache(Arrays.asList(anyId, allId, emptyId, null));
+        MangoPermission any = dao.get(anyId);
+        assertSame(any, dao.get(anyId));
+        assertEquals(MangoPermission.requireAnyRole(roles), any);
+        assertEquals(MangoPermission.requireAllRoles(roles), dao.get(allId));
+        assertEquals(0, dao.get(emptyId).getRoles().size());
+        assertEquals(emptyId, dao.get(emptyId).getId());
+
+        //Deleting a role changes the cached permissions
+        Role deleted = roles.iterator().next();
+        Common.getBean(RoleDao.class).delete(deleted.getId());
+        assertEquals(1, dao.get(anyId).getRoles().size());
+        assertFalse(dao.get(allId).getRoles().iterator().next().contains(deleted));
+    }
+
     /**
      *  TODO we cannot remove permissions with empty minterms as of the FK RESTRICT on VOs
      *  Test when removing a role we also delete any orphaned permission (has no roles in minterms)
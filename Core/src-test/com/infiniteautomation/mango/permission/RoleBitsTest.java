@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.permission;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.serotonin.m2m2.vo.role.Role;
+
+public class RoleBitsTest {
+
+    @Test
+    public void testContains() {
+        List<Role> roles = new ArrayList<>();
+        for (int i = 0; i < 200; i++)
+            roles.add(new Role(10000 + i, "roleBitsTest" + i));
+
+        long[] held = RoleBits.of(Arrays.asList(roles.get(3), roles.get(150)));
+        assertTrue(RoleBits.contains(held, roles.get(3)));
+        assertTrue(RoleBits.contains(held, roles.get(150)));
+        assertFalse(RoleBits.contains(held, roles.get(4)));
+        assertFalse(RoleBits.contains(held, roles.get(199)));
+        //Roles are equal by id and xid
+        assertFalse(RoleBits.contains(held, new Role(-1, "roleBitsTest3")));
+
+        assertTrue(RoleBits.containsAll(held, RoleBits.of(Collections.singleton(roles.get(150)))));
+        assertTrue(RoleBits.containsAll(held, RoleBits.of(Collections.emptySet())));
+        assertFalse(RoleBits.containsAll(held, RoleBits.of(Arrays.asList(roles.get(3), roles.get(5)))));
+        assertFalse(RoleBits.containsAll(new long[0], RoleBits.of(Collections.singleton(roles.get(0)))));
+    }
+
+    @Test
+    public void testGrantedTo() {
+        Role a = new Role(20001, "roleBitsTestA");
+        Role b = new Role(20002, "roleBitsTestB");
+        Role c = new Role(20003, "roleBitsTestC");
+        MangoPermission permission = MangoPermission.builder().minterm(a, b).minterm(c).build();
+
+        assertTrue(permission.grantedTo(RoleBits.of(Arrays.asList(a, b))));
+        assertTrue(permission.grantedTo(RoleBits.of(Collections.singleton(c))));
+        assertFalse(permission.grantedTo(RoleBits.of(Collections.singleton(a))));
+        assertFalse(new MangoPermission().grantedTo(RoleBits.of(Arrays.asList(a, b, c))));
+    }
+}
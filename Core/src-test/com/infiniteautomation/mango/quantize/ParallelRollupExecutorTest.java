@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.quantize;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.junit.Test;
+
+import com.infiniteautomation.mango.db.query.BookendQueryCallback;
+import com.infiniteautomation.mango.db.query.QueryCancelledException;
+import com.infiniteautomation.mango.statistics.AnalogStatistics;
+import com.serotonin.m2m2.Common.TimePeriods;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.MockPointValueDao;
+import com.serotonin.m2m2.rt.dataImage.IdPointValueTime;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.view.stats.StatisticsGenerator;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+public class ParallelRollupExecutorTest extends MangoTestBase {
+
+    private static final long MINUTE = 60000;
+    private static final long HOUR = 60 * MINUTE;
+
+    private final ZonedDateTime from = ZonedDateTime.of(2020, 1, 1, 0, 0, 0, 0, ZoneId.of("UTC"));
+    private final ZonedDateTime to = from.plusHours(3);
+    private final long start = from.toInstant().toEpochMilli();
+    private final long end = to.toInstant().toEpochMilli();
+
+    //Not in id order, periods with the same start must follow this order
+    private final List<DataPointVO> vos = Arrays.asList(point(30), point(10), point(20));
+    private final WideQueryDao dao = new WideQueryDao();
+    //Point that produced each period
+    private final Map<StatisticsGenerator, Integer> owners = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    public ParallelRollupExecutorTest() {
+        dao.save(30, 10, start - MINUTE);
+        dao.save(30, 1, start + 10 * MINUTE);
+        dao.save(30, 2, start + 70 * MINUTE);
+        dao.save(30, 3, start + 130 * MINUTE);
+        dao.save(10, 5, start - HOUR);
+        dao.save(10, 7, start + 5 * MINUTE);
+        dao.save(10, 8, start + 2 * HOUR);
+        dao.save(20, 0, start - MINUTE);
+        dao.save(20, 4, start + 30 * MINUTE);
+    }
+
+    @Test
+    public void testMergedByPeriodThenPointOrder() throws QueryCancelledException {
+        List<StatisticsGenerator> periods = new ArrayList<>();
+        new ParallelRollupExecutor(dao).execute(vos, start, end, this::quantizer, periods::add);
+
+        assertEquals(9, periods.size());
+        for (int i = 0; i < periods.size(); i++) {
+            assertEquals(start + (i / 3) * HOUR, periods.get(i).getPeriodStartTime());
+            assertEquals(vos.get(i % 3).getId(), (int) owners.get(periods.get(i)));
+        }
+    }
+
+    @Test
+    public void testSameAsSerialQuery() throws QueryCancelledException {
+        List<StatisticsGenerator> parallel = new ArrayList<>();
+        new ParallelRollupExecutor(dao).execute(vos, start, end, this::quantizer, parallel::add);
+
+        Map<Integer, List<AnalogStatistics>> serial = serialQuery();
+        for (DataPointVO vo : vos) {
+            List<AnalogStatistics> expected = serial.get(vo.getId());
+            List<AnalogStatistics> actual = new ArrayList<>();
+            for (StatisticsGenerator period : parallel)
+                if (owners.get(period) == vo.getId())
+                    actual.add((AnalogStatistics) period);
+
+            assertEquals(3, expected.size());
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getPeriodStartTime(), actual.get(i).getPeriodStartTime());
+                assertEquals(expected.get(i).getStartValue(), actual.get(i).getStartValue());
+                assertEquals(expected.get(i).getCount(), actual.get(i).getCount());
+                assertEquals(expected.get(i).getFirstValue(), actual.get(i).getFirstValue());
+                assertEquals(expected.get(i).getLastValue(), actual.get(i).getLastValue());
+                assertEquals(expected.get(i).getMinimumValue(), actual.get(i).getMinimumValue());
+                assertEquals(expected.get(i).getMaximumValue(), actual.get(i).getMaximumValue());
+                assertEquals(expected.get(i).getAverage(), actual.get(i).getAverage(), 0.0001);
+                assertEquals(expected.get(i).getIntegral(), actual.get(i).getIntegral(), 0.0001);
+            }
+        }
+    }
+
+    @Test
+    public void testFailureRethrownAndConnectionsReleased() throws QueryCancelledException {
+        int available = ParallelRollupExecutor.getAvailableConnections();
+        List<Integer> heldDuringQuery = Collections.synchronizedList(new ArrayList<>());
+        dao.beforeQuery = vo -> {
+            heldDuringQuery.add(available - ParallelRollupExecutor.getAvailableConnections());
+            if (vo.getId() == 10)
+                throw new IllegalStateException("Query of point 10 failed");
+        };
+
+        List<StatisticsGenerator> periods = new ArrayList<>();
+        try {
+            new ParallelRollupExecutor(dao).execute(vos, start, end, this::quantizer, periods::add);
+            fail("Query failure was not thrown");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("Query of point 10 failed"));
+        }
+
+        assertTrue(heldDuringQuery.size() > 0);
+        for (int held : heldDuringQuery)
+            assertTrue(held > 0);
+        assertEquals(available, ParallelRollupExecutor.getAvailableConnections());
+        assertTrue(periods.isEmpty());
+    }
+
+    @Test
+    public void testCancelledDuringQuery() {
+        int available = ParallelRollupExecutor.getAvailableConnections();
+        ParallelRollupExecutor executor = new ParallelRollupExecutor(dao);
+        dao.beforeQuery = vo -> {
+            if (vo.getId() == 10)
+                executor.cancel();
+        };
+
+        List<StatisticsGenerator> periods = new ArrayList<>();
+        try {
+            executor.execute(vos, start, end, this::quantizer, periods::add);
+            fail("Cancellation was not thrown");
+        } catch (QueryCancelledException e) {
+            //Expected
+        }
+        assertEquals(available, ParallelRollupExecutor.getAvailableConnections());
+        assertTrue(periods.isEmpty());
+    }
+
+    @Test
+    public void testCancelledWhenInterrupted() {
+        int available = ParallelRollupExecutor.getAvailableConnections();
+        Thread.currentThread().interrupt();
+        try {
+            new ParallelRollupExecutor(dao).execute(vos, start, end, this::quantizer, period -> { });
+            fail("Cancellation was not thrown");
+        } catch (QueryCancelledException e) {
+            //Expected
+        } finally {
+            //The interrupt is kept for the caller
+            assertTrue(Thread.interrupted());
+        }
+        assertEquals(available, ParallelRollupExecutor.getAvailableConnections());
+    }
+
+    private AbstractPointValueTimeQuantizer<?> quantizer(DataPointVO vo, StatisticsGeneratorQuantizerCallback<StatisticsGenerator> callback) {
+        return new AnalogStatisticsQuantizer(new TimePeriodBucketCalculator(from, to, TimePeriods.HOURS, 1), stats -> {
+            owners.put(stats, vo.getId());
+            callback.quantizedStatistics(stats);
+        });
+    }
+
+    /**
+     * Quantize all points from one wide bookend query as the script rollups do without the executor
+     */
+    private Map<Integer, List<AnalogStatistics>> serialQuery() {
+        Map<Integer, List<AnalogStatistics>> periods = new HashMap<>();
+        Map<Integer, AbstractPointValueTimeQuantizer<?>> quantizers = new HashMap<>();
+        for (DataPointVO vo : vos) {
+            List<AnalogStatistics> pointPeriods = new ArrayList<>();
+            periods.put(vo.getId(), pointPeriods);
+            quantizers.put(vo.getId(), new AnalogStatisticsQuantizer(new TimePeriodBucketCalculator(from, to, TimePeriods.HOURS, 1), pointPeriods::add));
+        }
+
+        dao.wideBookendQuery(vos, start, end, false, null, new BookendQueryCallback<IdPointValueTime>() {
+            @Override
+            public void firstValue(IdPointValueTime value, int index, boolean bookend) throws QueryCancelledException {
+                quantizers.get(value.getId()).firstValue(value, index, bookend);
+            }
+
+            @Override
+            public void row(IdPointValueTime value, int index) throws QueryCancelledException {
+                quantizers.get(value.getId()).row(value, index);
+            }
+
+            @Override
+            public void lastValue(IdPointValueTime value, int index, boolean bookend) throws QueryCancelledException {
+                quantizers.get(value.getId()).lastValue(value, index, bookend);
+                quantizers.get(value.getId()).done();
+            }
+        });
+        return periods;
+    }
+
+    private static DataPointVO point(int id) {
+        DataPointVO vo = new DataPointVO();
+        vo.setId(id);
+        return vo;
+    }
+
+    /**
+     * Answers wide bookend queries from memory, values are saved in time order
+     */
+    private static class WideQueryDao extends MockPointValueDao {
+        volatile Consumer<DataPointVO> beforeQuery = vo -> { };
+
+        void save(int pointId, double value, long time) {
+            data.computeIfAbsent(pointId, k -> new ArrayList<>()).add(new PointValueTime(value, time));
+        }
+
+        @Override
+        public void wideBookendQuery(List<DataPointVO> vos, long from, long to, boolean orderById, Integer limit,
+                BookendQueryCallback<IdPointValueTime> callback) {
+            int index = 0;
+            List<IdPointValueTime> rows = new ArrayList<>();
+            Map<Integer, IdPointValueTime> last = new HashMap<>();
+            for (DataPointVO vo : vos) {
+                beforeQuery.accept(vo);
+                PointValueTime before = null;
+                for (PointValueTime value : data.get(vo.getId())) {
+                    if (value.getTime() < from)
+                        before = value;
+                    else if (value.getTime() < to)
+                        rows.add(new IdPointValueTime(vo.getId(), value.getValue(), value.getTime()));
+                }
+                IdPointValueTime first = new IdPointValueTime(vo.getId(), before == null ? null : before.getValue(), from);
+                last.put(vo.getId(), first);
+                callback.firstValue(first, index++, true);
+            }
+
+            rows.sort(Comparator.comparingLong(IdPointValueTime::getTime));
+            for (IdPointValueTime row : rows) {
+                last.put(row.getId(), row);
+                callback.row(row, index++);
+            }
+
+            for (DataPointVO vo : vos)
+                callback.lastValue(new IdPointValueTime(vo.getId(), last.get(vo.getId()).getValue(), to), index++, true);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.quantize;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import org.junit.Test;
+
+import com.infiniteautomation.mango.db.query.QueryCancelledException;
+import com.infiniteautomation.mango.statistics.AnalogStatistics;
+import com.infiniteautomation.mango.statistics.PointValueRollup;
+import com.infiniteautomation.mango.statistics.StartsAndRuntime;
+import com.infiniteautomation.mango.statistics.StartsAndRuntimeList;
+import com.serotonin.m2m2.Common.TimePeriods;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.rt.dataImage.IdPointValueTime;
+import com.serotonin.m2m2.rt.dataImage.types.DataValue;
+import com.serotonin.m2m2.rt.dataImage.types.MultistateValue;
+import com.serotonin.m2m2.rt.dataImage.types.NumericValue;
+
+/**
+ * Quantizing minute rollups must give the same statistics as quantizing the values themselves
+ */
+public class PointValueRollupQuantizerTest extends BaseQuantizerTest {
+
+    private static final long MINUTE = 60000;
+    private static final long HOUR = 60 * MINUTE;
+
+    @Test
+    public void testAnalogStatistics() throws QueryCancelledException {
+        long start = from.toInstant().toEpochMilli();
+        List<IdPointValueTime> values = values(start, i -> new NumericValue(i * 7 % 13));
+
+        List<AnalogStatistics> raw = new ArrayList<>();
+        List<AnalogStatistics> rolledUp = new ArrayList<>();
+        IdPointValueTime startValue = new IdPointValueTime(1, new NumericValue(4), start);
+        quantizeValues(new AnalogStatisticsQuantizer(bucketCalculator(), raw::add), startValue, values);
+        quantizeRollups(new AnalogStatisticsQuantizer(bucketCalculator(), rolledUp::add), startValue, values, DataTypes.NUMERIC);
+
+        assertEquals(6, raw.size());
+        assertEquals(raw.size(), rolledUp.size());
+        for (int i = 0; i < raw.size(); i++) {
+            AnalogStatistics expected = raw.get(i);
+            AnalogStatistics actual = rolledUp.get(i);
+            assertEquals(expected.getPeriodStartTime(), actual.getPeriodStartTime());
+            assertEquals(expected.getStartValue(), actual.getStartValue());
+            assertEquals(expected.getCount(), actual.getCount());
+            assertEquals(expected.getFirstValue(), actual.getFirstValue());
+            assertEquals(expected.getFirstTime(), actual.getFirstTime());
+            assertEquals(expected.getLastValue(), actual.getLastValue());
+            assertEquals(expected.getLastTime(), actual.getLastTime());
+            assertEquals(expected.getMinimumValue(), actual.getMinimumValue());
+            assertEquals(expected.getMinimumTime(), actual.getMinimumTime());
+            assertEquals(expected.getMaximumValue(), actual.getMaximumValue());
+            assertEquals(expected.getMaximumTime(), actual.getMaximumTime());
+            assertEquals(expected.getSum(), actual.getSum(), 0.0001);
+            assertEquals(expected.getAverage(), actual.getAverage(), 0.0001);
+            assertEquals(expected.getIntegral(), actual.getIntegral(), 0.0001);
+            assertEquals(expected.getDelta(), actual.getDelta(), 0.0001);
+        }
+    }
+
+    @Test
+    public void testStartsAndRuntime() throws QueryCancelledException {
+        long start = from.toInstant().toEpochMilli();
+        List<IdPointValueTime> values = values(start, i -> new MultistateValue(i * 5 % 3));
+
+        List<StartsAndRuntimeList> raw = new ArrayList<>();
+        List<StartsAndRuntimeList> rolledUp = new ArrayList<>();
+        IdPointValueTime startValue = new IdPointValueTime(1, new MultistateValue(2), start);
+        quantizeValues(new StartsAndRuntimeListQuantizer(bucketCalculator(), raw::add), startValue, values);
+        quantizeRollups(new StartsAndRuntimeListQuantizer(bucketCalculator(), rolledUp::add), startValue, values, DataTypes.MULTISTATE);
+
+        assertEquals(6, raw.size());
+        assertEquals(raw.size(), rolledUp.size());
+        for (int i = 0; i < raw.size(); i++) {
+            StartsAndRuntimeList expected = raw.get(i);
+            StartsAndRuntimeList actual = rolledUp.get(i);
+            assertEquals(expected.getPeriodStartTime(), actual.getPeriodStartTime());
+            assertEquals(expected.getStartValue(), actual.getStartValue());
+            assertEquals(expected.getCount(), actual.getCount());
+            assertEquals(expected.getFirstValue(), actual.getFirstValue());
+            assertEquals(expected.getLastValue(), actual.getLastValue());
+            assertEquals(expected.getData().size(), actual.getData().size());
+            for (int j = 0; j < expected.getData().size(); j++) {
+                StartsAndRuntime e = expected.getData().get(j);
+                StartsAndRuntime a = actual.getData().get(j);
+                assertEquals(e.getValue(), a.getValue());
+                assertEquals(e.getStarts(), a.getStarts());
+                assertEquals(e.getRuntime(), a.getRuntime());
+            }
+        }
+    }
+
+    private BucketCalculator bucketCalculator() {
+        return new TimePeriodBucketCalculator(from, from.plusHours(6), TimePeriods.HOURS, 1);
+    }
+
+    /**
+     * Values every 7 minutes and 11 seconds, with some exactly on the hour boundaries and some hours without values
+     */
+    private List<IdPointValueTime> values(long start, IntFunction<DataValue> value) {
+        List<Long> times = new ArrayList<>();
+        for (long time = start + 11000; time < start + 2 * HOUR; time += 7 * MINUTE + 11000)
+            times.add(time);
+        times.add(start + 2 * HOUR);
+        times.add(start + 2 * HOUR + 30000);
+        times.add(start + 4 * HOUR);
+        times.add(start + 5 * HOUR);
+        times.add(start + 5 * HOUR + 45 * MINUTE);
+
+        List<IdPointValueTime> values = new ArrayList<>();
+        for (int i = 0; i < times.size(); i++)
+            values.add(new IdPointValueTime(1, value.apply(i), times.get(i)));
+        return values;
+    }
+
+    /**
+     * Feed the quantizer as a bookend query of the values would
+     */
+    private void quantizeValues(AbstractPointValueTimeQuantizer<?> quantizer, IdPointValueTime startValue,
+            List<IdPointValueTime> values) throws QueryCancelledException {
+        quantizer.firstValue(startValue, 0, true);
+        int index = 1;
+        for (IdPointValueTime value : values)
+            quantizer.row(value, index++);
+        quantizer.done();
+    }
+
+    /**
+     * Feed the quantizer minute summaries of the values
+     */
+    private void quantizeRollups(AbstractPointValueTimeQuantizer<?> quantizer, IdPointValueTime startValue,
+            List<IdPointValueTime> values, int dataType) throws QueryCancelledException {
+        quantizer.firstValue(startValue, 0, true);
+        PointValueRollup minute = null;
+        for (IdPointValueTime value : values) {
+            if (minute == null || value.getTime() >= minute.getPeriodEnd()) {
+                if (minute != null)
+                    quantizer.rollup(minute);
+                long minuteStart = value.getTime() - value.getTime() % MINUTE;
+                minute = new PointValueRollup(dataType, minuteStart, minuteStart + MINUTE);
+            }
+            minute.add(value.getValue().getDoubleValue(), value.getTime());
+        }
+        quantizer.rollup(minute);
+        quantizer.done();
+    }
+}
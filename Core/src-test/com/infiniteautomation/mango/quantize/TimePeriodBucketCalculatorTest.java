@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.quantize;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import org.junit.Test;
+
+import com.infiniteautomation.mango.util.datetime.NextTimePeriodAdjuster;
+import com.serotonin.m2m2.Common.TimePeriods;
+
+public class TimePeriodBucketCalculatorTest {
+
+    //Range over the spring and fall daylight savings changes
+    private final ZoneId zoneId = ZoneId.of("America/Chicago");
+    private final ZonedDateTime from = ZonedDateTime.of(2019, 3, 1, 0, 30, 0, 0, zoneId);
+    private final ZonedDateTime to = ZonedDateTime.of(2019, 12, 1, 0, 0, 0, 0, zoneId);
+
+    @Test
+    public void testFixedPeriods() {
+        assertBoundaries(TimePeriods.MINUTES, 15);
+        assertBoundaries(TimePeriods.HOURS, 1);
+        assertBoundaries(TimePeriods.HOURS, 5);
+    }
+
+    @Test
+    public void testCalendarPeriods() {
+        assertBoundaries(TimePeriods.DAYS, 1);
+        assertBoundaries(TimePeriods.WEEKS, 1);
+        assertBoundaries(TimePeriods.MONTHS, 1);
+        assertBoundaries(TimePeriods.YEARS, 1);
+    }
+
+    @Test
+    public void testPastEndTime() {
+        TimePeriodBucketCalculator calculator = new TimePeriodBucketCalculator(from, to, TimePeriods.MONTHS, 4);
+        assertEquals(ZonedDateTime.of(2019, 7, 1, 0, 30, 0, 0, zoneId), calculator.getNextPeriodTo());
+        assertEquals(ZonedDateTime.of(2019, 11, 1, 0, 30, 0, 0, zoneId), calculator.getNextPeriodTo());
+        assertEquals(ZonedDateTime.of(2020, 3, 1, 0, 30, 0, 0, zoneId), calculator.getNextPeriodTo());
+        assertEquals(ZonedDateTime.of(2020, 7, 1, 0, 30, 0, 0, zoneId).toInstant().toEpochMilli(), calculator.getNextPeriodToMillis());
+    }
+
+    /**
+     * Compare the boundaries to those of the period adjuster applied to the zoned time
+     */
+    private void assertBoundaries(int periodType, int periods) {
+        NextTimePeriodAdjuster adjuster = new NextTimePeriodAdjuster(periodType, periods);
+        TimePeriodBucketCalculator millis = new TimePeriodBucketCalculator(from, to, periodType, periods);
+        TimePeriodBucketCalculator zoned = new TimePeriodBucketCalculator(from, to, periodType, periods);
+        assertEquals(from.toInstant().toEpochMilli(), millis.getStartMillis());
+        assertEquals(to.toInstant().toEpochMilli(), millis.getEndMillis());
+
+        ZonedDateTime expected = from;
+        do {
+            expected = (ZonedDateTime) adjuster.adjustInto(expected);
+            assertEquals(expected.toInstant().toEpochMilli(), millis.getNextPeriodToMillis());
+            assertEquals(expected.toInstant(), zoned.getNextPeriodTo().toInstant());
+        } while (expected.isBefore(to));
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.spring.components;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.db.dao.UserDao;
+import com.serotonin.m2m2.rt.event.type.SystemEventType;
+import com.serotonin.m2m2.vo.User;
+import com.serotonin.m2m2.vo.permission.PermissionHolder;
+
+public class EventRecipientIndexTest extends MangoTestBase {
+
+    @Test
+    public void testRecipientsFollowUserChanges() {
+        EventRecipientIndex index = Common.getBean(EventRecipientIndex.class);
+        SystemEventType type = new SystemEventType(SystemEventType.TYPE_MAX_ALARM_LEVEL_CHANGED);
+        int initialCount = index.getRecipients(type).size();
+
+        User admin = createUser("Admin", "eventAdmin", "password", "eventAdmin@yourMangoDomain.com", PermissionHolder.SUPERADMIN_ROLE);
+        User user = createUser("User", "eventUser", "password", "eventUser@yourMangoDomain.com", PermissionHolder.USER_ROLE);
+
+        List<User> recipients = index.getRecipients(type);
+        assertEquals(initialCount + 1, recipients.size());
+        assertTrue(recipients.stream().anyMatch(u -> u.getId() == admin.getId()));
+        assertFalse(recipients.stream().anyMatch(u -> u.getId() == user.getId()));
+        assertEquals(initialCount + 2, index.getActiveUsers().size());
+
+        //Cached until something changes
+        assertSame(recipients, index.getRecipients(new SystemEventType(SystemEventType.TYPE_MAX_ALARM_LEVEL_CHANGED)));
+
+        UserDao dao = UserDao.getInstance();
+        User existing = dao.get(admin.getId());
+        User disabled = dao.get(admin.getId());
+        disabled.setDisabled(true);
+        dao.update(existing, disabled);
+
+        recipients = index.getRecipients(type);
+        assertEquals(initialCount, recipients.size());
+        assertFalse(recipients.stream().anyMatch(u -> u.getId() == admin.getId()));
+    }
+}
@@ -25,6 +25,7 @@ import com.serotonin.m2m2.module.ModuleRegistry;
 import com.serotonin.m2m2.module.PermissionDefinition;
 import com.serotonin.m2m2.module.definitions.event.handlers.EmailEventHandlerDefinition;
 import com.serotonin.m2m2.module.definitions.permissions.EventHandlerCreatePermission;
+import com.serotonin.m2m2.rt.event.type.SystemEventType;
 import com.serotonin.m2m2.vo.User;
 import com.serotonin.m2m2.vo.event.AbstractEventHandlerVO;
 import com.serotonin.m2m2.vo.event.EmailEventHandlerVO;
@@ -137,6 +138,30 @@ public class EmailEventHandlerServiceTest extends AbstractVOServiceTest<Abstract
         }, "scriptRoles");
     }
 
+    @Test
+    public void testEnabledHandlersFollowChanges() {
+        SystemEventType type = new SystemEventType(SystemEventType.TYPE_USER_LOGIN, 1);
+        SystemEventType mapped = new SystemEventType(SystemEventType.TYPE_USER_LOGIN, 2);
+        getService().permissionService.runAsSystemAdmin(() -> {
+            EmailEventHandlerVO vo = newVO(readUser);
+            vo.setEventTypes(Collections.singletonList(type));
+            service.insert(vo);
+            assertEquals(1, dao.getEnabledEventHandlers(type).size());
+            assertEquals(0, dao.getEnabledEventHandlers(mapped).size());
+
+            dao.saveEventHandlerMapping(vo.getXid(), mapped);
+            assertEquals(1, dao.getEnabledEventHandlers(mapped).size());
+
+            EmailEventHandlerVO disabled = (EmailEventHandlerVO) service.get(vo.getId());
+            disabled.setDisabled(true);
+            service.update(disabled.getId(), disabled);
+            assertEquals(0, dao.getEnabledEventHandlers(type).size());
+
+            service.delete(vo.getId());
+            assertEquals(0, dao.getEnabledEventHandlers(mapped).size());
+        });
+    }
+
     @Override
     EventHandlerService getService() {
         return Common.getBean(EventHandlerService.class);
@@ -6,6 +6,7 @@
 package com.infiniteautomation.mango.statistics;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -494,4 +495,28 @@ public class AnalogStatisticsTest {
         assertEquals(4d, stats.getDelta(), 0.001);
     }
 
+    @Test
+    public void testNoValues() {
+        AnalogStatistics stats = new AnalogStatistics(0, 1000, null, new ArrayList<IValueTime>());
+        assertNull(stats.getStartValue());
+        assertNull(stats.getFirstValue());
+        assertNull(stats.getFirstTime());
+        assertNull(stats.getLastValue());
+        assertNull(stats.getLastTime());
+        assertNull(stats.getMinimumTime());
+        assertNull(stats.getMaximumTime());
+        assertEquals(Double.NaN, stats.getMinimumValue(), 0);
+        assertEquals(Double.NaN, stats.getAverage(), 0);
+        assertEquals(0, stats.getCount());
+
+        stats = new AnalogStatistics(0, 1000, null);
+        stats.addValueTime(3d, 500);
+        stats.done();
+        assertEquals(3d, stats.getFirstValue(), 0);
+        assertEquals(Long.valueOf(500), stats.getFirstTime());
+        assertEquals(Long.valueOf(500), stats.getMinimumTime());
+        assertEquals(3d, stats.getAverage(), 0);
+        assertNull(stats.getStartValue());
+    }
+
 }
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.infiniteautomation.mango.quantize.AnalogStatisticsQuantizer;
+import com.infiniteautomation.mango.quantize.NoStatisticsQuantizer;
+import com.infiniteautomation.mango.quantize.TimePeriodBucketCalculator;
+import com.serotonin.m2m2.Common.TimePeriods;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.rt.dataImage.types.MultistateValue;
+
+public class PointValueRollupTest {
+
+    private static final long MINUTE = 60000;
+
+    @Test
+    public void testAnalogStatistics() {
+        List<PointValueTime> values = new ArrayList<>();
+        for (int i = 0; i < 50; i++)
+            values.add(new PointValueTime((double) (i * 7 % 13), 30000 + i * 13000));
+        PointValueTime start = new PointValueTime(4.0, 0);
+        long end = 12 * MINUTE;
+
+        AnalogStatistics expected = new AnalogStatistics(0, end, start, values);
+
+        AnalogStatistics actual = new AnalogStatistics(0, end, start);
+        for (PointValueRollup rollup : hourOfMinutes(DataTypes.NUMERIC, values, end))
+            actual.addRollup(rollup);
+        actual.done();
+
+        assertEquals(expected.getCount(), actual.getCount());
+        assertEquals(expected.getFirstValue(), actual.getFirstValue());
+        assertEquals(expected.getFirstTime(), actual.getFirstTime());
+        assertEquals(expected.getLastValue(), actual.getLastValue());
+        assertEquals(expected.getLastTime(), actual.getLastTime());
+        assertEquals(expected.getMinimumValue(), actual.getMinimumValue());
+        assertEquals(expected.getMinimumTime(), actual.getMinimumTime());
+        assertEquals(expected.getMaximumValue(), actual.getMaximumValue());
+        assertEquals(expected.getMaximumTime(), actual.getMaximumTime());
+        assertEquals(expected.getSum(), actual.getSum(), 0.0001);
+        assertEquals(expected.getAverage(), actual.getAverage(), 0.0001);
+        assertEquals(expected.getIntegral(), actual.getIntegral(), 0.0001);
+        assertEquals(expected.getDelta(), actual.getDelta(), 0.0001);
+    }
+
+    @Test
+    public void testStartsAndRuntime() {
+        List<PointValueTime> values = new ArrayList<>();
+        for (int i = 0; i < 40; i++)
+            values.add(new PointValueTime(new MultistateValue(i * 5 % 3), 10000 + i * 17000));
+        PointValueTime start = new PointValueTime(new MultistateValue(2), 0);
+        long end = 12 * MINUTE;
+
+        StartsAndRuntimeList expected = new StartsAndRuntimeList(0, end, start, values);
+
+        StartsAndRuntimeList actual = new StartsAndRuntimeList(0, end, start);
+        for (PointValueRollup rollup : hourOfMinutes(DataTypes.MULTISTATE, values, end))
+            actual.addRollup(rollup);
+        actual.done();
+
+        assertEquals(expected.getCount(), actual.getCount());
+        assertEquals(expected.getFirstValue(), actual.getFirstValue());
+        assertEquals(expected.getLastValue(), actual.getLastValue());
+        assertEquals(expected.getData().size(), actual.getData().size());
+        for (int i = 0; i < expected.getData().size(); i++) {
+            StartsAndRuntime e = expected.getData().get(i);
+            StartsAndRuntime a = actual.getData().get(i);
+            assertEquals(e.getValue(), a.getValue());
+            assertEquals(e.getStarts(), a.getStarts());
+            assertEquals(e.getRuntime(), a.getRuntime());
+        }
+    }
+
+    @Test
+    public void testWriteRead() throws IOException {
+        PointValueRollup rollup = new PointValueRollup(DataTypes.BINARY, MINUTE, 2 * MINUTE);
+        rollup.add(1, MINUTE + 10);
+        rollup.add(0, MINUTE + 500);
+        rollup.add(1, MINUTE + 900);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        rollup.write(new DataOutputStream(bytes));
+        PointValueRollup read = PointValueRollup.read(MINUTE, new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(2 * MINUTE, read.getPeriodEnd());
+        assertEquals(DataTypes.BINARY, read.getDataType());
+        assertEquals(3, read.getCount());
+        assertEquals(2, read.getChanges());
+        assertEquals(MINUTE + 10, read.getFirstTime());
+        assertEquals(MINUTE + 900, read.getLastTime());
+        assertEquals(2, read.getStateCount());
+        assertEquals(2, read.getStateStarts(0));
+        assertEquals(490, read.getStateRuntime(0));
+        assertEquals(400, read.getStateRuntime(1));
+    }
+
+    /**
+     * Summarize the values by minute and merge the minutes as they would be into hours
+     */
+    @Test
+    public void testQuantizerSupportsRollups() {
+        ZonedDateTime from = ZonedDateTime.of(2020, 1, 1, 0, 0, 0, 0, ZoneId.of("UTC"));
+        ZonedDateTime to = from.plusHours(1);
+        long start = from.toInstant().toEpochMilli();
+
+        AnalogStatisticsQuantizer analog = new AnalogStatisticsQuantizer(new TimePeriodBucketCalculator(from, to, TimePeriods.HOURS, 1), stats -> { });
+        assertTrue(analog.supportsRollups());
+
+        NoStatisticsQuantizer none = new NoStatisticsQuantizer(new TimePeriodBucketCalculator(from, to, TimePeriods.HOURS, 1), stats -> { });
+        assertFalse(none.supportsRollups());
+        try {
+            none.rollup(new PointValueRollup(DataTypes.NUMERIC, start, start + MINUTE));
+            fail("Rollup was accepted");
+        } catch (UnsupportedOperationException e) {
+            //Expected
+        }
+    }
+
+    private List<PointValueRollup> hourOfMinutes(int dataType, List<PointValueTime> values, long end) {
+        List<PointValueRollup> minutes = new ArrayList<>();
+        PointValueRollup minute = null;
+        for (PointValueTime value : values) {
+            if (minute == null || value.getTime() >= minute.getPeriodEnd()) {
+                long minuteStart = value.getTime() - value.getTime() % MINUTE;
+                minute = new PointValueRollup(dataType, minuteStart, minuteStart + MINUTE);
+                minutes.add(minute);
+            }
+            minute.add(value.getValue().getDoubleValue(), value.getTime());
+        }
+
+        //Merge the first half into one rollup to cover both levels
+        PointValueRollup merged = new PointValueRollup(dataType, 0, end / 2);
+        List<PointValueRollup> rollups = new ArrayList<>();
+        rollups.add(merged);
+        for (PointValueRollup m : minutes) {
+            if (m.getPeriodStart() < end / 2)
+                merged.add(m);
+            else
+                rollups.add(m);
+        }
+        return rollups;
+    }
+}
@@ -226,4 +226,9 @@ public class NumericPointValueDaoTest extends MangoTestBase {
         this.helper.testNoStartBookendLimit();
     }
 
+    @Test
+    public void testLatestPointValuesForDataSource() {
+        this.helper.testLatestPointValuesForDataSource();
+    }
+
 }
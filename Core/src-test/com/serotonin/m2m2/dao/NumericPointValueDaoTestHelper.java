@@ -18,10 +18,12 @@ import com.infiniteautomation.mango.db.query.BookendQueryCallback;
 import com.infiniteautomation.mango.db.query.PVTQueryCallback;
 import com.infiniteautomation.mango.db.query.QueryCancelledException;
 import com.serotonin.db.WideQueryCallback;
+import com.serotonin.m2m2.db.dao.DataSourceDao;
 import com.serotonin.m2m2.db.dao.PointValueDao;
 import com.serotonin.m2m2.rt.dataImage.IdPointValueTime;
 import com.serotonin.m2m2.rt.dataImage.PointValueTime;
 import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.dataSource.DataSourceVO;
 
 /**
  *
@@ -2489,4 +2491,31 @@ public class NumericPointValueDaoTestHelper {
         Assert.assertEquals(Integer.valueOf(11), count1.getValue());
         Assert.assertEquals(Integer.valueOf(11), count2.getValue());
     }
+
+    /* Latest values of all points on a data source */
+    public void testLatestPointValuesForDataSource() {
+        DataSourceVO ds = DataSourceDao.getInstance().get(vo1.getDataSourceId());
+        Map<Integer, List<PointValueTime>> latest = this.dao.getLatestPointValuesForDataSource(ds, 5);
+        if(latest == null) {
+            //Not read in bulk by this database, the runtime manager queries each point instead
+            latest = new HashMap<>();
+            for(DataPointVO vo : vos)
+                latest.put(vo.getId(), this.dao.getLatestPointValues(vo, 5));
+            Assert.assertTrue(this.dao.getLatestPointValues(emptyDataPointVO, 5).isEmpty());
+        }else {
+            Assert.assertNull(latest.get(emptyDataPointVO.getId()));
+        }
+        for(DataPointVO vo : vos) {
+            List<PointValueTime> expected = data.get(vo.getId());
+            List<PointValueTime> values = latest.get(vo.getId());
+            Assert.assertEquals(5, values.size());
+            for(int i = 0; i < 5; i++) {
+                PointValueTime pvt = expected.get(expected.size() - 1 - i);
+                //Check value
+                Assert.assertEquals(pvt.getDoubleValue(), values.get(i).getDoubleValue(), 0.001);
+                //Check time
+                Assert.assertEquals(pvt.getTime(), values.get(i).getTime());
+            }
+        }
+    }
 }
@@ -33,6 +33,7 @@ import com.serotonin.db.spring.ConnectionCallbackVoid;
 import com.serotonin.db.spring.ExtendedJdbcTemplate;
 import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.MockPointValueDao;
+import com.serotonin.m2m2.db.dao.PermissionDao;
 import com.serotonin.m2m2.db.dao.PointValueDao;
 import com.serotonin.m2m2.db.dao.PointValueDaoMetrics;
 import com.serotonin.m2m2.db.dao.PointValueDaoSQL;
@@ -409,6 +410,8 @@ public class H2InMemoryDatabaseProxy implements DatabaseProxy {
 
         runScript(new String[] {"DROP ALL OBJECTS;"}, null);
         runScript(H2InMemoryDatabaseProxy.class.getResourceAsStream("createTables-" + getType().name() + ".sql"), null);
+        //Permission ids are re-used by the new tables
+        Common.getBean(PermissionDao.class).clearCache();
 
         for (DatabaseSchemaDefinition def : ModuleRegistry.getDefinitions(DatabaseSchemaDefinition.class))
             def.newInstallationCheck(ejt);
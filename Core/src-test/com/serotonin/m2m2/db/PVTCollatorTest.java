@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.db;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.serotonin.m2m2.rt.dataImage.IdPointValueTime;
+import com.serotonin.m2m2.rt.dataImage.MultiValueTime;
+import com.serotonin.m2m2.rt.dataImage.types.AlphanumericValue;
+import com.serotonin.m2m2.rt.dataImage.types.NumericValue;
+
+public class PVTCollatorTest {
+
+    private final List<Integer> pointIds = Arrays.asList(7, 3, 1000003, 42);
+
+    @Test
+    public void testRows() {
+        List<MultiValueTime> rows = new ArrayList<>();
+        PVTCollator collator = new PVTCollator(pointIds, (mvt, index) -> rows.add(mvt));
+        collate(collator);
+
+        assertEquals(3, rows.size());
+        assertEquals(100, rows.get(0).getTime());
+        assertEquals(new NumericValue(1), rows.get(0).getValues()[0]);
+        assertEquals(new NumericValue(2), rows.get(0).getValues()[2]);
+        assertNull(rows.get(0).getValues()[1]);
+        assertEquals(new NumericValue(3), rows.get(1).getValues()[1]);
+        assertEquals(new AlphanumericValue("a"), rows.get(2).getValues()[3]);
+        assertNull(rows.get(2).getValues()[0]);
+    }
+
+    @Test
+    public void testReusedRow() {
+        List<Object[]> rows = new ArrayList<>();
+        PVTCollator collator = new PVTCollator(pointIds, (mvt, index) -> rows.add(mvt.getValues().clone()), true);
+        collate(collator);
+
+        assertEquals(3, rows.size());
+        assertArrayEquals(new Object[] {new NumericValue(1), null, new NumericValue(2), null}, rows.get(0));
+        assertArrayEquals(new Object[] {null, new NumericValue(3), null, null}, rows.get(1));
+        assertArrayEquals(new Object[] {null, null, null, new AlphanumericValue("a")}, rows.get(2));
+    }
+
+    @Test
+    public void testChunks() {
+        List<long[]> times = new ArrayList<>();
+        List<double[][]> values = new ArrayList<>();
+        PVTCollator collator = new PVTCollator(pointIds, 2, (t, v, rows) -> {
+            times.add(Arrays.copyOf(t, rows));
+            double[][] copy = new double[v.length][];
+            for (int i = 0; i < v.length; i++)
+                copy[i] = Arrays.copyOf(v[i], rows);
+            values.add(copy);
+        });
+        collate(collator);
+
+        assertEquals(2, times.size());
+        assertArrayEquals(new long[] {100, 200}, times.get(0));
+        assertArrayEquals(new long[] {300}, times.get(1));
+        assertArrayEquals(new double[] {1, Double.NaN}, values.get(0)[0], 0);
+        assertArrayEquals(new double[] {Double.NaN, 3}, values.get(0)[1], 0);
+        assertArrayEquals(new double[] {2, Double.NaN}, values.get(0)[2], 0);
+        assertArrayEquals(new double[] {Double.NaN}, values.get(1)[3], 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownPoint() {
+        PVTCollator collator = new PVTCollator(pointIds, (mvt, index) -> {});
+        collator.row(new IdPointValueTime(8, new NumericValue(1), 100), 0);
+    }
+
+    private void collate(PVTCollator collator) {
+        collator.row(new IdPointValueTime(7, new NumericValue(1), 100), 0);
+        collator.row(new IdPointValueTime(1000003, new NumericValue(2), 100), 1);
+        collator.row(new IdPointValueTime(3, new NumericValue(3), 200), 2);
+        collator.row(new IdPointValueTime(42, new AlphanumericValue("a"), 300), 3);
+        collator.done();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.db;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+
+/**
+ * Compares the sustained insert rate of the point value insert strategies against the
+ * previous write behind approach of building a new multi row statement and boxed parameter
+ * array for every batch.
+ *
+ * Not a JUnit test, run the main method. By default it uses an in memory H2 database, to benchmark
+ * another database pass its JDBC url, username and password, the pointValues table is dropped and
+ * recreated in that database.
+ *
+ * Arguments: [url [username [password [rows [batchSize]]]]]
+ */
+public class PointValueInsertBenchmark {
+
+    private static final String CREATE = "CREATE TABLE pointValues (id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+            + "dataPointId INT NOT NULL, dataType INT NOT NULL, pointValue DOUBLE, ts BIGINT NOT NULL)";
+    private static final String CREATE_POSTGRES = "CREATE TABLE pointValues (id BIGSERIAL PRIMARY KEY, "
+            + "dataPointId INTEGER NOT NULL, dataType INTEGER NOT NULL, pointValue DOUBLE PRECISION, ts BIGINT NOT NULL)";
+    private static final String INDEX = "CREATE INDEX pointValuesIdx1 ON pointValues (dataPointId, ts)";
+
+    public static void main(String[] args) throws SQLException {
+        String url = args.length > 0 ? args[0] : "jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1";
+        String username = args.length > 1 ? args[1] : "";
+        String password = args.length > 2 ? args[2] : "";
+        int rows = args.length > 3 ? Integer.parseInt(args[3]) : 1000000;
+        int batchSize = args.length > 4 ? Integer.parseInt(args[4]) : 1000;
+
+        try (Connection connection = DriverManager.getConnection(url, username, password)) {
+            connection.setAutoCommit(true);
+            boolean postgres = url.startsWith("jdbc:postgresql");
+
+            run("Legacy multi row, new statement per batch", connection, postgres, rows, batchSize,
+                    PointValueInsertBenchmark::legacyInsert);
+            run("Multi row, cached statement text", connection, postgres, rows, batchSize,
+                    new MultiRowPointValueInsertStrategy(batchSize));
+            run("Batched prepared statement", connection, postgres, rows, batchSize,
+                    new BatchedPointValueInsertStrategy());
+            if (postgres)
+                run("Postgres binary COPY", connection, postgres, rows, batchSize,
+                        new PostgresCopyPointValueInsertStrategy());
+        }
+    }
+
+    private static void run(String name, Connection connection, boolean postgres, int rows, int batchSize,
+            PointValueInsertStrategy strategy) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS pointValues");
+            statement.execute(postgres ? CREATE_POSTGRES : CREATE);
+            statement.execute(INDEX);
+        }
+
+        Random random = new Random(0);
+        PointValueBatch batch = new PointValueBatch(batchSize);
+        long time = System.currentTimeMillis();
+        long start = System.nanoTime();
+        int written = 0;
+        while (written < rows) {
+            batch.clear();
+            while (batch.size() < batchSize && written + batch.size() < rows)
+                batch.add(random.nextInt(1000), 3, random.nextDouble(), time++);
+            strategy.insert(connection, batch);
+            written += batch.size();
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.println(String.format("%-45s %,12.0f rows/s", name, written / (elapsed / 1e9d)));
+    }
+
+    /**
+     * What BatchWriteBehind used to do for each batch
+     */
+    private static void legacyInsert(Connection connection, PointValueBatch batch) throws SQLException {
+        Object[] params = new Object[batch.size() * 4];
+        StringBuilder sb = new StringBuilder();
+        sb.append("insert into pointValues (dataPointId, dataType, pointValue, ts) values ");
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0)
+                sb.append(',');
+            sb.append("(?,?,?,?)");
+            int index = i * 4;
+            params[index++] = batch.getDataPointId(i);
+            params[index++] = batch.getDataType(i);
+            params[index++] = batch.getValue(i);
+            params[index++] = batch.getTime(i);
+        }
+        try (PreparedStatement ps = connection.prepareStatement(sb.toString())) {
+            for (int i = 0; i < params.length; i++)
+                ps.setObject(i + 1, params[i]);
+            ps.executeUpdate();
+        }
+    }
+}
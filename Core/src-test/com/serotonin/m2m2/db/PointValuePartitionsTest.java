@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.db;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.serotonin.m2m2.MangoTestBase;
+
+public class PointValuePartitionsTest extends MangoTestBase {
+
+    private static final long WEEK = 7 * PointValuePartitions.DAY;
+
+    @Test
+    public void testMaintain() {
+        TestPartitions partitions = new TestPartitions();
+        long now = 2600 * WEEK + 1000;
+        partitions.maintain(now);
+
+        //Existing values and the current week, a partition per week until 4 weeks ahead and the catch all partition
+        List<PointValuePartitions.Partition> list = partitions.getPartitions();
+        assertEquals(6, list.size());
+        assertEquals(Long.MIN_VALUE, list.get(0).getFrom());
+        assertEquals(2601 * WEEK, list.get(0).getTo());
+        assertEquals(2601 * WEEK, list.get(1).getFrom());
+        assertEquals(2605 * WEEK, list.get(4).getTo());
+        assertEquals(Long.MAX_VALUE, list.get(5).getTo());
+
+        //Nothing to add in the same week
+        partitions.maintain(now + PointValuePartitions.DAY);
+        assertEquals(6, partitions.getPartitions().size());
+
+        partitions.maintain(now + 2 * WEEK);
+        list = partitions.getPartitions();
+        assertEquals(8, list.size());
+        assertEquals(2607 * WEEK, list.get(6).getTo());
+        assertEquals(2607 * WEEK, list.get(7).getFrom());
+    }
+
+    @Test
+    public void testConvertWithCurrentValues() {
+        TestPartitions partitions = new TestPartitions();
+        long now = 2600 * WEEK + 3 * PointValuePartitions.DAY;
+        partitions.rows.add(2599 * WEEK);
+        partitions.rows.add(now - 1000);
+        partitions.rows.add(now);
+        partitions.maintain(now);
+
+        List<PointValuePartitions.Partition> list = partitions.getPartitions();
+        assertEquals(2601 * WEEK, list.get(0).getTo());
+        assertEquals(2605 * WEEK, list.get(list.size() - 2).getTo());
+    }
+
+    @Test
+    public void testConvertWithFutureValues() {
+        TestPartitions partitions = new TestPartitions();
+        long now = 2600 * WEEK + 1000;
+        partitions.rows.add(now);
+        partitions.rows.add(2610 * WEEK + 5);
+        partitions.maintain(now);
+
+        //The first partition ends after the latest value, periods are only created from there
+        List<PointValuePartitions.Partition> list = partitions.getPartitions();
+        assertEquals(2, list.size());
+        assertEquals(2611 * WEEK, list.get(0).getTo());
+        assertEquals(Long.MAX_VALUE, list.get(1).getTo());
+
+        partitions.maintain(2609 * WEEK);
+        assertEquals(5, partitions.getPartitions().size());
+        partitions.maintain(2611 * WEEK);
+        list = partitions.getPartitions();
+        assertEquals(7, list.size());
+        assertEquals(2616 * WEEK, list.get(5).getTo());
+    }
+
+    @Test
+    public void testDropBefore() {
+        TestPartitions partitions = new TestPartitions();
+        partitions.maintain(2600 * WEEK);
+
+        assertEquals(0, partitions.dropBefore(2601 * WEEK - 1));
+        //A partition is only dropped once all of its values are before the time
+        assertEquals(1, partitions.dropBefore(2602 * WEEK - 1));
+        assertEquals(1, partitions.dropBefore(2602 * WEEK));
+        assertEquals(2602 * WEEK, partitions.getPartitions().get(0).getFrom());
+        //The catch all partition is kept
+        assertEquals(3, partitions.dropBefore(Long.MAX_VALUE));
+        assertEquals(1, partitions.getPartitions().size());
+    }
+
+    private static class TestPartitions extends PointValuePartitions {
+        private final List<Partition> partitions = new ArrayList<>();
+        //Times of the values in the table
+        private final List<Long> rows = new ArrayList<>();
+
+        TestPartitions() {
+            super(null);
+        }
+
+        @Override
+        public List<Partition> getPartitions() {
+            return new ArrayList<>(partitions);
+        }
+
+        @Override
+        protected long maxTime() {
+            long max = Long.MIN_VALUE;
+            for (long time : rows)
+                max = Math.max(max, time);
+            return max;
+        }
+
+        @Override
+        protected void partition(long[] boundaries) {
+            //The database rejects a first partition that does not hold the existing values
+            for (long time : rows)
+                if (time >= boundaries[0])
+                    throw new IllegalStateException("Value at " + time + " is outside of the first partition");
+            partitions.add(new Partition("old", Long.MIN_VALUE, boundaries[0]));
+            addPartitions(boundaries);
+        }
+
+        @Override
+        protected void addPartitions(long[] boundaries) {
+            if (!partitions.isEmpty() && partitions.get(partitions.size() - 1).getTo() == Long.MAX_VALUE)
+                partitions.remove(partitions.size() - 1);
+            for (int i = 0; i < boundaries.length - 1; i++)
+                partitions.add(new Partition(partitionName(boundaries[i]), boundaries[i], boundaries[i + 1]));
+            partitions.add(new Partition("future", boundaries[boundaries.length - 1], Long.MAX_VALUE));
+        }
+
+        @Override
+        protected void dropPartition(Partition partition) {
+            partitions.remove(0);
+        }
+    }
+}
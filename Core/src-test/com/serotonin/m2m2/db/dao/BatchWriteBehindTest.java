@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.db.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DeadlockLoserDataAccessException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.UncategorizedSQLException;
+
+import com.serotonin.db.spring.ExtendedJdbcTemplate;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.db.dao.PointValueDaoSQL.BatchWriteBehind;
+import com.serotonin.m2m2.db.dao.PointValueDaoSQL.BatchWriteBehindEntry;
+import com.serotonin.m2m2.db.dao.PointValueDaoSQL.BatchWriteBehindShard;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.timer.RejectedTaskReason;
+
+public class BatchWriteBehindTest extends MangoTestBase {
+
+    @Test
+    public void testRetriedExceptions() {
+        //Subclasses of the retried exceptions
+        assertTrue(BatchWriteBehind.isRetried(new DeadlockLoserDataAccessException("deadlock", null)));
+        assertTrue(BatchWriteBehind.isRetried(new CannotGetJdbcConnectionException("no connection")));
+        assertTrue(BatchWriteBehind.isRetried(new DataAccessResourceFailureException("failure")));
+        assertTrue(BatchWriteBehind.isRetried(new QueryTimeoutException("timeout")));
+
+        //Dropped connections that were not translated
+        assertTrue(BatchWriteBehind.isRetried(new UncategorizedSQLException("insert", "INSERT", new SQLException("closed", "08S01"))));
+        assertTrue(BatchWriteBehind.isRetried(new UncategorizedSQLException("insert", "INSERT", new SQLTransientConnectionException("closed"))));
+    }
+
+    @Test
+    public void testDataExceptionsAreNotRetried() {
+        assertFalse(BatchWriteBehind.isRetried(new DataIntegrityViolationException("duplicate")));
+        assertFalse(BatchWriteBehind.isRetried(new UncategorizedSQLException("insert", "INSERT", new SQLIntegrityConstraintViolationException("duplicate", "23505"))));
+        assertFalse(BatchWriteBehind.isRetried(new IllegalStateException()));
+    }
+
+    @Test
+    public void testShardsDrainInParallel() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        BatchWriteBehindShard first = new BatchWriteBehindShard(100, BatchWriteBehind.MAX_ROWS);
+        BatchWriteBehindShard second = new BatchWriteBehindShard(101, BatchWriteBehind.MAX_ROWS);
+        first.writers.set(1);
+        second.writers.set(1);
+
+        //Each writer waits until both are running
+        Common.backgroundProcessing.addWorkItem(new BlockingWriter(first, started, release));
+        Common.backgroundProcessing.addWorkItem(new BlockingWriter(second, started, release));
+        try {
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+        }
+        awaitRetired(first);
+        awaitRetired(second);
+    }
+
+    @Test
+    public void testRejectedWriterIsRetried() throws InterruptedException {
+        DataPointVO vo = (DataPointVO) createMockDataPoints(1).get(0);
+        BatchWriteBehindShard shard = new BatchWriteBehindShard(102, BatchWriteBehind.MAX_ROWS);
+        long time = Common.timer.currentTimeMillis();
+        shard.offer(new BatchWriteBehindEntry(vo.getId(), DataTypes.NUMERIC, 2.5, time));
+        shard.writers.set(1);
+
+        //No other writer is running, the shard must not wait for its next value
+        new BatchWriteBehind(ejt(), shard, 1).rejected(new RejectedTaskReason(RejectedTaskReason.CURRENTLY_RUNNING, time, null, null));
+        assertEquals(1, shard.writers.get());
+        assertEquals(1, shard.size());
+
+        timer.fastForwardTo(time + 1000);
+        awaitRetired(shard);
+        assertEquals(0, shard.size());
+        PointValueTime saved = Common.databaseProxy.newPointValueDao().getLatestPointValue(vo);
+        assertNotNull(saved);
+        assertEquals(2.5, saved.getDoubleValue(), 0);
+    }
+
+    private void awaitRetired(BatchWriteBehindShard shard) throws InterruptedException {
+        for (int i = 0; i < 100 && shard.writers.get() > 0; i++)
+            Thread.sleep(100);
+        assertEquals(0, shard.writers.get());
+    }
+
+    private static ExtendedJdbcTemplate ejt() {
+        ExtendedJdbcTemplate ejt = new ExtendedJdbcTemplate();
+        ejt.setDataSource(Common.databaseProxy.getDataSource());
+        return ejt;
+    }
+
+    private static class BlockingWriter extends BatchWriteBehind {
+        private final CountDownLatch started;
+        private final CountDownLatch release;
+
+        BlockingWriter(BatchWriteBehindShard shard, CountDownLatch started, CountDownLatch release) {
+            super(ejt(), shard, 1);
+            this.started = started;
+            this.release = release;
+        }
+
+        @Override
+        public void execute() {
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) { }
+            super.execute();
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.db.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.transaction.TransactionStatus;
+
+import com.infiniteautomation.mango.monitor.ValueMonitor;
+
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.MockMangoProperties;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.rt.event.AlarmLevels;
+import com.serotonin.m2m2.rt.event.EventInstance;
+import com.serotonin.m2m2.rt.event.ReturnCause;
+import com.serotonin.m2m2.rt.event.type.SystemEventType;
+
+public class EventJournalTest extends MangoTestBase {
+
+    private Path logDirectory;
+
+    @Override
+    @Before
+    public void before() {
+        super.before();
+        try {
+            logDirectory = Files.createTempDirectory("eventJournal");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    @After
+    public void after() {
+        ((MockMangoProperties) Common.envProps).setProperty("events.journal.maxPending", "10000");
+        try {
+            FileUtils.deleteDirectory(logDirectory.toFile());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        super.after();
+    }
+
+    @Test
+    public void testChangesMergedIntoPendingInsert() {
+        EventJournal journal = new JournalDao(logDirectory).journal;
+        EventInstance evt = event(1000);
+        assertTrue(journal.insert(evt));
+        assertNotEquals(Common.NEW_ID, evt.getId());
+
+        assertTrue(journal.acknowledge(evt.getId(), 1500, 0, new TranslatableMessage("common.default", "auto")));
+        assertFalse(journal.acknowledge(evt.getId(), 1600, 0, null));
+        assertTrue(journal.returnToNormal(Collections.singletonList(evt.getId()), 2000, ReturnCause.RETURN_TO_NORMAL));
+        assertEquals(1, journal.getPendingCount());
+
+        journal.flush();
+        assertEquals(0, journal.getPendingCount());
+
+        EventInstance saved = EventDao.getInstance().get(evt.getId());
+        assertEquals(1000, saved.getActiveTimestamp());
+        assertEquals(2000, (long) saved.getRtnTimestamp());
+        assertEquals(1500, (long) saved.getAcknowledgedTimestamp());
+    }
+
+    @Test
+    public void testChangesToWrittenEvents() {
+        EventJournal journal = new JournalDao(logDirectory).journal;
+        EventInstance first = event(1000);
+        EventInstance second = event(1100);
+        journal.insert(first);
+        journal.insert(second);
+        assertEquals(first.getId() + 1, second.getId());
+        journal.flush();
+
+        //Already written, must be acknowledged in the database
+        assertNull(journal.acknowledge(first.getId(), 1500, 0, null));
+        journal.returnToNormal(Collections.singletonList(first.getId()), 2000, ReturnCause.SOURCE_DISABLED);
+        assertEquals(1, journal.getPendingCount());
+        journal.close();
+
+        EventInstance saved = EventDao.getInstance().get(first.getId());
+        assertEquals(2000, (long) saved.getRtnTimestamp());
+        assertEquals(ReturnCause.SOURCE_DISABLED, saved.getRtnCause());
+        assertTrue(EventDao.getInstance().get(second.getId()).isActive());
+
+        //Closed, inserted directly using ids beyond the reserved block
+        assertFalse(journal.insert(event(3000)));
+        EventInstance direct = event(3000);
+        EventDao.getInstance().saveEvent(direct);
+        assertTrue(direct.getId() > second.getId());
+    }
+
+    @Test
+    public void testFailingInsertIsDropped() {
+        EventJournal journal = new JournalDao(logDirectory).journal;
+        EventInstance first = event(1000);
+        //Subtype name is longer than the column
+        EventInstance bad = event(new SystemEventType("A_SUBTYPE_THAT_DOES_NOT_FIT_THE_COLUMN", 1), 1100);
+        EventInstance last = event(1200);
+        journal.insert(first);
+        journal.insert(bad);
+        journal.insert(last);
+        journal.returnToNormal(Collections.singletonList(last.getId()), 2000, ReturnCause.RETURN_TO_NORMAL);
+
+        journal.flush();
+        assertEquals(0, journal.getPendingCount());
+        assertNotNull(EventDao.getInstance().get(first.getId()));
+        assertNull(EventDao.getInstance().get(bad.getId()));
+        assertEquals(2000, (long) EventDao.getInstance().get(last.getId()).getRtnTimestamp());
+    }
+
+    @Test
+    public void testTransientExceptions() {
+        assertTrue(EventJournal.isTransient(new CannotGetJdbcConnectionException("no connection")));
+        assertTrue(EventJournal.isTransient(new QueryTimeoutException("timeout")));
+        assertTrue(EventJournal.isTransient(new UncategorizedSQLException("insert", "INSERT", new SQLException("closed", "08S01"))));
+        assertFalse(EventJournal.isTransient(new DataIntegrityViolationException("too long")));
+        assertFalse(EventJournal.isTransient(new UncategorizedSQLException("insert", "INSERT", new SQLException("too long", "22001"))));
+    }
+
+    @Test
+    public void testPendingChangesReplayedAfterCrash() throws IOException {
+        EventJournal journal = new JournalDao(logDirectory).journal;
+        EventInstance written = event(1000);
+        journal.insert(written);
+        journal.flush();
+
+        EventInstance pending = event(1100);
+        journal.insert(pending);
+        journal.acknowledge(pending.getId(), 1500, 0, null);
+        journal.returnToNormal(Collections.singletonList(written.getId()), 2000, ReturnCause.RETURN_TO_NORMAL);
+        journal.returnToNormal(Collections.singletonList(pending.getId()), 2100, ReturnCause.SOURCE_DISABLED);
+        //Not closed, as if Mango had crashed
+        assertNull(EventDao.getInstance().get(pending.getId()));
+
+        EventJournal restarted = new JournalDao(logDirectory).journal;
+        assertEquals(2, restarted.getPendingCount());
+        //Copy of the log as if the next crash came after the write but before the log was deleted
+        Path copy = Files.createTempDirectory("eventJournalCopy");
+        try {
+            FileUtils.copyDirectory(logDirectory.toFile(), copy.toFile());
+            restarted.flush();
+            assertEquals(0, logFiles());
+
+            EventInstance saved = EventDao.getInstance().get(pending.getId());
+            assertEquals(1100, saved.getActiveTimestamp());
+            assertEquals(1500, (long) saved.getAcknowledgedTimestamp());
+            assertEquals(2100, (long) saved.getRtnTimestamp());
+            assertEquals(ReturnCause.SOURCE_DISABLED, saved.getRtnCause());
+            assertEquals(2000, (long) EventDao.getInstance().get(written.getId()).getRtnTimestamp());
+
+            //The written insert is not inserted again but its return to normal is kept
+            FileUtils.copyDirectory(copy.toFile(), logDirectory.toFile());
+            EventJournal again = new JournalDao(logDirectory).journal;
+            assertEquals(2, again.getPendingCount());
+            again.flush();
+            assertEquals(0, again.getPendingCount());
+            assertEquals(2100, (long) EventDao.getInstance().get(pending.getId()).getRtnTimestamp());
+        } finally {
+            FileUtils.deleteDirectory(copy.toFile());
+        }
+    }
+
+    @Test
+    public void testEventsShedWhileDatabaseUnreachable() {
+        ((MockMangoProperties) Common.envProps).setProperty("events.journal.maxPending", "3");
+        JournalDao dao = new JournalDao(logDirectory);
+        EventJournal journal = dao.journal;
+        EventInstance first = event(1000);
+        EventInstance second = event(1100);
+        journal.insert(first);
+        journal.insert(second);
+
+        dao.beforeWrite = status -> {
+            throw new CannotGetJdbcConnectionException("no connection");
+        };
+        try {
+            journal.flush();
+            fail("Write did not fail");
+        } catch (DataAccessException e) {
+            //Expected
+        }
+        assertEquals(2, journal.getPendingCount());
+        assertEquals(1, dao.writes);
+
+        EventInstance third = event(1200);
+        journal.insert(third);
+        assertEquals(3, journal.getPendingCount());
+
+        //Full, the event is raised without being saved instead of writing again
+        EventInstance shed = event(1300);
+        assertTrue(journal.insert(shed));
+        assertEquals(Common.NEW_ID, shed.getId());
+        assertEquals(3, journal.getPendingCount());
+        assertEquals(1, dao.writes);
+        ValueMonitor<?> shedMonitor = Common.MONITORED_VALUES.getMonitor(EventJournal.SHED_MONITOR_ID);
+        assertEquals(1, shedMonitor.getValue());
+
+        //Return to normal is still queued
+        journal.returnToNormal(Collections.singletonList(first.getId()), 2000, ReturnCause.RETURN_TO_NORMAL);
+        assertEquals(3, journal.getPendingCount());
+
+        dao.beforeWrite = status -> { };
+        journal.flush();
+        assertEquals(0, journal.getPendingCount());
+        assertEquals(2000, (long) EventDao.getInstance().get(first.getId()).getRtnTimestamp());
+        assertNotNull(EventDao.getInstance().get(third.getId()));
+
+        //Back to normal
+        EventInstance after = event(1400);
+        journal.insert(after);
+        assertNotEquals(Common.NEW_ID, after.getId());
+    }
+
+    private long logFiles() throws IOException {
+        try (Stream<Path> files = Files.list(logDirectory)) {
+            return files.count();
+        }
+    }
+
+    private EventInstance event(long time) {
+        return event(new SystemEventType(SystemEventType.TYPE_USER_LOGIN, 1), time);
+    }
+
+    private EventInstance event(SystemEventType type, long time) {
+        return new EventInstance(type, time, true,
+                AlarmLevels.URGENT, new TranslatableMessage("common.default", "test"), null);
+    }
+
+    private static class JournalDao extends BaseDao {
+        private final EventJournal journal;
+        private volatile Consumer<TransactionStatus> beforeWrite = status -> { };
+        private int writes;
+
+        JournalDao(Path logDirectory) {
+            journal = new EventJournal(this, ejt, logDirectory);
+        }
+
+        @Override
+        public void doInTransaction(Consumer<TransactionStatus> callback) {
+            writes++;
+            super.doInTransaction(status -> {
+                beforeWrite.accept(status);
+                callback.accept(status);
+            });
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.db.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.infiniteautomation.mango.quantize.TimePeriodBucketCalculator;
+import com.infiniteautomation.mango.statistics.PointValueRollup;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.Common.TimePeriods;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.MockMangoProperties;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+public class PointValueRollupDaoTest extends MangoTestBase {
+
+    private static final long MINUTE = PointValueRollupDao.MINUTE;
+    private static final long HOUR = 60 * MINUTE;
+
+    private final ZoneId zone = ZoneId.systemDefault();
+    private PointValueRollupDao rollups;
+    private PointValueDao pointValueDao;
+    private DataPointVO vo;
+    private long today;
+    private long tomorrow;
+
+    @Override
+    @Before
+    public void before() {
+        super.before();
+        timer.setStartTime(ZonedDateTime.of(2020, 6, 15, 12, 30, 0, 0, zone).toInstant().toEpochMilli());
+        ((MockMangoProperties) Common.envProps).setProperty("db.rollups.enabled", "true");
+        PointValueRollupDao.initialize();
+        rollups = PointValueRollupDao.getInstance();
+        pointValueDao = Common.databaseProxy.newPointValueDao();
+        vo = (DataPointVO) createMockDataPoints(1).get(0);
+        today = rollups.dayStart(Common.timer.currentTimeMillis());
+        tomorrow = rollups.nextDay(today);
+    }
+
+    @Override
+    @After
+    public void after() {
+        PointValueRollupDao.terminate();
+        ((MockMangoProperties) Common.envProps).setProperty("db.rollups.enabled", "false");
+        super.after();
+    }
+
+    @Test
+    public void testWrittenValuesAreSummarized() {
+        save(10, today + 10 * MINUTE + 5000);
+        save(20, today + 10 * MINUTE + 30000);
+        save(5, today + 11 * MINUTE);
+        save(7, today + 2 * HOUR);
+
+        List<PointValueRollup> minutes = query(TimePeriods.MINUTES, today, tomorrow);
+        assertEquals(3, minutes.size());
+        assertEquals(today + 10 * MINUTE, minutes.get(0).getPeriodStart());
+        assertEquals(2, minutes.get(0).getCount());
+        assertEquals(10, minutes.get(0).getFirstValue(), 0);
+        assertEquals(20, minutes.get(0).getLastValue(), 0);
+        assertEquals(30, minutes.get(0).getSum(), 0);
+        assertEquals(1, minutes.get(1).getCount());
+
+        List<PointValueRollup> hours = query(TimePeriods.HOURS, today, tomorrow);
+        assertEquals(2, hours.size());
+        assertEquals(today, hours.get(0).getPeriodStart());
+        assertEquals(3, hours.get(0).getCount());
+        assertEquals(35, hours.get(0).getSum(), 0);
+        assertEquals(today + 2 * HOUR, hours.get(1).getPeriodStart());
+
+        List<PointValueRollup> days = query(TimePeriods.DAYS, today, tomorrow);
+        assertEquals(1, days.size());
+        assertEquals(4, days.get(0).getCount());
+        assertEquals(5, days.get(0).getMinimumValue(), 0);
+        assertEquals(20, days.get(0).getMaximumValue(), 0);
+    }
+
+    @Test
+    public void testBackdatedValueIsReconciled() {
+        save(10, today + 10 * MINUTE + 5000);
+        save(20, today + 2 * HOUR);
+        assertEquals(2, query(TimePeriods.DAYS, today, tomorrow).get(0).getCount());
+
+        //Earlier than the summarized values
+        save(1, today + 10 * MINUTE);
+        List<PointValueRollup> hours = query(TimePeriods.HOURS, today, tomorrow);
+        assertEquals(2, hours.get(0).getCount());
+        assertEquals(1, hours.get(0).getFirstValue(), 0);
+        assertEquals(today + 10 * MINUTE, hours.get(0).getFirstTime());
+
+        PointValueRollup day = query(TimePeriods.DAYS, today, tomorrow).get(0);
+        assertEquals(3, day.getCount());
+        assertEquals(31, day.getSum(), 0);
+    }
+
+    @Test
+    public void testDeletedValues() {
+        save(10, today + 10 * MINUTE);
+        save(20, today + 11 * MINUTE);
+        save(30, today + 11 * MINUTE + 30000);
+        assertEquals(2, query(TimePeriods.MINUTES, today, tomorrow).size());
+
+        pointValueDao.deletePointValuesBetween(vo, today + 11 * MINUTE, today + 12 * MINUTE);
+        List<PointValueRollup> minutes = query(TimePeriods.MINUTES, today, tomorrow);
+        assertEquals(1, minutes.size());
+        assertEquals(today + 10 * MINUTE, minutes.get(0).getPeriodStart());
+        assertEquals(1, query(TimePeriods.HOURS, today, tomorrow).get(0).getCount());
+        assertEquals(1, query(TimePeriods.DAYS, today, tomorrow).get(0).getCount());
+
+        pointValueDao.deleteAllPointData();
+        assertTrue(query(TimePeriods.MINUTES, today, tomorrow).isEmpty());
+        assertTrue(query(TimePeriods.DAYS, today, tomorrow).isEmpty());
+    }
+
+    @Test
+    public void testBackfill() {
+        long yesterday = rollups.dayStart(today - 1);
+        save(3, yesterday + HOUR);
+        save(4, today + HOUR);
+        assertEquals(-1, rollups.getRollupPeriodType(Collections.singletonList(vo), bucketCalculator(yesterday, tomorrow, TimePeriods.DAYS, 1)));
+
+        rollups.backfill();
+        assertEquals(TimePeriods.DAYS, rollups.getRollupPeriodType(Collections.singletonList(vo), bucketCalculator(yesterday, tomorrow, TimePeriods.DAYS, 1)));
+        List<PointValueRollup> days = query(TimePeriods.DAYS, yesterday, tomorrow);
+        assertEquals(2, days.size());
+        assertEquals(yesterday, days.get(0).getPeriodStart());
+        assertEquals(3, days.get(0).getFirstValue(), 0);
+        assertEquals(4, days.get(1).getFirstValue(), 0);
+    }
+
+    @Test
+    public void testRollupPeriodType() {
+        save(1, today + HOUR);
+        List<DataPointVO> vos = Collections.singletonList(vo);
+        assertEquals(TimePeriods.DAYS, rollups.getRollupPeriodType(vos, bucketCalculator(today, tomorrow, TimePeriods.DAYS, 1)));
+        assertEquals(TimePeriods.HOURS, rollups.getRollupPeriodType(vos, bucketCalculator(today, today + 6 * HOUR, TimePeriods.HOURS, 1)));
+        assertEquals(TimePeriods.MINUTES, rollups.getRollupPeriodType(vos, bucketCalculator(today, today + HOUR, TimePeriods.MINUTES, 15)));
+        //Periods that do not start on a minute
+        assertEquals(-1, rollups.getRollupPeriodType(vos, bucketCalculator(today + 30000, today + HOUR, TimePeriods.MINUTES, 15)));
+        assertEquals(-1, rollups.getRollupPeriodType(vos, bucketCalculator(today, today + HOUR, TimePeriods.SECONDS, 90)));
+        //Before the summaries start
+        assertEquals(-1, rollups.getRollupPeriodType(vos, bucketCalculator(rollups.dayStart(today - 1), tomorrow, TimePeriods.DAYS, 1)));
+    }
+
+    private void save(double value, long time) {
+        pointValueDao.savePointValueSync(vo, new PointValueTime(value, time), null);
+    }
+
+    private List<PointValueRollup> query(int periodType, long from, long to) {
+        List<PointValueRollup> result = new ArrayList<>();
+        rollups.query(vo, periodType, from, to, result::add);
+        return result;
+    }
+
+    private TimePeriodBucketCalculator bucketCalculator(long from, long to, int periodType, int periods) {
+        return new TimePeriodBucketCalculator(Instant.ofEpochMilli(from).atZone(zone), Instant.ofEpochMilli(to).atZone(zone), periodType, periods);
+    }
+}
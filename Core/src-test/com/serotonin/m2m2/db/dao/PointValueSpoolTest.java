@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.db.dao;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PointValueSpoolTest {
+
+    private Path directory;
+
+    @Before
+    public void before() throws IOException {
+        directory = Files.createTempDirectory("pointValueSpool");
+    }
+
+    @After
+    public void after() throws IOException {
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    @Test
+    public void testRemovedSegmentsAreDeleted() throws IOException {
+        PointValueSpool spool = new PointValueSpool(directory);
+        assertEquals(0, spool.open());
+
+        List<Long> sequences = new ArrayList<>();
+        for (int i = 0; i < 300000; i++)
+            sequences.add(spool.append(PointValueSpool.PENDING, i, 3, i, i));
+        assertEquals(2, directory.toFile().list().length);
+
+        //Saving everything in the first segment deletes it
+        for (int i = 0; i < 262144; i++)
+            spool.remove(sequences.get(i));
+        assertEquals(1, directory.toFile().list().length);
+        spool.close();
+    }
+
+    @Test
+    public void testPendingValuesAreReplayedAfterRestart() throws IOException {
+        PointValueSpool spool = new PointValueSpool(directory);
+        spool.open();
+        long saved = spool.append(PointValueSpool.PENDING, 1, 3, 1.5, 1000);
+        spool.append(PointValueSpool.PENDING, 2, 3, 2.5, 2000);
+        long failed = spool.append(PointValueSpool.PENDING, 3, 3, 3.5, 3000);
+        spool.remove(saved);
+        spool.failed(failed);
+        assertEquals(1, spool.getFailedCount());
+        spool.close();
+
+        spool = new PointValueSpool(directory);
+        assertEquals(2, spool.open());
+
+        List<Integer> ids = new ArrayList<>();
+        List<Long> times = new ArrayList<>();
+        PointValueSpool reopened = spool;
+        int count = spool.replay((sequence, dataPointId, dataType, value, time) -> {
+            ids.add(dataPointId);
+            times.add(time);
+            reopened.remove(sequence);
+        }, Integer.MAX_VALUE);
+
+        assertEquals(2, count);
+        assertEquals(2, (int)ids.get(0));
+        assertEquals(3, (int)ids.get(1));
+        assertEquals(2000L, (long)times.get(0));
+        assertEquals(3000L, (long)times.get(1));
+        assertEquals(0, spool.getFailedCount());
+        //All records were saved so the segment is gone
+        assertEquals(0, directory.toFile().list().length);
+        spool.close();
+    }
+
+    @Test
+    public void testReplayLimit() throws IOException {
+        PointValueSpool spool = new PointValueSpool(directory);
+        spool.open();
+        for (int i = 0; i < 10; i++)
+            spool.append(PointValueSpool.FAILED, i, 3, i, i);
+        assertEquals(10, spool.getFailedCount());
+
+        assertEquals(4, spool.replay((sequence, dataPointId, dataType, value, time) -> {}, 4));
+        assertEquals(6, spool.getFailedCount());
+        spool.close();
+    }
+}
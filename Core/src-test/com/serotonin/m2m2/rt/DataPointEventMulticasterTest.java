@@ -4,11 +4,14 @@
 package com.serotonin.m2m2.rt;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 import org.junit.Test;
 
 import com.serotonin.m2m2.rt.dataImage.DataPointEventMulticaster;
 import com.serotonin.m2m2.rt.dataImage.DataPointListener;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
 
 /**
  *
@@ -32,5 +35,57 @@ public class DataPointEventMulticasterTest {
         assertEquals("Listener Two", listeners[1].getListenerName());
         
     }
-    
+
+    @Test
+    public void testAddRemoveOrder() {
+        TestDataPointListener l = new TestDataPointListener("Listener One", 1);
+        TestDataPointListener l2 = new TestDataPointListener("Listener Two", 1);
+        TestDataPointListener l3 = new TestDataPointListener("Listener Three", 1);
+
+        DataPointListener listener = DataPointEventMulticaster.add(DataPointEventMulticaster.add(l, l2), l3);
+        DataPointListener withoutTwo = DataPointEventMulticaster.remove(listener, l2);
+        assertEquals("Listener One,Listener Two,Listener Three", listener.getListenerName());
+        assertEquals("Listener One,Listener Three", withoutTwo.getListenerName());
+
+        //Removing something that isn't there changes nothing
+        assertSame(withoutTwo, DataPointEventMulticaster.remove(withoutTwo, l2));
+        assertSame(l3, DataPointEventMulticaster.remove(withoutTwo, l));
+        assertNull(DataPointEventMulticaster.remove(l3, l3));
+    }
+
+    @Test
+    public void testEventInterests() {
+        TestDataPointListener all = new TestDataPointListener("All", 1);
+        TestDataPointListener logged = new TestDataPointListener("Logged", 1) {
+            @Override
+            public int getEventInterests() {
+                return POINT_LOGGED;
+            }
+        };
+
+        DataPointListener listener = DataPointEventMulticaster.add(all, logged);
+        assertEquals(DataPointListener.ALL_EVENTS, listener.getEventInterests());
+
+        PointValueTime value = new PointValueTime(1.0, 0);
+        listener.pointUpdated(value);
+        listener.pointChanged(null, value);
+        listener.pointLogged(value);
+        assertEquals(3, all.eventCount.get());
+        assertEquals(1, logged.eventCount.get());
+        assertEquals(DataPointListener.POINT_LOGGED,
+                DataPointEventMulticaster.remove(listener, all).getEventInterests());
+    }
+
+    @Test
+    public void testOverriddenEvents() {
+        class ChangeListener extends TestDataPointListener {
+            ChangeListener() {
+                super("Changes", 1);
+            }
+            @Override
+            public void pointChanged(PointValueTime oldValue, PointValueTime newValue) { }
+        }
+        assertEquals(DataPointListener.POINT_CHANGED,
+                DataPointEventMulticaster.getOverriddenEvents(ChangeListener.class, TestDataPointListener.class));
+    }
 }
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.rt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.rt.event.AlarmLevels;
+import com.serotonin.m2m2.rt.event.EventInstance;
+import com.serotonin.m2m2.rt.event.type.DataPointEventType;
+import com.serotonin.m2m2.rt.event.type.DataSourceEventType;
+import com.serotonin.m2m2.rt.event.type.DuplicateHandling;
+import com.serotonin.m2m2.rt.event.type.EventType;
+import com.serotonin.m2m2.rt.event.type.MissingEventType;
+
+public class EventInstanceIndexTest {
+
+    @Test
+    public void testLookupByType() {
+        EventInstanceIndex index = new EventInstanceIndex();
+        EventInstance first = event(new DataPointEventType(1, 2, 3, DuplicateHandling.ALLOW), 10, AlarmLevels.URGENT, 1);
+        EventInstance second = event(new DataPointEventType(1, 2, 3, DuplicateHandling.ALLOW), 5, AlarmLevels.URGENT, 2);
+        EventInstance other = event(new DataPointEventType(1, 2, 4, DuplicateHandling.ALLOW), 7, AlarmLevels.URGENT, 3);
+        index.add(first);
+        index.add(second);
+        index.add(other);
+
+        EventType type = new DataPointEventType(1, 2, 3, DuplicateHandling.ALLOW);
+        assertSame(first, index.getFirst(type));
+        assertEquals(2, index.getAll(type).size());
+        assertSame(other, index.getById(3));
+
+        assertSame(first, index.removeFirst(type));
+        assertSame(second, index.removeFirst(type));
+        assertNull(index.removeFirst(type));
+        assertNull(index.getById(1));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void testLookupByEqualType() {
+        //Missing event types only inherit equals and hashCode from the event type
+        EventInstanceIndex index = new EventInstanceIndex();
+        EventInstance evt = event(new MissingEventType("MODULE", "SUBTYPE", 1, 2), 10, AlarmLevels.URGENT, 1);
+        index.add(evt);
+
+        EventType type = new MissingEventType("MODULE", "SUBTYPE", 1, 2);
+        assertSame(evt, index.getFirst(type));
+        assertEquals(1, index.getAll(type).size());
+        assertNull(index.getFirst(new MissingEventType("MODULE", "SUBTYPE", 1, 3)));
+        assertSame(evt, index.removeFirst(type));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testRemoveForSources() {
+        EventInstanceIndex index = new EventInstanceIndex();
+        index.add(event(new DataPointEventType(1, 10, 100, DuplicateHandling.ALLOW), 1, AlarmLevels.URGENT, 1));
+        index.add(event(new DataPointEventType(1, 11, 101, DuplicateHandling.ALLOW), 2, AlarmLevels.URGENT, 2));
+        index.add(event(new DataSourceEventType(1, 1), 3, AlarmLevels.URGENT, 3));
+        index.add(event(new DataSourceEventType(2, 1), 4, AlarmLevels.URGENT, 4));
+
+        List<EventInstance> removed = index.removeForDataPoint(10);
+        assertEquals(1, removed.size());
+        assertEquals(1, removed.get(0).getId());
+
+        //Data point events are also data source events
+        removed = index.removeForDataSource(1);
+        assertEquals(2, removed.size());
+        assertEquals(1, index.size());
+        assertEquals(0, index.removeForPublisher(1).size());
+    }
+
+    @Test
+    public void testRemoveBeforeAndAlarmLevel() {
+        EventInstanceIndex index = new EventInstanceIndex();
+        index.add(event(new DataSourceEventType(1, 1), 30, AlarmLevels.INFORMATION, 1));
+        index.add(event(new DataSourceEventType(1, 2), 10, AlarmLevels.CRITICAL, 2));
+        index.add(event(new DataSourceEventType(1, 3), 10, AlarmLevels.URGENT, 3));
+        index.add(event(new DataSourceEventType(1, 4), 20, AlarmLevels.DO_NOT_LOG, 4));
+        assertEquals(AlarmLevels.CRITICAL.value().intValue(), index.getHighestAlarmLevel());
+
+        assertEquals(1, index.removeBefore(20, e -> e.getAlarmLevel() == AlarmLevels.CRITICAL).size());
+        assertEquals(AlarmLevels.URGENT.value().intValue(), index.getHighestAlarmLevel());
+
+        //Exclusive of the time
+        assertEquals(1, index.removeBefore(20).size());
+        assertEquals(AlarmLevels.INFORMATION.value().intValue(), index.getHighestAlarmLevel());
+        assertEquals(2, index.size());
+
+        index.clear();
+        assertEquals(0, index.getHighestAlarmLevel());
+        assertEquals(0, index.values().size());
+    }
+
+    private EventInstance event(EventType type, long time, AlarmLevels level, int id) {
+        EventInstance evt = new EventInstance(type, time, true, level, new TranslatableMessage("common.default", "test"), null);
+        evt.setId(id);
+        return evt;
+    }
+}
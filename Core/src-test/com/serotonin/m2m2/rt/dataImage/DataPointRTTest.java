@@ -118,6 +118,44 @@ public class DataPointRTTest extends MangoTestBase {
         assertEquals(12000, rt.getPointValue().getTime());
     }
 
+    /**
+     * The in memory history only holds the values that were logged
+     */
+    @Test
+    public void testHistoryHoldsLoggedValues() {
+        MockPointLocatorVO plVo = new MockPointLocatorVO(DataTypes.NUMERIC, true);
+        DataPointVO dpVo = new DataPointVO();
+        dpVo.setId(2);
+        dpVo.setPointLocator(plVo);
+        dpVo.setLoggingType(DataPointVO.LoggingTypes.INTERVAL);
+        dpVo.setIntervalLoggingPeriod(5);
+        dpVo.setIntervalLoggingPeriodType(TimePeriods.SECONDS);
+        dpVo.setHistoryWindowPeriods(1);
+        dpVo.setHistoryWindowPeriodType(TimePeriods.HOURS);
+
+        MockDataSourceVO dsVo = new MockDataSourceVO();
+        MockPointLocatorRT plRt = new MockPointLocatorRT(plVo);
+
+        SimulationTimer timer = new SimulationTimer();
+        DataPointWithEventDetectors dp = new DataPointWithEventDetectors(dpVo, new ArrayList<>());
+        DataPointRT rt = new DataPointRT(dp, plRt, dsVo, new ArrayList<>(), timer);
+        rt.initialize();
+        rt.initializeIntervalLogging(0, false);
+
+        //Cached but not logged
+        timer.fastForwardTo(1000);
+        rt.setPointValue(new PointValueTime(2.0, 1000), null);
+        assertEquals(2.0, rt.getPointValue().getDoubleValue(), 0.0001);
+        assertEquals(0, rt.getPointValues(0).size());
+
+        //Logged on the interval
+        timer.fastForwardTo(5001);
+        List<PointValueTime> values = rt.getPointValues(0);
+        assertEquals(1, values.size());
+        assertEquals(2.0, values.get(0).getDoubleValue(), 0.0001);
+        assertEquals(5000, values.get(0).getTime());
+    }
+
     //TODO Test for Historical Generation
     //TODO Test Quantized
 
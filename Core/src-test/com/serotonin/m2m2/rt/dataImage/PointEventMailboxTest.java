@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.rt.dataImage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+public class PointEventMailboxTest extends MangoTestBase {
+
+    @Test
+    public void testUpdatesDeliveredInOrder() throws InterruptedException {
+        assertEquals("[1.0, 2.0, 3.0, 4.0]", deliver(false).toString());
+    }
+
+    @Test
+    public void testLatestValueWins() throws InterruptedException {
+        //The first is being delivered while the others wait and are replaced
+        assertEquals("[1.0, 4.0, changed 1.0->4.0]", deliver(true).toString());
+    }
+
+    @Test
+    public void testDeliveryResumesAfterListenerError() throws InterruptedException {
+        CountDownLatch failed = new CountDownLatch(1);
+        CountDownLatch delivered = new CountDownLatch(1);
+        DataPointListener listener = new DataPointListener() {
+            @Override
+            public void pointUpdated(PointValueTime newValue) {
+                if (newValue.getTime() == 1) {
+                    failed.countDown();
+                    throw new Error("test");
+                }
+                delivered.countDown();
+            }
+
+            @Override
+            public String getListenerName() { return "test"; }
+            @Override
+            public void pointInitialized() { }
+            @Override
+            public void pointChanged(PointValueTime oldValue, PointValueTime newValue) { }
+            @Override
+            public void pointSet(PointValueTime oldValue, PointValueTime newValue) { }
+            @Override
+            public void pointBackdated(PointValueTime value) { }
+            @Override
+            public void pointTerminated(DataPointVO vo) { }
+            @Override
+            public void pointLogged(PointValueTime value) { }
+        };
+
+        PointEventMailbox mailbox = new PointEventMailbox("DP_test");
+        mailbox.post(listener, null, value(1), null, false, false, false, true, false);
+        assertTrue(failed.await(10, TimeUnit.SECONDS));
+        //Later updates are delivered once the failed work item has finished
+        for (int i = 2; i < 100 && !delivered.await(100, TimeUnit.MILLISECONDS); i++)
+            mailbox.post(listener, value(i - 1), value(i), null, false, false, false, true, false);
+        assertEquals(0, delivered.getCount());
+    }
+
+    private List<String> deliver(boolean latestValueOnly) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        List<String> received = new CopyOnWriteArrayList<>();
+
+        DataPointListener listener = new DataPointListener() {
+            @Override
+            public void pointUpdated(PointValueTime newValue) {
+                received.add(Double.toString(newValue.getDoubleValue()));
+                if (newValue.getTime() == 1) {
+                    started.countDown();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) { }
+                }
+            }
+
+            @Override
+            public void pointChanged(PointValueTime oldValue, PointValueTime newValue) {
+                if (oldValue != null && latestValueOnly)
+                    received.add("changed " + oldValue.getDoubleValue() + "->" + newValue.getDoubleValue());
+                if (newValue.getTime() == 4)
+                    done.countDown();
+            }
+
+            @Override
+            public boolean isLatestValueOnly() {
+                return latestValueOnly;
+            }
+
+            @Override
+            public String getListenerName() { return "test"; }
+            @Override
+            public void pointInitialized() { }
+            @Override
+            public void pointSet(PointValueTime oldValue, PointValueTime newValue) { }
+            @Override
+            public void pointBackdated(PointValueTime value) { }
+            @Override
+            public void pointTerminated(DataPointVO vo) { }
+            @Override
+            public void pointLogged(PointValueTime value) { }
+        };
+
+        PointEventMailbox mailbox = new PointEventMailbox("DP_test");
+        mailbox.post(listener, null, value(1), null, false, false, false, true, false);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        for (int i = 2; i <= 4; i++)
+            mailbox.post(listener, value(i - 1), value(i), null, false, false, false, true, false);
+        assertEquals(latestValueOnly ? 1 : 3, mailbox.size());
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        return received;
+    }
+
+    private PointValueTime value(int i) {
+        return new PointValueTime((double) i, i);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.rt.dataImage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.rt.dataImage.types.MultistateValue;
+
+public class PointValueHistoryTest {
+
+    @Test
+    public void testQueriesOutsideCoverage() {
+        PointValueHistory history = new PointValueHistory(DataTypes.NUMERIC, 1000, null);
+        assertNull(history.getPointValues(0));
+
+        List<PointValueTime> values = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            values.add(new PointValueTime(i, 500 + i * 10));
+        history.load(values, 500);
+
+        assertNull(history.getPointValues(499));
+        assertNull(history.getPointValuesBetween(400, 600));
+        assertEquals(10, history.getPointValues(500).size());
+        assertEquals(5, history.getPointValues(550).size());
+        assertEquals(550, history.getPointValues(550).get(0).getTime());
+
+        //Inclusive of from, exclusive of to
+        List<PointValueTime> between = history.getPointValuesBetween(510, 540);
+        assertEquals(3, between.size());
+        assertEquals(510, between.get(0).getTime());
+        assertEquals(530, between.get(2).getTime());
+    }
+
+    @Test
+    public void testValuesOlderThanDurationAreDropped() {
+        PointValueHistory history = new PointValueHistory(DataTypes.NUMERIC, 100, null);
+        history.load(new ArrayList<>(), 0);
+        for (int i = 0; i < 1000; i++)
+            history.add(new PointValueTime(i, i * 10));
+
+        //Values within 100ms of the newest value at 9990
+        assertEquals(11, history.size());
+        assertEquals(9890, history.getCoveredFrom());
+        assertNull(history.getPointValues(9889));
+        List<PointValueTime> values = history.getPointValues(9890);
+        assertEquals(11, values.size());
+        assertEquals(989, values.get(0).getDoubleValue(), 0);
+        assertEquals(999, values.get(10).getDoubleValue(), 0);
+    }
+
+    @Test
+    public void testBackdatedValues() {
+        PointValueHistory history = new PointValueHistory(DataTypes.NUMERIC, 10000, null);
+        history.load(new ArrayList<>(), 100);
+        history.add(new PointValueTime(1, 200));
+        history.add(new PointValueTime(3, 400));
+        history.add(new PointValueTime(2, 300));
+        history.add(new PointValueTime(2.5, 300));
+        //Before the coverage so it is ignored
+        history.add(new PointValueTime(0, 50));
+
+        List<PointValueTime> values = history.getPointValues(100);
+        assertEquals(4, values.size());
+        assertEquals(1, values.get(0).getDoubleValue(), 0);
+        assertEquals(2, values.get(1).getDoubleValue(), 0);
+        assertEquals(2.5, values.get(2).getDoubleValue(), 0);
+        assertEquals(3, values.get(3).getDoubleValue(), 0);
+    }
+
+    @Test
+    public void testRemoveBefore() {
+        PointValueHistory history = new PointValueHistory(DataTypes.NUMERIC, 10000, null);
+        history.load(new ArrayList<>(), 0);
+        for (int i = 0; i < 10; i++)
+            history.add(new PointValueTime(i, i * 10));
+
+        history.removeBefore(55);
+        assertEquals(4, history.size());
+        assertEquals(60, history.getPointValues(0).get(0).getTime());
+    }
+
+    @Test
+    public void testValueTypesAndAnnotations() {
+        PointValueHistory history = new PointValueHistory(DataTypes.MULTISTATE, 10000, null);
+        history.load(new ArrayList<>(), 0);
+        history.add(new PointValueTime(new MultistateValue(4), 10));
+        history.add(new AnnotatedPointValueTime(new MultistateValue(5), 20, new TranslatableMessage("common.default", "test")));
+
+        List<PointValueTime> values = history.getPointValues(0);
+        assertTrue(values.get(0).getValue() instanceof MultistateValue);
+        assertEquals(4, values.get(0).getIntegerValue());
+        assertTrue(values.get(1) instanceof AnnotatedPointValueTime);
+        assertEquals("common.default", ((AnnotatedPointValueTime)values.get(1)).getSourceMessage().getKey());
+    }
+
+    @Test
+    public void testValuesAddedWhileLoading() {
+        PointValueHistory history = new PointValueHistory(DataTypes.NUMERIC, 10000, null);
+        history.load(new ArrayList<>(), 0);
+        history.add(new PointValueTime(1, 100));
+
+        history.startLoad();
+        assertNull(history.getPointValues(0));
+        //Logged while the database is read, the first is already in what it returns
+        history.add(new PointValueTime(2, 200));
+        history.add(new PointValueTime(3, 300));
+        List<PointValueTime> values = new ArrayList<>();
+        values.add(new PointValueTime(1, 100));
+        values.add(new PointValueTime(2, 200));
+        history.load(values, 0);
+        //Added by another thread after it was read from the database and loaded
+        history.add(new PointValueTime(2, 200));
+
+        values = history.getPointValues(0);
+        assertEquals(3, values.size());
+        assertEquals(100, values.get(0).getTime());
+        assertEquals(200, values.get(1).getTime());
+        assertEquals(300, values.get(2).getTime());
+        assertEquals(3, values.get(2).getDoubleValue(), 0);
+    }
+
+    @Test
+    public void testMemoryAccounting() {
+        AtomicLong memory = new AtomicLong();
+        PointValueHistory history = new PointValueHistory(DataTypes.NUMERIC, 100000, memory::addAndGet);
+        history.load(new ArrayList<>(), 0);
+        for (int i = 0; i < 1000; i++)
+            history.add(new PointValueTime(i, i));
+
+        assertTrue(memory.get() >= 1000 * 16);
+        assertEquals(memory.get(), history.getMemoryUsage());
+        history.clear();
+        assertEquals(0, memory.get());
+        assertNull(history.getPointValues(0));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.rt.dataImage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class PointValueRingBufferTest {
+
+    @Test
+    public void testInOrderValuesAreKeptNewestFirst() {
+        PointValueRingBuffer buffer = PointValueRingBuffer.EMPTY;
+        for (int i = 0; i < 100; i++)
+            buffer = buffer.add(new PointValueTime(i, i), 5);
+
+        assertEquals(5, buffer.size());
+        for (int i = 0; i < 5; i++)
+            assertEquals(99 - i, buffer.get(i).getTime());
+    }
+
+    @Test
+    public void testSnapshotsAreStable() {
+        PointValueRingBuffer buffer = PointValueRingBuffer.EMPTY;
+        for (int i = 0; i < 3; i++)
+            buffer = buffer.add(new PointValueTime(i, i), 3);
+
+        List<PointValueTime> snapshot = buffer;
+        List<PointValueTime> copy = new ArrayList<>(snapshot);
+        for (int i = 3; i < 100; i++)
+            buffer = buffer.add(new PointValueTime(i, i), 3);
+
+        assertEquals(copy, snapshot);
+        assertEquals(99, buffer.get(0).getTime());
+    }
+
+    @Test
+    public void testBackdatedValues() {
+        PointValueRingBuffer buffer = PointValueRingBuffer.EMPTY;
+        buffer = buffer.add(new PointValueTime(1, 10), 3);
+        buffer = buffer.add(new PointValueTime(3, 30), 3);
+        List<PointValueTime> snapshot = buffer;
+
+        buffer = buffer.add(new PointValueTime(2, 20), 3);
+        assertEquals(3, buffer.size());
+        assertEquals(30, buffer.get(0).getTime());
+        assertEquals(20, buffer.get(1).getTime());
+        assertEquals(10, buffer.get(2).getTime());
+        assertEquals(2, snapshot.size());
+
+        //Older than all kept values
+        assertSame(buffer, buffer.add(new PointValueTime(0, 5), 3));
+
+        //Drops the oldest value
+        buffer = buffer.add(new PointValueTime(2.5, 25), 3);
+        assertEquals(3, buffer.size());
+        assertEquals(30, buffer.get(0).getTime());
+        assertEquals(25, buffer.get(1).getTime());
+        assertEquals(20, buffer.get(2).getTime());
+
+        //Same time is considered newer
+        buffer = buffer.add(new PointValueTime(4, 30), 3);
+        assertEquals(4, buffer.get(0).getDoubleValue(), 0);
+        assertEquals(3, buffer.get(1).getDoubleValue(), 0);
+    }
+
+    @Test
+    public void testRemoveBefore() {
+        PointValueRingBuffer buffer = PointValueRingBuffer.EMPTY;
+        for (int i = 0; i < 10; i++)
+            buffer = buffer.add(new PointValueTime(i, i * 10), 10);
+
+        buffer = buffer.removeBefore(55);
+        assertEquals(4, buffer.size());
+        assertEquals(60, buffer.get(3).getTime());
+
+        buffer = buffer.add(new PointValueTime(10, 100), 10);
+        assertEquals(5, buffer.size());
+        assertEquals(0, buffer.removeBefore(1000).size());
+    }
+
+    @Test
+    public void testOf() {
+        List<PointValueTime> values = new ArrayList<>();
+        for (int i = 9; i >= 0; i--)
+            values.add(new PointValueTime(i, i));
+        PointValueRingBuffer buffer = PointValueRingBuffer.of(values, 10);
+        assertEquals(values, buffer);
+
+        buffer = buffer.add(new PointValueTime(10, 10), 10);
+        assertEquals(10, buffer.size());
+        assertEquals(1, buffer.get(9).getTime());
+    }
+}
@@ -325,6 +325,43 @@ public class ScriptingTest extends MangoTestBase {
         }
     }
 
+    @Test
+    public void testSharedCompiledScriptBindings() {
+        String script = "counter = (typeof counter === 'undefined' ? 0 : counter) + 1;";
+        script += "print(counter);";
+        script += "return counter;";
+
+        try {
+            final StringWriter firstOut = new StringWriter();
+            final StringWriter secondOut = new StringWriter();
+            try(ScriptLog firstLog = new ScriptLog("testSharedFirst-", LogLevel.TRACE, new PrintWriter(firstOut));
+                    ScriptLog secondLog = new ScriptLog("testSharedSecond-", LogLevel.TRACE, new PrintWriter(secondOut))) {
+                ScriptPointValueSetter setter = null;
+                CompiledMangoJavaScript first = new CompiledMangoJavaScript(setter, firstLog, new ArrayList<>(), admin);
+                CompiledMangoJavaScript second = new CompiledMangoJavaScript(setter, secondLog, new ArrayList<>(), admin);
+                first.compile(script, true);
+                second.compile(script, true);
+                Assert.assertSame(first.getCompiledScript(), second.getCompiledScript());
+
+                first.initialize(new HashMap<>());
+                second.initialize(new HashMap<>());
+                long now = Common.timer.currentTimeMillis();
+                first.execute(now, now, DataTypes.NUMERIC);
+                PointValueTime firstResult = (PointValueTime)first.execute(now, now, DataTypes.NUMERIC).getResult();
+                PointValueTime secondResult = (PointValueTime)second.execute(now, now, DataTypes.NUMERIC).getResult();
+
+                //Each script keeps its own variables and writer
+                Assert.assertEquals(2, firstResult.getDoubleValue(), 0);
+                Assert.assertEquals(1, secondResult.getDoubleValue(), 0);
+                Assert.assertEquals("1\n2\n", firstOut.toString());
+                Assert.assertEquals("1\n", secondOut.toString());
+            }
+        }catch(Exception e) {
+            e.printStackTrace();
+            fail(e.getMessage());
+        }
+    }
+
     @Test
     public void testScriptLogWriteNullValue() {
         String script = "LOG.trace(null);";
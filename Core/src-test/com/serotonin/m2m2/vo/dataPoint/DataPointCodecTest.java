@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.vo.dataPoint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+
+import javax.measure.unit.SI;
+
+import org.junit.Test;
+
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.MangoTestBase;
+import com.serotonin.m2m2.db.dao.DataPointDao;
+import com.serotonin.m2m2.view.text.RangeRenderer;
+import com.serotonin.m2m2.view.text.RangeValue;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.dataSource.mock.MockDataSourceVO;
+import com.serotonin.util.SerializationHelper;
+
+public class DataPointCodecTest extends MangoTestBase {
+
+    @Test
+    public void testRoundTrip() {
+        DataPointVO vo = createPoint();
+        byte[] data = DataPointCodec.encode(vo);
+        assertTrue(DataPointCodec.isBinary(data));
+        assertPoint(vo, DataPointCodec.decode(new ByteArrayInputStream(data)));
+    }
+
+    @Test
+    public void testReadSerialized() {
+        DataPointVO vo = createPoint();
+        byte[] data = SerializationHelper.writeObjectToArray(vo);
+        assertFalse(DataPointCodec.isBinary(data));
+        assertPoint(vo, DataPointCodec.decode(new ByteArrayInputStream(data)));
+    }
+
+    @Test
+    public void testPersisted() {
+        MockDataSourceVO ds = createMockDataSource();
+        DataPointVO saved = createMockDataPoint(ds, new MockPointLocatorVO(DataTypes.BINARY, true));
+        DataPointVO loaded = DataPointDao.getInstance().get(saved.getId());
+        MockPointLocatorVO locator = loaded.getPointLocator();
+        assertEquals(DataTypes.BINARY, locator.getDataTypeId());
+        assertTrue(locator.isSettable());
+        assertEquals(saved.getTextRenderer().getClass(), loaded.getTextRenderer().getClass());
+    }
+
+    private DataPointVO createPoint() {
+        DataPointVO vo = new DataPointVO();
+        vo.setPointLocator(new MockPointLocatorVO(DataTypes.NUMERIC, true));
+        RangeRenderer renderer = new RangeRenderer("0.0");
+        renderer.addRangeValues(0, 10, "low", "blue");
+        renderer.addRangeValues(10, 20, "high", null);
+        vo.setTextRenderer(renderer);
+        vo.setChartColour("red");
+        vo.setUnit(SI.CELSIUS);
+        vo.setRenderedUnit(SI.KELVIN);
+        vo.setUseRenderedUnit(true);
+        vo.setSimplifyTolerance(2.5);
+        vo.setHistoryWindowPeriods(7);
+        return vo;
+    }
+
+    private void assertPoint(DataPointVO expected, DataPointVO actual) {
+        assertEquals(expected.getChartColour(), actual.getChartColour());
+        assertEquals(expected.getUnit(), actual.getUnit());
+        assertEquals(expected.getRenderedUnit(), actual.getRenderedUnit());
+        assertEquals(expected.isUseRenderedUnit(), actual.isUseRenderedUnit());
+        assertEquals(expected.getSimplifyTolerance(), actual.getSimplifyTolerance(), 0);
+        assertEquals(expected.getHistoryWindowPeriods(), actual.getHistoryWindowPeriods());
+
+        MockPointLocatorVO locator = actual.getPointLocator();
+        assertEquals(DataTypes.NUMERIC, locator.getDataTypeId());
+        assertTrue(locator.isSettable());
+
+        RangeRenderer renderer = (RangeRenderer) actual.getTextRenderer();
+        assertEquals("0.0", renderer.getFormat());
+        assertEquals(SI.KELVIN, renderer.getRenderedUnit());
+        assertEquals(2, renderer.getRangeValues().size());
+        RangeValue high = renderer.getRangeValues().get(1);
+        assertEquals(10, high.getFrom(), 0);
+        assertEquals(20, high.getTo(), 0);
+        assertEquals("high", high.getText());
+        assertEquals(null, high.getColour());
+    }
+}
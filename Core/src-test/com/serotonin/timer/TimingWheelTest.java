@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.timer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TimingWheelTest {
+
+    @Test
+    public void testExpireAcrossLevels() {
+        TimingWheel wheel = new TimingWheel(10, 0);
+        //Level 0, 1, 2 and 3
+        long[] times = { 45, 2_605, 700_001, 200_000_000, 3 };
+        List<TimerTask> tasks = new ArrayList<>();
+        for (long time : times) {
+            TimerTask task = task(time);
+            tasks.add(task);
+            wheel.add(task);
+        }
+        assertEquals(times.length, wheel.size());
+
+        List<TimerTask> due = new ArrayList<>();
+        long time = 0;
+        int fired = 0;
+        while (fired < times.length) {
+            time += 10;
+            wheel.expire(time, due);
+            for (TimerTask task : due) {
+                //Never early and at most one tick late
+                assertTrue(task.trigger.nextExecutionTime <= time);
+                assertTrue(time - task.trigger.nextExecutionTime < 10);
+                fired++;
+            }
+            due.clear();
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testOrderAndCancel() {
+        TimingWheel wheel = new TimingWheel(100, 1000);
+        TimerTask late = task(1090);
+        TimerTask early = task(1010);
+        TimerTask cancelled = task(1050);
+        TimerTask past = task(500);
+        wheel.add(late);
+        wheel.add(early);
+        wheel.add(cancelled);
+        wheel.add(past);
+        cancelled.cancel();
+
+        List<TimerTask> due = new ArrayList<>();
+        wheel.expire(1000, due);
+        assertEquals(1, due.size());
+        assertSame(past, due.get(0));
+
+        due.clear();
+        wheel.expire(1100, due);
+        assertEquals(2, due.size());
+        assertSame(early, due.get(0));
+        assertSame(late, due.get(1));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testPurgeAndJump() {
+        TimingWheel wheel = new TimingWheel(1, 0);
+        TimerTask kept = task(5_000_000);
+        TimerTask cancelled = task(6_000_000);
+        wheel.add(kept);
+        wheel.add(cancelled);
+        cancelled.cancel();
+        assertEquals(1, wheel.purge());
+        assertEquals(1, wheel.size());
+
+        //Clock jumped forward, further than is worth stepping through
+        List<TimerTask> due = new ArrayList<>();
+        wheel.expire(4_999_999, due);
+        assertEquals(0, due.size());
+        wheel.expire(5_000_000, due);
+        assertEquals(1, due.size());
+        assertSame(kept, due.get(0));
+    }
+
+    @Test
+    public void testTimerInitWithTimerThread() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        TimingWheelTimer timer = new TimingWheelTimer(10, 2);
+        try {
+            TimerThread thread = new TimerThread(new TaskQueue(), executor, new SystemTimeSource());
+            timer.init(thread);
+            assertTrue(timer.isInitialized());
+            assertSame(executor, timer.getExecutorService());
+
+            CountDownLatch ran = new CountDownLatch(1);
+            timer.schedule(new TimerTask(new OneTimeTrigger(20), "test") {
+                @Override
+                public void run(long runtime) {
+                    ran.countDown();
+                }
+            });
+            assertTrue(ran.await(5, TimeUnit.SECONDS));
+            //The wheels are expired by the timer's own loop
+            assertEquals(Thread.State.NEW, thread.getState());
+        } finally {
+            timer.cancel();
+            executor.shutdownNow();
+        }
+    }
+
+    private TimerTask task(long time) {
+        TimerTask task = new TimerTask(new OneTimeTrigger(time), "test") {
+            @Override
+            public void run(long runtime) {
+            }
+        };
+        task.trigger.nextExecutionTime = time;
+        task.state = TimerTask.SCHEDULED;
+        return task;
+    }
+}
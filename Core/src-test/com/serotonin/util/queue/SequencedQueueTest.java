@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.util.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SequencedQueueTest {
+
+    private static final SequencedQueue.Serializer<String> SERIALIZER = new SequencedQueue.Serializer<String>() {
+        @Override
+        public void write(String value, DataOutput out) throws IOException {
+            out.writeUTF(value);
+        }
+
+        @Override
+        public String read(DataInput in) throws IOException {
+            return in.readUTF();
+        }
+    };
+
+    private Path directory;
+
+    @Before
+    public void before() throws IOException {
+        directory = Files.createTempDirectory("sequencedQueue");
+    }
+
+    @After
+    public void after() throws IOException {
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    @Test
+    public void testCursorAndAcknowledge() throws IOException {
+        SequencedQueue<String> queue = new SequencedQueue<>();
+        for (int i = 0; i < 100; i++)
+            assertEquals(i, queue.append("v" + i));
+
+        List<String> batch = new ArrayList<>();
+        assertEquals(10, queue.read(0, 10, (s, v) -> batch.add(v)));
+        assertEquals("v9", batch.get(9));
+        //Read on from the cursor
+        batch.clear();
+        queue.read(10, 5, (s, v) -> batch.add(v));
+        assertEquals("v10", batch.get(0));
+
+        //Out of order acknowledgements are skipped by readers and the head only moves past them in order
+        assertTrue(queue.acknowledge(1));
+        assertFalse(queue.acknowledge(1));
+        assertEquals(0, queue.getHead());
+        assertEquals(99, queue.size());
+        queue.acknowledgeAll(new long[] {0, 2});
+        assertEquals(3, queue.getHead());
+        assertEquals(97, queue.size());
+
+        assertEquals(5, queue.discard(5));
+        assertEquals(8, queue.getHead());
+        queue.clear();
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testMemoryLimitAndRecovery() throws IOException {
+        SequencedQueue<String> queue = new SequencedQueue<>(directory, SERIALIZER, 10, 256);
+        assertEquals(0, queue.open());
+        for (int i = 0; i < 100; i++)
+            queue.append("v" + i);
+        assertTrue(directory.toFile().list().length > 2);
+
+        //Only the memory limit can be read ahead of the oldest entry
+        List<Long> read = new ArrayList<>();
+        assertEquals(10, queue.read(0, 50, (s, v) -> read.add(s)));
+        long[] sequences = new long[read.size()];
+        for (int i = 0; i < sequences.length; i++)
+            sequences[i] = read.get(i);
+        queue.acknowledgeAll(sequences);
+
+        List<String> values = new ArrayList<>();
+        queue.read(0, 50, (s, v) -> values.add(v));
+        assertEquals("v10", values.get(0));
+        assertEquals(10, values.size());
+        queue.close();
+
+        //Everything that was not acknowledged is recovered
+        queue = new SequencedQueue<>(directory, SERIALIZER, 1000, 256);
+        assertEquals(90, queue.open());
+        values.clear();
+        queue.read(0, 1000, (s, v) -> values.add(v));
+        assertEquals(90, values.size());
+        assertEquals("v10", values.get(0));
+        assertEquals("v99", values.get(89));
+        assertEquals(100, queue.append("v100"));
+
+        queue.discard(90);
+        queue.acknowledge(100);
+        assertEquals(0, queue.size());
+        queue.close();
+        //Only the segment being written and the head remain
+        assertEquals(2, directory.toFile().list().length);
+    }
+}
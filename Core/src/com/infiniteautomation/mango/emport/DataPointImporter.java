@@ -5,6 +5,7 @@
 package com.infiniteautomation.mango.emport;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
@@ -41,19 +42,41 @@ public class DataPointImporter extends Importer {
     private Map<String, DataPointWithEventDetectors> dataPointMap;
     private final DataPointService dataPointService;
     private final DataSourceService dataSourceService;
+    private final Map<String, DataSourceVO> dataSources;
+    private DataPointWithEventDetectors dataPoint;
 
     public DataPointImporter(JsonObject json,
             Map<String, DataPointWithEventDetectors> dataPointMap,
             DataPointService dataPointService,
             DataSourceService dataSourceService) {
+        this(json, dataPointMap, dataPointService, dataSourceService, new HashMap<>());
+    }
+
+    /**
+     * @param dataSources data sources found by xid, shared by the importers of an import
+     */
+    public DataPointImporter(JsonObject json,
+            Map<String, DataPointWithEventDetectors> dataPointMap,
+            DataPointService dataPointService,
+            DataSourceService dataSourceService,
+            Map<String, DataSourceVO> dataSources) {
         super(json);
         this.dataPointMap = dataPointMap;
         this.dataPointService = dataPointService;
         this.dataSourceService = dataSourceService;
+        this.dataSources = dataSources;
+    }
+
+    /**
+     * @return the point and event detectors of the last import, null if it failed before the point was read
+     */
+    DataPointWithEventDetectors getDataPoint() {
+        return dataPoint;
     }
 
     @Override
     protected void importImpl() {
+        dataPoint = null;
         String xid = json.getString("xid");
         DataSourceVO dsvo = null;
         DataPointWithEventDetectors dp = null;
@@ -70,11 +93,15 @@ public class DataPointImporter extends Importer {
         if (dp == null) {
             // Locate the data source for the point.
             String dsxid = json.getString("dataSourceXid");
-            try {
-                dsvo = dataSourceService.get(dsxid);
-            }catch(NotFoundException e) {
-                addFailureMessage("emport.dataPoint.badReference", xid);
-                return;
+            dsvo = dataSources.get(dsxid);
+            if (dsvo == null) {
+                try {
+                    dsvo = dataSourceService.get(dsxid);
+                    dataSources.put(dsxid, dsvo);
+                }catch(NotFoundException e) {
+                    addFailureMessage("emport.dataPoint.badReference", xid);
+                    return;
+                }
             }
             DataPointVO vo = new DataPointVO();
             vo.setXid(xid);
@@ -91,6 +118,7 @@ public class DataPointImporter extends Importer {
             dp.getEventDetectors().addAll(existingMapping.getEventDetectors());
         }
         dataPointMap.put(xid, dp);
+        dataPoint = dp;
 
         if (dp != null) {
 
@@ -4,13 +4,20 @@
  */
 package com.infiniteautomation.mango.emport;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.infiniteautomation.mango.spring.service.DataPointService;
 import com.infiniteautomation.mango.spring.service.DataSourceService;
@@ -29,19 +36,26 @@ import com.serotonin.json.JsonException;
 import com.serotonin.json.JsonReader;
 import com.serotonin.json.type.JsonArray;
 import com.serotonin.json.type.JsonObject;
+import com.serotonin.json.type.JsonTypeReader;
 import com.serotonin.json.type.JsonValue;
 import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.i18n.ProcessMessage;
 import com.serotonin.m2m2.i18n.ProcessResult;
 import com.serotonin.m2m2.i18n.Translations;
 import com.serotonin.m2m2.module.EmportDefinition;
 import com.serotonin.m2m2.module.ModuleRegistry;
 import com.serotonin.m2m2.util.timeout.ProgressiveTask;
 import com.serotonin.m2m2.vo.dataPoint.DataPointWithEventDetectors;
+import com.serotonin.m2m2.vo.dataSource.DataSourceVO;
 import com.serotonin.m2m2.vo.event.detector.AbstractPointEventDetectorVO;
 import com.serotonin.m2m2.vo.permission.PermissionHolder;
 import com.serotonin.util.ProgressiveTaskListener;
 
 /**
+ * Imports a configuration, either from a parsed JSON tree or streamed from a reader so that the data points
+ *  are never all held in memory. Data points are written in batches of db.import.batchSize per transaction,
+ *  their DaoEvents are published and they are started once their batch commits.
+ *
  * @author Matthew Lohbihler
  */
 public class ImportTask extends ProgressiveTask {
@@ -55,15 +69,44 @@ public class ImportTask extends ProgressiveTask {
     protected final List<Importer> importers = new ArrayList<Importer>();
     protected final List<ImportItem> importItems = new ArrayList<ImportItem>();
     protected final Map<String, DataPointWithEventDetectors> eventDetectorPoints = new HashMap<>();
+    protected final Map<String, DataSourceVO> dataSources = new HashMap<>();
 
+    /**
+     * Number of data points, and of points with event detectors, to write in one transaction.
+     */
+    protected final int batchSize = Common.envProps.getInt("db.import.batchSize", 1);
+
+    protected final RoleService roleService;
+    protected final UsersService usersService;
+    protected final MailingListService mailingListService;
+    protected final DataSourceService dataSourceService;
     protected final DataPointService dataPointService;
+    protected final PublisherService publisherService;
+    protected final EventHandlerService eventHandlerService;
+    protected final JsonDataService jsonDataService;
     protected final EventDetectorsService eventDetectorService;
+    protected final SystemPermissionService permissionService;
 
     /**
      * Who is running this import, useful for things like not importing the logged in user
      */
     protected PermissionHolder user;
 
+    /**
+     * The configuration being imported, when streamed its data points are not kept
+     */
+    protected final JsonObject root;
+    /**
+     * Sections read from the stream that importers have not been created for yet
+     */
+    private JsonObject pending = new JsonObject();
+    private JsonTypeReader stream;
+    private Reader streamSource;
+    private Iterator<JsonValue> pointValues;
+    protected int pointsLeft;
+    protected boolean importingPoints;
+    protected boolean pointsStarted;
+
     /**
      * Create an Import task with a listener to be scheduled now
      * @param root
@@ -84,15 +127,92 @@ public class ImportTask extends ProgressiveTask {
             EventDetectorsService eventDetectorService,
             SystemPermissionService permissionService,
             ProgressiveTaskListener listener, boolean schedule) {
+        this(root, translations, roleService, usersService, mailingListService, dataSourceService, dataPointService,
+                publisherService, eventHandlerService, jsonDataService, eventDetectorService, permissionService, listener);
+
+        List<JsonValue> points = nonNullList(root, ConfigurationExportData.DATA_POINTS);
+        this.pointValues = points.iterator();
+        this.pointsLeft = points.size();
+        this.importingPoints = pointsLeft > 0;
+
+        addImporters(root);
+        addModuleImports(root);
+
+        this.progressChunk = 100f/((float)importers.size() + (float)importItems.size() + (float)pointsLeft + 1);  //+1 for processUpdatedDetectors
+
+        if(schedule)
+            Common.backgroundProcessing.execute(this);
+    }
+
+    /**
+     * Create an Import task that streams the configuration from a reader, which is closed once it has been read.
+     *  The data points are read and imported a batch at a time after the sections before them in the configuration
+     *  are imported, so a configuration exported by Mango only needs one batch of points in memory.
+     *
+     * @param json
+     * @param translations
+     * @param listener
+     * @param schedule
+     */
+    public ImportTask(Reader json,
+            Translations translations,
+            RoleService roleService,
+            UsersService usersService,
+            MailingListService mailingListService,
+            DataSourceService dataSourceService,
+            DataPointService dataPointService,
+            PublisherService publisherService,
+            EventHandlerService eventHandlerService,
+            JsonDataService jsonDataService,
+            EventDetectorsService eventDetectorService,
+            SystemPermissionService permissionService,
+            ProgressiveTaskListener listener, boolean schedule) {
+        this(new JsonObject(), translations, roleService, usersService, mailingListService, dataSourceService, dataPointService,
+                publisherService, eventHandlerService, jsonDataService, eventDetectorService, permissionService, listener);
+        this.streamSource = json;
+        this.stream = new JsonTypeReader(json);
+
+        if(schedule)
+            Common.backgroundProcessing.execute(this);
+    }
+
+    private ImportTask(JsonObject root,
+            Translations translations,
+            RoleService roleService,
+            UsersService usersService,
+            MailingListService mailingListService,
+            DataSourceService dataSourceService,
+            DataPointService dataPointService,
+            PublisherService publisherService,
+            EventHandlerService eventHandlerService,
+            JsonDataService jsonDataService,
+            EventDetectorsService eventDetectorService,
+            SystemPermissionService permissionService,
+            ProgressiveTaskListener listener) {
         super("JSON import task", "JsonImport", 10, listener);
 
         //Get the current user to use during imports
         this.user = Common.getUser();
+        this.root = root;
+        this.roleService = roleService;
+        this.usersService = usersService;
+        this.mailingListService = mailingListService;
+        this.dataSourceService = dataSourceService;
         this.dataPointService = dataPointService;
+        this.publisherService = publisherService;
+        this.eventHandlerService = eventHandlerService;
+        this.jsonDataService = jsonDataService;
         this.eventDetectorService = eventDetectorService;
+        this.permissionService = permissionService;
         JsonReader reader = new JsonReader(Common.JSON_CONTEXT, root);
         this.importContext = new ImportContext(reader, new ProcessResult(), translations);
+    }
 
+    /**
+     * Create the importers for the sections of a configuration, except its data points and module elements
+     * @param root
+     */
+    private void addImporters(JsonObject root) {
         for (JsonValue jv : nonNullList(root, ConfigurationExportData.ROLES))
             addImporter(new RoleImporter(jv.toJsonObject(), roleService));
 
@@ -105,9 +225,6 @@ public class ImportTask extends ProgressiveTask {
         for (JsonValue jv : nonNullList(root, ConfigurationExportData.DATA_SOURCES))
             addImporter(new DataSourceImporter(jv.toJsonObject(), dataSourceService));
 
-        for (JsonValue jv : nonNullList(root, ConfigurationExportData.DATA_POINTS))
-            addImporter(new DataPointImporter(jv.toJsonObject(), eventDetectorPoints, dataPointService, dataSourceService));
-
         for (JsonValue jv : nonNullList(root, ConfigurationExportData.MAILING_LISTS))
             addImporter(new MailingListImporter(jv.toJsonObject(), mailingListService));
 
@@ -127,6 +244,15 @@ public class ImportTask extends ProgressiveTask {
         for(JsonValue jv : nonNullList(root, ConfigurationExportData.JSON_DATA))
             addImporter(new JsonDataImporter(jv.toJsonObject(), jsonDataService));
 
+        for(JsonValue jv : nonNullList(root, ConfigurationExportData.EVENT_DETECTORS))
+            addImporter(new EventDetectorImporter(jv.toJsonObject(), eventDetectorPoints, dataPointService));
+    }
+
+    /**
+     * Create the import items for the elements of the modules, these need the whole configuration
+     * @param root
+     */
+    private void addModuleImports(JsonObject root) {
         final String globalScriptId = "sstGlobalScripts";
         List<Importer> globalScriptImporters = new ArrayList<>();
         for (EmportDefinition def : ModuleRegistry.getDefinitions(EmportDefinition.class)) {
@@ -152,18 +278,10 @@ public class ImportTask extends ProgressiveTask {
             }
         }
 
-        for(JsonValue jv : nonNullList(root, ConfigurationExportData.EVENT_DETECTORS))
-            addImporter(new EventDetectorImporter(jv.toJsonObject(), eventDetectorPoints, dataPointService));
-
         //Quick hack to ensure the Global Scripts are imported first in case they are used in scripts that will be loaded during this import
         for(Importer importer : globalScriptImporters){
             importers.add(0, importer);
         }
-
-        this.progressChunk = 100f/((float)importers.size() + (float)importItems.size() + 1);  //+1 for processUpdatedDetectors
-
-        if(schedule)
-            Common.backgroundProcessing.execute(this);
     }
 
     private List<JsonValue> nonNullList(JsonObject root, String key) {
@@ -194,6 +312,16 @@ public class ImportTask extends ProgressiveTask {
 
     protected void runImplAsAdmin() {
         try {
+            if (importingPoints) {
+                importNextPoints();
+                return;
+            }
+
+            if (stream != null) {
+                readNextMember();
+                return;
+            }
+
             if (!importers.isEmpty()) {
                 if (importerIndex >= importers.size()) {
                     // A run through the importers has been completed.
@@ -271,45 +399,298 @@ public class ImportTask extends ProgressiveTask {
         }
         finally {
             //Compute progress, but only declare if we are < 100 since we will declare 100 when done
-            //Our progress is 100 - chunk*importersLeft
-            int importItemsLeft = 1;
-            if(completed)
-                importItemsLeft = 0; //Since we know we ran the processUpdatedDetectors method
-            for(ImportItem item : importItems)
-                if(!item.isComplete())
-                    importItemsLeft++;
-            this.progress = 100f - progressChunk*((float)importers.size() + (float)importItemsLeft);
-            if(progress < 100f)
-                declareProgress(this.progress);
+            //Our progress is 100 - chunk*importersLeft, which is only known once the stream has been read
+            if (stream == null) {
+                int importItemsLeft = 1;
+                if(completed)
+                    importItemsLeft = 0; //Since we know we ran the processUpdatedDetectors method
+                for(ImportItem item : importItems)
+                    if(!item.isComplete())
+                        importItemsLeft++;
+                this.progress = 100f - progressChunk*((float)importers.size() + (float)importItemsLeft + (float)pointsLeft);
+                if(progress < 100f)
+                    declareProgress(this.progress);
+            }
         }
     }
 
+    /**
+     * Read the next section of a streamed configuration. The data points are left in the stream to be read a batch at a
+     *  time once the sections before them are imported.
+     */
+    private void readNextMember() {
+        try {
+            if (pointValues == null) {
+                //Not started yet
+                stream.beginObject();
+                pointValues = Collections.emptyIterator();
+            }
+            String name = stream.nextName();
+            if (name == null) {
+                closeStream();
+                addImporters(pending);
+                addModuleImports(root);
+                this.progressChunk = 100f/((float)importers.size() + (float)importItems.size() + 1);  //+1 for processUpdatedDetectors
+            } else if (ConfigurationExportData.DATA_POINTS.equals(name)) {
+                addImporters(pending);
+                pending = new JsonObject();
+                stream.beginArray();
+                importingPoints = true;
+                pointsStarted = false;
+            } else {
+                JsonValue value = stream.read();
+                root.put(name, value);
+                pending.put(name, value);
+            }
+        } catch (JsonException | IOException | RuntimeException e) {
+            abortStream(e);
+        }
+    }
+
+    /**
+     * The rest of the configuration can't be read, what has been imported so far is kept
+     */
+    private void abortStream(Exception e) {
+        LOG.error("Failed to read the configuration being imported.", e);
+        addException(e);
+        closeStream();
+        importingPoints = false;
+        importers.clear();
+        importItems.clear();
+        completed = true;
+    }
+
+    private void closeStream() {
+        stream = null;
+        if (streamSource == null)
+            return;
+        try {
+            streamSource.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close the configuration being imported.", e);
+        }
+    }
+
+    /**
+     * Import the next batch of data points, the first batch waits for what has been read of the rest of the
+     * configuration to be imported since points depend on their data sources, roles and event handlers.
+     */
+    private void importNextPoints() {
+        if (!pointsStarted) {
+            importAvailable();
+            pointsStarted = true;
+        }
+
+        List<DataPointImporter> batch = new ArrayList<>();
+        int max = Math.max(1, batchSize);
+        try {
+            while (batch.size() < max) {
+                JsonValue value;
+                if (stream != null) {
+                    if (!stream.hasNextValue()) {
+                        importingPoints = false;
+                        break;
+                    }
+                    value = stream.read();
+                } else {
+                    if (!pointValues.hasNext()) {
+                        importingPoints = false;
+                        break;
+                    }
+                    value = pointValues.next();
+                    pointsLeft--;
+                }
+                batch.add(new DataPointImporter(value.toJsonObject(), eventDetectorPoints, dataPointService, dataSourceService, dataSources));
+            }
+        } catch (JsonException | IOException | RuntimeException e) {
+            abortStream(e);
+            return;
+        }
+        if (!pointValues.hasNext() && stream == null)
+            importingPoints = false;
+
+        List<DataPointImporter> errors;
+        if (batch.size() > 1)
+            errors = importPointBatch(batch);
+        else
+            errors = importPoints(batch);
+
+        //Save the detectors of the points that are in the database now, the rest stay mapped for the later passes
+        Map<String, DataPointWithEventDetectors> imported = new LinkedHashMap<>();
+        for (DataPointImporter importer : batch) {
+            if (errors.contains(importer)) {
+                //Reported already and not retried, as with the other importers
+                continue;
+            } else if (importer.success()) {
+                String xid = importer.getDataPoint().getDataPoint().getXid();
+                imported.put(xid, eventDetectorPoints.remove(xid));
+            } else {
+                addImporter(importer);
+            }
+        }
+        processUpdatedDetectors(imported);
+    }
+
+    /**
+     * Import data points in one transaction, if the transaction fails they are imported one at a time instead.
+     *  Messages are only reported once the points are committed.
+     * @return the importers that threw an exception
+     */
+    private List<DataPointImporter> importPointBatch(List<DataPointImporter> batch) {
+        ImportContext batchContext = new ImportContext(importContext.getReader(), new ProcessResult(), importContext.getTranslations());
+        Map<String, DataPointWithEventDetectors> mapped = new HashMap<>();
+        for (DataPointImporter importer : batch) {
+            String xid = importer.json.getString("xid");
+            if (!StringUtils.isBlank(xid))
+                mapped.put(xid, eventDetectorPoints.get(xid));
+        }
+
+        try {
+            newTransactionTemplate().executeWithoutResult(status -> {
+                for (DataPointImporter importer : batch) {
+                    importer.setImportContext(batchContext);
+                    importer.doImport();
+                }
+            });
+            for (ProcessMessage message : batchContext.getResult().getMessages())
+                importContext.getResult().addMessage(message);
+            return Collections.emptyList();
+        } catch (Exception e) {
+            LOG.warn("Data point import batch failed, importing the points one at a time.", e);
+            //Forget the points that were rolled back
+            for (DataPointImporter importer : batch) {
+                DataPointWithEventDetectors dp = importer.getDataPoint();
+                if (dp != null) {
+                    String xid = dp.getDataPoint().getXid();
+                    DataPointWithEventDetectors previous = mapped.get(xid);
+                    if (previous == null)
+                        eventDetectorPoints.remove(xid);
+                    else
+                        eventDetectorPoints.put(xid, previous);
+                }
+            }
+            return importPoints(batch);
+        }
+    }
+
+    /**
+     * @return the importers that threw an exception
+     */
+    private List<DataPointImporter> importPoints(List<DataPointImporter> points) {
+        List<DataPointImporter> errors = new ArrayList<>();
+        for (DataPointImporter importer : points) {
+            importer.setImportContext(importContext);
+            try {
+                importer.doImport();
+            } catch (Exception e) {
+                LOG.error(e.getMessage(), e);
+                addException(e);
+                errors.add(importer);
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Run the importers until a pass imports nothing more, those left are run again in the passes after the data points
+     */
+    private void importAvailable() {
+        boolean imported = true;
+        while (imported) {
+            imported = false;
+            for (int i = 0; i < importers.size();) {
+                Importer importer = importers.get(i);
+                try {
+                    importer.doImport();
+                    if (importer.success()) {
+                        imported = true;
+                        importers.remove(i);
+                    } else {
+                        i++;
+                    }
+                } catch (Exception e) {
+                    LOG.error(e.getMessage(), e);
+                    addException(e);
+                    importers.remove(i);
+                }
+            }
+        }
+    }
+
+    private TransactionTemplate newTransactionTemplate() {
+        return new TransactionTemplate(Common.databaseProxy.getTransactionManager());
+    }
+
     private void processUpdatedDetectors(Map<String, DataPointWithEventDetectors> eventDetectorMap) {
-        for(DataPointWithEventDetectors dp : eventDetectorMap.values()) {
+        List<DataPointWithEventDetectors> points = new ArrayList<>(eventDetectorMap.values());
+        int batch = Math.max(1, batchSize);
+        for (int i = 0; i < points.size(); i += batch) {
+            List<DataPointWithEventDetectors> updated = new ArrayList<>();
+            List<Runnable> successMessages = new ArrayList<>();
+            List<DataPointWithEventDetectors> chunk = points.subList(i, Math.min(points.size(), i + batch));
+            if (chunk.size() > 1) {
+                //Saved without savepoints, a DaoEvent of a rolled back savepoint would still be published on commit
+                List<AbstractPointEventDetectorVO> inserted = new ArrayList<>();
+                try {
+                    newTransactionTemplate().executeWithoutResult(status -> saveDetectors(chunk, updated, successMessages, inserted));
+                } catch (Exception e) {
+                    LOG.warn("Event detector import batch failed, saving the detectors one point at a time.", e);
+                    for (AbstractPointEventDetectorVO ed : inserted)
+                        ed.setId(Common.NEW_ID);
+                    updated.clear();
+                    successMessages.clear();
+                    for (DataPointWithEventDetectors dp : chunk)
+                        saveDetectors(Collections.singletonList(dp), updated, successMessages, new ArrayList<>());
+                }
+            } else
+                saveDetectors(chunk, updated, successMessages, new ArrayList<>());
+
+            //Only report the detectors once they are committed
+            successMessages.forEach(Runnable::run);
+
+            //Reload into the RT once the detectors of the point are saved
+            for (DataPointWithEventDetectors dp : updated) {
+                try {
+                    dataPointService.reloadDataPoint(dp.getDataPoint().getXid());
+                }catch(Exception e) {
+                    addException(e);
+                    LOG.error("Event detector import failed.", e);
+                }
+            }
+        }
+    }
+
+    private void saveDetectors(List<DataPointWithEventDetectors> points, List<DataPointWithEventDetectors> updated,
+            List<Runnable> successMessages, List<AbstractPointEventDetectorVO> inserted) {
+        boolean batch = points.size() > 1;
+        for(DataPointWithEventDetectors dp : points) {
             //The content of the event detectors lists may have duplicates and the DataPointVO may be out of date,
             // but we can assume that all the event detectors for a point will exist in this list.
+            boolean saved = false;
             for(AbstractPointEventDetectorVO ed : dp.getEventDetectors()) {
                 try {
                     if(ed.isNew()) {
+                        inserted.add(ed);
                         eventDetectorService.insertAndReload(ed, false);
-                        importContext.addSuccessMessage(true, "emport.eventDetector.prefix", ed.getXid());
+                        successMessages.add(() -> importContext.addSuccessMessage(true, "emport.eventDetector.prefix", ed.getXid()));
                     }else {
                         eventDetectorService.updateAndReload(ed.getXid(), ed, false);
-                        importContext.addSuccessMessage(false, "emport.eventDetector.prefix", ed.getXid());
+                        successMessages.add(() -> importContext.addSuccessMessage(false, "emport.eventDetector.prefix", ed.getXid()));
                     }
-
-                    //Reload into the RT
-                    dataPointService.reloadDataPoint(dp.getDataPoint().getXid());
-
+                    saved = true;
                 }catch(ValidationException e) {
+                    //Thrown before anything is written so the rest of a batch can still be committed
                     importContext.copyValidationMessages(e.getValidationResult(), "emport.eventDetector.prefix", ed.getXid());
                 }catch(Exception e) {
+                    if (batch)
+                        throw e;
                     addException(e);
                     LOG.error("Event detector import failed.", e);
                 }
             }
+            if (saved)
+                updated.add(dp);
         }
-
     }
 
     private void addException(Exception e) {
@@ -56,6 +56,10 @@ public class AtomicIntegerMonitor implements ValueMonitor<Integer> {
         this.value.addAndGet(value);
     }
 
+    public int addAndGet(int value) {
+        return this.value.addAndGet(value);
+    }
+
     public void setValueIfGreater(int value) {
         this.value.updateAndGet(current -> value > current ? value : current);
     }
@@ -25,6 +25,9 @@ public final class MangoPermission {
     @JsonProperty
     private final Set<Set<Role>> roles;
 
+    //Minterms compiled to role bitsets, see RoleBits
+    private volatile long[][] mintermBits;
+
     /**
      * Creates a permission that only superadmins have access to
      */
@@ -69,6 +72,26 @@ public final class MangoPermission {
         return roles;
     }
 
+    /**
+     * Is this permission granted to a holder of the roles?
+     *
+     * @param heldRoles all roles held including inherited roles, from {@link RoleBits#of(Collection)}
+     * @return true if the roles contain every role of any minterm
+     */
+    public boolean grantedTo(long[] heldRoles) {
+        long[][] minterms = this.mintermBits;
+        if (minterms == null) {
+            minterms = roles.stream().map(RoleBits::of).toArray(long[][]::new);
+            this.mintermBits = minterms;
+        }
+        for (long[] minterm : minterms) {
+            if (RoleBits.containsAll(heldRoles, minterm)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public static MangoPermission superadminOnly() {
         return new MangoPermission();
     }
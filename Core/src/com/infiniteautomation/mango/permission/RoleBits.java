@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.permission;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.serotonin.m2m2.vo.role.Role;
+
+/**
+ * Sets of roles as bitsets so that permissions can be checked without allocating. Each distinct role
+ *  is given a dense index the first time it is seen, indexes are never re-assigned so bitsets stay
+ *  valid for the life of the JVM.
+ */
+public final class RoleBits {
+
+    private static final ConcurrentHashMap<Role, Integer> INDEXES = new ConcurrentHashMap<>();
+    private static final AtomicInteger NEXT_INDEX = new AtomicInteger();
+
+    private RoleBits() { }
+
+    private static int indexOf(Role role) {
+        Integer index = INDEXES.get(role);
+        if (index == null) {
+            index = INDEXES.computeIfAbsent(role, r -> NEXT_INDEX.getAndIncrement());
+        }
+        return index;
+    }
+
+    /**
+     * @param roles
+     * @return bitset of the roles
+     */
+    public static long[] of(Collection<Role> roles) {
+        long[] bits = new long[0];
+        for (Role role : roles) {
+            int index = indexOf(role);
+            int word = index >>> 6;
+            if (word >= bits.length) {
+                long[] grown = new long[word + 1];
+                System.arraycopy(bits, 0, grown, 0, bits.length);
+                bits = grown;
+            }
+            bits[word] |= 1L << index;
+        }
+        return bits;
+    }
+
+    /**
+     * @param bits
+     * @param role
+     * @return true if the role is in the bitset
+     */
+    public static boolean contains(long[] bits, Role role) {
+        int index = indexOf(role);
+        int word = index >>> 6;
+        return word < bits.length && (bits[word] & (1L << index)) != 0;
+    }
+
+    /**
+     * @param bits
+     * @param required
+     * @return true if every role of required is in bits
+     */
+    public static boolean containsAll(long[] bits, long[] required) {
+        for (int i = 0; i < required.length; i++) {
+            long held = i < bits.length ? bits[i] : 0;
+            if ((required[i] & ~held) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
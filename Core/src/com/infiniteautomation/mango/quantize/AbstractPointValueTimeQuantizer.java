@@ -9,7 +9,10 @@ import java.time.Instant;
 
 import com.infiniteautomation.mango.db.query.BookendQueryCallback;
 import com.infiniteautomation.mango.db.query.QueryCancelledException;
+import com.infiniteautomation.mango.statistics.PointValueRollup;
+import com.infiniteautomation.mango.statistics.RollupStatisticsGenerator;
 import com.serotonin.m2m2.rt.dataImage.IdPointValueTime;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
 import com.serotonin.m2m2.view.stats.IValueTime;
 import com.serotonin.m2m2.view.stats.StatisticsGenerator;
 
@@ -35,20 +38,18 @@ abstract public class AbstractPointValueTimeQuantizer<T extends StatisticsGenera
     private final long endTime;
 
     private T statistics;
-    private Instant periodFrom;
-    private Instant periodTo;
-    private long periodToMillis; //For performance
+    private long periodFrom;
+    private long periodTo;
     private IValueTime lastValue;
 
     public AbstractPointValueTimeQuantizer(BucketCalculator bucketCalculator, StatisticsGeneratorQuantizerCallback<T> callback) {
         this.bucketCalculator = bucketCalculator;
         this.callback = callback;
 
-        periodFrom = bucketCalculator.getStartTime().toInstant();
-        periodTo = bucketCalculator.getNextPeriodTo().toInstant();
-        periodToMillis = periodTo.toEpochMilli();
-        startTime = periodFrom.toEpochMilli();
-        endTime =  bucketCalculator.getEndTime().toInstant().toEpochMilli();
+        startTime = bucketCalculator.getStartMillis();
+        endTime = bucketCalculator.getEndMillis();
+        periodFrom = startTime;
+        periodTo = bucketCalculator.getNextPeriodToMillis();
     }
 
     @Override
@@ -60,7 +61,7 @@ abstract public class AbstractPointValueTimeQuantizer<T extends StatisticsGenera
         if (time >= endTime)
             throw new IllegalArgumentException("Data is after end time");
 
-        while (time >= periodToMillis)
+        while (time >= periodTo)
             nextPeriod(vt, time);
 
         dataInPeriod(vt);
@@ -68,6 +69,48 @@ abstract public class AbstractPointValueTimeQuantizer<T extends StatisticsGenera
         lastValue = vt;
     }
 
+    /**
+     * @return true if the statistics are {@link RollupStatisticsGenerator}s so that saved summaries
+     *  can be passed to {@link #rollup(PointValueRollup)} in place of the values
+     */
+    public boolean supportsRollups() {
+        return false;
+    }
+
+    /**
+     * Add a summary of values in place of the values themselves, the summary must lie within one period
+     * of the bucket calculator. Summaries and values are provided in chronological order.
+     *
+     * @param rollup
+     * @throws QueryCancelledException
+     * @throws UnsupportedOperationException if the quantizer does not {@link #supportsRollups()}
+     */
+    public void rollup(PointValueRollup rollup) throws QueryCancelledException {
+        if (!supportsRollups())
+            throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support rollups");
+
+        if (rollup.getPeriodStart() < startTime)
+            throw new IllegalArgumentException("Rollup is before start time");
+
+        if (rollup.getPeriodEnd() > endTime)
+            throw new IllegalArgumentException("Rollup is after end time");
+
+        if (rollup.getCount() > 0) {
+            //As with raw values, a first value on the boundary of a period is the start value of that period
+            IValueTime first = new PointValueTime(rollup.getFirstDataValue(), rollup.getFirstTime());
+            while (periodTo <= rollup.getPeriodStart())
+                nextPeriod(first, first.getTime());
+        } else
+            fastForward(rollup.getPeriodStart());
+        if (rollup.getPeriodEnd() > periodTo)
+            throw new IllegalArgumentException("Rollup spans more than one period");
+
+        if (rollup.getCount() > 0) {
+            ((RollupStatisticsGenerator) statistics).addRollup(rollup);
+            lastValue = new PointValueTime(rollup.getLastDataValue(), rollup.getLastTime());
+        }
+    }
+
     @Override
     public void firstValue(IdPointValueTime value, int index, boolean bookend) throws QueryCancelledException{
         openPeriod(periodFrom, periodTo, value);
@@ -87,12 +130,11 @@ abstract public class AbstractPointValueTimeQuantizer<T extends StatisticsGenera
      */
     public void done() throws QueryCancelledException {
         //Special case where there is no data
-        if(lastValue == null && periodFrom.equals(bucketCalculator.getStartTime().toInstant()))
+        if(lastValue == null && periodFrom == startTime)
             openPeriod(periodFrom, periodTo, lastValue);
 
-        Instant endInstant = bucketCalculator.getEndTime().toInstant();
-        while (periodTo.isBefore(endInstant))
-            nextPeriod(lastValue, periodTo.toEpochMilli());
+        while (periodTo < endTime)
+            nextPeriod(lastValue, periodTo);
         closePeriod();
     }
 
@@ -106,9 +148,8 @@ abstract public class AbstractPointValueTimeQuantizer<T extends StatisticsGenera
     private void nextPeriod(IValueTime endValue, long time) throws QueryCancelledException {
         closePeriod();
         periodFrom = periodTo;
-        periodTo = bucketCalculator.getNextPeriodTo().toInstant();
-        periodToMillis = periodTo.toEpochMilli();
-        openPeriod(periodFrom, periodTo, periodFrom.toEpochMilli() == time ? endValue : lastValue);
+        periodTo = bucketCalculator.getNextPeriodToMillis();
+        openPeriod(periodFrom, periodTo, periodFrom == time ? endValue : lastValue);
     }
 
     /**
@@ -117,8 +158,8 @@ abstract public class AbstractPointValueTimeQuantizer<T extends StatisticsGenera
      * @throws IOException
      */
     public void fastForward(long time) throws QueryCancelledException {
-        while (periodToMillis <= time)
-            nextPeriod(lastValue, periodTo.toEpochMilli());
+        while (periodTo <= time)
+            nextPeriod(lastValue, periodTo);
     }
 
     /**
@@ -153,6 +194,10 @@ abstract public class AbstractPointValueTimeQuantizer<T extends StatisticsGenera
         this.statistics = createStatistics(start, end, startValue);
     }
 
+    private void openPeriod(long start, long end, IValueTime startValue) {
+        openPeriod(Instant.ofEpochMilli(start), Instant.ofEpochMilli(end), startValue);
+    }
+
     /**
      * A value that occurred in the period. Data will be provided to this method in chronological order.
      *
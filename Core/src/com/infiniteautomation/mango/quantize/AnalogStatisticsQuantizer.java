@@ -23,5 +23,9 @@ public class AnalogStatisticsQuantizer extends AbstractPointValueTimeQuantizer<A
     protected AnalogStatistics createStatistics(Instant start, Instant end, IValueTime startValue) {
         return new AnalogStatistics(start.toEpochMilli(), end.toEpochMilli(), startValue);
     }
-    
+
+    @Override
+    public boolean supportsRollups() {
+        return true;
+    }
 }
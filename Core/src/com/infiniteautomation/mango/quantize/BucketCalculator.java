@@ -34,4 +34,31 @@ public interface BucketCalculator {
      * @return
      */
     ZonedDateTime getEndTime();
+
+    /**
+     * The start time in epoch milliseconds
+     *
+     * @return
+     */
+    default long getStartMillis() {
+        return getStartTime().toInstant().toEpochMilli();
+    }
+
+    /**
+     * The next period end time in epoch milliseconds, advances the same periods as {@link #getNextPeriodTo()}.
+     *
+     * @return
+     */
+    default long getNextPeriodToMillis() {
+        return getNextPeriodTo().toInstant().toEpochMilli();
+    }
+
+    /**
+     * The end time in epoch milliseconds
+     *
+     * @return
+     */
+    default long getEndMillis() {
+        return getEndTime().toInstant().toEpochMilli();
+    }
 }
@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.quantize;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.infiniteautomation.mango.db.query.BookendQueryCallback;
+import com.infiniteautomation.mango.db.query.QueryCancelledException;
+import com.infiniteautomation.mango.spring.components.executors.MangoForkJoinWorkerThreadFactory;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.db.dao.PointValueDao;
+import com.serotonin.m2m2.rt.dataImage.IdPointValueTime;
+import com.serotonin.m2m2.view.stats.StatisticsGenerator;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Quantizes several points at once by running the bookend query of each point on its own connection in a
+ * shared fork join pool of db.rollups.parallelism threads. At most db.rollups.maxConnections queries run at
+ * the same time across all executions.
+ *
+ * The statistics of each point are collected and then passed to the callback on the calling thread, ordered
+ * by period start time and then by the order of the points. All periods are held in memory until every
+ * point is done.
+ *
+ * If a query fails or the calling thread is interrupted the remaining queries are aborted and the failure,
+ * or a {@link QueryCancelledException}, is thrown to the caller.
+ */
+public class ParallelRollupExecutor {
+
+    private static final int PARALLELISM = Common.envProps.getInt("db.rollups.parallelism", 1);
+    private static final ForkJoinPool POOL = new ForkJoinPool(Math.max(1, PARALLELISM), new MangoForkJoinWorkerThreadFactory(), null, false);
+    private static final Semaphore CONNECTIONS = new Semaphore(Math.max(1, Common.envProps.getInt("db.rollups.maxConnections", 4)), true);
+
+    /**
+     * Creates the quantizer for a point
+     */
+    @FunctionalInterface
+    public interface QuantizerFactory {
+        /**
+         * @param vo
+         * @param callback must receive every period of the quantizer
+         * @return
+         */
+        AbstractPointValueTimeQuantizer<?> create(DataPointVO vo, StatisticsGeneratorQuantizerCallback<StatisticsGenerator> callback);
+    }
+
+    private final PointValueDao dao;
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+
+    public ParallelRollupExecutor(PointValueDao dao) {
+        this.dao = dao;
+    }
+
+    /**
+     * @return true if the pool has more than one thread
+     */
+    public static boolean isEnabled() {
+        return PARALLELISM > 1;
+    }
+
+    /**
+     * @return number of queries that can start before the connection limit is reached
+     */
+    static int getAvailableConnections() {
+        return CONNECTIONS.availablePermits();
+    }
+
+    /**
+     * Abort the running execution, it will throw a {@link QueryCancelledException}
+     */
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    /**
+     * Quantize the points in parallel and send the periods to the callback in time order
+     *
+     * @param vos points to quantize, nulls are skipped
+     * @param from
+     * @param to
+     * @param factory
+     * @param callback
+     * @throws QueryCancelledException
+     */
+    public void execute(List<DataPointVO> vos, long from, long to, QuantizerFactory factory,
+            StatisticsGeneratorQuantizerCallback<StatisticsGenerator> callback) throws QueryCancelledException {
+
+        List<ForkJoinTask<List<StatisticsGenerator>>> tasks = new ArrayList<>(vos.size());
+        for (DataPointVO vo : vos) {
+            if (vo != null)
+                tasks.add(POOL.submit(() -> quantize(vo, from, to, factory)));
+        }
+
+        List<List<StatisticsGenerator>> results = new ArrayList<>(tasks.size());
+        try {
+            for (ForkJoinTask<List<StatisticsGenerator>> task : tasks)
+                results.add(task.get());
+        } catch (InterruptedException e) {
+            cancel();
+            awaitAll(tasks);
+            Thread.currentThread().interrupt();
+            throw new QueryCancelledException(e);
+        } catch (ExecutionException e) {
+            cancel();
+            awaitAll(tasks);
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new QueryCancelledException(e.getCause());
+        }
+
+        merge(results, callback);
+    }
+
+    /**
+     * Run the query of one point on a pooled connection
+     */
+    private List<StatisticsGenerator> quantize(DataPointVO vo, long from, long to, QuantizerFactory factory) throws InterruptedException {
+        List<StatisticsGenerator> periods = new ArrayList<>();
+        AbstractPointValueTimeQuantizer<?> quantizer = factory.create(vo, periods::add);
+
+        while (!CONNECTIONS.tryAcquire(100, TimeUnit.MILLISECONDS))
+            checkCancelled();
+        try {
+            checkCancelled();
+            PointQuery query = new PointQuery(quantizer);
+            dao.wideBookendQuery(Collections.singletonList(vo), from, to, false, null, query);
+            if (!query.done)
+                quantizer.done();
+        } finally {
+            CONNECTIONS.release();
+        }
+        return periods;
+    }
+
+    private void checkCancelled() throws QueryCancelledException {
+        if (cancelled.get())
+            throw new QueryCancelledException(new CancellationException("Rollup cancelled"));
+    }
+
+    /**
+     * Wait for the aborted queries to release their connections
+     */
+    private void awaitAll(List<ForkJoinTask<List<StatisticsGenerator>>> tasks) {
+        for (ForkJoinTask<List<StatisticsGenerator>> task : tasks)
+            task.quietlyJoin();
+    }
+
+    /**
+     * Send the periods of all points ordered by start time, points with the same start stay in list order
+     */
+    private void merge(List<List<StatisticsGenerator>> results, StatisticsGeneratorQuantizerCallback<StatisticsGenerator> callback) throws QueryCancelledException {
+        PriorityQueue<Cursor> queue = new PriorityQueue<>(Math.max(1, results.size()));
+        for (int i = 0; i < results.size(); i++) {
+            if (!results.get(i).isEmpty())
+                queue.add(new Cursor(i, results.get(i)));
+        }
+
+        Cursor cursor;
+        while ((cursor = queue.poll()) != null) {
+            checkCancelled();
+            callback.quantizedStatistics(cursor.periods.get(cursor.position++));
+            if (cursor.position < cursor.periods.size())
+                queue.add(cursor);
+        }
+    }
+
+    private static class Cursor implements Comparable<Cursor> {
+        final int order;
+        final List<StatisticsGenerator> periods;
+        int position;
+
+        Cursor(int order, List<StatisticsGenerator> periods) {
+            this.order = order;
+            this.periods = periods;
+        }
+
+        @Override
+        public int compareTo(Cursor o) {
+            int result = Long.compare(periods.get(position).getPeriodStartTime(), o.periods.get(o.position).getPeriodStartTime());
+            return result != 0 ? result : Integer.compare(order, o.order);
+        }
+    }
+
+    /**
+     * Feeds the quantizer of one point and aborts the query once the execution is cancelled
+     */
+    private class PointQuery implements BookendQueryCallback<IdPointValueTime> {
+        final AbstractPointValueTimeQuantizer<?> quantizer;
+        boolean done;
+
+        PointQuery(AbstractPointValueTimeQuantizer<?> quantizer) {
+            this.quantizer = quantizer;
+        }
+
+        @Override
+        public void firstValue(IdPointValueTime value, int index, boolean bookend) throws QueryCancelledException {
+            checkCancelled();
+            quantizer.firstValue(value, index, bookend);
+        }
+
+        @Override
+        public void row(IdPointValueTime value, int index) throws QueryCancelledException {
+            checkCancelled();
+            quantizer.row(value, index);
+        }
+
+        @Override
+        public void lastValue(IdPointValueTime value, int index, boolean bookend) throws QueryCancelledException {
+            checkCancelled();
+            quantizer.lastValue(value, index, bookend);
+            quantizer.done();
+            done = true;
+        }
+    }
+}
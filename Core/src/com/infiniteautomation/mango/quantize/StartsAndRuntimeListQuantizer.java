@@ -19,4 +19,9 @@ public class StartsAndRuntimeListQuantizer extends AbstractPointValueTimeQuantiz
             IValueTime startValue) {
         return new StartsAndRuntimeList(start.toEpochMilli(), end.toEpochMilli(), startValue);
     }
+
+    @Override
+    public boolean supportsRollups() {
+        return true;
+    }
 }
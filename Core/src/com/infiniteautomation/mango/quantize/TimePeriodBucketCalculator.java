@@ -4,31 +4,81 @@
  */
 package com.infiniteautomation.mango.quantize;
 
+import java.time.Instant;
 import java.time.ZonedDateTime;
+import java.util.Arrays;
 
 import com.infiniteautomation.mango.util.datetime.NextTimePeriodAdjuster;
+import com.serotonin.m2m2.Common.TimePeriods;
 
 /**
  * Time period bucket calculator divides the given time range into the given periods. The intervals that are produces
  * may not be equal in duration. For example, if the time period is one day, the duration may be 23, 24, or 25 hours
  * depending on whether the day is a daylight savings change day or not.
- * 
+ *
+ * Periods of milliseconds to hours have a fixed duration so their boundaries are found by adding the duration to
+ * the epoch time. Boundaries of days, weeks, months and years are computed in the time zone of the start time
+ * when the calculator is created and kept in an array.
+ *
  * @author Terry Packer
  */
 public class TimePeriodBucketCalculator implements BucketCalculator {
-    
+
     private final ZonedDateTime startTime;
     private final ZonedDateTime endTime;
     private final NextTimePeriodAdjuster adjuster;
-    
-    private ZonedDateTime lastTo;
+    private final long endMillis;
+    //Duration of fixed width periods, 0 for calendar periods
+    private final long duration;
+
+    //Calendar period boundaries up to the first at or after the end time
+    private long[] boundaries;
+    private int boundaryCount;
+    private ZonedDateTime lastBoundary;
+    private int next;
+
+    private long lastTo;
 
     public TimePeriodBucketCalculator(ZonedDateTime startTime, ZonedDateTime endTime, int periodType, int periods) {
         this.startTime = startTime;
         this.endTime = endTime;
         this.adjuster = new NextTimePeriodAdjuster(periodType, periods);
+        this.endMillis = endTime.toInstant().toEpochMilli();
+        this.duration = fixedDuration(periodType, periods);
+
+        lastTo = startTime.toInstant().toEpochMilli();
+        if (duration == 0) {
+            boundaries = new long[16];
+            lastBoundary = startTime;
+            do {
+                addBoundary();
+            } while (boundaries[boundaryCount - 1] < endMillis);
+        }
+    }
+
+    /**
+     * @return the duration of periods that do not depend on the time zone, 0 otherwise
+     */
+    private static long fixedDuration(int periodType, int periods) {
+        switch (periodType) {
+            case TimePeriods.MILLISECONDS:
+                return periods;
+            case TimePeriods.SECONDS:
+                return periods * 1000L;
+            case TimePeriods.MINUTES:
+                return periods * 60000L;
+            case TimePeriods.HOURS:
+                return periods * 3600000L;
+            default:
+                return 0;
+        }
+    }
 
-        lastTo = startTime;
+    private void addBoundary() {
+        lastBoundary = (ZonedDateTime) adjuster.adjustInto(lastBoundary);
+        if (boundaryCount == boundaries.length)
+            boundaries = Arrays.copyOf(boundaries, boundaryCount * 2);
+        boundaries[boundaryCount++] = lastBoundary.toInstant().toEpochMilli();
     }
 
     @Override
@@ -38,7 +88,19 @@ public class TimePeriodBucketCalculator implements BucketCalculator {
 
     @Override
     public ZonedDateTime getNextPeriodTo() {
-        lastTo = (ZonedDateTime) adjuster.adjustInto(lastTo);
+        return ZonedDateTime.ofInstant(Instant.ofEpochMilli(getNextPeriodToMillis()), startTime.getZone());
+    }
+
+    @Override
+    public long getNextPeriodToMillis() {
+        if (duration > 0) {
+            lastTo += duration;
+        } else {
+            //Callers may ask for periods past the end time
+            if (next == boundaryCount)
+                addBoundary();
+            lastTo = boundaries[next++];
+        }
         return lastTo;
     }
 
@@ -46,4 +108,14 @@ public class TimePeriodBucketCalculator implements BucketCalculator {
     public ZonedDateTime getEndTime() {
         return endTime;
     }
+
+    @Override
+    public long getStartMillis() {
+        return startTime.toInstant().toEpochMilli();
+    }
+
+    @Override
+    public long getEndMillis() {
+        return endMillis;
+    }
 }
@@ -19,4 +19,9 @@ public class ValueChangeCounterQuantizer extends AbstractPointValueTimeQuantizer
             IValueTime startValue) {
         return new ValueChangeCounter(start.toEpochMilli(), end.toEpochMilli(), startValue);
     }
+
+    @Override
+    public boolean supportsRollups() {
+        return true;
+    }
 }
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.spring.components;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.infiniteautomation.mango.spring.events.DaoEvent;
+import com.infiniteautomation.mango.spring.events.DaoEventType;
+import com.infiniteautomation.mango.spring.service.PermissionService;
+import com.infiniteautomation.mango.spring.service.SystemPermissionService;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.db.dao.UserDao;
+import com.serotonin.m2m2.rt.event.type.EventType;
+import com.serotonin.m2m2.rt.event.type.EventTypeKey;
+import com.serotonin.m2m2.vo.AbstractBasicVO;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.User;
+import com.serotonin.m2m2.vo.dataSource.DataSourceVO;
+import com.serotonin.m2m2.vo.publish.PublisherVO;
+import com.serotonin.m2m2.vo.role.RoleVO;
+
+/**
+ * Index of the active users that are allowed to see each event type, used by the event manager so
+ * that raising, returning and acknowledging an event does not query the users table and re-evaluate
+ * every user's permission each time.
+ *
+ * The whole index is discarded when a user, role, system permission or the data point, data source
+ * or publisher an event type refers to changes. Event types defined by modules may base their
+ * permission on anything so only the list of active users is cached for them.
+ */
+@Service
+public class EventRecipientIndex {
+
+    private final UserDao userDao;
+    private final PermissionService permissionService;
+    private final long maxSize;
+
+    //Null when it must be rebuilt
+    private volatile Index index;
+    //Incremented whenever the index is invalidated so that an index loaded concurrently is not kept
+    private long generation;
+
+    @Autowired
+    public EventRecipientIndex(UserDao userDao, PermissionService permissionService) {
+        this.userDao = userDao;
+        this.permissionService = permissionService;
+        this.maxSize = Common.envProps.getLong("cache.eventRecipients.size", 10000);
+    }
+
+    /**
+     * @return all active users
+     */
+    public List<User> getActiveUsers() {
+        return getIndex().activeUsers;
+    }
+
+    /**
+     * Get the active users who have permission to see events of this type, the caller must still check
+     * {@link EventType#excludeUser(User)} as that depends on the event instance.
+     *
+     * @param type
+     * @return
+     */
+    public List<User> getRecipients(EventType type) {
+        Index current = getIndex();
+        if (!isIndexed(type))
+            return current.computeRecipients(type);
+        return current.recipients.get(new EventTypeKey(type), k -> current.computeRecipients(type));
+    }
+
+    /**
+     * Discard the index, it is rebuilt on the next use
+     */
+    public void invalidate() {
+        synchronized (this) {
+            generation++;
+            index = null;
+        }
+    }
+
+    @EventListener
+    protected void handleUserEvent(DaoEvent<? extends User> event) {
+        invalidate();
+    }
+
+    @EventListener
+    protected void handleRoleEvent(DaoEvent<? extends RoleVO> event) {
+        invalidate();
+    }
+
+    @EventListener
+    protected void handleDaoEvent(DaoEvent<? extends AbstractBasicVO> event) {
+        //Changes to the read permission of the source of an event type
+        if (event.getType() == DaoEventType.CREATE)
+            return;
+        AbstractBasicVO vo = event.getVo();
+        if (vo instanceof DataPointVO || vo instanceof DataSourceVO || vo instanceof PublisherVO)
+            invalidate();
+    }
+
+    @EventListener
+    protected void systemPermissionUpdated(SystemPermissionService.SystemPermissionUpdated event) {
+        invalidate();
+    }
+
+    private Index getIndex() {
+        Index current = index;
+        if (current != null)
+            return current;
+
+        long loadedGeneration;
+        synchronized (this) {
+            loadedGeneration = generation;
+        }
+        Index loaded = new Index(Collections.unmodifiableList(userDao.getActiveUsers()));
+        synchronized (this) {
+            if (generation == loadedGeneration && index == null)
+                index = loaded;
+        }
+        return loaded;
+    }
+
+    /**
+     * Only the core event types have permissions that are known to depend on nothing but the users,
+     * roles and the data point, data source or publisher they refer to
+     */
+    private boolean isIndexed(EventType type) {
+        switch (type.getEventType()) {
+            case EventType.EventTypeNames.DATA_POINT:
+            case EventType.EventTypeNames.DATA_SOURCE:
+            case EventType.EventTypeNames.SYSTEM:
+            case EventType.EventTypeNames.PUBLISHER:
+            case EventType.EventTypeNames.AUDIT:
+            case EventType.EventTypeNames.MISSING:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private class Index {
+        private final List<User> activeUsers;
+        private final Cache<EventTypeKey, List<User>> recipients;
+
+        private Index(List<User> activeUsers) {
+            this.activeUsers = activeUsers;
+            this.recipients = Caffeine.newBuilder().maximumSize(maxSize).build();
+        }
+
+        private List<User> computeRecipients(EventType type) {
+            List<User> result = new ArrayList<>();
+            for (User user : activeUsers) {
+                if (permissionService.hasEventTypePermission(user, type))
+                    result.add(user);
+            }
+            return Collections.unmodifiableList(result);
+        }
+    }
+}
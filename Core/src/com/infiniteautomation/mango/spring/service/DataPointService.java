@@ -36,6 +36,7 @@ import com.infiniteautomation.mango.util.exception.NotFoundException;
 import com.infiniteautomation.mango.util.exception.ValidationException;
 import com.serotonin.InvalidArgumentException;
 import com.serotonin.ShouldNeverHappenException;
+import com.serotonin.db.DaoUtils;
 import com.serotonin.db.MappedRowCallback;
 import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.Common.Rollups;
@@ -53,6 +54,7 @@ import com.serotonin.m2m2.module.ModuleRegistry;
 import com.serotonin.m2m2.module.definitions.dataPoint.DataPointChangeDefinition;
 import com.serotonin.m2m2.rt.RTException;
 import com.serotonin.m2m2.rt.dataImage.DataPointRT;
+import com.serotonin.m2m2.rt.dataImage.PointValueHistory;
 import com.serotonin.m2m2.rt.dataImage.PointValueTime;
 import com.serotonin.m2m2.rt.dataImage.SetPointSource;
 import com.serotonin.m2m2.rt.dataImage.types.DataValue;
@@ -173,9 +175,12 @@ public class DataPointService extends AbstractVOService<DataPointVO, DataPointTa
         }
 
         if(vo.isEnabled()) {
-            List<AbstractPointEventDetectorVO> detectors = eventDetectorDao.getWithSource(vo.getId(), vo);
-            DataPointWithEventDetectors dp = new DataPointWithEventDetectors(vo, detectors);
-            Common.runtimeManager.startDataPoint(dp);
+            //When saved within a batch the point can only be started once it is committed
+            DaoUtils.afterCommit(() -> {
+                List<AbstractPointEventDetectorVO> detectors = eventDetectorDao.getWithSource(vo.getId(), vo);
+                DataPointWithEventDetectors dp = new DataPointWithEventDetectors(vo, detectors);
+                Common.runtimeManager.startDataPoint(dp);
+            });
         }
         return vo;
     }
@@ -202,9 +207,12 @@ public class DataPointService extends AbstractVOService<DataPointVO, DataPointTa
         }
 
         if(vo.isEnabled()) {
-            List<AbstractPointEventDetectorVO> detectors = eventDetectorDao.getWithSource(vo.getId(), vo);
-            DataPointWithEventDetectors dp = new DataPointWithEventDetectors(vo, detectors);
-            Common.runtimeManager.startDataPoint(dp);
+            //When saved within a batch the point can only be started once it is committed
+            DaoUtils.afterCommit(() -> {
+                List<AbstractPointEventDetectorVO> detectors = eventDetectorDao.getWithSource(vo.getId(), vo);
+                DataPointWithEventDetectors dp = new DataPointWithEventDetectors(vo, detectors);
+                Common.runtimeManager.startDataPoint(dp);
+            });
         }
 
         return vo;
@@ -528,6 +536,15 @@ public class DataPointService extends AbstractVOService<DataPointVO, DataPointTa
                 response.addContextualMessage("purgePeriod", "validate.greaterThanZero");
         }
 
+        if (vo.getHistoryWindowPeriods() < 0)
+            response.addContextualMessage("historyWindowPeriods", "validate.cannotBeNegative");
+        else if (vo.getHistoryWindowPeriods() > 0) {
+            if (!Common.TIME_PERIOD_CODES.isValidId(vo.getHistoryWindowPeriodType()))
+                response.addContextualMessage("historyWindowPeriodType", "validate.invalidValue");
+            if (!PointValueHistory.isSupported(vo.getPointLocator().getDataTypeId()))
+                response.addContextualMessage("historyWindowPeriods", "validate.cannotKeepHistoryType", DataTypes.getDataTypeMessage(vo.getPointLocator().getDataTypeId()));
+        }
+
         if (vo.getTextRenderer() == null) {
             response.addContextualMessage("textRenderer", "validate.required");
         }
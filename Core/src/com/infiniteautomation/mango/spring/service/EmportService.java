@@ -21,6 +21,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.util.Map;
@@ -98,6 +99,29 @@ public class EmportService {
                 listener, schedule);
     }
 
+    /**
+     * Create an import task that streams the JSON from a reader, for configurations too large to parse up front.
+     *  The reader is closed by the task once it has been read.
+     * @param json
+     * @return
+     */
+    public ImportTask getImportTask(Reader json, ProgressiveTaskListener listener, boolean schedule, Translations translations) {
+        permissionService.ensurePermission(Common.getUser(), importPermissionDefinition.getPermission());
+        return new ImportTask(json,
+                translations,
+                roleService,
+                usersService,
+                mailingListService,
+                dataSourceService,
+                dataPointService,
+                publisherService,
+                eventHandlerService,
+                jsonDataService,
+                eventDetectorService,
+                systemPermissionService,
+                listener, schedule);
+    }
+
     /**
      * Export JSON as a String
      * @param prettyIndent
@@ -31,6 +31,8 @@ import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.infiniteautomation.mango.util.exception.ValidationException;
 import com.infiniteautomation.mango.util.script.CompiledMangoJavaScript;
 import com.infiniteautomation.mango.util.script.MangoJavaScript;
@@ -112,10 +114,20 @@ public class MangoJavaScriptService {
     private final PermissionService permissionService;
     private final DataPointService dataPointService;
 
+    //Engines shared by all scripts, one for admins with access to Java classes and one without
+    private final Object sharedEnginesLock = new Object();
+    private volatile ScriptEngine adminEngine;
+    private volatile ScriptEngine restrictedEngine;
+    //Cache of compiled scripts by engine and source
+    private final Cache<ScriptKey, CompiledScript> compiledScripts;
+
     @Autowired
     public MangoJavaScriptService(PermissionService permissionService, DataPointService dataPointService) {
         this.dataPointService = dataPointService;
         this.permissionService = permissionService;
+        this.compiledScripts = Caffeine.newBuilder()
+                .maximumSize(Common.envProps.getLong("cache.scripts.size", 10000))
+                .build();
     }
 
     /**
@@ -332,7 +344,9 @@ public class MangoJavaScriptService {
     }
 
     /**
-     * Compile a script to be run and add global bindings
+     * Compile a script to be run. Scripts are compiled by an engine shared with all other scripts
+     *  and cached by their source, the global bindings are those of the shared engine. Evaluate
+     *  the script with its own context to keep its bindings separate, see {@link CompiledMangoJavaScript}.
      *
      * @param script
      * @param wrapInFunction
@@ -340,44 +354,82 @@ public class MangoJavaScriptService {
      * @throws ScriptError
      */
     public CompiledScript compile(String script, boolean wrapInFunction) throws ScriptError {
+        String toCompile;
+        if(wrapInFunction) {
+            toCompile = SCRIPT_PREFIX + script + SCRIPT_SUFFIX;
+        }else {
+            toCompile = script;
+        }
+
         try {
-            final ScriptEngine engine = newEngine();
+            return compile(getSharedEngine(permissionService.hasAdminRole(Common.getUser())), toCompile);
+        }catch(ScriptException e) {
+            throw ScriptError.create(e, wrapInFunction);
+        }
+    }
 
-            // Add constants to the context
-            Bindings globalBindings = new SimpleBindings();
+    private CompiledScript compile(ScriptEngine engine, String source) throws ScriptException {
+        ScriptKey key = new ScriptKey(engine, source);
+        CompiledScript compiled = compiledScripts.getIfPresent(key);
+        if(compiled == null) {
+            synchronized(engine) {
+                compiled = ((Compilable)engine).compile(source);
+            }
+            compiledScripts.put(key, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * Get the engine shared by all scripts with the same access to Java classes
+     * @param admin
+     * @return
+     */
+    private ScriptEngine getSharedEngine(boolean admin) {
+        ScriptEngine engine = admin ? adminEngine : restrictedEngine;
+        if(engine == null) {
+            synchronized(sharedEnginesLock) {
+                engine = admin ? adminEngine : restrictedEngine;
+                if(engine == null) {
+                    engine = createSharedEngine(admin);
+                    if(admin)
+                        adminEngine = engine;
+                    else
+                        restrictedEngine = engine;
+                }
+            }
+        }
+        return engine;
+    }
 
-            //left here for legacy compatibility
-            globalBindings.put("SECOND", Common.TimePeriods.SECONDS);
-            globalBindings.put("MINUTE", Common.TimePeriods.MINUTES);
-            globalBindings.put("HOUR", Common.TimePeriods.HOURS);
-            globalBindings.put("DAY", Common.TimePeriods.DAYS);
-            globalBindings.put("WEEK", Common.TimePeriods.WEEKS);
-            globalBindings.put("MONTH", Common.TimePeriods.MONTHS);
-            globalBindings.put("YEAR", Common.TimePeriods.YEARS);
+    private ScriptEngine createSharedEngine(boolean admin) {
+        NashornScriptEngineFactory factory = new NashornScriptEngineFactory();
+        final ScriptEngine engine = admin ? factory.getScriptEngine() : factory.getScriptEngine(new NoJavaFilter());
 
-            for(IntStringPair isp : Common.TIME_PERIOD_CODES.getIdKeys())
-                globalBindings.put(Common.TIME_PERIOD_CODES.getCode(isp.getKey()), isp.getKey());
+        // Add constants to the context
+        Bindings globalBindings = new SimpleBindings();
 
-            for(IntStringPair isp : Common.ROLLUP_CODES.getIdKeys(Common.Rollups.NONE))
-                globalBindings.put(Common.ROLLUP_CODES.getCode(isp.getKey()), isp.getKey());
+        //left here for legacy compatibility
+        globalBindings.put("SECOND", Common.TimePeriods.SECONDS);
+        globalBindings.put("MINUTE", Common.TimePeriods.MINUTES);
+        globalBindings.put("HOUR", Common.TimePeriods.HOURS);
+        globalBindings.put("DAY", Common.TimePeriods.DAYS);
+        globalBindings.put("WEEK", Common.TimePeriods.WEEKS);
+        globalBindings.put("MONTH", Common.TimePeriods.MONTHS);
+        globalBindings.put("YEAR", Common.TimePeriods.YEARS);
 
-            //Add in Additional Utilities with Global Scope
-            globalBindings.put(DateTimeUtility.CONTEXT_KEY, new DateTimeUtility());
-            globalBindings.put(UnitUtility.CONTEXT_KEY, new UnitUtility());
+        for(IntStringPair isp : Common.TIME_PERIOD_CODES.getIdKeys())
+            globalBindings.put(Common.TIME_PERIOD_CODES.getCode(isp.getKey()), isp.getKey());
 
-            engine.setBindings(globalBindings, ScriptContext.GLOBAL_SCOPE);
+        for(IntStringPair isp : Common.ROLLUP_CODES.getIdKeys(Common.Rollups.NONE))
+            globalBindings.put(Common.ROLLUP_CODES.getCode(isp.getKey()), isp.getKey());
 
-            String toCompile;
-            if(wrapInFunction) {
-                toCompile = SCRIPT_PREFIX + script + SCRIPT_SUFFIX;
-            }else {
-                toCompile = script;
-            }
+        //Add in Additional Utilities with Global Scope
+        globalBindings.put(DateTimeUtility.CONTEXT_KEY, new DateTimeUtility());
+        globalBindings.put(UnitUtility.CONTEXT_KEY, new UnitUtility());
 
-            return ((Compilable)engine).compile(toCompile);
-        }catch(ScriptException e) {
-            throw ScriptError.create(e, wrapInFunction);
-        }
+        engine.setBindings(globalBindings, ScriptContext.GLOBAL_SCOPE);
+        return engine;
     }
 
     /**
@@ -438,7 +490,8 @@ public class MangoJavaScriptService {
         engineScope.put(ScriptLog.CONTEXT_KEY, script.getLog());
 
         try {
-            script.getEngine().eval(getGlobalFunctions());
+            ScriptEngine engine = script.getCompiledScript().getEngine();
+            compile(engine, getGlobalFunctions()).eval(script.getEngine().getContext());
         } catch (ScriptException e) {
             throw ScriptError.create(e, script.isWrapInFunction());
         } catch (RuntimeException e) {
@@ -480,7 +533,7 @@ public class MangoJavaScriptService {
                 for(ScriptUtility util : script.getAdditionalUtilities())
                     util.setResult(script.getResult());
 
-                Object resultObject = script.getCompiledScript().eval();
+                Object resultObject = script.getCompiledScript().eval(script.getEngine().getContext());
                 script.getResult().setResult(resultObject);
 
                 return null;
@@ -591,7 +644,7 @@ public class MangoJavaScriptService {
 
     /* Utilities for Script Execution */
     /**
-     * Create a new script engine
+     * Create a new script engine, scripts compiled by this service are run by engines shared between them
      * @param - to help restrict script execution access so that only admin can access java classes
      * @return
      */
@@ -603,6 +656,34 @@ public class MangoJavaScriptService {
             return factory.getScriptEngine(new NoJavaFilter());
     }
 
+    /**
+     * Key for compiled scripts, the same source is compiled once per engine
+     */
+    private static final class ScriptKey {
+        private final ScriptEngine engine;
+        private final String source;
+
+        ScriptKey(ScriptEngine engine, String source) {
+            this.engine = engine;
+            this.source = source;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(engine) + source.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if(this == obj)
+                return true;
+            if(!(obj instanceof ScriptKey))
+                return false;
+            ScriptKey other = (ScriptKey) obj;
+            return engine == other.engine && source.equals(other.source);
+        }
+    }
+
     private static class NoJavaFilter implements ClassFilter {
 
         @Override
@@ -660,6 +741,11 @@ public class MangoJavaScriptService {
      */
     public void clearGlobalFunctions() {
         synchronized(globalFunctionsLock) {
+            if(FUNCTIONS != null) {
+                for(ScriptEngine engine : new ScriptEngine[] {adminEngine, restrictedEngine})
+                    if(engine != null)
+                        compiledScripts.invalidate(new ScriptKey(engine, FUNCTIONS));
+            }
             FUNCTIONS = null;
         }
     }
@@ -6,6 +6,7 @@ package com.infiniteautomation.mango.spring.service;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.LoadingCache;
 import com.infiniteautomation.mango.permission.MangoPermission;
+import com.infiniteautomation.mango.permission.RoleBits;
 import com.infiniteautomation.mango.spring.MangoRuntimeContextConfiguration;
 import com.infiniteautomation.mango.spring.events.DaoEvent;
 import com.infiniteautomation.mango.util.Functions;
@@ -57,6 +58,8 @@ public class PermissionService {
 
     //Cache of role xid to inheritance
     private final LoadingCache<String, RoleInheritance> roleHierarchyCache;
+    //Cache of a holder's set of roles (by identity) to the bitset of all roles inherited from them
+    private final LoadingCache<Set<Role>, long[]> inheritedRoleBitsCache;
 
     @Autowired
     public PermissionService(RoleDao roleDao,
@@ -71,6 +74,9 @@ public class PermissionService {
         this.roleHierarchyCache = Caffeine.newBuilder()
                 .maximumSize(Common.envProps.getLong("cache.roles.size", 1000))
                 .build(this::loadRoleInheritance);
+        this.inheritedRoleBitsCache = Caffeine.newBuilder()
+                .weakKeys()
+                .build(roles -> RoleBits.of(getAllInheritedRoles(roles)));
     }
 
     /**
@@ -166,8 +172,7 @@ public class PermissionService {
      */
     public boolean hasAdminRole(PermissionHolder user) {
         if (!isValidPermissionHolder(user)) return false;
-        Set<Role> heldRoles = getAllInheritedRoles(user);
-        return heldRoles.contains(PermissionHolder.SUPERADMIN_ROLE);
+        return RoleBits.contains(getInheritedRoleBits(user), PermissionHolder.SUPERADMIN_ROLE);
     }
 
     /**
@@ -195,9 +200,7 @@ public class PermissionService {
             return true;
         }
 
-        Set<Role> inherited = getAllInheritedRoles(user);
-        Set<Set<Role>> minterms = permission.getRoles();
-        return minterms.stream().anyMatch(inherited::containsAll);
+        return permission.grantedTo(getInheritedRoleBits(user));
     }
 
     /**
@@ -435,8 +438,12 @@ public class PermissionService {
      * @return
      */
     public Set<Role> getAllInheritedRoles(PermissionHolder holder) {
-        Set<Role> allRoles = new HashSet<>(holder.getRoles());
-        for (Role role : holder.getRoles()) {
+        return getAllInheritedRoles(holder.getRoles());
+    }
+
+    private Set<Role> getAllInheritedRoles(Set<Role> roles) {
+        Set<Role> allRoles = new HashSet<>(roles);
+        for (Role role : roles) {
             RoleInheritance inheritance = roleHierarchyCache.get(role.getXid());
             if (inheritance != null) {
                 allRoles.addAll(inheritance.inherited);
@@ -445,6 +452,16 @@ public class PermissionService {
         return Collections.unmodifiableSet(allRoles);
     }
 
+    /**
+     * Get the permission holders roles and all roles inherited by those roles as a bitset,
+     *  the bitset is cached for as long as the holder keeps the same set of roles
+     * @param holder
+     * @return
+     */
+    public long[] getInheritedRoleBits(PermissionHolder holder) {
+        return inheritedRoleBitsCache.get(holder.getRoles());
+    }
+
     /**
      * Validate a permission.  This will validate that:
      *
@@ -642,6 +659,7 @@ public class PermissionService {
                 //TODO Mango 4.0 Invalidate all roles that inherit
                 //TODO Invalidate me
                 roleHierarchyCache.invalidateAll();
+                inheritedRoleBitsCache.invalidateAll();
                 break;
             default:
                 break;
@@ -10,38 +10,42 @@ import java.util.List;
 import com.serotonin.ShouldNeverHappenException;
 import com.serotonin.m2m2.rt.dataImage.types.DataValue;
 import com.serotonin.m2m2.view.stats.IValueTime;
-import com.serotonin.m2m2.view.stats.StatisticsGenerator;
 
 /**
  * Enhanced statistics using Rollups Discussion document
  * 
  * @author Matthew Lohbihler, Terry Packer
  */
-public class AnalogStatistics implements StatisticsGenerator {
-    
+public class AnalogStatistics implements RollupStatisticsGenerator {
+
+    //Time of a value that has not been seen
+    private static final long NO_TIME = Long.MIN_VALUE;
+
     // Configuration values.
     private final long periodStart;
     private final long periodEnd;
     private boolean done = false;
     
-    // Calculated values.
-    private Double minimumValue = Double.NaN;
-    private Long minimumTime;
-    private Double maximumValue = Double.NaN;
-    private Long maximumTime;
-    private Double average = Double.NaN;
-    private Double integral = Double.NaN;
+    // Calculated values, kept as primitives so adding values does not allocate
+    private double minimumValue = Double.NaN;
+    private long minimumTime = NO_TIME;
+    private double maximumValue = Double.NaN;
+    private long maximumTime = NO_TIME;
+    private double average = Double.NaN;
+    private double integral = Double.NaN;
     private double sum;
-    private Double firstValue;
-    private Long firstTime;
-    private Double lastValue;
-    private Long lastTime;
-    private Double startValue;
+    private double firstValue;
+    private long firstTime = NO_TIME;
+    private double lastValue;
+    private long lastTime = NO_TIME;
+    private boolean hasStartValue;
+    private double startValue;
     private int count;
-    private Double delta = Double.NaN;
+    private double delta = Double.NaN;
 
     // State values used for calculating weighted average.
-    private Double latestValue;
+    private boolean hasLatestValue;
+    private double latestValue;
     private long latestTime;
     private long totalDuration;
 
@@ -61,6 +65,7 @@ public class AnalogStatistics implements StatisticsGenerator {
         if (startValue != null && startValue.getValue() != null) {
             minimumValue = maximumValue = latestValue = this.startValue = startValue.getValue().getDoubleValue();
             minimumTime = maximumTime = latestTime = periodStart;
+            hasStartValue = hasLatestValue = true;
         }
     }
 
@@ -73,34 +78,79 @@ public class AnalogStatistics implements StatisticsGenerator {
     public void addValueTime(DataValue value, long time) {
         if (value == null)
             return;
+        addValueTime(value.getDoubleValue(), time);
+    }
 
-        double doubleValue = value.getDoubleValue();
-
+    /**
+     * Add a value without the cost of a {@link DataValue}
+     * @param doubleValue
+     * @param time
+     */
+    public void addValueTime(double doubleValue, long time) {
         count++;
 
-        if (firstValue == null) {
+        if (firstTime == NO_TIME) {
             firstValue = doubleValue;
             firstTime = time;
         }
 
-        if (minimumValue.isNaN() || minimumValue > doubleValue) {
+        if (Double.isNaN(minimumValue) || minimumValue > doubleValue) {
             minimumValue = doubleValue;
             minimumTime = time;
         }
 
-        if (maximumValue.isNaN() || maximumValue < doubleValue) {
+        if (Double.isNaN(maximumValue) || maximumValue < doubleValue) {
             maximumValue = doubleValue;
             maximumTime = time;
         }
 
         updateAverage(doubleValue, time);
 
-        sum += value.getDoubleValue();
+        sum += doubleValue;
 
-        lastValue = value.getDoubleValue();
+        lastValue = doubleValue;
         lastTime = time;
     }
 
+    @Override
+    public void addRollup(PointValueRollup rollup) {
+        if (rollup.getCount() == 0)
+            return;
+
+        count += rollup.getCount();
+
+        if (firstTime == NO_TIME) {
+            firstValue = rollup.getFirstValue();
+            firstTime = rollup.getFirstTime();
+        }
+
+        if (Double.isNaN(minimumValue) || minimumValue > rollup.getMinimumValue()) {
+            minimumValue = rollup.getMinimumValue();
+            minimumTime = rollup.getMinimumTime();
+        }
+
+        if (Double.isNaN(maximumValue) || maximumValue < rollup.getMaximumValue()) {
+            maximumValue = rollup.getMaximumValue();
+            maximumTime = rollup.getMaximumTime();
+        }
+
+        updateAverage(rollup.getFirstValue(), rollup.getFirstTime());
+        long duration = rollup.getLastTime() - rollup.getFirstTime();
+        if (duration > 0) {
+            if (Double.isNaN(average))
+                average = 0D;
+            average = average + rollup.getWeightedSum();
+            totalDuration += duration;
+        }
+        latestValue = rollup.getLastValue();
+        latestTime = rollup.getLastTime();
+
+        sum += rollup.getSum();
+
+        lastValue = rollup.getLastValue();
+        lastTime = rollup.getLastTime();
+    }
+
     @Override
     public void done() {
         if(done)
@@ -110,7 +160,7 @@ public class AnalogStatistics implements StatisticsGenerator {
         updateAverage(Double.NaN, periodEnd);
         // Average will not be NaN when we have at least one value in period AND an end value
         // OR more than 1 value in the period
-        if (!average.isNaN()) {
+        if (!Double.isNaN(average)) {
             integral = average / 1000D; // integrate over seconds not msecs
             average /= totalDuration;
         } else {
@@ -118,24 +168,24 @@ public class AnalogStatistics implements StatisticsGenerator {
             // data set, we will
             // have a latest value, and a duration of zero. For this value we set the average equal
             // to that value.
-            if(lastValue != null) {
+            if(lastTime != NO_TIME) {
                 average = lastValue;
                 // Nothing to integrate
                 integral = 0D;
             }
         }
 
-        if (firstValue != null) {
-            if(startValue != null)
+        if (firstTime != NO_TIME) {
+            if(hasStartValue)
                 delta = lastValue - startValue;
             else
                 delta = lastValue - firstValue;
-        }else if(startValue != null)
+        }else if(hasStartValue)
             delta = 0.0D; //No data but a start value
     }
 
     private void updateAverage(double value, long time) {
-        if (latestValue != null) {
+        if (hasLatestValue) {
             // The duration for which the last value was in force.
             long duration = time - latestTime;
 
@@ -143,7 +193,7 @@ public class AnalogStatistics implements StatisticsGenerator {
                 // Determine the weighted average of the latest value. The average value at this
                 // point still needs to
                 // be divided by the total duration of the period.
-                if (average.isNaN())
+                if (Double.isNaN(average))
                     average = 0D;
                 average = average + ( latestValue * (double)duration);
                 totalDuration += duration;
@@ -151,6 +201,7 @@ public class AnalogStatistics implements StatisticsGenerator {
         }
 
         // Reset the latest value.
+        hasLatestValue = true;
         latestValue = value;
         latestTime = time;
     }
@@ -170,7 +221,7 @@ public class AnalogStatistics implements StatisticsGenerator {
     }
 
     public Long getMinimumTime() {
-        return minimumTime;
+        return minimumTime == NO_TIME ? null : minimumTime;
     }
 
     public Double getMaximumValue() {
@@ -178,7 +229,7 @@ public class AnalogStatistics implements StatisticsGenerator {
     }
 
     public Long getMaximumTime() {
-        return maximumTime;
+        return maximumTime == NO_TIME ? null : maximumTime;
     }
 
     public Double getAverage() {
@@ -194,23 +245,23 @@ public class AnalogStatistics implements StatisticsGenerator {
     }
 
     public Double getStartValue() {
-        return startValue;
+        return hasStartValue ? startValue : null;
     }
 
     public Double getFirstValue() {
-        return firstValue;
+        return firstTime == NO_TIME ? null : firstValue;
     }
 
     public Long getFirstTime() {
-        return firstTime;
+        return firstTime == NO_TIME ? null : firstTime;
     }
 
     public Double getLastValue() {
-        return lastValue;
+        return lastTime == NO_TIME ? null : lastValue;
     }
 
     public Long getLastTime() {
-        return lastTime;
+        return lastTime == NO_TIME ? null : lastTime;
     }
 
     public int getCount() {
@@ -228,19 +279,19 @@ public class AnalogStatistics implements StatisticsGenerator {
     @Override
     public String toString() {
         return "{minimumValue: " + minimumValue + 
-                ", minimumTime: " + minimumTime + 
+                ", minimumTime: " + getMinimumTime() + 
                 ", maximumValue: " + maximumValue + 
-                ", maximumTime: " + maximumTime + 
+                ", maximumTime: " + getMaximumTime() + 
                 ", average: " + average + 
                 ", sum: " + sum + 
                 ", count: " + count + 
                 ", delta: " + delta + 
                 ", integral: " + integral + 
-                ", startValue: " + startValue +
-                ", firstValue: " + firstValue + 
-                ", firstTime: " + firstTime + 
-                ", lastValue: " + lastValue + 
-                ", lastTime: " + lastTime + 
+                ", startValue: " + getStartValue() +
+                ", firstValue: " + getFirstValue() + 
+                ", firstTime: " + getFirstTime() + 
+                ", lastValue: " + getLastValue() + 
+                ", lastTime: " + getLastTime() + 
                 ", periodStartTime: " + periodStart
                 + ", periodEndTime: " + periodEnd + "}";
     }
@@ -0,0 +1,347 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.statistics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.rt.dataImage.types.BinaryValue;
+import com.serotonin.m2m2.rt.dataImage.types.DataValue;
+import com.serotonin.m2m2.rt.dataImage.types.MultistateValue;
+import com.serotonin.m2m2.rt.dataImage.types.NumericValue;
+
+/**
+ * Summary of the numeric, binary or multistate values of a point in the period
+ *  periodStart <= time < periodEnd. Summaries hold enough to be merged into summaries of longer periods
+ *  and into {@link AnalogStatistics}, {@link StartsAndRuntimeList} and {@link ValueChangeCounter} with the
+ *  same result as adding the values themselves.
+ *
+ * Values and summaries must be added in chronological order. Durations are only counted between values
+ *  inside the period, the time before the first and after the last value depends on the neighbouring
+ *  periods and is added when summaries are merged.
+ */
+public class PointValueRollup {
+
+    private static final int version = 1;
+
+    private final int dataType;
+    private final long periodStart;
+    private final long periodEnd;
+
+    private int count;
+    //Number of values that differ from the value before them
+    private int changes;
+    private double firstValue;
+    private long firstTime;
+    private double lastValue;
+    private long lastTime;
+    private double minimumValue;
+    private long minimumTime;
+    private double maximumValue;
+    private long maximumTime;
+    private double sum;
+    //Sum of value * time until the next value
+    private double weightedSum;
+
+    //Starts and runtime of each state of binary and multistate points
+    private int stateCount;
+    private int[] stateValues;
+    private int[] stateStarts;
+    private long[] stateRuntimes;
+
+    public PointValueRollup(int dataType, long periodStart, long periodEnd) {
+        this.dataType = dataType;
+        this.periodStart = periodStart;
+        this.periodEnd = periodEnd;
+        if (tracksStates(dataType)) {
+            stateValues = new int[2];
+            stateStarts = new int[2];
+            stateRuntimes = new long[2];
+        }
+    }
+
+    /**
+     * @param dataType
+     * @return true if values of this type can be summarized
+     */
+    public static boolean supports(int dataType) {
+        return dataType == DataTypes.NUMERIC || tracksStates(dataType);
+    }
+
+    private static boolean tracksStates(int dataType) {
+        return dataType == DataTypes.BINARY || dataType == DataTypes.MULTISTATE;
+    }
+
+    public void add(double value, long time) {
+        if (count == 0) {
+            firstValue = minimumValue = maximumValue = value;
+            firstTime = minimumTime = maximumTime = time;
+        } else {
+            followedBy(value, time);
+            if (minimumValue > value) {
+                minimumValue = value;
+                minimumTime = time;
+            }
+            if (maximumValue < value) {
+                maximumValue = value;
+                maximumTime = time;
+            }
+        }
+        if (stateValues != null) {
+            int index = stateIndex(value);
+            stateStarts[index]++;
+        }
+        count++;
+        sum += value;
+        lastValue = value;
+        lastTime = time;
+    }
+
+    /**
+     * Add the summary of a later period that lies within this one
+     * @param rollup
+     */
+    public void add(PointValueRollup rollup) {
+        if (rollup.count == 0)
+            return;
+        if (count == 0) {
+            firstValue = rollup.firstValue;
+            firstTime = rollup.firstTime;
+            minimumValue = rollup.minimumValue;
+            minimumTime = rollup.minimumTime;
+            maximumValue = rollup.maximumValue;
+            maximumTime = rollup.maximumTime;
+        } else {
+            followedBy(rollup.firstValue, rollup.firstTime);
+            if (minimumValue > rollup.minimumValue) {
+                minimumValue = rollup.minimumValue;
+                minimumTime = rollup.minimumTime;
+            }
+            if (maximumValue < rollup.maximumValue) {
+                maximumValue = rollup.maximumValue;
+                maximumTime = rollup.maximumTime;
+            }
+        }
+        if (stateValues != null) {
+            for (int i = 0; i < rollup.stateCount; i++) {
+                int index = stateIndex(rollup.stateValues[i]);
+                stateStarts[index] += rollup.stateStarts[i];
+                stateRuntimes[index] += rollup.stateRuntimes[i];
+            }
+        }
+        count += rollup.count;
+        changes += rollup.changes;
+        sum += rollup.sum;
+        weightedSum += rollup.weightedSum;
+        lastValue = rollup.lastValue;
+        lastTime = rollup.lastTime;
+    }
+
+    /**
+     * The last value is in force until the next one
+     */
+    private void followedBy(double value, long time) {
+        long duration = time - lastTime;
+        weightedSum += lastValue * duration;
+        if (Double.compare(lastValue, value) != 0)
+            changes++;
+        if (stateValues != null) {
+            int index = stateIndex(lastValue);
+            stateRuntimes[index] += duration;
+        }
+    }
+
+    /**
+     * Find or add the state, which may replace the state arrays
+     */
+    private int stateIndex(double value) {
+        int state = (int) value;
+        for (int i = 0; i < stateCount; i++)
+            if (stateValues[i] == state)
+                return i;
+        if (stateCount == stateValues.length) {
+            stateValues = Arrays.copyOf(stateValues, stateCount * 2);
+            stateStarts = Arrays.copyOf(stateStarts, stateCount * 2);
+            stateRuntimes = Arrays.copyOf(stateRuntimes, stateCount * 2);
+        }
+        stateValues[stateCount] = state;
+        return stateCount++;
+    }
+
+    public int getDataType() {
+        return dataType;
+    }
+
+    public long getPeriodStart() {
+        return periodStart;
+    }
+
+    public long getPeriodEnd() {
+        return periodEnd;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getChanges() {
+        return changes;
+    }
+
+    public double getFirstValue() {
+        return firstValue;
+    }
+
+    public long getFirstTime() {
+        return firstTime;
+    }
+
+    public double getLastValue() {
+        return lastValue;
+    }
+
+    public long getLastTime() {
+        return lastTime;
+    }
+
+    public double getMinimumValue() {
+        return minimumValue;
+    }
+
+    public long getMinimumTime() {
+        return minimumTime;
+    }
+
+    public double getMaximumValue() {
+        return maximumValue;
+    }
+
+    public long getMaximumTime() {
+        return maximumTime;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public double getWeightedSum() {
+        return weightedSum;
+    }
+
+    public DataValue getFirstDataValue() {
+        return toDataValue(firstValue);
+    }
+
+    public DataValue getLastDataValue() {
+        return toDataValue(lastValue);
+    }
+
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    public DataValue getStateDataValue(int index) {
+        return toDataValue(stateValues[index]);
+    }
+
+    public int getStateStarts(int index) {
+        return stateStarts[index];
+    }
+
+    public long getStateRuntime(int index) {
+        return stateRuntimes[index];
+    }
+
+    private DataValue toDataValue(double value) {
+        switch (dataType) {
+            case DataTypes.BINARY:
+                return new BinaryValue(value != 0);
+            case DataTypes.MULTISTATE:
+                return new MultistateValue((int) value);
+            default:
+                return new NumericValue(value);
+        }
+    }
+
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(version);
+        out.writeByte(dataType);
+        out.writeLong(periodEnd - periodStart);
+        out.writeInt(count);
+        out.writeInt(changes);
+        out.writeDouble(firstValue);
+        out.writeLong(firstTime);
+        out.writeDouble(lastValue);
+        out.writeLong(lastTime);
+        out.writeDouble(minimumValue);
+        out.writeLong(minimumTime);
+        out.writeDouble(maximumValue);
+        out.writeLong(maximumTime);
+        out.writeDouble(sum);
+        out.writeDouble(weightedSum);
+        out.writeShort(stateCount);
+        for (int i = 0; i < stateCount; i++) {
+            out.writeInt(stateValues[i]);
+            out.writeInt(stateStarts[i]);
+            out.writeLong(stateRuntimes[i]);
+        }
+    }
+
+    /**
+     * @param periodStart
+     * @param in
+     * @return a summary saved by {@link #write(DataOutput)}
+     * @throws IOException
+     */
+    public static PointValueRollup read(long periodStart, DataInput in) throws IOException {
+        int ver = in.readUnsignedByte();
+        if (ver != 1)
+            throw new IOException("Unknown rollup version " + ver);
+        int dataType = in.readUnsignedByte();
+        PointValueRollup rollup = new PointValueRollup(dataType, periodStart, periodStart + in.readLong());
+        rollup.count = in.readInt();
+        rollup.changes = in.readInt();
+        rollup.firstValue = in.readDouble();
+        rollup.firstTime = in.readLong();
+        rollup.lastValue = in.readDouble();
+        rollup.lastTime = in.readLong();
+        rollup.minimumValue = in.readDouble();
+        rollup.minimumTime = in.readLong();
+        rollup.maximumValue = in.readDouble();
+        rollup.maximumTime = in.readLong();
+        rollup.sum = in.readDouble();
+        rollup.weightedSum = in.readDouble();
+        int states = in.readUnsignedShort();
+        if (states > 0) {
+            rollup.stateValues = new int[states];
+            rollup.stateStarts = new int[states];
+            rollup.stateRuntimes = new long[states];
+            for (int i = 0; i < states; i++) {
+                rollup.stateValues[i] = in.readInt();
+                rollup.stateStarts[i] = in.readInt();
+                rollup.stateRuntimes[i] = in.readLong();
+            }
+            rollup.stateCount = states;
+        }
+        return rollup;
+    }
+
+    @Override
+    public String toString() {
+        return "{periodStart: " + periodStart +
+                ", periodEnd: " + periodEnd +
+                ", count: " + count +
+                ", changes: " + changes +
+                ", firstValue: " + firstValue +
+                ", firstTime: " + firstTime +
+                ", lastValue: " + lastValue +
+                ", lastTime: " + lastTime +
+                ", minimumValue: " + minimumValue +
+                ", maximumValue: " + maximumValue +
+                ", sum: " + sum + "}";
+    }
+}
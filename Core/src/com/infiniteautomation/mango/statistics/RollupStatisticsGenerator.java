@@ -0,0 +1,20 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.statistics;
+
+import com.serotonin.m2m2.view.stats.StatisticsGenerator;
+
+/**
+ * A statistics generator that can also be built from saved {@link PointValueRollup}s
+ */
+public interface RollupStatisticsGenerator extends StatisticsGenerator {
+    /**
+     * Used to add a summary of values in place of the values themselves, the summary period must lie
+     * within this period and summaries must be added in chronological order
+     *
+     * @param rollup
+     *            the summary to add
+     */
+    void addRollup(PointValueRollup rollup);
+}
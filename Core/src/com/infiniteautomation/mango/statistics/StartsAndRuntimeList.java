@@ -15,14 +15,16 @@ import java.util.Objects;
 import com.serotonin.ShouldNeverHappenException;
 import com.serotonin.m2m2.rt.dataImage.types.DataValue;
 import com.serotonin.m2m2.view.stats.IValueTime;
-import com.serotonin.m2m2.view.stats.StatisticsGenerator;
 
 /**
  * Track runtime, state changes and percentage in state of total runtime (not period)
  * 
  * @author Matthew Lohbihler, Terry Packer
  */
-public class StartsAndRuntimeList implements StatisticsGenerator {
+public class StartsAndRuntimeList implements RollupStatisticsGenerator {
+    //Time of a value that has not been seen
+    private static final long NO_TIME = Long.MIN_VALUE;
+
     // Configuration values.
     private final long periodStart;
     private final long periodEnd;
@@ -31,9 +33,9 @@ public class StartsAndRuntimeList implements StatisticsGenerator {
     // Calculated values.
     private DataValue startValue;
     private DataValue firstValue;
-    private Long firstTime;
+    private long firstTime = NO_TIME;
     private DataValue lastValue;
-    private Long lastTime;
+    private long lastTime = NO_TIME;
     private final List<StartsAndRuntime> data = new ArrayList<StartsAndRuntime>();
     private int count;
 
@@ -87,6 +89,33 @@ public class StartsAndRuntimeList implements StatisticsGenerator {
         lastTime = time;
     }
 
+    @Override
+    public void addRollup(PointValueRollup rollup) {
+        if (rollup.getCount() == 0)
+            return;
+
+        count += rollup.getCount();
+
+        if (firstValue == null) {
+            firstValue = rollup.getFirstDataValue();
+            firstTime = rollup.getFirstTime();
+        }
+
+        if (sar != null)
+            sar.runtime += rollup.getFirstTime() - latestTime;
+
+        for (int i = 0; i < rollup.getStateCount(); i++) {
+            StartsAndRuntime s = get(rollup.getStateDataValue(i));
+            s.starts += rollup.getStateStarts(i);
+            s.runtime += rollup.getStateRuntime(i);
+        }
+
+        lastValue = rollup.getLastDataValue();
+        lastTime = rollup.getLastTime();
+        latestTime = lastTime;
+        sar = get(lastValue);
+    }
+
     @Override
     public void done() {
         if(done)
@@ -135,7 +164,7 @@ public class StartsAndRuntimeList implements StatisticsGenerator {
     }
 
     public Long getFirstTime() {
-        return firstTime;
+        return firstTime == NO_TIME ? null : firstTime;
     }
 
     public DataValue getLastValue() {
@@ -143,7 +172,7 @@ public class StartsAndRuntimeList implements StatisticsGenerator {
     }
 
     public Long getLastTime() {
-        return lastTime;
+        return lastTime == NO_TIME ? null : lastTime;
     }
 
     public int getCount(){
@@ -162,6 +191,10 @@ public class StartsAndRuntimeList implements StatisticsGenerator {
     }
 
     private StartsAndRuntime get(DataValue value) {
+        //Repeated values are in the current state
+        if (sar != null && Objects.equals(sar.value, value))
+            return sar;
+
         for (StartsAndRuntime sar : data) {
             if (Objects.equals(sar.value, value))
                 return sar;
@@ -185,9 +218,9 @@ public class StartsAndRuntimeList implements StatisticsGenerator {
         		", count: " + count +
         		", startValue: " + startValue +
         		", firstValue: " + firstValue +
-        		", firstTime: " + firstTime + 
+        		", firstTime: " + getFirstTime() + 
         		", lastValue: " + lastValue +
-        		", lastTime: " + lastTime +
+        		", lastTime: " + getLastTime() +
         		"}";
     }
 }
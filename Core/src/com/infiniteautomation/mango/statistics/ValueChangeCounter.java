@@ -10,12 +10,14 @@ import java.util.Objects;
 import com.serotonin.ShouldNeverHappenException;
 import com.serotonin.m2m2.rt.dataImage.types.DataValue;
 import com.serotonin.m2m2.view.stats.IValueTime;
-import com.serotonin.m2m2.view.stats.StatisticsGenerator;
 
 /**
  * @author Matthew Lohbihler
  */
-public class ValueChangeCounter implements StatisticsGenerator {
+public class ValueChangeCounter implements RollupStatisticsGenerator {
+    //Time of a value that has not been seen
+    private static final long NO_TIME = Long.MIN_VALUE;
+
     // Configuration values.
     private final long periodStart;
     private final long periodEnd;
@@ -24,9 +26,9 @@ public class ValueChangeCounter implements StatisticsGenerator {
     // Calculated values
     private DataValue startValue;
     private DataValue firstValue;
-    private Long firstTime;
+    private long firstTime = NO_TIME;
     private DataValue lastValue;
-    private Long lastTime;
+    private long lastTime = NO_TIME;
     private int count;
     private int changes;
 
@@ -75,6 +77,26 @@ public class ValueChangeCounter implements StatisticsGenerator {
         lastTime = time;
     }
 
+    @Override
+    public void addRollup(PointValueRollup rollup) {
+        if (rollup.getCount() == 0)
+            return;
+
+        count += rollup.getCount();
+
+        DataValue first = rollup.getFirstDataValue();
+        if (firstValue == null) {
+            firstValue = first;
+            firstTime = rollup.getFirstTime();
+        }
+
+        if (!Objects.equals(latestValue, first))
+            changes++;
+        changes += rollup.getChanges();
+        latestValue = lastValue = rollup.getLastDataValue();
+        lastTime = rollup.getLastTime();
+    }
+
     @Override
     public void done() {
         if(done)
@@ -101,7 +123,7 @@ public class ValueChangeCounter implements StatisticsGenerator {
     }
 
     public Long getFirstTime() {
-        return firstTime;
+        return firstTime == NO_TIME ? null : firstTime;
     }
 
     public DataValue getLastValue() {
@@ -109,7 +131,7 @@ public class ValueChangeCounter implements StatisticsGenerator {
     }
 
     public Long getLastTime() {
-        return lastTime;
+        return lastTime == NO_TIME ? null : lastTime;
     }
 
     public int getCount() {
@@ -130,9 +152,9 @@ public class ValueChangeCounter implements StatisticsGenerator {
                 ", changes: " + changes + 
                 ", startValue: " + startValue +
                 ", firstValue: " + firstValue + 
-                ", firstTime: " + firstTime + 
+                ", firstTime: " + getFirstTime() + 
                 ", lastValue: " + lastValue + 
-                ", lastTime: " + lastTime + 
+                ", lastTime: " + getLastTime() + 
                 ", periodStartTime: " + periodStart
                 + ", periodEndTime: " + periodEnd + "}";
     }
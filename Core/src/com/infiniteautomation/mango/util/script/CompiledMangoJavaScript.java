@@ -50,6 +50,7 @@ import com.serotonin.m2m2.vo.permission.PermissionHolder;
 public class CompiledMangoJavaScript {
 
     private CompiledScript compiledScript;
+    private ScriptEngine engine;
 
     private final ScriptPointValueSetter setter;
     private final ScriptLog log;
@@ -146,7 +147,8 @@ public class CompiledMangoJavaScript {
     }
 
     /**
-     * Compile the script and add global bindings
+     * Compile the script and add global bindings, the compiled script and its engine are
+     *  shared with other scripts of the same source but the script gets its own engine scope
      *
      * @param script
      * @param wrapInFunction - Should the script be wrapped in a function call which is called during execution
@@ -157,6 +159,7 @@ public class CompiledMangoJavaScript {
         this.service.getPermissionService().runAs(permissionHolder, () -> {
             try{
                 this.compiledScript = service.compile(script, wrapInFunction);
+                this.engine = new ScopedScriptEngine(compiledScript.getEngine());
                 this.wrapInFunction = wrapInFunction;
             }catch(ScriptError e) {
                 error.setValue(e);
@@ -293,13 +296,20 @@ public class CompiledMangoJavaScript {
     public List<JsonImportExclusion> getImportExclusions() {
         return importExclusions;
     }
+    /**
+     * The compiled script is shared, evaluate it with the context of {@link #getEngine()}
+     * @return
+     */
     public CompiledScript getCompiledScript() {
         Assert.notNull(compiledScript, "Script must be compiled first");
         return compiledScript;
     }
+    /**
+     * @return engine with the bindings of this script
+     */
     public ScriptEngine getEngine() {
         Assert.notNull(compiledScript, "Script must be compiled first");
-        return compiledScript.getEngine();
+        return engine;
     }
     public MangoJavaScriptResult getResult() {
         return result;
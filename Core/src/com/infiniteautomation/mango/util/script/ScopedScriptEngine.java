@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.infiniteautomation.mango.util.script;
+
+import java.io.Reader;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
+
+/**
+ * View of a shared script engine with its own context. The engine scope is a fresh set of bindings
+ * from the shared engine so each script has isolated variables while the compiled code, the
+ * global scope bindings and the engine itself are shared.
+ *
+ * @see CompiledMangoJavaScript#getEngine()
+ */
+class ScopedScriptEngine extends AbstractScriptEngine {
+
+    private final ScriptEngine engine;
+
+    ScopedScriptEngine(ScriptEngine engine) {
+        this.engine = engine;
+        ScriptContext context = new SimpleScriptContext();
+        context.setBindings(engine.createBindings(), ScriptContext.ENGINE_SCOPE);
+        context.setBindings(engine.getBindings(ScriptContext.GLOBAL_SCOPE), ScriptContext.GLOBAL_SCOPE);
+        setContext(context);
+    }
+
+    @Override
+    public Object eval(String script, ScriptContext context) throws ScriptException {
+        return engine.eval(script, context);
+    }
+
+    @Override
+    public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+        return engine.eval(reader, context);
+    }
+
+    @Override
+    public Bindings createBindings() {
+        return engine.createBindings();
+    }
+
+    @Override
+    public ScriptEngineFactory getFactory() {
+        return engine.getFactory();
+    }
+}
@@ -6,6 +6,7 @@ package com.infiniteautomation.mango.util.script;
 import java.util.function.BiConsumer;
 
 import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.rt.dataImage.DataPointEventMulticaster;
 import com.serotonin.m2m2.rt.dataImage.DataPointListener;
 import com.serotonin.m2m2.rt.dataImage.DataPointRT;
 import com.serotonin.m2m2.rt.dataImage.PointValueTime;
@@ -23,6 +24,16 @@ import com.serotonin.m2m2.vo.DataPointVO;
  */
 public class ScriptContextPointListener implements DataPointListener {
 
+    //Subclasses may handle more than the point starting and stopping
+    private static final ClassValue<Integer> EVENT_INTERESTS = new ClassValue<Integer>() {
+        @SuppressWarnings("unchecked")
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            return POINT_INITIALIZED | POINT_TERMINATED
+                    | DataPointEventMulticaster.getOverriddenEvents((Class<? extends DataPointListener>) type, ScriptContextPointListener.class);
+        }
+    };
+
     protected String pointXid;
     protected final ScriptContextVariable variable;
     //Called with true when point is initialized, false when it is not
@@ -55,6 +66,11 @@ public class ScriptContextPointListener implements DataPointListener {
         return "Script context point listener xid: " + pointXid + " var: " + this.variable.getVariableName();
     }
 
+    @Override
+    public int getEventInterests() {
+        return EVENT_INTERESTS.get(getClass());
+    }
+
     @Override
     public void pointInitialized() {
         DataPointRT rt = Common.runtimeManager.getDataPoint(variable.getDataPointId());
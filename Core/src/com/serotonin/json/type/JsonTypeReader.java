@@ -88,6 +88,57 @@ public class JsonTypeReader {
         }
     }
 
+    /**
+     * Start streaming the members of an object. The name of each member is then read with nextName and its value with
+     * read, so that only one member at a time is held in memory.
+     * 
+     * @throws JsonException
+     */
+    public void beginObject() throws JsonException, IOException {
+        validateNextChar('{');
+    }
+
+    /**
+     * Read the name of the next member of the object being streamed.
+     * 
+     * @return the name of the member, or null once the end of the object has been read
+     * @throws JsonException
+     */
+    public String nextName() throws JsonException, IOException {
+        discardOptionalComma();
+        if (testNextChar('}', true)) {
+            nextChar(true);
+            return null;
+        }
+        String name = readString(nextElement());
+        validateNextChar(':');
+        return name;
+    }
+
+    /**
+     * Start streaming the values of an array, each value is then read with read while hasNextValue returns true.
+     * 
+     * @throws JsonException
+     */
+    public void beginArray() throws JsonException, IOException {
+        validateNextChar('[');
+    }
+
+    /**
+     * Check for another value in the array being streamed.
+     * 
+     * @return true if there is another value to read, false once the end of the array has been read
+     * @throws JsonException
+     */
+    public boolean hasNextValue() throws JsonException, IOException {
+        discardOptionalComma();
+        if (testNextChar(']', true)) {
+            nextChar(true);
+            return false;
+        }
+        return true;
+    }
+
     private String nextChars(int length) throws JsonException, IOException {
         StringBuilder sb = new StringBuilder();
         while (length-- > 0)
@@ -83,6 +83,7 @@ import com.serotonin.provider.Providers;
 import com.serotonin.timer.AbstractTimer;
 import com.serotonin.timer.CronTimerTrigger;
 import com.serotonin.timer.OrderedRealTimeTimer;
+import com.serotonin.timer.TimingWheelTimer;
 import com.serotonin.util.properties.MangoProperties;
 import freemarker.template.Configuration;
 
@@ -149,7 +150,10 @@ public class Common {
 
     public static final String APPLICATION_LOGO = "/images/logo.png";
 
-    public static AbstractTimer timer = new OrderedRealTimeTimer();
+    public static AbstractTimer timer = envProps.getBoolean("runtime.realTimeTimer.timingWheel", false)
+            ? new TimingWheelTimer(envProps.getLong("runtime.realTimeTimer.timingWheel.tickDuration", 10),
+                    envProps.getInt("runtime.realTimeTimer.timingWheel.shards", 0))
+            : new OrderedRealTimeTimer();
     public static final MonitoredValues MONITORED_VALUES = new MonitoredValues();
     public static final JsonContext JSON_CONTEXT = new JsonContext();
 
@@ -275,7 +279,7 @@ public class Common {
      * @return
      */
     public static int getDatabaseSchemaVersion() {
-        return 33;
+        return 36;
     }
 
     public static File getLogsDir() {
@@ -48,6 +48,7 @@ abstract public class AbstractDatabaseProxy implements DatabaseProxy {
     private NoSQLProxy noSQLProxy;
     private Boolean useMetrics;
     private PlatformTransactionManager transactionManager;
+    private volatile PointValuePartitions pointValuePartitions;
 
     @Override
     public void initialize(ClassLoader classLoader) {
@@ -139,6 +140,52 @@ abstract public class AbstractDatabaseProxy implements DatabaseProxy {
         // Allow modules to upgrade their schemas
         for (DatabaseSchemaDefinition def : ModuleRegistry.getDefinitions(DatabaseSchemaDefinition.class))
             DBUpgrade.checkUpgrade(def, classLoader);
+
+        // Save any values left in the write ahead spool by the previous run
+        if (noSQLProxy == null && Common.envProps.getBoolean("db.writeBehind.spool.enabled", false)) {
+            try {
+                PointValueDaoSQL.initializeSpool(ejt);
+            } catch (IOException e) {
+                throw new ShouldNeverHappenException(e);
+            }
+        }
+
+        if (noSQLProxy == null && Common.envProps.getBoolean("db.pointValues.partitioned", false)) {
+            PointValuePartitions partitions = createPointValuePartitions(ejt);
+            if (partitions != null) {
+                try {
+                    partitions.maintain(Common.timer.currentTimeMillis());
+                    pointValuePartitions = partitions;
+                } catch (Exception e) {
+                    log.error("Failed to partition the pointValues table, values will be purged by deleting them", e);
+                    //Keep dropping partitions if the table was partitioned before and only adding new ones failed
+                    try {
+                        if (!partitions.getPartitions().isEmpty())
+                            pointValuePartitions = partitions;
+                    } catch (Exception e2) {
+                        log.error("Failed to read the point value partitions", e2);
+                    }
+                }
+            } else {
+                log.warn("Partitioning of point values is not supported by " + getType().name());
+            }
+        }
+
+        if (noSQLProxy == null)
+            PointValueRollupDao.initialize();
+    }
+
+    /**
+     * @param ejt
+     * @return the partitions of the pointValues table or null if the database does not support them
+     */
+    protected PointValuePartitions createPointValuePartitions(ExtendedJdbcTemplate ejt) {
+        return null;
+    }
+
+    @Override
+    public PointValuePartitions getPointValuePartitions() {
+        return pointValuePartitions;
     }
 
     /**
@@ -189,6 +236,8 @@ abstract public class AbstractDatabaseProxy implements DatabaseProxy {
 
     @Override
     public void terminate(boolean terminateNoSql) {
+        PointValueRollupDao.terminate();
+        PointValueDaoSQL.terminateSpool();
         terminateImpl();
         // Check if we are using NoSQL
         if ((terminateNoSql)&&(noSQLProxy != null)) {
@@ -296,6 +345,26 @@ abstract public class AbstractDatabaseProxy implements DatabaseProxy {
         return transactionManager;
     }
 
+    /**
+     * Reserve a block of ids by recording the end of the block in the identityBlocks table. The row is
+     * locked until the transaction ends so reservations are serialized without changing the table
+     * definition. The block starts after the highest id in the table, skipping any rows inserted
+     * using the generator, which the database moves past the ids inserted explicitly.
+     */
+    protected long reserveIdentityBlockFromTable(ExtendedJdbcTemplate ejt, IdentityColumn identity, long next, int size) {
+        Long reserved = ejt.queryForObject("SELECT nextId FROM identityBlocks WHERE tableName=? FOR UPDATE",
+                new Object[] { identity.getTableName() }, Long.class, null);
+        long max = ejt.queryForLong("SELECT MAX(" + identity.getColumnName() + ") FROM " + identity.getTableName(), new Object[0], 0);
+        long first = Math.max(next, max + 1);
+        if (reserved == null) {
+            ejt.update("INSERT INTO identityBlocks (tableName, nextId) VALUES (?,?)", identity.getTableName(), first + size);
+        } else {
+            first = Math.max(first, reserved);
+            ejt.update("UPDATE identityBlocks SET nextId=? WHERE tableName=?", first + size, identity.getTableName());
+        }
+        return first;
+    }
+
     @Override
     public OutputStream createLogOutputStream(Class<?> clazz) {
         String dir = Common.envProps.getString("db.update.log.dir", "");
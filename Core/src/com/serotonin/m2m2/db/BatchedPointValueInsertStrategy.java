@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Inserts the batch through a single row prepared statement using JDBC batching, in one transaction.
+ * The statement text never changes so the driver can reuse its parsed form, H2 keeps it in its
+ * per session query cache and MySQL rewrites the batch into multi row inserts when
+ * rewriteBatchedStatements is enabled.
+ */
+public class BatchedPointValueInsertStrategy implements PointValueInsertStrategy {
+
+    @Override
+    public void insert(Connection connection, PointValueBatch batch) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        if (autoCommit)
+            connection.setAutoCommit(false);
+        try {
+            try (PreparedStatement ps = connection.prepareStatement(POINT_VALUE_INSERT)) {
+                for (int i = 0; i < batch.size(); i++) {
+                    ps.setInt(1, batch.getDataPointId(i));
+                    ps.setInt(2, batch.getDataType(i));
+                    ps.setDouble(3, batch.getValue(i));
+                    ps.setLong(4, batch.getTime(i));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            if (autoCommit)
+                connection.commit();
+        } catch (SQLException | RuntimeException e) {
+            if (autoCommit)
+                connection.rollback();
+            throw e;
+        } finally {
+            if (autoCommit)
+                connection.setAutoCommit(true);
+        }
+    }
+}
@@ -115,6 +115,36 @@ public interface DatabaseProxy {
 
     PointValueDao newPointValueDao();
 
+    /**
+     * How batches of asynchronously saved point values are inserted
+     * @return
+     */
+    default PointValueInsertStrategy getPointValueInsertStrategy() {
+        return new BatchedPointValueInsertStrategy();
+    }
+
+    /**
+     * Reserve a block of ids of an identity column so that rows can be inserted with ids allocated by
+     * the application. Must be called in a transaction, the reservation is made when it commits. No
+     * rows may be inserted into the table using the generator while ids from the block are in use.
+     *
+     * @param ejt
+     * @param identity
+     * @param next lowest id that may be reserved, ids below it have already been handed out
+     * @param size number of ids to reserve
+     * @return first id of the contiguous block or -1 if the database does not support this
+     */
+    default long reserveIdentityBlock(ExtendedJdbcTemplate ejt, IdentityColumn identity, long next, int size) {
+        return -1;
+    }
+
+    /**
+     * @return the partitions of the pointValues table or null if it is not partitioned
+     */
+    default PointValuePartitions getPointValuePartitions() {
+        return null;
+    }
+
     /**
      * Allow access to the NoSQL Proxy
      *
@@ -382,6 +382,11 @@ public class H2Proxy extends AbstractDatabaseProxy {
         return DatabaseType.H2;
     }
 
+    @Override
+    public long reserveIdentityBlock(ExtendedJdbcTemplate ejt, IdentityColumn identity, long next, int size) {
+        return reserveIdentityBlockFromTable(ejt, identity, next, size);
+    }
+
     @Override
     public void runScript(String[] script, final OutputStream out) {
         ExtendedJdbcTemplate ejt = new ExtendedJdbcTemplate();
@@ -15,6 +15,9 @@ import com.serotonin.db.DaoUtils;
 import com.serotonin.db.spring.ExtendedJdbcTemplate;
 
 public class MSSQLProxy extends BasePooledProxy {
+    // MSSQL has max rows of 1000, and max parameters of 2100. In this case that works out to...
+    private final PointValueInsertStrategy insertStrategy = new MultiRowPointValueInsertStrategy(524);
+
     @Override
     public DatabaseType getType() {
         return DatabaseType.MSSQL;
@@ -25,6 +28,11 @@ public class MSSQLProxy extends BasePooledProxy {
         return "com.microsoft.sqlserver.jdbc.SQLServerDriver";
     }
 
+    @Override
+    public PointValueInsertStrategy getPointValueInsertStrategy() {
+        return insertStrategy;
+    }
+
     @Override
     public boolean tableExists(ExtendedJdbcTemplate ejt, String tableName) {
         try {
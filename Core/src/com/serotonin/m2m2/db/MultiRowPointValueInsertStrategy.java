@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Inserts the batch with one multi row INSERT ... VALUES (?,?,?,?),(?,?,?,?) statement. The statement
+ * text for each row count is built once and reused.
+ */
+public class MultiRowPointValueInsertStrategy implements PointValueInsertStrategy {
+
+    private static final String INSERT_START = "INSERT INTO pointValues (dataPointId, dataType, pointValue, ts) VALUES ";
+    private static final String INSERT_VALUES = "(?,?,?,?)";
+
+    private final String[] statements;
+
+    /**
+     * @param maxRows largest row count to keep statement text for
+     */
+    public MultiRowPointValueInsertStrategy(int maxRows) {
+        this.statements = new String[maxRows + 1];
+    }
+
+    @Override
+    public void insert(Connection connection, PointValueBatch batch) throws SQLException {
+        int count = batch.size();
+        try (PreparedStatement ps = connection.prepareStatement(getStatement(count))) {
+            int index = 1;
+            for (int i = 0; i < count; i++) {
+                ps.setInt(index++, batch.getDataPointId(i));
+                ps.setInt(index++, batch.getDataType(i));
+                ps.setDouble(index++, batch.getValue(i));
+                ps.setLong(index++, batch.getTime(i));
+            }
+            ps.executeUpdate();
+        }
+    }
+
+    private String getStatement(int rows) {
+        if (rows < statements.length) {
+            //Racing threads may both build the same text, that is harmless
+            String sql = statements[rows];
+            if (sql == null)
+                statements[rows] = sql = buildStatement(rows);
+            return sql;
+        }
+        return buildStatement(rows);
+    }
+
+    private String buildStatement(int rows) {
+        StringBuilder sb = new StringBuilder(INSERT_START.length() + rows * (INSERT_VALUES.length() + 1));
+        sb.append(INSERT_START);
+        for (int i = 0; i < rows; i++) {
+            if (i > 0)
+                sb.append(',');
+            sb.append(INSERT_VALUES);
+        }
+        return sb.toString();
+    }
+}
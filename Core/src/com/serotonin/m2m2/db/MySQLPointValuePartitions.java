@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.db;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.serotonin.db.spring.ExtendedJdbcTemplate;
+
+/**
+ * Native RANGE partitions on ts. MySQL requires the partitioning column in the primary key so the key
+ * becomes (id, ts) when the table is converted, which rebuilds the table.
+ */
+public class MySQLPointValuePartitions extends PointValuePartitions {
+
+    private static final String FIRST = "pointValues_old";
+    private static final String FUTURE = "pointValues_future";
+
+    public MySQLPointValuePartitions(ExtendedJdbcTemplate ejt) {
+        super(ejt);
+    }
+
+    @Override
+    public List<Partition> getPartitions() {
+        List<Partition> partitions = new ArrayList<>();
+        long[] from = {Long.MIN_VALUE};
+        ejt.query("SELECT PARTITION_NAME, PARTITION_DESCRIPTION FROM information_schema.PARTITIONS "
+                + "WHERE TABLE_SCHEMA=DATABASE() AND TABLE_NAME='pointValues' AND PARTITION_NAME IS NOT NULL "
+                + "ORDER BY PARTITION_ORDINAL_POSITION", rs -> {
+                    String lessThan = rs.getString(2);
+                    long to = "MAXVALUE".equalsIgnoreCase(lessThan) ? Long.MAX_VALUE : Long.parseLong(lessThan);
+                    partitions.add(new Partition(rs.getString(1), from[0], to));
+                    from[0] = to;
+                });
+        return partitions;
+    }
+
+    @Override
+    protected void partition(long[] boundaries) {
+        StringBuilder sql = new StringBuilder("ALTER TABLE pointValues DROP PRIMARY KEY, ADD PRIMARY KEY (id, ts) PARTITION BY RANGE (ts) (");
+        sql.append("PARTITION ").append(FIRST).append(" VALUES LESS THAN (").append(boundaries[0]).append("), ");
+        appendPartitions(sql, boundaries);
+        sql.append(")");
+        ejt.execute(sql.toString());
+    }
+
+    @Override
+    protected void addPartitions(long[] boundaries) {
+        StringBuilder sql = new StringBuilder("ALTER TABLE pointValues REORGANIZE PARTITION ").append(FUTURE).append(" INTO (");
+        appendPartitions(sql, boundaries);
+        sql.append(")");
+        ejt.execute(sql.toString());
+    }
+
+    private void appendPartitions(StringBuilder sql, long[] boundaries) {
+        for (int i = 0; i < boundaries.length - 1; i++)
+            sql.append("PARTITION ").append(partitionName(boundaries[i])).append(" VALUES LESS THAN (").append(boundaries[i + 1]).append("), ");
+        sql.append("PARTITION ").append(FUTURE).append(" VALUES LESS THAN MAXVALUE");
+    }
+
+    @Override
+    protected void dropPartition(Partition partition) {
+        ejt.execute("ALTER TABLE pointValues DROP PARTITION " + partition.getName());
+    }
+}
@@ -26,6 +26,9 @@ public class MySQLProxy extends BasePooledProxy {
         else
             url += "?";
         url += "useUnicode=yes&characterEncoding=" + StandardCharsets.UTF_8.name();
+        // Let the driver send batched inserts as multi row statements
+        if (!url.contains("rewriteBatchedStatements"))
+            url += "&rewriteBatchedStatements=true";
         return url;
     }
 
@@ -34,6 +37,16 @@ public class MySQLProxy extends BasePooledProxy {
         return DatabaseType.MYSQL;
     }
 
+    @Override
+    protected PointValuePartitions createPointValuePartitions(ExtendedJdbcTemplate ejt) {
+        return new MySQLPointValuePartitions(ejt);
+    }
+
+    @Override
+    public long reserveIdentityBlock(ExtendedJdbcTemplate ejt, IdentityColumn identity, long next, int size) {
+        return reserveIdentityBlockFromTable(ejt, identity, next, size);
+    }
+
     @Override
     protected String getDriverClassName() {
         return "com.mysql.cj.jdbc.Driver";
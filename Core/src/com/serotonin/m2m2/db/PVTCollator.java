@@ -1,33 +1,173 @@
 package com.serotonin.m2m2.db;
 
+import java.util.Arrays;
 import java.util.List;
 
 import com.serotonin.db.MappedRowCallback;
 import com.serotonin.m2m2.rt.dataImage.IdPointValueTime;
 import com.serotonin.m2m2.rt.dataImage.MultiValueTime;
+import com.serotonin.m2m2.rt.dataImage.types.DataValue;
 
+/**
+ * Collates values of several points, provided in time order, into rows of the values at each time. The values
+ * of a row are in the order of the point ids, points without a value at the time are null.
+ *
+ * Rows can instead be collected into columnar chunks of times and double values for consumers that write
+ * many rows at once. Values without a double representation and missing values are NaN in chunks.
+ */
 public class PVTCollator implements MappedRowCallback<IdPointValueTime> {
-    private final List<Integer> pointIds;
+
+    /**
+     * Receives chunks of rows, the arrays are reused for the next chunk once the call returns
+     */
+    @FunctionalInterface
+    public interface ChunkCallback {
+        /**
+         * @param times time of each row
+         * @param values values[column][row]
+         * @param rows number of rows in the chunk, the arrays may be longer
+         */
+        void chunk(long[] times, double[][] values, int rows);
+    }
+
+    private final int columns;
+    //Open addressing map of point id to column
+    private final int[] keys;
+    private final int[] keyColumns;
+    private final int mask;
+
     private final MappedRowCallback<MultiValueTime> callback;
-    private MultiValueTime mvt = null;
+    private final boolean reuseRow;
+    private Object[] row;
+    private long rowTime;
+    private boolean hasRow;
     private int nextIndex = 0;
 
+    private final ChunkCallback chunkCallback;
+    private long[] times;
+    private double[][] values;
+    private int rows;
+
     public PVTCollator(List<Integer> pointIds, MappedRowCallback<MultiValueTime> callback) {
-        this.pointIds = pointIds;
+        this(pointIds, callback, false);
+    }
+
+    /**
+     * @param pointIds
+     * @param callback
+     * @param reuseRow true to fill the same values array for every row, it is only valid during the callback
+     */
+    public PVTCollator(List<Integer> pointIds, MappedRowCallback<MultiValueTime> callback, boolean reuseRow) {
+        this(pointIds, callback, reuseRow, null, 0);
+    }
+
+    /**
+     * Collect rows into columnar chunks
+     *
+     * @param pointIds
+     * @param chunkSize maximum rows in a chunk
+     * @param chunkCallback
+     */
+    public PVTCollator(List<Integer> pointIds, int chunkSize, ChunkCallback chunkCallback) {
+        this(pointIds, null, false, chunkCallback, chunkSize);
+    }
+
+    private PVTCollator(List<Integer> pointIds, MappedRowCallback<MultiValueTime> callback, boolean reuseRow,
+            ChunkCallback chunkCallback, int chunkSize) {
+        this.columns = pointIds.size();
+        int capacity = Integer.highestOneBit(Math.max(2, columns * 2 - 1)) << 1;
+        this.keys = new int[capacity];
+        this.keyColumns = new int[capacity];
+        this.mask = capacity - 1;
+        Arrays.fill(keyColumns, -1);
+        for (int i = 0; i < columns; i++) {
+            int slot = slot(pointIds.get(i));
+            //The first column of a repeated id is used
+            if (keyColumns[slot] == -1) {
+                keys[slot] = pointIds.get(i);
+                keyColumns[slot] = i;
+            }
+        }
+
         this.callback = callback;
+        this.reuseRow = reuseRow;
+        this.chunkCallback = chunkCallback;
+        if (chunkCallback != null) {
+            if (chunkSize < 1)
+                throw new IllegalArgumentException("Chunk size must be at least 1");
+            times = new long[chunkSize];
+            values = new double[columns][chunkSize];
+        }
+    }
+
+    private int slot(int id) {
+        int hash = id * 0x9E3779B9;
+        int slot = (hash ^ hash >>> 16) & mask;
+        while (keyColumns[slot] != -1 && keys[slot] != id)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private int column(int id) {
+        int column = keyColumns[slot(id)];
+        if (column == -1)
+            throw new IllegalArgumentException("Point id " + id + " is not collated");
+        return column;
     }
 
     @Override
     public void row(IdPointValueTime pvt, int index) {
-        if (mvt == null || mvt.getTime() < pvt.getTime()) {
-            done();
-            mvt = new MultiValueTime(new Object[pointIds.size()], pvt.getTime());
+        int column = column(pvt.getId());
+        if (chunkCallback != null)
+            chunkRow(column, pvt.getTime(), pvt.getValue());
+        else {
+            if (!hasRow || rowTime < pvt.getTime()) {
+                sendRow();
+                rowTime = pvt.getTime();
+                hasRow = true;
+            }
+            row[column] = pvt.getValue();
+        }
+    }
+
+    private void sendRow() {
+        if (hasRow) {
+            callback.row(new MultiValueTime(row, rowTime), ++nextIndex);
+            if (reuseRow)
+                Arrays.fill(row, null);
+            else
+                row = null;
         }
-        mvt.getValues()[pointIds.indexOf(pvt.getId())] = pvt.getValue();
+        if (row == null)
+            row = new Object[columns];
+    }
+
+    private void chunkRow(int column, long time, DataValue value) {
+        if (rows == 0 || times[rows - 1] < time) {
+            if (rows == times.length)
+                sendChunk();
+            times[rows] = time;
+            for (int c = 0; c < columns; c++)
+                values[c][rows] = Double.NaN;
+            rows++;
+        }
+        if (value != null && value.hasDoubleRepresentation())
+            values[column][rows - 1] = value.getDoubleValue();
+    }
+
+    private void sendChunk() {
+        if (rows > 0)
+            chunkCallback.chunk(times, values, rows);
+        rows = 0;
     }
 
     public void done() {
-        if (mvt != null)
-            callback.row(mvt, ++nextIndex);
+        if (chunkCallback != null)
+            sendChunk();
+        else if (hasRow) {
+            callback.row(new MultiValueTime(row, rowTime), ++nextIndex);
+            hasRow = false;
+            row = null;
+        }
     }
 }
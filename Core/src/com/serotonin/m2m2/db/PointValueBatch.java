@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.db;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reusable, column oriented batch of point values waiting to be inserted. Values are kept in primitive
+ * arrays so that filling a batch does not allocate or box.
+ *
+ * Not thread safe, each writer should own its batch.
+ */
+public class PointValueBatch {
+
+    private final int[] dataPointIds;
+    private final int[] dataTypes;
+    private final double[] values;
+    private final long[] times;
+    private int size;
+    private ByteBuffer buffer;
+
+    public PointValueBatch(int capacity) {
+        this.dataPointIds = new int[capacity];
+        this.dataTypes = new int[capacity];
+        this.values = new double[capacity];
+        this.times = new long[capacity];
+    }
+
+    public void add(int dataPointId, int dataType, double value, long time) {
+        dataPointIds[size] = dataPointId;
+        dataTypes[size] = dataType;
+        values[size] = value;
+        times[size] = time;
+        size++;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return dataPointIds.length;
+    }
+
+    public int getDataPointId(int index) {
+        return dataPointIds[index];
+    }
+
+    public int getDataType(int index) {
+        return dataTypes[index];
+    }
+
+    public double getValue(int index) {
+        return values[index];
+    }
+
+    public long getTime(int index) {
+        return times[index];
+    }
+
+    /**
+     * Scratch buffer for strategies that encode the batch themselves, it is kept between batches
+     * @param capacity minimum capacity
+     * @return a cleared buffer
+     */
+    public ByteBuffer getBuffer(int capacity) {
+        if (buffer == null || buffer.capacity() < capacity)
+            buffer = ByteBuffer.allocate(capacity);
+        buffer.clear();
+        return buffer;
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * How a database writes batches of point values into the pointValues table,
+ * supplied by {@link DatabaseProxy#getPointValueInsertStrategy()}.
+ *
+ * Implementations are shared by all writer threads so must not hold per batch state.
+ */
+public interface PointValueInsertStrategy {
+
+    String POINT_VALUE_INSERT = "INSERT INTO pointValues (dataPointId, dataType, pointValue, ts) VALUES (?,?,?,?)";
+
+    /**
+     * Insert every value in the batch
+     * @param connection
+     * @param batch
+     * @throws SQLException
+     */
+    void insert(Connection connection, PointValueBatch batch) throws SQLException;
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.db;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.serotonin.db.spring.ExtendedJdbcTemplate;
+import com.serotonin.m2m2.Common;
+
+/**
+ * Maintains time range partitions of the pointValues table, supplied by
+ * {@link DatabaseProxy#getPointValuePartitions()} when db.pointValues.partitioned is set.
+ *
+ * Partitions cover db.pointValues.partitionDays days each, aligned to the epoch in UTC, and are created
+ * db.pointValues.partitionsAhead periods in advance. Values saved before the table was partitioned stay
+ * in a first partition that holds everything older than the first period. Values beyond the last
+ * period go to a catch all partition.
+ *
+ * Queries constrained on ts only read the partitions they need. Purges drop partitions that are older
+ * than the purge time of every point instead of deleting their rows.
+ */
+public abstract class PointValuePartitions {
+
+    protected static final long DAY = 24 * 60 * 60 * 1000L;
+
+    protected final Log log = LogFactory.getLog(getClass());
+    protected final ExtendedJdbcTemplate ejt;
+    protected final long period = Common.envProps.getInt("db.pointValues.partitionDays", 7) * DAY;
+    protected final int ahead = Common.envProps.getInt("db.pointValues.partitionsAhead", 4);
+
+    protected PointValuePartitions(ExtendedJdbcTemplate ejt) {
+        this.ejt = ejt;
+    }
+
+    /**
+     * A range partition of the table, from is Long.MIN_VALUE for the first partition and to is
+     * Long.MAX_VALUE for the catch all partition
+     */
+    public static class Partition {
+        private final String name;
+        private final long from;
+        private final long to;
+
+        public Partition(String name, long from, long to) {
+            this.name = name;
+            this.from = from;
+            this.to = to;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getFrom() {
+            return from;
+        }
+
+        public long getTo() {
+            return to;
+        }
+
+        @Override
+        public String toString() {
+            return name + " [" + from + ", " + to + ")";
+        }
+    }
+
+    /**
+     * @return the partitions in time order, empty if the table is not partitioned
+     */
+    public abstract List<Partition> getPartitions();
+
+    /**
+     * Convert the table to a partitioned table. Existing values go in a partition for everything before
+     * the first boundary, which is after the latest existing value.
+     *
+     * @param boundaries ascending start times of the periods to create
+     */
+    protected abstract void partition(long[] boundaries);
+
+    /**
+     * Create partitions for the periods between the boundaries, taking their range from the catch all
+     * partition
+     *
+     * @param boundaries ascending, the first is the end of the last period partition
+     */
+    protected abstract void addPartitions(long[] boundaries);
+
+    protected abstract void dropPartition(Partition partition);
+
+    /**
+     * Partition the table if it is not and create partitions for the coming periods
+     * @param now
+     */
+    public synchronized void maintain(long now) {
+        long start = periodStart(now);
+        long end = start + (ahead + 1) * period;
+
+        List<Partition> partitions = getPartitions();
+        if (partitions.isEmpty()) {
+            //Every existing value must fit in the first partition, including values of the current period
+            // and values with future timestamps
+            long first = start + period;
+            long max = maxTime();
+            if (max != Long.MIN_VALUE)
+                first = Math.max(first, periodStart(max) + period);
+            if (first > end)
+                log.warn("The pointValues table holds values up to " + max + ", partitions will start after them");
+            log.info("Partitioning the pointValues table, this may take a while for a large table");
+            partition(boundaries(first, Math.max(first, end)));
+            return;
+        }
+
+        long last = Long.MIN_VALUE;
+        for (Partition p : partitions)
+            if (p.getTo() != Long.MAX_VALUE)
+                last = Math.max(last, p.getTo());
+        if (last == Long.MIN_VALUE)
+            last = start;
+        if (last < end)
+            addPartitions(boundaries(last, end));
+    }
+
+    /**
+     * Drop the partitions that only hold values before the time
+     * @param time
+     * @return the number of partitions dropped
+     */
+    public synchronized int dropBefore(long time) {
+        int dropped = 0;
+        for (Partition p : getPartitions()) {
+            if (p.getTo() > time || p.getTo() == Long.MAX_VALUE)
+                break;
+            log.info("Dropping point value partition " + p);
+            dropPartition(p);
+            dropped++;
+        }
+        return dropped;
+    }
+
+    /**
+     * @return the latest time of a value in the table, Long.MIN_VALUE if it is empty
+     */
+    protected long maxTime() {
+        Long max = ejt.queryForObject("SELECT MAX(ts) FROM pointValues", new Object[0], Long.class, null);
+        return max == null ? Long.MIN_VALUE : max;
+    }
+
+    protected long periodStart(long time) {
+        return time - Math.floorMod(time, period);
+    }
+
+    private long[] boundaries(long from, long to) {
+        List<Long> list = new ArrayList<>();
+        for (long b = from; b <= to; b += period)
+            list.add(b);
+        long[] boundaries = new long[list.size()];
+        for (int i = 0; i < boundaries.length; i++)
+            boundaries[i] = list.get(i);
+        return boundaries;
+    }
+
+    /**
+     * @param from
+     * @return name of the partition for values from the time
+     */
+    protected String partitionName(long from) {
+        return "pointValues_p" + from;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.db;
+
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+/**
+ * Streams the batch into Postgres with COPY ... FROM STDIN in the binary format, which skips statement
+ * parsing and per row parameter handling on the server.
+ */
+public class PostgresCopyPointValueInsertStrategy implements PointValueInsertStrategy {
+
+    private static final String COPY = "COPY pointValues (dataPointId, dataType, pointValue, ts) FROM STDIN (FORMAT BINARY)";
+    private static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xff, '\r', '\n', 0};
+    //signature, flags, header extension length
+    private static final int HEADER_SIZE = SIGNATURE.length + 4 + 4;
+    //field count, then length and value for int4, int4, float8, int8
+    private static final int ROW_SIZE = 2 + (4 + 4) + (4 + 4) + (4 + 8) + (4 + 8);
+    private static final int TRAILER_SIZE = 2;
+
+    @Override
+    public void insert(Connection connection, PointValueBatch batch) throws SQLException {
+        int count = batch.size();
+        ByteBuffer buffer = batch.getBuffer(HEADER_SIZE + ROW_SIZE * batch.capacity() + TRAILER_SIZE);
+        buffer.put(SIGNATURE);
+        buffer.putInt(0);
+        buffer.putInt(0);
+        for (int i = 0; i < count; i++) {
+            buffer.putShort((short) 4);
+            buffer.putInt(4);
+            buffer.putInt(batch.getDataPointId(i));
+            buffer.putInt(4);
+            buffer.putInt(batch.getDataType(i));
+            buffer.putInt(8);
+            buffer.putDouble(batch.getValue(i));
+            buffer.putInt(8);
+            buffer.putLong(batch.getTime(i));
+        }
+        buffer.putShort((short) -1);
+
+        CopyIn copy = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY);
+        try {
+            copy.writeToCopy(buffer.array(), 0, buffer.position());
+            copy.endCopy();
+        } finally {
+            if (copy.isActive())
+                copy.cancelCopy();
+        }
+    }
+}
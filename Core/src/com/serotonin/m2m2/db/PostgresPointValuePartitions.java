@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.db;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+
+import com.serotonin.db.spring.ExtendedJdbcTemplate;
+
+/**
+ * Declarative range partitions on ts, requires Postgres 11. The existing table is renamed and attached
+ * as the first partition of a new partitioned pointValues table, which checks its rows but does not
+ * copy them. Values beyond the last period go to the default partition.
+ */
+public class PostgresPointValuePartitions extends PointValuePartitions {
+
+    private static final String FIRST = "pointValues_old";
+    private static final String FUTURE = "pointValues_future";
+    private static final Pattern BOUNDS = Pattern.compile("FROM \\((.+?)\\) TO \\((.+?)\\)");
+
+    public PostgresPointValuePartitions(ExtendedJdbcTemplate ejt) {
+        super(ejt);
+    }
+
+    @Override
+    public List<Partition> getPartitions() {
+        List<Partition> partitions = new ArrayList<>();
+        ejt.query("SELECT c.relname, pg_get_expr(c.relpartbound, c.oid) FROM pg_inherits i "
+                + "JOIN pg_class c ON c.oid=i.inhrelid JOIN pg_class p ON p.oid=i.inhparent "
+                + "WHERE p.relname='pointvalues' AND p.relnamespace=to_regnamespace(current_schema())::oid", rs -> {
+                    String bound = rs.getString(2);
+                    Matcher m = BOUNDS.matcher(bound);
+                    if (m.find())
+                        partitions.add(new Partition(rs.getString(1), parse(m.group(1), Long.MIN_VALUE), parse(m.group(2), Long.MAX_VALUE)));
+                    else
+                        partitions.add(new Partition(rs.getString(1), Long.MAX_VALUE, Long.MAX_VALUE));
+                });
+        partitions.sort((a, b) -> a.getFrom() != b.getFrom() ? Long.compare(a.getFrom(), b.getFrom()) : Long.compare(a.getTo(), b.getTo()));
+        return partitions;
+    }
+
+    private long parse(String bound, long unbounded) {
+        bound = bound.replace("'", "").trim();
+        if ("MINVALUE".equalsIgnoreCase(bound) || "MAXVALUE".equalsIgnoreCase(bound))
+            return unbounded;
+        return Long.parseLong(bound);
+    }
+
+    @Override
+    protected void partition(long[] boundaries) {
+        String sequence = ejt.queryForObject("SELECT pg_get_serial_sequence('pointValues', 'id')", new Object[0], String.class, null);
+        List<String> sql = new ArrayList<>();
+        sql.add("ALTER TABLE pointValues RENAME TO " + FIRST);
+        sql.add("ALTER INDEX pointValuesIdx1 RENAME TO " + FIRST + "Idx1");
+        sql.add("CREATE TABLE pointValues (id bigint NOT NULL DEFAULT nextval('" + sequence + "'), "
+                + "dataPointId integer NOT NULL, dataType integer NOT NULL, pointValue double precision, ts bigint NOT NULL, "
+                + "PRIMARY KEY (id, ts)) PARTITION BY RANGE (ts)");
+        sql.add("CREATE INDEX pointValuesIdx1 ON pointValues (dataPointId, ts)");
+        //Keep the sequence when the first partition is dropped
+        sql.add("ALTER SEQUENCE " + sequence + " OWNED BY pointValues.id");
+        sql.add("ALTER TABLE pointValues ATTACH PARTITION " + FIRST + " FOR VALUES FROM (MINVALUE) TO (" + boundaries[0] + ")");
+        addPartitions(sql, boundaries);
+        sql.add("CREATE TABLE " + FUTURE + " PARTITION OF pointValues DEFAULT");
+        execute(sql);
+    }
+
+    @Override
+    protected void addPartitions(long[] boundaries) {
+        List<String> sql = new ArrayList<>();
+        addPartitions(sql, boundaries);
+        execute(sql);
+    }
+
+    private void addPartitions(List<String> sql, long[] boundaries) {
+        for (int i = 0; i < boundaries.length - 1; i++)
+            sql.add("CREATE TABLE " + partitionName(boundaries[i]) + " PARTITION OF pointValues FOR VALUES FROM ("
+                    + boundaries[i] + ") TO (" + boundaries[i + 1] + ")");
+    }
+
+    /**
+     * Run the statements in one transaction, DDL is transactional in Postgres
+     */
+    private void execute(List<String> sql) {
+        ejt.execute((ConnectionCallback<Void>) conn -> {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement()) {
+                for (String s : sql)
+                    stmt.execute(s);
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    protected void dropPartition(Partition partition) {
+        ejt.execute("DROP TABLE " + partition.getName());
+    }
+}
@@ -22,6 +22,24 @@ public class PostgresProxy extends BasePooledProxy {
         return "org.postgresql.Driver";
     }
 
+    @Override
+    public PointValueInsertStrategy getPointValueInsertStrategy() {
+        return new PostgresCopyPointValueInsertStrategy();
+    }
+
+    @Override
+    protected PointValuePartitions createPointValuePartitions(ExtendedJdbcTemplate ejt) {
+        return new PostgresPointValuePartitions(ejt);
+    }
+
+    @Override
+    public long reserveIdentityBlock(ExtendedJdbcTemplate ejt, IdentityColumn identity, long next, int size) {
+        String sequence = "pg_get_serial_sequence('" + identity.getTableName() + "', '" + identity.getColumnName() + "')";
+        long last = ejt.queryForLong("SELECT setval(" + sequence + ", GREATEST(nextval(" + sequence + ") + ? - 1, ?))",
+                new Object[] { size, next + size - 1 }, 0);
+        return last - size + 1;
+    }
+
     @Override
     public double applyBounds(double value) {
         return value;
@@ -18,6 +18,7 @@ import com.infiniteautomation.mango.spring.events.DaoEventType;
 import com.infiniteautomation.mango.util.RQLUtils;
 import com.serotonin.ModuleNotLoadedException;
 import com.serotonin.ShouldNeverHappenException;
+import com.serotonin.db.DaoUtils;
 import com.serotonin.db.MappedRowCallback;
 import com.serotonin.log.LogStopWatch;
 import com.serotonin.m2m2.Common;
@@ -215,8 +216,10 @@ public abstract class AbstractBasicDao<T extends AbstractBasicVO, TABLE extends
 
         this.publishEvent(createDaoEvent(DaoEventType.CREATE, vo, null));
 
-        if (this.countMonitor != null)
+        if (this.countMonitor != null) {
             this.countMonitor.increment();
+            DaoUtils.afterRollback(this.countMonitor::decrement);
+        }
     }
 
     @Override
@@ -539,9 +542,14 @@ public abstract class AbstractBasicDao<T extends AbstractBasicVO, TABLE extends
         }
     }
 
+    /**
+     * Publish an event, if this is called within a transaction (e.g. a batch of writes) the event is only published once
+     *  the transaction commits and is dropped if it rolls back.
+     * @param event
+     */
     protected void publishEvent(DaoEvent<T> event) {
         if (this.eventPublisher != null) {
-            this.eventPublisher.publishEvent(event);
+            DaoUtils.afterCommit(() -> this.eventPublisher.publishEvent(event));
         }
     }
 
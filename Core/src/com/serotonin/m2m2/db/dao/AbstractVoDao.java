@@ -13,6 +13,7 @@ import org.springframework.util.Assert;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.infiniteautomation.mango.spring.db.AbstractTableDefinition;
+import com.serotonin.db.DaoUtils;
 import com.serotonin.m2m2.i18n.TranslatableMessage;
 import com.serotonin.m2m2.rt.event.type.AuditEventType;
 import com.serotonin.m2m2.vo.AbstractVO;
@@ -142,7 +143,7 @@ public abstract class AbstractVoDao<T extends AbstractVO, TABLE extends Abstract
     @Override
     public boolean delete(T vo) {
         if(super.delete(vo)) {
-            AuditEventType.raiseDeletedEvent(this.typeName, vo);
+            DaoUtils.afterCommit(() -> AuditEventType.raiseDeletedEvent(this.typeName, vo));
             return true;
         }else {
             return false;
@@ -155,7 +156,7 @@ public abstract class AbstractVoDao<T extends AbstractVO, TABLE extends Abstract
             vo.setXid(generateUniqueXid());
         }
         super.insert(vo);
-        AuditEventType.raiseAddedEvent(this.typeName, vo);
+        DaoUtils.afterCommit(() -> AuditEventType.raiseAddedEvent(this.typeName, vo));
     }
 
     @Override
@@ -164,7 +165,7 @@ public abstract class AbstractVoDao<T extends AbstractVO, TABLE extends Abstract
             vo.setXid(existing.getXid());
         }
         super.update(existing, vo);
-        AuditEventType.raiseChangedEvent(this.typeName, existing, vo);
+        DaoUtils.afterCommit(() -> AuditEventType.raiseChangedEvent(this.typeName, existing, vo));
     }
 
     @Override
@@ -31,13 +31,13 @@ import com.serotonin.m2m2.rt.event.type.EventType;
 import com.serotonin.m2m2.vo.DataPointSummary;
 import com.serotonin.m2m2.vo.DataPointVO;
 import com.serotonin.m2m2.vo.bean.PointHistoryCount;
+import com.serotonin.m2m2.vo.dataPoint.DataPointCodec;
 import com.serotonin.m2m2.vo.dataPoint.DataPointWithEventDetectors;
 import com.serotonin.m2m2.vo.dataSource.DataSourceVO;
 import com.serotonin.m2m2.vo.event.detector.AbstractEventDetectorVO;
 import com.serotonin.m2m2.vo.event.detector.AbstractPointEventDetectorVO;
 import com.serotonin.m2m2.vo.permission.PermissionHolder;
 import com.serotonin.provider.Providers;
-import com.serotonin.util.SerializationHelper;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.jooq.*;
@@ -174,7 +174,6 @@ public class DataPointDao extends AbstractVoDao<DataPointVO, DataPointTableDefin
                     }
                 else {
                     DataPointVO dpvo = pointRowMapper.mapRow(rs, rs.getRow());
-                    loadRelationalData(dpvo);
                     DataPointWithEventDetectors dp = new DataPointWithEventDetectors(dpvo, new ArrayList<>());
                     result.put(id, dp);
                     try{
@@ -184,6 +183,19 @@ public class DataPointDao extends AbstractVoDao<DataPointVO, DataPointTableDefin
                     }
                 }
             }
+
+            //Load the permissions of all points at once, most points share the same few permissions
+            Set<Integer> permissionIds = new HashSet<>();
+            for(DataPointWithEventDetectors dp : result.values()) {
+                DataPointVO dpvo = dp.getDataPoint();
+                permissionIds.add(dpvo.getReadPermission().getId());
+                permissionIds.add(dpvo.getEditPermission().getId());
+                permissionIds.add(dpvo.getSetPermission().getId());
+            }
+            permissionDao.loadIntoCache(permissionIds);
+            for(DataPointWithEventDetectors dp : result.values()) {
+                loadRelationalData(dp.getDataPoint());
+            }
             return new ArrayList<DataPointWithEventDetectors>(result.values());
         }
 
@@ -494,7 +506,7 @@ public class DataPointDao extends AbstractVoDao<DataPointVO, DataPointTableDefin
         return new Object[] {
                 vo.getXid(),
                 vo.getName(),
-                SerializationHelper.writeObjectToArray(vo),
+                DataPointCodec.encode(vo),
                 vo.getDataSourceId(),
                 vo.getDeviceName(),
                 boolToChar(vo.isEnabled()),
@@ -532,7 +544,7 @@ public class DataPointDao extends AbstractVoDao<DataPointVO, DataPointTableDefin
             String xid = rs.getString(++i);
             String name = rs.getString(++i);
 
-            DataPointVO dp = (DataPointVO) SerializationHelper.readObjectInContext(rs.getBinaryStream(++i));
+            DataPointVO dp = DataPointCodec.decode(rs.getBinaryStream(++i));
 
             dp.setId(id);
             dp.setXid(xid);
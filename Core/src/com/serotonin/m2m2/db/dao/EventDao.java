@@ -7,6 +7,7 @@ package com.serotonin.m2m2.db.dao;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
@@ -54,11 +55,17 @@ public class EventDao extends BaseDao {
 
     private final AuditEventDao auditEventDao;
     private final UserCommentDao userCommentDao;
+    //Null unless events are written behind
+    private final EventJournal journal;
 
     @Autowired
     private EventDao(AuditEventDao auditEventDao, UserCommentDao userCommentDao) {
         this.auditEventDao = auditEventDao;
         this.userCommentDao = userCommentDao;
+        if (Common.envProps.getBoolean("events.journal.enabled", false))
+            this.journal = new EventJournal(this, ejt);
+        else
+            this.journal = null;
     }
 
     public static EventDao getInstance() {
@@ -103,6 +110,13 @@ public class EventDao extends BaseDao {
             Types.BIGINT, Types.CHAR, Types.BIGINT, Types.INTEGER, Types.INTEGER, Types.VARCHAR, Types.BIGINT };
 
     private void insertEvent(EventInstance event) {
+        if (journal != null) {
+            if (journal.insert(event))
+                return;
+            //Pending inserts must be written first so the generator moves past their ids
+            journal.flush();
+        }
+
         EventType type = event.getEventType();
 
         Object[] args = new Object[11];
@@ -125,6 +139,11 @@ public class EventDao extends BaseDao {
 
     private void updateEvent(EventInstance event) {
         if (event.isRtnApplicable()) {
+            if (journal != null) {
+                if (journal.returnToNormal(Collections.singletonList(event.getId()), event.getRtnTimestamp(), event.getRtnCause()))
+                    return;
+                journal.flush();
+            }
             ejt.update(EVENT_UPDATE, new Object[] { event.getRtnTimestamp(), event.getRtnCause().value(), event.getId() });
         }
     }
@@ -133,6 +152,11 @@ public class EventDao extends BaseDao {
     public void returnEventsToNormal(List<Integer> eventIds, long timestamp, ReturnCause cause){
         if(eventIds.size() == 0)
             throw new ShouldNeverHappenException("Not enough Ids!");
+        if (journal != null) {
+            if (journal.returnToNormal(eventIds, timestamp, cause))
+                return;
+            journal.flush();
+        }
         StringBuilder inClause = new StringBuilder();
         inClause.append("(");
         final String comma = ",";
@@ -149,6 +173,13 @@ public class EventDao extends BaseDao {
     private static final String EVENT_ACK = "update events set ackTs=?, ackUserId=?, alternateAckSource=? where id=? and ackTs is null";
 
     public boolean ackEvent(int eventId, long time, int userId, TranslatableMessage alternateAckSource) {
+        if (journal != null) {
+            Boolean acked = journal.acknowledge(eventId, time, userId, alternateAckSource);
+            if (acked != null)
+                return acked;
+            //Wait for the insert if it is being written
+            journal.flush();
+        }
         // Ack the event
         int count = ejt.update(EVENT_ACK,
                 new Object[] { time, userId == 0 ? null : userId, writeTranslatableMessage(alternateAckSource), eventId },
@@ -156,6 +187,23 @@ public class EventDao extends BaseDao {
         return count > 0;
     }
 
+    /**
+     * Write the events, return to normal and acknowledgements waiting in the event journal. Not
+     * required before using this dao, only before reading the events table some other way.
+     */
+    public void flushJournal() {
+        if (journal != null)
+            journal.flush();
+    }
+
+    /**
+     * Write everything waiting in the event journal and write events directly from now on
+     */
+    public void closeJournal() {
+        if (journal != null)
+            journal.close();
+    }
+
     private static final String BASIC_EVENT_SELECT = //
             "select e.id, e.typeName, e.subtypeName, e.typeRef1, e.typeRef2, e.activeTs, e.rtnApplicable, e.rtnTs, " //
             + "  e.rtnCause, e.alarmLevel, e.message, e.ackTs, e.ackUserId, u.username, e.alternateAckSource, " //
@@ -165,6 +213,7 @@ public class EventDao extends BaseDao {
             + "  left join users u on e.ackUserId=u.id ";
 
     public List<EventInstance> getActiveEvents() {
+        flushJournal();
         List<EventInstance> results = query(BASIC_EVENT_SELECT + "where e.rtnApplicable=? and e.rtnTs is null",
                 new Object[] { boolToChar(true) }, new EventInstanceRowMapper());
         attachRelationalInfo(results);
@@ -172,10 +221,12 @@ public class EventDao extends BaseDao {
     }
 
     public EventInstance get(int eventId){
+        flushJournal();
         return queryForObject(BASIC_EVENT_SELECT + " where e.id = ?", new Object[]{ eventId }, new EventInstanceRowMapper(), null);
     }
 
     private EventInstance getEventInstance(int eventId) {
+        flushJournal();
         return queryForObject(BASIC_EVENT_SELECT + "where e.id=?", new Object[] { eventId },
                 new EventInstanceRowMapper());
     }
@@ -273,6 +324,7 @@ public class EventDao extends BaseDao {
      * @return
      */
     public int purgeAllEvents(){
+        flushJournal();
         final ExtendedJdbcTemplate ejt2 = ejt;
         int count = getTransactionTemplate().execute(new TransactionCallback<Integer>() {
             @Override
@@ -291,6 +343,7 @@ public class EventDao extends BaseDao {
      * @return
      */
     public int purgeEventsBefore(final long time, final AlarmLevels alarmLevel) {
+        flushJournal();
         // Find a list of event ids with no remaining acknowledgments pending.
         final ExtendedJdbcTemplate ejt2 = ejt;
         int count = getTransactionTemplate().execute(new TransactionCallback<Integer>() {
@@ -318,6 +371,7 @@ public class EventDao extends BaseDao {
      * @return
      */
     public int purgeEventsBefore(final long time, final String typeName) {
+        flushJournal();
         // Find a list of event ids with no remaining acknowledgments pending.
         final ExtendedJdbcTemplate ejt2 = ejt;
         int count = getTransactionTemplate().execute(new TransactionCallback<Integer>() {
@@ -340,6 +394,7 @@ public class EventDao extends BaseDao {
 
 
     public int purgeEventsBefore(final long time) {
+        flushJournal();
         // Find a list of event ids with no remaining acknowledgments pending.
         final ExtendedJdbcTemplate ejt2 = ejt;
         int count = getTransactionTemplate().execute(new TransactionCallback<Integer>() {
@@ -360,6 +415,7 @@ public class EventDao extends BaseDao {
     }
 
     public int getEventCount() {
+        flushJournal();
         return ejt.queryForInt("select count(*) from events", null, 0);
     }
 }
@@ -7,6 +7,8 @@ package com.serotonin.m2m2.db.dao;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.stream.Collectors;
@@ -19,17 +21,21 @@ import org.jooq.impl.DSL;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallbackWithoutResult;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.infiniteautomation.mango.db.query.ConditionSortLimit;
 import com.infiniteautomation.mango.permission.MangoPermission;
 import com.infiniteautomation.mango.spring.MangoRuntimeContextConfiguration;
 import com.infiniteautomation.mango.spring.db.EventHandlerTableDefinition;
 import com.infiniteautomation.mango.spring.db.RoleTableDefinition;
+import com.infiniteautomation.mango.spring.events.DaoEvent;
 import com.infiniteautomation.mango.spring.service.PermissionService;
 import com.infiniteautomation.mango.util.LazyInitSupplier;
 import com.serotonin.m2m2.Common;
@@ -40,7 +46,9 @@ import com.serotonin.m2m2.i18n.TranslatableMessage;
 import com.serotonin.m2m2.module.ModuleRegistry;
 import com.serotonin.m2m2.rt.event.type.AuditEventType;
 import com.serotonin.m2m2.rt.event.type.EventType;
+import com.serotonin.m2m2.rt.event.type.EventTypeKey;
 import com.serotonin.m2m2.vo.event.AbstractEventHandlerVO;
+import com.serotonin.m2m2.vo.event.detector.AbstractEventDetectorVO;
 import com.serotonin.m2m2.vo.permission.PermissionHolder;
 import com.serotonin.util.SerializationHelper;
 
@@ -60,6 +68,8 @@ public class EventHandlerDao extends AbstractVoDao<AbstractEventHandlerVO, Event
 
     private final PermissionService permissionService;
     private final PermissionDao permissionDao;
+    //Enabled handlers for each event type, shared by all events of the type
+    private final Cache<EventTypeKey, List<AbstractEventHandlerVO>> enabledHandlers;
 
     static {
         if(Common.databaseProxy.getType() == DatabaseProxy.DatabaseType.H2) {
@@ -86,6 +96,9 @@ public class EventHandlerDao extends AbstractVoDao<AbstractEventHandlerVO, Event
                 mapper, publisher);
         this.permissionService = permissionService;
         this.permissionDao = permissionDao;
+        this.enabledHandlers = Caffeine.newBuilder()
+                .maximumSize(Common.envProps.getLong("cache.eventHandlers.size", 10000))
+                .build();
     }
 
     /**
@@ -135,6 +148,39 @@ public class EventHandlerDao extends AbstractVoDao<AbstractEventHandlerVO, Event
                 type.getReferenceId2());
     }
 
+    /**
+     * Get the enabled event handlers for an event type from the cache, the cache is cleared whenever an
+     * event handler, an event detector or a mapping changes and again once the change is committed.
+     *
+     * The handlers are shared between all callers and must not be modified.
+     *
+     * @param type
+     * @return unmodifiable list of handlers
+     */
+    public List<AbstractEventHandlerVO> getEnabledEventHandlers(EventType type) {
+        return enabledHandlers.get(new EventTypeKey(type), k -> {
+            List<AbstractEventHandlerVO> enabled = new ArrayList<>();
+            for (AbstractEventHandlerVO vo : getEventHandlers(type)) {
+                if (!vo.isDisabled())
+                    enabled.add(vo);
+            }
+            return enabled.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(enabled);
+        });
+    }
+
+    @EventListener
+    protected void handleEventHandlerEvent(DaoEvent<? extends AbstractEventHandlerVO> event) {
+        enabledHandlers.invalidateAll();
+    }
+
+    /**
+     * Detectors save the mappings for their event type
+     */
+    @EventListener
+    protected void handleEventDetectorEvent(DaoEvent<? extends AbstractEventDetectorVO> event) {
+        enabledHandlers.invalidateAll();
+    }
+
     public List<AbstractEventHandlerVO> getEventHandlersByType(String typeName) {
         return query(EVENT_HANDLER_SELECT + " WHERE eventHandlerType=?", new Object[] {typeName}, new EventHandlerWithRelationalDataRowMapper());
     }
@@ -206,6 +252,7 @@ public class EventHandlerDao extends AbstractVoDao<AbstractEventHandlerVO, Event
 
     @Override
     public void saveRelationalData(AbstractEventHandlerVO existing, AbstractEventHandlerVO vo) {
+        enabledHandlers.invalidateAll();
         if (existing == null) {
             if(vo.getEventTypes() != null) {
                 for (EventType type : vo.getEventTypes()) {
@@ -254,6 +301,7 @@ public class EventHandlerDao extends AbstractVoDao<AbstractEventHandlerVO, Event
 
     @Override
     public void deleteRelationalData(AbstractEventHandlerVO vo) {
+        enabledHandlers.invalidateAll();
         deleteEventHandlerMappings(vo.getId());
         vo.getDefinition().deleteRelationalData(vo);
     }
@@ -325,6 +373,7 @@ public class EventHandlerDao extends AbstractVoDao<AbstractEventHandlerVO, Event
                 }
             });
         }
+        enabledHandlers.invalidateAll();
     }
 
     private void deleteEventHandlerMappings(int eventHandlerId) {
@@ -352,6 +401,7 @@ public class EventHandlerDao extends AbstractVoDao<AbstractEventHandlerVO, Event
                                 Types.INTEGER});
             }
         });
+        enabledHandlers.invalidateAll();
     }
 
     /**
@@ -367,7 +417,7 @@ public class EventHandlerDao extends AbstractVoDao<AbstractEventHandlerVO, Event
             ejt.update("DELETE FROM eventHandlersMapping WHERE AND eventTypeName=? AND eventSubtypeName=? AND eventTypeRef1=? AND eventTypeRef2=?",
                     new Object[] {type.getEventType(), type.getEventSubtype(), type.getReferenceId1(), type.getReferenceId2()},
                     new int[] {Types.VARCHAR, Types.VARCHAR, Types.INTEGER, Types.INTEGER});
-
+        enabledHandlers.invalidateAll();
     }
 
     public void deleteEventHandlerMapping(int eventHandlerId, EventType type) {
@@ -379,5 +429,6 @@ public class EventHandlerDao extends AbstractVoDao<AbstractEventHandlerVO, Event
             ejt.update("DELETE FROM eventHandlersMapping WHERE eventHandlerId=? AND eventTypeName=? AND eventSubtypeName=? AND eventTypeRef1=? AND eventTypeRef2=?",
                     new Object[] {eventHandlerId, type.getEventType(), type.getEventSubtype(), type.getReferenceId1(), type.getReferenceId2()},
                     new int[] {Types.INTEGER, Types.VARCHAR, Types.VARCHAR, Types.INTEGER, Types.INTEGER});
+        enabledHandlers.invalidateAll();
     }
 }
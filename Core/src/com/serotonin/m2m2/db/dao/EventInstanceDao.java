@@ -58,6 +58,10 @@ import static com.serotonin.m2m2.db.dao.DataPointTagsDao.DATA_POINT_TAGS_PIVOT_A
 /**
  * This is used for querying events from the database
  *
+ * When events are written behind by the event journal (events.journal.enabled) the events raised,
+ * returned to normal or acknowledged in the last flush period are not seen here until they are written,
+ * or until the database is back after an outage. Use {@link EventDao#flushJournal()} first if they must be.
+ *
  * @author Terry Packer
  *
  */
@@ -0,0 +1,670 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.db.dao;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+
+import com.infiniteautomation.mango.monitor.AtomicIntegerMonitor;
+import com.serotonin.db.TransactionCapable;
+import com.serotonin.db.spring.ExtendedJdbcTemplate;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.db.IdentityColumn;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.rt.event.EventInstance;
+import com.serotonin.m2m2.rt.event.ReturnCause;
+import com.serotonin.m2m2.rt.event.type.EventType;
+import com.serotonin.m2m2.util.timeout.TimeoutClient;
+import com.serotonin.m2m2.util.timeout.TimeoutTask;
+import com.serotonin.timer.RejectedTaskReason;
+
+/**
+ * Write behind journal for the events table. Event ids are allocated in memory from blocks reserved
+ * from the identity column of the table, inserts and return to normal updates are held in memory and
+ * written in batches by a background task. A return to normal or acknowledgement of an event whose
+ * insert has not been written yet is merged into the insert.
+ *
+ * Every change is also appended to a local {@link EventJournalLog} whose segments are deleted once the
+ * changes in them have been written. Changes that were still pending when Mango stopped or crashed are
+ * replayed from the log when the journal is created and written by the first flush.
+ *
+ * Pending changes are written in one transaction per flush. If the database can't be reached they
+ * are kept, in order, and retried with a delay that doubles up to maxRetryDelay. If the batch fails for
+ * any other reason the changes are written one at a time and those that still fail are logged and
+ * dropped, so that one bad row can't hold up the rest.
+ *
+ * At most maxPending changes are held. Normally the thread that queues a change beyond that writes the
+ * pending changes itself, slowing an event storm down to the speed of the database. While the database
+ * can't be reached that would only fail again, so new events are shed instead: they are raised without
+ * being saved and counted by the shed monitor. Events are also shed during an outage once the reserved
+ * block of ids is used up. Return to normals and acknowledgements are always queued.
+ *
+ * The event dao flushes the journal before reading or deleting events so that it always sees its own
+ * writes, and the journal is flushed and closed when the event manager terminates. Other readers of the
+ * events table, e.g. the {@link EventInstanceDao} behind the REST queries, only see a change once it is
+ * written: up to flushPeriod later, or once the database is back after an outage. The active events
+ * held by the event manager are always current.
+ */
+class EventJournal {
+    private static final Log LOG = LogFactory.getLog(EventJournal.class);
+
+    static final String PENDING_MONITOR_ID = "com.serotonin.m2m2.db.dao.EventJournal.PENDING_MONITOR";
+    static final String SHED_MONITOR_ID = "com.serotonin.m2m2.db.dao.EventJournal.SHED_MONITOR";
+
+    private static final String EVENT_INSERT = //
+            "insert into events (id, typeName, subtypeName, typeRef1, typeRef2, activeTs, rtnApplicable, rtnTs, rtnCause, " //
+            + "  alarmLevel, message, ackTs, ackUserId, alternateAckSource) " //
+            + "values (?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+    private static final int[] EVENT_INSERT_TYPES = { Types.INTEGER, Types.VARCHAR, Types.VARCHAR, Types.INTEGER, Types.INTEGER,
+            Types.BIGINT, Types.CHAR, Types.BIGINT, Types.INTEGER, Types.INTEGER, Types.VARCHAR, Types.BIGINT, Types.INTEGER,
+            Types.CLOB };
+    private static final String EVENT_UPDATE = "update events set rtnTs=?, rtnCause=? where id=?";
+    private static final int[] EVENT_UPDATE_TYPES = { Types.BIGINT, Types.INTEGER, Types.INTEGER };
+    private static final String WRITTEN_SELECT = "select id from events where id in ";
+    private static final int WRITTEN_SELECT_IDS = 1000;
+
+    @FunctionalInterface
+    private interface LogWrite {
+        void write(EventJournalLog log) throws IOException;
+    }
+
+    private final TransactionCapable dao;
+    private final ExtendedJdbcTemplate ejt;
+    private final IdentityColumn identity = new IdentityColumn("events", "id");
+    private final int idBlockSize;
+    private final int maxPending;
+    private final long flushPeriod;
+    private final long retryDelay;
+    private final long maxRetryDelay;
+    private final AtomicIntegerMonitor shedMonitor;
+
+    //Guards everything below
+    private final Object lock = new Object();
+    private boolean open = true;
+    private boolean flushScheduled;
+    private long nextId;
+    private long blockEnd;
+    //In the order they were raised
+    private LinkedHashMap<Integer, PendingInsert> inserts = new LinkedHashMap<>();
+    //Return to normal of events that have already been inserted, or are being inserted
+    private LinkedHashMap<Integer, PendingReturn> returns = new LinkedHashMap<>();
+    //Not thread safe, null if it could not be opened
+    private final EventJournalLog log;
+    //The last write failed because the database could not be reached
+    private boolean outage;
+    private long nextRetryDelay;
+    private int shedInOutage;
+
+    //Held while pending changes are written so that a flush waits for one in progress
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    EventJournal(TransactionCapable dao, ExtendedJdbcTemplate ejt) {
+        this(dao, ejt, Common.MA_HOME_PATH.resolve(Common.envProps.getString("events.journal.log.location", "databases/eventJournal")).normalize());
+    }
+
+    EventJournal(TransactionCapable dao, ExtendedJdbcTemplate ejt, Path logDirectory) {
+        this.dao = dao;
+        this.ejt = ejt;
+        this.idBlockSize = Math.max(1, Common.envProps.getInt("events.journal.idBlockSize", 1000));
+        this.maxPending = Math.max(1, Common.envProps.getInt("events.journal.maxPending", 10000));
+        this.flushPeriod = Math.max(0, Common.envProps.getLong("events.journal.flushPeriod", 500));
+        this.retryDelay = Math.max(1, Common.envProps.getLong("events.journal.retryDelay", 1000));
+        this.maxRetryDelay = Math.max(retryDelay, Common.envProps.getLong("events.journal.maxRetryDelay", 60000));
+        this.nextRetryDelay = retryDelay;
+        Common.MONITORED_VALUES.<Integer>create(PENDING_MONITOR_ID)
+        .name(new TranslatableMessage("internal.monitor.EVENT_JOURNAL_PENDING"))
+        .supplier(this::getPendingCount)
+        .buildPollable();
+        this.shedMonitor = Common.MONITORED_VALUES.<Integer>create(SHED_MONITOR_ID)
+                .name(new TranslatableMessage("internal.monitor.EVENT_JOURNAL_SHED"))
+                .buildAtomic();
+        this.log = openLog(logDirectory);
+    }
+
+    /**
+     * Replay the changes left in the log by a previous run
+     * @return the log or null if it could not be opened, events are then written directly
+     */
+    private EventJournalLog openLog(Path directory) {
+        EventJournalLog opened = new EventJournalLog(directory, Common.envProps.getBoolean("events.journal.log.sync", false));
+        synchronized (lock) {
+            try {
+                int count = opened.open(new EventJournalLog.RecordCallback() {
+                    @Override
+                    public void insert(int id, PendingInsert insert) {
+                        inserts.put(id, insert);
+                    }
+
+                    @Override
+                    public void returnToNormal(int id, long rtnTs, int rtnCause) {
+                        queueReturn(id, rtnTs, rtnCause);
+                    }
+
+                    @Override
+                    public void acknowledge(int id, long ackTs, Integer ackUserId, String alternateAckSource) {
+                        PendingInsert insert = inserts.get(id);
+                        if (insert != null && insert.ackTs == null)
+                            queueAcknowledge(insert, ackTs, ackUserId, alternateAckSource);
+                    }
+                });
+                if (count > 0) {
+                    LOG.info("Recovered " + count + " event changes from the event journal log " + directory);
+                    removeWritten();
+                }
+                return opened;
+            } catch (IOException e) {
+                LOG.error("Unable to open the event journal log " + directory + ", events are written directly", e);
+                open = false;
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Must hold the lock. Remove recovered inserts that were written before the log segments holding
+     * them could be deleted, keeping their return to normal.
+     */
+    private void removeWritten() {
+        List<Integer> ids = new ArrayList<>(inserts.keySet());
+        try {
+            for (int i = 0; i < ids.size(); i += WRITTEN_SELECT_IDS) {
+                String in = ids.subList(i, Math.min(ids.size(), i + WRITTEN_SELECT_IDS)).stream()
+                        .map(String::valueOf).collect(Collectors.joining(",", "(", ")"));
+                for (Integer id : ejt.queryForList(WRITTEN_SELECT + in, Integer.class)) {
+                    PendingInsert insert = inserts.remove(id);
+                    if (insert.rtnTs != null)
+                        returns.put(id, new PendingReturn(insert.rtnTs, insert.rtnCause));
+                }
+            }
+        } catch (DataAccessException e) {
+            LOG.warn("Unable to check which recovered events were already written, those that were will fail to insert", e);
+        }
+    }
+
+    /**
+     * Allocate an id for the event and queue its insert. The event is shed, leaving its id unset, if
+     * the database can't be reached and the journal is full or out of ids.
+     *
+     * @param event
+     * @return false if the journal is closed and the event must be inserted directly
+     * @throws DataAccessException if a block of ids could not be reserved
+     */
+    boolean insert(EventInstance event) {
+        boolean full;
+        synchronized (lock) {
+            if (!open)
+                return false;
+            if (outage && (nextId >= blockEnd || inserts.size() + returns.size() >= maxPending)) {
+                shed();
+                return true;
+            }
+            if (nextId >= blockEnd && !reserveIds())
+                return false;
+            int id = (int) nextId++;
+            event.setId(id);
+            PendingInsert insert = new PendingInsert(event);
+            appendToLog(log -> log.insert(id, insert));
+            inserts.put(id, insert);
+            full = queued();
+        }
+        if (full)
+            flushQuietly();
+        return true;
+    }
+
+    /**
+     * Queue the return to normal of events
+     * @return false if the journal is closed and the events must be updated directly
+     */
+    boolean returnToNormal(List<Integer> eventIds, long time, ReturnCause cause) {
+        boolean full;
+        synchronized (lock) {
+            if (!open)
+                return false;
+            for (Integer id : eventIds) {
+                appendToLog(log -> log.returnToNormal(id, time, cause.value()));
+                queueReturn(id, time, cause.value());
+            }
+            full = queued();
+        }
+        if (full)
+            flushQuietly();
+        return true;
+    }
+
+    /**
+     * Acknowledge an event whose insert has not been written yet
+     *
+     * @return true if it was acknowledged, false if it was already acknowledged or null if the
+     *  insert has been written and the event must be acknowledged in the database
+     */
+    Boolean acknowledge(int eventId, long time, int userId, TranslatableMessage alternateAckSource) {
+        synchronized (lock) {
+            PendingInsert insert = inserts.get(eventId);
+            if (insert == null)
+                return null;
+            if (insert.ackTs != null)
+                return false;
+            Integer ackUserId = userId == 0 ? null : userId;
+            String source = BaseDao.writeTranslatableMessage(alternateAckSource);
+            appendToLog(log -> log.acknowledge(eventId, time, ackUserId, source));
+            queueAcknowledge(insert, time, ackUserId, source);
+            return true;
+        }
+    }
+
+    /**
+     * Must hold the lock
+     */
+    private void queueReturn(int id, long time, int cause) {
+        PendingInsert insert = inserts.get(id);
+        if (insert != null) {
+            insert.rtnTs = time;
+            insert.rtnCause = cause;
+        } else {
+            returns.put(id, new PendingReturn(time, cause));
+        }
+    }
+
+    /**
+     * Must hold the lock
+     */
+    private void queueAcknowledge(PendingInsert insert, long time, Integer userId, String alternateAckSource) {
+        insert.ackTs = time;
+        insert.ackUserId = userId;
+        insert.alternateAckSource = alternateAckSource;
+    }
+
+    /**
+     * Write all pending changes, waiting for a write in progress to finish
+     * @throws DataAccessException if the database could not be reached, the changes that were not
+     *  written remain pending
+     */
+    void flush() {
+        writeLock.lock();
+        try {
+            LinkedHashMap<Integer, PendingInsert> writeInserts;
+            LinkedHashMap<Integer, PendingReturn> writeReturns;
+            List<Path> segments;
+            synchronized (lock) {
+                segments = rotateLog();
+                if (inserts.isEmpty() && returns.isEmpty()) {
+                    //Everything logged has been written
+                    if (log != null)
+                        log.delete(segments);
+                    return;
+                }
+                writeInserts = inserts;
+                writeReturns = returns;
+                inserts = new LinkedHashMap<>();
+                returns = new LinkedHashMap<>();
+            }
+
+            try {
+                try {
+                    dao.doInTransaction(status -> {
+                        if (writeInserts.size() > 0)
+                            ejt.batchUpdate(EVENT_INSERT, insertArgs(writeInserts), EVENT_INSERT_TYPES);
+                        if (writeReturns.size() > 0)
+                            ejt.batchUpdate(EVENT_UPDATE, returnArgs(writeReturns), EVENT_UPDATE_TYPES);
+                    });
+                } catch (RuntimeException e) {
+                    if (isTransient(e)) {
+                        requeue(writeInserts, writeReturns);
+                        throw e;
+                    }
+                    LOG.warn("Error writing " + (writeInserts.size() + writeReturns.size()) + " event changes, writing them one at a time", e);
+                    writeEach(writeInserts, writeReturns);
+                }
+            } catch (RuntimeException e) {
+                unavailable(e);
+                throw e;
+            }
+            written(segments);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Write each change on its own, dropping those that fail. Written and dropped changes are removed
+     * from the maps.
+     * @throws DataAccessException if the database could not be reached, the remaining changes are requeued
+     */
+    private void writeEach(LinkedHashMap<Integer, PendingInsert> writeInserts, LinkedHashMap<Integer, PendingReturn> writeReturns) {
+        try {
+            Iterator<Map.Entry<Integer, PendingInsert>> insertIt = writeInserts.entrySet().iterator();
+            while (insertIt.hasNext()) {
+                Map.Entry<Integer, PendingInsert> entry = insertIt.next();
+                try {
+                    ejt.update(EVENT_INSERT, insertArgs(entry.getKey(), entry.getValue()), EVENT_INSERT_TYPES);
+                } catch (RuntimeException e) {
+                    if (isTransient(e))
+                        throw e;
+                    LOG.error("Dropped insert of event " + entry.getKey() + " " + entry.getValue(), e);
+                }
+                insertIt.remove();
+            }
+
+            Iterator<Map.Entry<Integer, PendingReturn>> returnIt = writeReturns.entrySet().iterator();
+            while (returnIt.hasNext()) {
+                Map.Entry<Integer, PendingReturn> entry = returnIt.next();
+                try {
+                    ejt.update(EVENT_UPDATE, returnArgs(entry.getKey(), entry.getValue()), EVENT_UPDATE_TYPES);
+                } catch (RuntimeException e) {
+                    if (isTransient(e))
+                        throw e;
+                    LOG.error("Dropped return to normal of event " + entry.getKey(), e);
+                }
+                returnIt.remove();
+            }
+        } catch (RuntimeException e) {
+            requeue(writeInserts, writeReturns);
+            throw e;
+        }
+    }
+
+    /**
+     * Put changes that were not written back in front of the changes made since
+     */
+    private void requeue(LinkedHashMap<Integer, PendingInsert> writeInserts, LinkedHashMap<Integer, PendingReturn> writeReturns) {
+        synchronized (lock) {
+            writeInserts.putAll(inserts);
+            inserts = writeInserts;
+            writeReturns.putAll(returns);
+            returns = writeReturns;
+        }
+    }
+
+    /**
+     * The database could not be reached, the pending changes are kept in the log and retried
+     */
+    private void unavailable(RuntimeException e) {
+        synchronized (lock) {
+            if (!outage) {
+                outage = true;
+                LOG.error("Failed to write events, they are kept in the event journal until the database can be reached", e);
+            } else if (LOG.isDebugEnabled()) {
+                LOG.debug("Failed to write events", e);
+            }
+        }
+    }
+
+    /**
+     * The changes taken when these segments were closed have been written
+     */
+    private void written(List<Path> segments) {
+        synchronized (lock) {
+            if (log != null)
+                log.delete(segments);
+            if (outage) {
+                outage = false;
+                nextRetryDelay = retryDelay;
+                LOG.info("Writing events again" + (shedInOutage > 0 ? ", " + shedInOutage + " events raised while the database could not be reached were not saved" : ""));
+                shedInOutage = 0;
+            }
+        }
+    }
+
+    /**
+     * @return true if the failure is expected to go away, e.g. a lost connection, so the changes
+     * should be written again later
+     */
+    static boolean isTransient(RuntimeException e) {
+        if (e instanceof TransientDataAccessException || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException)
+            return true;
+        //Uncategorized exceptions may wrap a dropped connection
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLTransientException || cause instanceof SQLRecoverableException)
+                return true;
+            //SQL state class 08 is a connection exception
+            if (cause instanceof SQLException && ((SQLException) cause).getSQLState() != null
+                    && ((SQLException) cause).getSQLState().startsWith("08"))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Write all pending changes, on failure they are retried after a delay that doubles each time
+     */
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (DataAccessException e) {
+            synchronized (lock) {
+                scheduleFlush(nextRetryDelay);
+                nextRetryDelay = Math.min(nextRetryDelay * 2, maxRetryDelay);
+            }
+        }
+    }
+
+    /**
+     * Write all pending changes and write directly from now on. Changes that could not be written
+     * stay in the log for the next start.
+     */
+    void close() {
+        synchronized (lock) {
+            open = false;
+        }
+        try {
+            flush();
+        } finally {
+            synchronized (lock) {
+                if (log != null)
+                    log.close();
+            }
+        }
+    }
+
+    int getPendingCount() {
+        synchronized (lock) {
+            return inserts.size() + returns.size();
+        }
+    }
+
+    /**
+     * Must hold the lock
+     */
+    private boolean reserveIds() {
+        //Not inserted directly on failure, the generator could hand out ids of pending inserts
+        long first = dao.getTransactionTemplate().execute(status ->
+            Common.databaseProxy.reserveIdentityBlock(ejt, identity, nextId, idBlockSize));
+        if (first < 0) {
+            LOG.warn("The event journal is not supported by " + Common.databaseProxy.getType() + ", events are written directly");
+            open = false;
+            return false;
+        }
+        nextId = first;
+        blockEnd = first + idBlockSize;
+        return true;
+    }
+
+    /**
+     * Must hold the lock
+     */
+    private void shed() {
+        shedMonitor.increment();
+        if (shedInOutage++ == 0)
+            LOG.warn("The database can't be reached and the event journal is full, new events are not saved until it can be");
+    }
+
+    /**
+     * Must hold the lock
+     */
+    private void appendToLog(LogWrite write) {
+        if (log == null)
+            return;
+        try {
+            write.write(log);
+        } catch (IOException e) {
+            LOG.error("Failed to append to the event journal log, the change is lost if Mango stops before it is written", e);
+        }
+    }
+
+    /**
+     * Must hold the lock
+     * @return the closed log segments
+     */
+    private List<Path> rotateLog() {
+        if (log == null)
+            return Collections.emptyList();
+        try {
+            return log.rotate();
+        } catch (IOException e) {
+            //Kept and deleted after a later write
+            LOG.error("Failed to close the event journal log segment", e);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Called with the lock held after a change is queued
+     * @return true if the caller must flush because too many changes are pending
+     */
+    private boolean queued() {
+        //Writing would only fail again while the database can't be reached
+        if (!outage && inserts.size() + returns.size() >= maxPending)
+            return true;
+        scheduleFlush(outage ? nextRetryDelay : flushPeriod);
+        return false;
+    }
+
+    /**
+     * Must hold the lock
+     */
+    private void scheduleFlush(long delay) {
+        if (flushScheduled)
+            return;
+        flushScheduled = true;
+        new TimeoutTask(delay, new TimeoutClient() {
+            @Override
+            public void scheduleTimeout(long fireTime) {
+                synchronized (lock) {
+                    flushScheduled = false;
+                }
+                flushQuietly();
+            }
+
+            @Override
+            public String getThreadName() {
+                return "Event journal flush";
+            }
+
+            @Override
+            public void rejected(RejectedTaskReason reason) {
+                synchronized (lock) {
+                    flushScheduled = false;
+                }
+                super.rejected(reason);
+            }
+        });
+    }
+
+    private static List<Object[]> insertArgs(Map<Integer, PendingInsert> inserts) {
+        List<Object[]> args = new ArrayList<>(inserts.size());
+        for (Map.Entry<Integer, PendingInsert> entry : inserts.entrySet())
+            args.add(insertArgs(entry.getKey(), entry.getValue()));
+        return args;
+    }
+
+    private static Object[] insertArgs(int id, PendingInsert insert) {
+        return new Object[] {
+                id,
+                insert.typeName,
+                insert.subtypeName,
+                insert.typeRef1,
+                insert.typeRef2,
+                insert.activeTs,
+                BaseDao.boolToChar(insert.rtnApplicable),
+                insert.rtnTs,
+                insert.rtnCause,
+                insert.alarmLevel,
+                insert.message,
+                insert.ackTs,
+                insert.ackUserId,
+                insert.alternateAckSource };
+    }
+
+    private static List<Object[]> returnArgs(Map<Integer, PendingReturn> returns) {
+        List<Object[]> args = new ArrayList<>(returns.size());
+        for (Map.Entry<Integer, PendingReturn> entry : returns.entrySet())
+            args.add(returnArgs(entry.getKey(), entry.getValue()));
+        return args;
+    }
+
+    private static Object[] returnArgs(int id, PendingReturn pending) {
+        return new Object[] { pending.rtnTs, pending.rtnCause, id };
+    }
+
+    static class PendingInsert {
+        String typeName;
+        String subtypeName;
+        int typeRef1;
+        int typeRef2;
+        long activeTs;
+        boolean rtnApplicable;
+        Long rtnTs;
+        Integer rtnCause;
+        int alarmLevel;
+        String message;
+        Long ackTs;
+        Integer ackUserId;
+        String alternateAckSource;
+
+        PendingInsert() {
+        }
+
+        PendingInsert(EventInstance event) {
+            EventType type = event.getEventType();
+            this.typeName = type.getEventType();
+            this.subtypeName = type.getEventSubtype();
+            this.typeRef1 = type.getReferenceId1();
+            this.typeRef2 = type.getReferenceId2();
+            this.activeTs = event.getActiveTimestamp();
+            this.rtnApplicable = event.isRtnApplicable();
+            if (event.isRtnApplicable() && !event.isActive()) {
+                this.rtnTs = event.getRtnTimestamp();
+                this.rtnCause = event.getRtnCause().value();
+            }
+            this.alarmLevel = event.getAlarmLevel().value();
+            this.message = BaseDao.writeTranslatableMessage(event.getMessage());
+        }
+
+        @Override
+        public String toString() {
+            return typeName + (subtypeName == null ? "" : "/" + subtypeName) + " raised at " + activeTs;
+        }
+    }
+
+    private static class PendingReturn {
+        private final long rtnTs;
+        private final int rtnCause;
+
+        PendingReturn(long rtnTs, int rtnCause) {
+            this.rtnTs = rtnTs;
+            this.rtnCause = rtnCause;
+        }
+    }
+}
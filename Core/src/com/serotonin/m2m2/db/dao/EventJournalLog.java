@@ -0,0 +1,323 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.db.dao;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.serotonin.m2m2.db.dao.EventJournal.PendingInsert;
+
+/**
+ * Append only log of the changes held by the {@link EventJournal}. Every insert, return to normal and
+ * acknowledgement is appended before it is queued in memory and the log is rotated to a new segment
+ * file each time the journal takes its pending changes to write them. The segments that were closed
+ * before a write are deleted once it has succeeded, so after a crash the remaining segments hold
+ * everything that may not have been written and are replayed, oldest first, when the journal is created.
+ *
+ * Records are written to the file without buffering so they survive a crash of the JVM, they are only
+ * forced to the storage device when a segment is closed unless the log is created to sync every record.
+ * A record that was cut off by a crash ends the replay of its segment.
+ *
+ * Not thread safe, the journal only uses the log while holding its lock.
+ */
+class EventJournalLog {
+
+    private static final Log LOG = LogFactory.getLog(EventJournalLog.class);
+
+    private static final byte INSERT = 1;
+    private static final byte RETURN = 2;
+    private static final byte ACK = 3;
+    //length and checksum of the record
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+    private static final String PREFIX = "events-";
+    private static final String SUFFIX = ".log";
+
+    interface RecordCallback {
+        void insert(int id, PendingInsert insert);
+        void returnToNormal(int id, long rtnTs, int rtnCause);
+        void acknowledge(int id, long ackTs, Integer ackUserId, String alternateAckSource);
+    }
+
+    private final Path directory;
+    private final boolean sync;
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(bytes);
+    //Closed segments whose changes may not have been written
+    private final List<Path> closed = new ArrayList<>();
+    private long nextSegment;
+    private Path currentPath;
+    private FileChannel current;
+
+    /**
+     * @param directory
+     * @param sync force every record to the storage device
+     */
+    EventJournalLog(Path directory, boolean sync) {
+        this.directory = directory;
+        this.sync = sync;
+    }
+
+    /**
+     * Replay the segments left behind by a previous run, they are kept until the next write succeeds
+     *
+     * @return number of records replayed
+     * @throws IOException
+     */
+    int open(RecordCallback callback) throws IOException {
+        Files.createDirectories(directory);
+        TreeMap<Long, Path> found = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                try {
+                    found.put(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())), path);
+                } catch (NumberFormatException e) {
+                    LOG.warn("Ignoring unknown file in event journal " + path);
+                }
+            }
+        }
+
+        int count = 0;
+        for (Path path : found.values()) {
+            count += replay(path, callback);
+            closed.add(path);
+        }
+        nextSegment = found.isEmpty() ? 0 : found.lastKey() + 1;
+        return count;
+    }
+
+    void insert(int id, PendingInsert insert) throws IOException {
+        out.writeByte(INSERT);
+        out.writeInt(id);
+        writeString(insert.typeName);
+        writeString(insert.subtypeName);
+        out.writeInt(insert.typeRef1);
+        out.writeInt(insert.typeRef2);
+        out.writeLong(insert.activeTs);
+        out.writeBoolean(insert.rtnApplicable);
+        writeLong(insert.rtnTs);
+        writeInteger(insert.rtnCause);
+        out.writeInt(insert.alarmLevel);
+        writeString(insert.message);
+        writeLong(insert.ackTs);
+        writeInteger(insert.ackUserId);
+        writeString(insert.alternateAckSource);
+        append();
+    }
+
+    void returnToNormal(int id, long rtnTs, int rtnCause) throws IOException {
+        out.writeByte(RETURN);
+        out.writeInt(id);
+        out.writeLong(rtnTs);
+        out.writeInt(rtnCause);
+        append();
+    }
+
+    void acknowledge(int id, long ackTs, Integer ackUserId, String alternateAckSource) throws IOException {
+        out.writeByte(ACK);
+        out.writeInt(id);
+        out.writeLong(ackTs);
+        writeInteger(ackUserId);
+        writeString(alternateAckSource);
+        append();
+    }
+
+    /**
+     * Close the current segment so that the changes appended from now on go to a new one
+     *
+     * @return every closed segment, to be deleted once the changes taken with it are written
+     * @throws IOException if the current segment could not be closed, it is still kept
+     */
+    List<Path> rotate() throws IOException {
+        if (current != null) {
+            FileChannel closing = current;
+            current = null;
+            closed.add(currentPath);
+            try {
+                closing.force(true);
+            } finally {
+                closing.close();
+            }
+        }
+        return new ArrayList<>(closed);
+    }
+
+    /**
+     * The changes in these segments have been written
+     */
+    void delete(List<Path> segments) {
+        for (Path path : segments) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                LOG.error("Failed to delete event journal segment " + path, e);
+            }
+            closed.remove(path);
+        }
+    }
+
+    /**
+     * Force and close the current segment, unwritten segments are kept for the next start
+     */
+    void close() {
+        try {
+            rotate();
+        } catch (IOException e) {
+            LOG.error("Failed to close event journal segment " + currentPath, e);
+        }
+    }
+
+    private void append() throws IOException {
+        byte[] record = bytes.toByteArray();
+        bytes.reset();
+        if (current == null) {
+            currentPath = directory.resolve(String.format("%s%016d%s", PREFIX, nextSegment++, SUFFIX));
+            current = FileChannel.open(currentPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + record.length);
+        buffer.putInt(record.length);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(record);
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining())
+                current.write(buffer);
+            if (sync)
+                current.force(false);
+        } catch (IOException e) {
+            //A partly written record ends the replay of its segment, continue in a new one
+            FileChannel failed = current;
+            current = null;
+            closed.add(currentPath);
+            try {
+                failed.close();
+            } catch (IOException ex) {
+                e.addSuppressed(ex);
+            }
+            throw e;
+        }
+    }
+
+    private int replay(Path path, RecordCallback callback) throws IOException {
+        int count = 0;
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length < 0 || length > MAX_RECORD_SIZE)
+                    throw new IOException("Invalid record length " + length);
+                int checksum = in.readInt();
+                byte[] record = new byte[length];
+                in.readFully(record);
+                CRC32 crc = new CRC32();
+                crc.update(record);
+                if ((int) crc.getValue() != checksum)
+                    throw new IOException("Checksum mismatch");
+                read(new DataInputStream(new ByteArrayInputStream(record)), callback);
+                count++;
+            }
+        } catch (IOException | RuntimeException e) {
+            //Cut off by a crash, the record was not queued so nothing after it was either
+            LOG.warn("Event journal segment " + path + " ends with an incomplete record after " + count + " records", e);
+        }
+        return count;
+    }
+
+    private void read(DataInputStream in, RecordCallback callback) throws IOException {
+        byte type = in.readByte();
+        int id = in.readInt();
+        switch (type) {
+            case INSERT:
+                PendingInsert insert = new PendingInsert();
+                insert.typeName = readString(in);
+                insert.subtypeName = readString(in);
+                insert.typeRef1 = in.readInt();
+                insert.typeRef2 = in.readInt();
+                insert.activeTs = in.readLong();
+                insert.rtnApplicable = in.readBoolean();
+                insert.rtnTs = readLong(in);
+                insert.rtnCause = readInteger(in);
+                insert.alarmLevel = in.readInt();
+                insert.message = readString(in);
+                insert.ackTs = readLong(in);
+                insert.ackUserId = readInteger(in);
+                insert.alternateAckSource = readString(in);
+                callback.insert(id, insert);
+                break;
+            case RETURN:
+                callback.returnToNormal(id, in.readLong(), in.readInt());
+                break;
+            case ACK:
+                callback.acknowledge(id, in.readLong(), readInteger(in), readString(in));
+                break;
+            default:
+                throw new IOException("Unknown record type " + type);
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(encoded.length);
+            out.write(encoded);
+        }
+    }
+
+    private void writeLong(Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null)
+            out.writeLong(value);
+    }
+
+    private void writeInteger(Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null)
+            out.writeInt(value);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0)
+            return null;
+        byte[] encoded = new byte[length];
+        in.readFully(encoded);
+        return new String(encoded, StandardCharsets.UTF_8);
+    }
+
+    private static Long readLong(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+
+    private static Integer readInteger(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readInt() : null;
+    }
+}
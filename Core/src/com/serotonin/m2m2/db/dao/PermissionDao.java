@@ -14,8 +14,14 @@ import static org.jooq.impl.DSL.when;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -23,14 +29,20 @@ import org.jooq.Field;
 import org.jooq.Record;
 import org.jooq.SelectSeekStep2;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.stereotype.Repository;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.infiniteautomation.mango.permission.MangoPermission;
 import com.infiniteautomation.mango.spring.db.DataSourceTableDefinition;
 import com.infiniteautomation.mango.spring.db.RoleTableDefinition;
+import com.infiniteautomation.mango.spring.events.DaoEvent;
+import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.vo.role.Role;
+import com.serotonin.m2m2.vo.role.RoleVO;
 
 /**
  * @author Jared Wiltshire
@@ -38,82 +50,129 @@ import com.serotonin.m2m2.vo.role.Role;
 @Repository
 public class PermissionDao extends BaseDao {
 
+    private static final int LOAD_CHUNK_SIZE = 1000;
+
     private final RoleTableDefinition roleTable;
     private final DataSourceTableDefinition dataSourceTable;
 
+    //Permissions by id, the minterms of a permission id do not change unless a role is deleted
+    private final Cache<Integer, MangoPermission> permissionCache;
+
     @Autowired
     PermissionDao(RoleTableDefinition roleTable, DataSourceTableDefinition dataSourceTable) {
         this.roleTable = roleTable;
         this.dataSourceTable = dataSourceTable;
+        this.permissionCache = Caffeine.newBuilder()
+                .maximumSize(Common.envProps.getLong("cache.permissions.size", 10000))
+                .build();
     }
 
     /**
-     * Get a MangoPermission by id
+     * Get a MangoPermission by id, permissions are cached and the same instance is shared
+     *  by all VOs that use it
      * @param id
      * @return permission if found if not an empty permission (will not return null)
      */
     public MangoPermission get(Integer id) {
-        //TODO Mango 4.0 improve performance
-        //Fist check to see if it exists as it may have no minterms
-        Integer foundId = create.select(PERMISSIONS.id).from(PERMISSIONS).where(PERMISSIONS.id.equal(id)).fetchOneInto(Integer.class);
-        if(foundId == null) {
+        if(id == null) {
             return new MangoPermission();
         }
+        MangoPermission permission = permissionCache.get(id, k -> loadPermissions(Collections.singleton(k)).get(k));
+        return permission == null ? new MangoPermission() : permission;
+    }
+
+    /**
+     * Load any of the permissions that are not already cached using one query per
+     *  {@link #LOAD_CHUNK_SIZE} ids, to be used before getting the permissions of many VOs
+     * @param ids
+     */
+    public void loadIntoCache(Collection<Integer> ids) {
+        List<Integer> missing = ids.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .filter(id -> permissionCache.getIfPresent(id) == null)
+                .collect(Collectors.toList());
+
+        for(int i = 0; i < missing.size(); i += LOAD_CHUNK_SIZE) {
+            permissionCache.putAll(loadPermissions(missing.subList(i, Math.min(missing.size(), i + LOAD_CHUNK_SIZE))));
+        }
+    }
 
+    /**
+     * Clear all cached permissions, the database has been replaced
+     */
+    public void clearCache() {
+        permissionCache.invalidateAll();
+    }
+
+    /**
+     * Read permissions and their minterms from the database
+     * @param ids
+     * @return the permissions that exist
+     */
+    private Map<Integer, MangoPermission> loadPermissions(Collection<Integer> ids) {
         List<Field<?>> fields = new ArrayList<>();
+        fields.add(PERMISSIONS.id);
+        fields.add(PERMISSIONS_MAPPING.mintermId);
         fields.add(roleTable.getAlias("id"));
         fields.add(roleTable.getAlias("xid"));
-        fields.add(PERMISSIONS_MAPPING.mintermId);
 
-        SelectSeekStep2<Record, Integer, Integer> select = create.select(fields).from(PERMISSIONS_MAPPING)
-                .join(MINTERMS_MAPPING).on(PERMISSIONS_MAPPING.mintermId.eq(MINTERMS_MAPPING.mintermId))
-                .join(roleTable.getTableAsAlias()).on(roleTable.getAlias("id").eq(MINTERMS_MAPPING.roleId))
-                .where(PERMISSIONS_MAPPING.permissionId.eq(id))
-                .orderBy(PERMISSIONS_MAPPING.permissionId.asc(), PERMISSIONS_MAPPING.mintermId.asc());
+        //Permissions may have no minterms
+        SelectSeekStep2<Record, Integer, Integer> select = create.select(fields).from(PERMISSIONS)
+                .leftJoin(PERMISSIONS_MAPPING).on(PERMISSIONS_MAPPING.permissionId.eq(PERMISSIONS.id))
+                .leftJoin(MINTERMS_MAPPING).on(PERMISSIONS_MAPPING.mintermId.eq(MINTERMS_MAPPING.mintermId))
+                .leftJoin(roleTable.getTableAsAlias()).on(roleTable.getAlias("id").eq(MINTERMS_MAPPING.roleId))
+                .where(PERMISSIONS.id.in(ids))
+                .orderBy(PERMISSIONS.id.asc(), PERMISSIONS_MAPPING.mintermId.asc());
 
         String sql = select.getSQL();
         List<Object> arguments = select.getBindValues();
         Object[] argumentsArray = arguments.toArray(new Object[arguments.size()]);
 
-        return this.query(sql, argumentsArray, new ResultSetExtractor<MangoPermission>() {
+        return this.query(sql, argumentsArray, new ResultSetExtractor<Map<Integer, MangoPermission>>() {
+
+            private int permissionIdIndex = 1;
+            private int mintermIdIndex = 2;
+            private int roleIdIndex = 3;
+            private int roleXidIndex = 4;
 
-            private int roleIdIndex = 1;
-            private int roleXidIndex = 2;
-            private int minterIdIndex = 3;
             @Override
-            public MangoPermission extractData(ResultSet rs)
+            public Map<Integer, MangoPermission> extractData(ResultSet rs)
                     throws SQLException, DataAccessException {
-
-                if(rs.next()) {
-                    Set<Set<Role>> roleSet = new HashSet<>();
-                    Set<Role> minTerm = new HashSet<>();
-                    roleSet.add(minTerm);
-                    minTerm.add(new Role(rs.getInt(roleIdIndex), rs.getString(roleXidIndex)));
-
-                    int mintermId = rs.getInt(minterIdIndex);
-                    while(rs.next()) {
-                        if(rs.getInt(minterIdIndex) == mintermId) {
-                            //Add to current minterm
-                            minTerm.add(new Role(rs.getInt(roleIdIndex), rs.getString(roleXidIndex)));
-                        }else {
-                            //Add to next minterm
-                            minTerm = new HashSet<>();
-                            roleSet.add(minTerm);
-                            minTerm.add(new Role(rs.getInt(roleIdIndex), rs.getString(roleXidIndex)));
-                            mintermId = rs.getInt(minterIdIndex);
+                Map<Integer, MangoPermission> permissions = new HashMap<>();
+                Map<Integer, Set<Role>> minterms = new LinkedHashMap<>();
+                int permissionId = 0;
+                boolean first = true;
+                while(rs.next()) {
+                    int id = rs.getInt(permissionIdIndex);
+                    if(first || id != permissionId) {
+                        if(!first) {
+                            permissions.put(permissionId, createPermission(permissionId, minterms));
                         }
+                        first = false;
+                        permissionId = id;
+                        minterms.clear();
+                    }
+                    String roleXid = rs.getString(roleXidIndex);
+                    if(roleXid != null) {
+                        minterms.computeIfAbsent(rs.getInt(mintermIdIndex), k -> new HashSet<>())
+                        .add(new Role(rs.getInt(roleIdIndex), roleXid));
                     }
-                    MangoPermission permission = new MangoPermission(roleSet);
-                    permission.setId(id);
-                    return permission;
-                }else {
-                    return new MangoPermission(foundId);
                 }
+                if(!first) {
+                    permissions.put(permissionId, createPermission(permissionId, minterms));
+                }
+                return permissions;
             }
-
         });
     }
 
+    private MangoPermission createPermission(int id, Map<Integer, Set<Role>> minterms) {
+        MangoPermission permission = new MangoPermission(new HashSet<>(minterms.values()));
+        permission.setId(id);
+        return permission;
+    }
+
     /**
      * Find the id of a permission or create one that matches
      *
@@ -206,6 +265,9 @@ public class PermissionDao extends BaseDao {
     }
 
     public void roleUnlinked() {
+        //The minterms of any permission may have contained the role
+        permissionCache.invalidateAll();
+
         //Clean up minterms that are orphaned (i.e. belong to no role)
         create.deleteFrom(MINTERMS).where(
                 MINTERMS.id.in(
@@ -215,6 +277,22 @@ public class PermissionDao extends BaseDao {
 
     }
 
+    /**
+     * Roles are held by the cached permissions
+     * @param event
+     */
+    @EventListener
+    protected void handleRoleEvent(DaoEvent<? extends RoleVO> event) {
+        switch(event.getType()) {
+            case DELETE:
+            case UPDATE:
+                permissionCache.invalidateAll();
+                break;
+            default:
+                break;
+        }
+    }
+
     /**
      * Clean up references from an unlinked permission
      */
@@ -235,6 +313,9 @@ public class PermissionDao extends BaseDao {
     public void permissionDeleted(MangoPermission... permissions) {
         int deleted = 0;
         for(MangoPermission permission : permissions) {
+            if(permission.getId() != null) {
+                permissionCache.invalidate(permission.getId());
+            }
             try{
                 deleted += create.deleteFrom(PERMISSIONS).where(PERMISSIONS.id.eq(permission.getId())).execute();
             }catch(Exception e) {
@@ -19,6 +19,7 @@
 package com.serotonin.m2m2.db.dao;
 
 import java.util.List;
+import java.util.Map;
 
 import com.infiniteautomation.mango.db.query.BookendQueryCallback;
 import com.infiniteautomation.mango.db.query.PVTQueryCallback;
@@ -28,6 +29,7 @@ import com.serotonin.m2m2.rt.dataImage.IdPointValueTime;
 import com.serotonin.m2m2.rt.dataImage.PointValueTime;
 import com.serotonin.m2m2.rt.dataImage.SetPointSource;
 import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.dataSource.DataSourceVO;
 import com.serotonin.m2m2.vo.pair.LongPair;
 
 public interface PointValueDao {
@@ -97,6 +99,19 @@ public interface PointValueDao {
      */
     public void getLatestPointValues(List<DataPointVO> vos, long before, boolean orderById, Integer limit, final PVTQueryCallback<IdPointValueTime> callback);
 
+    /**
+     * Get the latest values for every point on a data source at once, used to fill the point value
+     *  caches when the data source starts.
+     *
+     * @param dataSource
+     * @param numberOfValues - maximum number of values per point
+     * @return values in reverse time order by data point id, points without values may be missing. Null if
+     *  the values can't be retrieved in bulk and must be queried per point.
+     */
+    public default Map<Integer, List<PointValueTime>> getLatestPointValuesForDataSource(DataSourceVO dataSource, int numberOfValues) {
+        return null;
+    }
+
     /**
      * Get the latest point value for this point
      * @param vo
@@ -5,6 +5,7 @@
 package com.serotonin.m2m2.db.dao;
 
 import java.util.List;
+import java.util.Map;
 
 import com.infiniteautomation.mango.db.query.BookendQueryCallback;
 import com.infiniteautomation.mango.db.query.PVTQueryCallback;
@@ -16,6 +17,7 @@ import com.serotonin.m2m2.rt.dataImage.IdPointValueTime;
 import com.serotonin.m2m2.rt.dataImage.PointValueTime;
 import com.serotonin.m2m2.rt.dataImage.SetPointSource;
 import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.dataSource.DataSourceVO;
 import com.serotonin.m2m2.vo.pair.LongPair;
 
 /**
@@ -108,6 +110,14 @@ public class PointValueDaoMetrics implements PointValueDao {
         LogStopWatch.stop("getLatestPointValues(vos,limit,before, orderById, callback) (" + vos +", " + limit + ", " + before + "," + orderById + ", callback)", this.metricsThreshold);
     }
 
+    @Override
+    public Map<Integer, List<PointValueTime>> getLatestPointValuesForDataSource(DataSourceVO dataSource, int numberOfValues) {
+        LogStopWatch LogStopWatch = new LogStopWatch();
+        Map<Integer, List<PointValueTime>> values = dao.getLatestPointValuesForDataSource(dataSource, numberOfValues);
+        LogStopWatch.stop("getLatestPointValuesForDataSource(dataSource,numberOfValues) (" + dataSource + ", " + numberOfValues + "){" + (values != null ? values.size() : 0) +"}", this.metricsThreshold);
+        return values;
+    }
+
     @Override
     public PointValueTime getLatestPointValue(DataPointVO vo) {
         LogStopWatch LogStopWatch = new LogStopWatch();
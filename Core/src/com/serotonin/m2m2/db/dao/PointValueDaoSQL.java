@@ -13,14 +13,19 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.mutable.MutableInt;
@@ -28,11 +33,15 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.dao.RecoverableDataAccessException;
 import org.springframework.dao.TransientDataAccessException;
 import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.BadSqlGrammarException;
 import org.springframework.jdbc.CannotGetJdbcConnectionException;
 import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.PreparedStatementCallback;
 import org.springframework.jdbc.core.PreparedStatementCreator;
 import org.springframework.jdbc.core.RowMapper;
@@ -41,6 +50,7 @@ import org.springframework.jdbc.support.JdbcUtils;
 import com.infiniteautomation.mango.db.query.BookendQueryCallback;
 import com.infiniteautomation.mango.db.query.PVTQueryCallback;
 import com.infiniteautomation.mango.db.query.QueryCancelledException;
+import com.infiniteautomation.mango.monitor.AtomicIntegerMonitor;
 import com.infiniteautomation.mango.monitor.ValueMonitor;
 import com.serotonin.ShouldNeverHappenException;
 import com.serotonin.db.MappedRowCallback;
@@ -50,6 +60,8 @@ import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.DataTypes;
 import com.serotonin.m2m2.ImageSaveException;
 import com.serotonin.m2m2.db.DatabaseProxy.DatabaseType;
+import com.serotonin.m2m2.db.PointValueBatch;
+import com.serotonin.m2m2.db.PointValueInsertStrategy;
 import com.serotonin.m2m2.i18n.TranslatableMessage;
 import com.serotonin.m2m2.rt.dataImage.AnnotatedIdPointValueTime;
 import com.serotonin.m2m2.rt.dataImage.AnnotatedPointValueTime;
@@ -64,26 +76,52 @@ import com.serotonin.m2m2.rt.dataImage.types.ImageValue;
 import com.serotonin.m2m2.rt.dataImage.types.MultistateValue;
 import com.serotonin.m2m2.rt.dataImage.types.NumericValue;
 import com.serotonin.m2m2.rt.maint.work.WorkItem;
+import com.serotonin.m2m2.util.timeout.TimeoutClient;
+import com.serotonin.m2m2.util.timeout.TimeoutTask;
 import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.dataSource.DataSourceVO;
 import com.serotonin.m2m2.vo.pair.LongPair;
 import com.serotonin.metrics.EventHistogram;
 import com.serotonin.timer.RejectedTaskReason;
 import com.serotonin.util.CollectionUtils;
-import com.serotonin.util.queue.ObjectQueue;
 
 public class PointValueDaoSQL extends BaseDao implements PointValueDao {
 
     private static final Log LOG = LogFactory.getLog(PointValueDao.class);
 
     private static List<UnsavedPointValue> UNSAVED_POINT_VALUES = new ArrayList<UnsavedPointValue>();
+    private static volatile boolean spoolInitialized;
+    //Set if the database rejects the bulk latest values query, e.g. MySQL before 8.0
+    private static volatile boolean latestValuesForDataSourceUnsupported;
 
     private static final String POINT_VALUE_INSERT_START = "insert into pointValues (dataPointId, dataType, pointValue, ts) values ";
     private static final String POINT_VALUE_INSERT_VALUES = "(?,?,?,?)";
-    private static final int POINT_VALUE_INSERT_VALUES_COUNT = 4;
     private static final String POINT_VALUE_INSERT = POINT_VALUE_INSERT_START + POINT_VALUE_INSERT_VALUES;
     private static final String POINT_VALUE_ANNOTATION_INSERT = "insert into pointValueAnnotations "
             + "(pointValueId, textPointValueShort, textPointValueLong, sourceMessage) values (?,?,?,?)";
 
+    /**
+     * Open the write ahead spool for asynchronous writes, values that were not saved by a
+     * previous run are written to the database before this returns.
+     *
+     * @param ejt
+     * @throws IOException
+     */
+    public static void initializeSpool(ExtendedJdbcTemplate ejt) throws IOException {
+        BatchWriteBehind.openSpool(ejt);
+        spoolInitialized = true;
+    }
+
+    /**
+     * Close the write ahead spool, values that are still queued will be saved on the next start.
+     */
+    public static void terminateSpool() {
+        if (spoolInitialized) {
+            BatchWriteBehind.closeSpool();
+            spoolInitialized = false;
+        }
+    }
+
     /**
      * Only the PointValueCache should call this method during runtime. Do not use.
      */
@@ -190,7 +228,7 @@ public class PointValueDaoSQL extends BaseDao implements PointValueDao {
         dvalue = Common.databaseProxy.applyBounds(dvalue);
 
         if (async) {
-            BatchWriteBehind.add(new BatchWriteBehindEntry(vo, dataType, dvalue, time), ejt);
+            BatchWriteBehind.add(new BatchWriteBehindEntry(vo.getId(), dataType, dvalue, time), ejt);
             return -1;
         }
 
@@ -213,6 +251,9 @@ public class PointValueDaoSQL extends BaseDao implements PointValueDao {
     private long savePointValueImpl(DataPointVO vo, int dataType, double dvalue, long time, String svalue,
             SetPointSource source) {
         long id = doInsertLong(POINT_VALUE_INSERT, new Object[] { vo.getId(), dataType, dvalue, time });
+        PointValueRollupDao rollups = PointValueRollupDao.getInstance();
+        if (rollups != null)
+            rollups.written(vo.getId(), dataType, time);
 
         if (svalue == null && dataType == DataTypes.IMAGE)
             svalue = Long.toString(id);
@@ -342,6 +383,68 @@ public class PointValueDaoSQL extends BaseDao implements PointValueDao {
                 new Object[] { vo.getId(), before }, limit);
     }
 
+    /**
+     * Postgres can use the index to read only the latest n values of each point
+     */
+    private static final String LATEST_VALUES_FOR_DATA_SOURCE_LATERAL = "select dp.id, pv.dataType, pv.pointValue, "
+            + "pva.textPointValueShort, pva.textPointValueLong, pv.ts, pva.sourceMessage "
+            + "from dataPoints dp cross join lateral ("
+            + "select id, dataType, pointValue, ts from pointValues where dataPointId = dp.id order by ts desc limit ?) pv "
+            + "  left join pointValueAnnotations pva on pv.id = pva.pointValueId "
+            + "where dp.dataSourceId = ? order by dp.id, pv.ts desc";
+
+    /**
+     * The same seek per point on MSSQL
+     */
+    private static final String LATEST_VALUES_FOR_DATA_SOURCE_APPLY = "select dp.id, pv.dataType, pv.pointValue, "
+            + "pva.textPointValueShort, pva.textPointValueLong, pv.ts, pva.sourceMessage "
+            + "from dataPoints dp cross apply ("
+            + "select top (?) id, dataType, pointValue, ts from pointValues where dataPointId = dp.id order by ts desc) pv "
+            + "  left join pointValueAnnotations pva on pv.id = pva.pointValueId "
+            + "where dp.dataSourceId = ? order by dp.id, pv.ts desc";
+
+    @Override
+    public Map<Integer, List<PointValueTime>> getLatestPointValuesForDataSource(DataSourceVO dataSource, int numberOfValues) {
+        if (numberOfValues <= 0 || latestValuesForDataSourceUnsupported)
+            return null;
+
+        String sql;
+        //Only where the latest values of each point can be read from the index, numbering every value
+        // of every point to keep the latest would read the whole history of the data source
+        switch (Common.databaseProxy.getType()) {
+            case POSTGRES:
+                sql = LATEST_VALUES_FOR_DATA_SOURCE_LATERAL;
+                break;
+            case MSSQL:
+                sql = LATEST_VALUES_FOR_DATA_SOURCE_APPLY;
+                break;
+            default:
+                return null;
+        }
+        Object[] args = new Object[] {numberOfValues, dataSource.getId()};
+
+        Map<Integer, List<PointValueTime>> values = new HashMap<>();
+        try {
+            ejt.query(sql, args, rs -> {
+                int dataPointId = rs.getInt(1);
+                DataValue value = createDataValue(rs, 2);
+                long time = rs.getLong(6);
+                TranslatableMessage sourceMessage = BaseDao.readTranslatableMessage(rs, 7);
+                PointValueTime pvt;
+                if (sourceMessage != null)
+                    pvt = new AnnotatedPointValueTime(value, time, sourceMessage);
+                else
+                    pvt = new PointValueTime(value, time);
+                values.computeIfAbsent(dataPointId, k -> new ArrayList<>(numberOfValues)).add(pvt);
+            });
+        } catch (BadSqlGrammarException e) {
+            latestValuesForDataSourceUnsupported = true;
+            LOG.warn("Unable to query the latest point values of a data source in bulk, values will be queried per point.", e);
+            return null;
+        }
+        return values;
+    }
+
     private List<PointValueTime> pointValuesQuery(String sql, Object[] params, int limit) {
         return Common.databaseProxy.doLimitQuery(this, sql, params, new PointValueRowMapper(), limit);
     }
@@ -942,25 +1045,41 @@ public class PointValueDaoSQL extends BaseDao implements PointValueDao {
     //
 
     public long deletePointValue(int pointValueId) {
-        return deletePointValues("delete from pointValues where id = ?", new Object[] { pointValueId }, 0, 0);
+        PointValueRollupDao rollups = PointValueRollupDao.getInstance();
+        List<long[]> deleted = new ArrayList<>(1);
+        if (rollups != null) {
+            ejt.query("select dataPointId, ts from pointValues where id = ?", new Object[] { pointValueId }, rs -> {
+                deleted.add(new long[] { rs.getInt(1), rs.getLong(2) });
+            });
+        }
+        long cnt = deletePointValues("delete from pointValues where id = ?", new Object[] { pointValueId }, 0, 0);
+        for (long[] value : deleted)
+            rollupsDeleted((int) value[0], value[1], value[1] + 1);
+        return cnt;
     }
 
     @Override
     public long deletePointValue(DataPointVO vo, long ts) {
-        return deletePointValues("delete from pointValues where dataPointId = ? AND ts = ?", new Object[] {
+        long cnt = deletePointValues("delete from pointValues where dataPointId = ? AND ts = ?", new Object[] {
                 vo.getId(), ts }, 0, 0);
+        rollupsDeleted(vo.getId(), ts, ts + 1);
+        return cnt;
     }
 
     @Override
     public long deletePointValuesBefore(DataPointVO vo, long time) {
-        return deletePointValues("delete from pointValues where dataPointId=? and ts<?", new Object[] { vo.getId(),
+        long cnt = deletePointValues("delete from pointValues where dataPointId=? and ts<?", new Object[] { vo.getId(),
                 time }, 0, 0);
+        rollupsDeleted(vo.getId(), Long.MIN_VALUE, time);
+        return cnt;
     }
 
     @Override
     public long deletePointValuesBetween(DataPointVO vo, long startTime, long endTime) {
-        return deletePointValues("delete from pointValues where dataPointId=? and ts>=? and ts<?", new Object[] { vo.getId(),
+        long cnt = deletePointValues("delete from pointValues where dataPointId=? and ts>=? and ts<?", new Object[] { vo.getId(),
                 startTime, endTime }, 0, 0);
+        rollupsDeleted(vo.getId(), startTime, endTime);
+        return cnt;
     }
 
     @Override
@@ -970,22 +1089,26 @@ public class PointValueDaoSQL extends BaseDao implements PointValueDao {
 
     @Override
     public long deletePointValues(DataPointVO vo) {
-        return deletePointValues("delete from pointValues where dataPointId=?", new Object[] { vo.getId() }, 0, 0);
+        long cnt = deletePointValues("delete from pointValues where dataPointId=?", new Object[] { vo.getId() }, 0, 0);
+        rollupsDeleted(vo.getId(), Long.MIN_VALUE, Long.MAX_VALUE);
+        return cnt;
     }
 
     @Override
     public boolean deletePointValuesWithoutCount(DataPointVO vo) {
-        return deletePointValues("delete from pointValues where dataPointId=?", new Object[] { vo.getId() }, 0, 0) > 0;
+        return deletePointValues(vo) > 0;
     }
 
     @Override
     public long deleteAllPointData() {
-        return deletePointValues("delete from pointValues", null, 0, 0);
+        long cnt = deletePointValues("delete from pointValues", null, 0, 0);
+        rollupsDeletedAll();
+        return cnt;
     }
 
     @Override
     public void deleteAllPointDataWithoutCount() {
-        deletePointValues("delete from pointValues", null, 0, 0);
+        deleteAllPointData();
     }
 
     @Override
@@ -1024,6 +1147,18 @@ public class PointValueDaoSQL extends BaseDao implements PointValueDao {
         }
     }
 
+    private void rollupsDeleted(int dataPointId, long from, long to) {
+        PointValueRollupDao rollups = PointValueRollupDao.getInstance();
+        if (rollups != null)
+            rollups.deleted(dataPointId, from, to);
+    }
+
+    private void rollupsDeletedAll() {
+        PointValueRollupDao rollups = PointValueRollupDao.getInstance();
+        if (rollups != null)
+            rollups.deletedAll();
+    }
+
     private long deletePointValues(String sql, Object[] params, int chunkWait, int limit) {
         long cnt = Common.databaseProxy.doLimitDelete(ejt, sql, params, 1000, chunkWait, limit);
         clearUnsavedPointValues();
@@ -1154,49 +1289,139 @@ public class PointValueDaoSQL extends BaseDao implements PointValueDao {
         }
     }
 
-    class BatchWriteBehindEntry {
-        private final DataPointVO vo;
+    static class BatchWriteBehindEntry {
+        private final int dataPointId;
         private final int dataType;
         private final double dvalue;
         private final long time;
+        //Position in the spool or -1 if not spooled
+        private long sequence = -1;
 
-        public BatchWriteBehindEntry(DataPointVO vo, int dataType, double dvalue, long time) {
-            this.vo = vo;
+        public BatchWriteBehindEntry(int dataPointId, int dataType, double dvalue, long time) {
+            this.dataPointId = dataPointId;
             this.dataType = dataType;
             this.dvalue = dvalue;
             this.time = time;
         }
-
-        public void writeInto(Object[] params, int index) {
-            index *= POINT_VALUE_INSERT_VALUES_COUNT;
-            params[index++] = vo.getId();
-            params[index++] = dataType;
-            params[index++] = dvalue;
-            params[index++] = time;
-        }
     }
 
     public static final String ENTRIES_MONITOR_ID = "com.serotonin.m2m2.db.dao.PointValueDao$BatchWriteBehind.ENTRIES_MONITOR";
     public static final String INSTANCES_MONITOR_ID = "com.serotonin.m2m2.db.dao.PointValueDao$BatchWriteBehind.INSTANCES_MONITOR";
     public static final String BATCH_WRITE_SPEED_MONITOR_ID = "com.serotonin.m2m2.db.dao.PointValueDao$BatchWriteBehind.BATCH_WRITE_SPEED_MONITOR";
+    public static final String SHARD_ENTRIES_MONITOR_ID = "com.serotonin.m2m2.db.dao.PointValueDao$BatchWriteBehind.SHARD_ENTRIES_MONITOR.";
+    public static final String SHARD_FLUSH_LATENCY_MONITOR_ID = "com.serotonin.m2m2.db.dao.PointValueDao$BatchWriteBehind.SHARD_FLUSH_LATENCY_MONITOR.";
+    public static final String SPOOL_SIZE_MONITOR_ID = "com.serotonin.m2m2.db.dao.PointValueDao$BatchWriteBehind.SPOOL_SIZE_MONITOR";
+    public static final String SPOOL_BACKLOG_MONITOR_ID = "com.serotonin.m2m2.db.dao.PointValueDao$BatchWriteBehind.SPOOL_BACKLOG_MONITOR";
+    public static final String SPOOL_BACKLOG_AGE_MONITOR_ID = "com.serotonin.m2m2.db.dao.PointValueDao$BatchWriteBehind.SPOOL_BACKLOG_AGE_MONITOR";
+    public static final String SPOOL_REPLAY_SPEED_MONITOR_ID = "com.serotonin.m2m2.db.dao.PointValueDao$BatchWriteBehind.SPOOL_REPLAY_SPEED_MONITOR";
     final static EventHistogram writesPerSecond = new EventHistogram(5000, 2);
 
+    /**
+     * A partition of the write behind queue. Points are assigned to a shard by id so that producers for
+     * different points rarely touch the same queue, entries are enqueued without locking and each shard
+     * is drained by its own writers.
+     */
+    static class BatchWriteBehindShard {
+        private final int index;
+        private final ConcurrentLinkedQueue<BatchWriteBehindEntry> entries = new ConcurrentLinkedQueue<>();
+        private final AtomicIntegerMonitor entriesMonitor;
+        private final ValueMonitor<Integer> flushLatencyMonitor;
+        final AtomicInteger writers = new AtomicInteger();
+        //Current number of rows to insert per statement, adapted to observed insert latency
+        private volatile int batchSize;
+
+        BatchWriteBehindShard(int index, int batchSize) {
+            this.index = index;
+            this.batchSize = batchSize;
+            this.entriesMonitor = Common.MONITORED_VALUES.<Integer>create(SHARD_ENTRIES_MONITOR_ID + index)
+                    .name(new TranslatableMessage("internal.monitor.BATCH_SHARD_ENTRIES", index))
+                    .value(0)
+                    .buildAtomic();
+            this.flushLatencyMonitor = Common.MONITORED_VALUES.<Integer>create(SHARD_FLUSH_LATENCY_MONITOR_ID + index)
+                    .name(new TranslatableMessage("internal.monitor.BATCH_SHARD_FLUSH_LATENCY", index))
+                    .value(0)
+                    .build();
+        }
+
+        /**
+         * Remove up to max entries from the head of the shard
+         * @param inserts
+         * @param max
+         * @return the number of entries removed
+         */
+        int drain(BatchWriteBehindEntry[] inserts, int max) {
+            int count = 0;
+            BatchWriteBehindEntry e;
+            while (count < max && (e = entries.poll()) != null)
+                inserts[count++] = e;
+            if (count > 0)
+                entriesMonitor.addValue(-count);
+            return count;
+        }
+
+        int size() {
+            return entriesMonitor.getValue();
+        }
+
+        /**
+         * Add an entry to the tail of the shard
+         * @return the number of entries in the shard
+         */
+        int offer(BatchWriteBehindEntry e) {
+            entries.offer(e);
+            return entriesMonitor.addAndGet(1);
+        }
+
+        /**
+         * Shrink the batch when a flush is slower than the target latency, grow it again when full
+         * batches are written comfortably within the target.
+         */
+        void adapt(int count, long elapsedMs) {
+            int current = batchSize;
+            if (elapsedMs > BatchWriteBehind.TARGET_LATENCY) {
+                batchSize = Math.max(BatchWriteBehind.MIN_ROWS, current / 2);
+            } else if (count == current && elapsedMs < BatchWriteBehind.TARGET_LATENCY / 2) {
+                batchSize = Math.min(BatchWriteBehind.MAX_ROWS, current + current / 4 + 1);
+            }
+        }
+
+        /**
+         * Called by a writer that found the shard empty. Returns false if the writer must keep running
+         * because an entry was enqueued after it looked and no other writer is around to take it.
+         */
+        boolean retire() {
+            writers.decrementAndGet();
+            while (!entries.isEmpty()) {
+                int current = writers.get();
+                if (current > 0)
+                    return true;
+                if (writers.compareAndSet(0, 1))
+                    return false;
+            }
+            return true;
+        }
+    }
+
     static class BatchWriteBehind implements WorkItem {
-        private static final ObjectQueue<BatchWriteBehindEntry> ENTRIES = new ObjectQueue<PointValueDaoSQL.BatchWriteBehindEntry>();
-        private static final CopyOnWriteArrayList<BatchWriteBehind> instances = new CopyOnWriteArrayList<BatchWriteBehind>();
-        private static Log LOG = LogFactory.getLog(BatchWriteBehind.class);
-        private static final int SPAWN_THRESHOLD = 10000;
-        private static final int MAX_INSTANCES = 5;
-        private static int MAX_ROWS = 1000;
+        private static final Log LOG = LogFactory.getLog(BatchWriteBehind.class);
+        private static final int SHARD_COUNT;
+        private static final int SPAWN_THRESHOLD;
+        private static final int MAX_INSTANCES;
+        private static final long SPAWN_RETRY_DELAY;
+        static final int MIN_ROWS;
+        static final int MAX_ROWS;
+        static final long TARGET_LATENCY;
+        private static final BatchWriteBehindShard[] SHARDS;
+
         private static final ValueMonitor<Integer> ENTRIES_MONITOR = Common.MONITORED_VALUES.<Integer>create(ENTRIES_MONITOR_ID)
                 .name(new TranslatableMessage("internal.monitor.BATCH_ENTRIES"))
                 .value(0)
                 .build();
 
-        private static final ValueMonitor<Integer> INSTANCES_MONITOR = Common.MONITORED_VALUES.<Integer>create(INSTANCES_MONITOR_ID)
+        private static final AtomicIntegerMonitor INSTANCES_MONITOR = Common.MONITORED_VALUES.<Integer>create(INSTANCES_MONITOR_ID)
                 .name(new TranslatableMessage("internal.monitor.BATCH_INSTANCES"))
                 .value(0)
-                .build();
+                .buildAtomic();
 
         //TODO Create ValueMonitor<Double> but will need to upgrade the Internal data source to do this
         private static final ValueMonitor<Integer> BATCH_WRITE_SPEED_MONITOR = Common.MONITORED_VALUES.<Integer>create(BATCH_WRITE_SPEED_MONITOR_ID)
@@ -1206,98 +1431,348 @@ public class PointValueDaoSQL extends BaseDao implements PointValueDao {
 
         private static List<Class<? extends RuntimeException>> retriedExceptions = new ArrayList<Class<? extends RuntimeException>>();
 
+        private static final PointValueInsertStrategy INSERT_STRATEGY = Common.databaseProxy.getPointValueInsertStrategy();
+
+        //Write ahead spool, null when disabled
+        private static volatile PointValueSpool spool;
+        private static final AtomicBoolean replayScheduled = new AtomicBoolean();
+        private static final EventHistogram replaysPerSecond = new EventHistogram(5000, 2);
+        private static long replayDelay;
+        private static int replayLimit;
+        private static ValueMonitor<Integer> spoolSizeMonitor;
+        private static ValueMonitor<Integer> spoolBacklogMonitor;
+        private static ValueMonitor<Integer> spoolBacklogAgeMonitor;
+        private static ValueMonitor<Integer> spoolReplaySpeedMonitor;
+
         static {
+            int maxRows;
+            int limit = Integer.MAX_VALUE;
             if (Common.databaseProxy.getType() == DatabaseType.DERBY)
                 // This has not been tested to be optimal
-                MAX_ROWS = 1000;
+                maxRows = 1000;
             else if (Common.databaseProxy.getType() == DatabaseType.H2)
                 // This has not been tested to be optimal
-                MAX_ROWS = 1000;
-            else if (Common.databaseProxy.getType() == DatabaseType.MSSQL)
+                maxRows = 1000;
+            else if (Common.databaseProxy.getType() == DatabaseType.MSSQL) {
                 // MSSQL has max rows of 1000, and max parameters of 2100. In this case that works out to...
-                MAX_ROWS = 524;
+                maxRows = 524;
+                limit = 524;
+            }
             else if (Common.databaseProxy.getType() == DatabaseType.MYSQL)
                 // This appears to be an optimal value
-                MAX_ROWS = 2000;
+                maxRows = 2000;
             else if (Common.databaseProxy.getType() == DatabaseType.POSTGRES)
                 // This appears to be an optimal value
-                MAX_ROWS = 2000;
+                maxRows = 2000;
             else
                 throw new ShouldNeverHappenException("Unknown database type: " + Common.databaseProxy.getType());
 
+            maxRows = Math.min(limit, Common.envProps.getInt("db.writeBehind.maxRows", maxRows));
+            MAX_ROWS = Math.max(1, maxRows);
+            MIN_ROWS = Math.max(1, Math.min(MAX_ROWS, Common.envProps.getInt("db.writeBehind.minRows", 100)));
+            TARGET_LATENCY = Common.envProps.getLong("db.writeBehind.targetLatency", 1000);
+            SPAWN_THRESHOLD = Common.envProps.getInt("db.writeBehind.spawnThreshold", 10000);
+            MAX_INSTANCES = Math.max(1, Common.envProps.getInt("db.writeBehind.maxInstancesPerShard", 2));
+            SPAWN_RETRY_DELAY = Math.max(1, Common.envProps.getLong("db.writeBehind.spawnRetryDelay", 100));
+
+            int shards = Common.envProps.getInt("db.writeBehind.shards", 0);
+            if (shards <= 0)
+                shards = Runtime.getRuntime().availableProcessors();
+            SHARD_COUNT = shards;
+            SHARDS = new BatchWriteBehindShard[SHARD_COUNT];
+            for (int i = 0; i < SHARD_COUNT; i++)
+                SHARDS[i] = new BatchWriteBehindShard(i, MAX_ROWS);
+
             retriedExceptions.add(RecoverableDataAccessException.class);
             retriedExceptions.add(TransientDataAccessException.class);
             retriedExceptions.add(TransientDataAccessResourceException.class);
             retriedExceptions.add(CannotGetJdbcConnectionException.class);
+            retriedExceptions.add(DataAccessResourceFailureException.class);
+            retriedExceptions.add(QueryTimeoutException.class);
+        }
+
+        /**
+         * @return true if the failure is expected to go away, e.g. a lost connection, so the values
+         * should be written again later
+         */
+        static boolean isRetried(RuntimeException e) {
+            for (Class<? extends RuntimeException> type : retriedExceptions)
+                if (type.isInstance(e))
+                    return true;
+            //Uncategorized exceptions may wrap a dropped connection
+            for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof SQLTransientException || cause instanceof SQLRecoverableException)
+                    return true;
+                if (cause instanceof SQLException) {
+                    String state = ((SQLException) cause).getSQLState();
+                    //SQL state class 08 is a connection exception
+                    if (state != null && state.startsWith("08"))
+                        return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Open the write ahead spool and save any values left in it by a previous run.
+         * @param ejt
+         * @throws IOException
+         */
+        static synchronized void openSpool(ExtendedJdbcTemplate ejt) throws IOException {
+            if (spool != null)
+                return;
+            Path location = Common.MA_HOME_PATH.resolve(Common.envProps.getString("db.writeBehind.spool.location", "databases/spool")).normalize();
+            replayDelay = Common.envProps.getLong("db.writeBehind.spool.replayDelay", 10000);
+            replayLimit = Common.envProps.getInt("db.writeBehind.spool.replayLimit", 100000);
+
+            spoolSizeMonitor = Common.MONITORED_VALUES.<Integer>create(SPOOL_SIZE_MONITOR_ID)
+                    .name(new TranslatableMessage("internal.monitor.SPOOL_SIZE"))
+                    .value(0)
+                    .build();
+            spoolBacklogMonitor = Common.MONITORED_VALUES.<Integer>create(SPOOL_BACKLOG_MONITOR_ID)
+                    .name(new TranslatableMessage("internal.monitor.SPOOL_BACKLOG"))
+                    .value(0)
+                    .build();
+            spoolBacklogAgeMonitor = Common.MONITORED_VALUES.<Integer>create(SPOOL_BACKLOG_AGE_MONITOR_ID)
+                    .name(new TranslatableMessage("internal.monitor.SPOOL_BACKLOG_AGE"))
+                    .value(0)
+                    .build();
+            spoolReplaySpeedMonitor = Common.MONITORED_VALUES.<Integer>create(SPOOL_REPLAY_SPEED_MONITOR_ID)
+                    .name(new TranslatableMessage("internal.monitor.SPOOL_REPLAY_SPEED"))
+                    .value(0)
+                    .build();
+
+            PointValueSpool opened = new PointValueSpool(location);
+            long recovered = opened.open();
+            if (recovered > 0) {
+                LOG.info("Saving " + recovered + " point values recovered from the write ahead spool");
+                PointValueBatch batch = new PointValueBatch(MAX_ROWS);
+                long[] sequences = new long[MAX_ROWS];
+                int count;
+                while ((count = opened.replay((sequence, dataPointId, dataType, value, time) -> {
+                    sequences[batch.size()] = sequence;
+                    batch.add(dataPointId, dataType, value, time);
+                }, MAX_ROWS)) > 0) {
+                    try {
+                        insert(ejt, batch);
+                        for (int i = 0; i < count; i++)
+                            opened.remove(sequences[i]);
+                    } catch (RuntimeException e) {
+                        //Leave the rest for the runtime replay
+                        LOG.error("Failed to save recovered point values, they will be retried", e);
+                        for (int i = 0; i < count; i++)
+                            opened.failed(sequences[i]);
+                        break;
+                    }
+                    replaysPerSecond.hitMultiple(count);
+                    batch.clear();
+                }
+            }
+            spool = opened;
+            updateSpoolMonitors();
+        }
+
+        static synchronized void closeSpool() {
+            PointValueSpool closing = spool;
+            spool = null;
+            if (closing != null)
+                closing.close();
         }
 
         static void add(BatchWriteBehindEntry e, ExtendedJdbcTemplate ejt) {
-            synchronized (ENTRIES) {
-                ENTRIES.push(e);
-                ENTRIES_MONITOR.setValue(ENTRIES.size());
-                if (ENTRIES.size() > instances.size() * SPAWN_THRESHOLD) {
-                    if (instances.size() < MAX_INSTANCES) {
-                        BatchWriteBehind bwb = new BatchWriteBehind(ejt);
-                        instances.add(bwb);
-                        INSTANCES_MONITOR.setValue(instances.size());
-                        try {
-                            Common.backgroundProcessing.addWorkItem(bwb);
-                        }
-                        catch (RejectedExecutionException ree) {
-                            instances.remove(bwb);
-                            INSTANCES_MONITOR.setValue(instances.size());
-                            throw ree;
-                        }
+            PointValueSpool spool = BatchWriteBehind.spool;
+            if (spool != null) {
+                try {
+                    if (spool.getFailedCount() > 0) {
+                        //Values are already waiting for the database, keep this one on disk until they are saved
+                        spool.append(PointValueSpool.FAILED, e.dataPointId, e.dataType, e.dvalue, e.time);
+                        scheduleReplay(ejt);
+                        return;
                     }
+                    e.sequence = spool.append(PointValueSpool.PENDING, e.dataPointId, e.dataType, e.dvalue, e.time);
+                } catch (IOException ex) {
+                    LOG.error("Unable to write point value to the write ahead spool", ex);
                 }
             }
+            enqueue(e, ejt);
+        }
+
+        private static void enqueue(BatchWriteBehindEntry e, ExtendedJdbcTemplate ejt) {
+            BatchWriteBehindShard shard = SHARDS[Math.floorMod(e.dataPointId, SHARD_COUNT)];
+            int size = shard.offer(e);
+
+            int writers = shard.writers.get();
+            if (writers == 0 || (writers < MAX_INSTANCES && size > writers * SPAWN_THRESHOLD)) {
+                if (shard.writers.compareAndSet(writers, writers + 1))
+                    spawn(ejt, shard, writers + 1);
+            }
+        }
+
+        /**
+         * Start a writer for a shard, the caller has already counted it in the writers of the shard
+         * @param slot number of the writer in the shard, part of its task id
+         */
+        static void spawn(ExtendedJdbcTemplate ejt, BatchWriteBehindShard shard, int slot) {
+            BatchWriteBehind bwb = new BatchWriteBehind(ejt, shard, slot);
+            INSTANCES_MONITOR.increment();
+            try {
+                Common.backgroundProcessing.addWorkItem(bwb);
+            }
+            catch (RejectedExecutionException ree) {
+                shard.writers.decrementAndGet();
+                INSTANCES_MONITOR.decrement();
+                throw ree;
+            }
+        }
+
+        /**
+         * Start a writer for a shard after a delay, the caller has already counted it in the writers of the shard
+         */
+        private static void scheduleSpawn(ExtendedJdbcTemplate ejt, BatchWriteBehindShard shard) {
+            new TimeoutTask(SPAWN_RETRY_DELAY, new TimeoutClient() {
+                @Override
+                public void scheduleTimeout(long fireTime) {
+                    spawn(ejt, shard, 1);
+                }
+
+                @Override
+                public String getThreadName() {
+                    return "Point value writer retry for shard " + shard.index;
+                }
+
+                @Override
+                public void rejected(RejectedTaskReason reason) {
+                    super.rejected(reason);
+                    scheduleSpawn(ejt, shard);
+                }
+            });
+        }
+
+        private static void scheduleReplay(ExtendedJdbcTemplate ejt) {
+            if (replayScheduled.compareAndSet(false, true)) {
+                new TimeoutTask(replayDelay, new TimeoutClient() {
+                    @Override
+                    public void scheduleTimeout(long fireTime) {
+                        replayScheduled.set(false);
+                        replay(ejt);
+                    }
+
+                    @Override
+                    public String getThreadName() {
+                        return "Point value spool replay";
+                    }
+
+                    @Override
+                    public void rejected(RejectedTaskReason reason) {
+                        replayScheduled.set(false);
+                        super.rejected(reason);
+                    }
+                });
+            }
+        }
+
+        /**
+         * Queue failed values from the spool for writing, a limited number at a time so that a long outage
+         * does not fill the heap.
+         */
+        private static void replay(ExtendedJdbcTemplate ejt) {
+            PointValueSpool spool = BatchWriteBehind.spool;
+            if (spool == null)
+                return;
+            if (ENTRIES_MONITOR.getValue() < replayLimit) {
+                int count = spool.replay((sequence, dataPointId, dataType, value, time) -> {
+                    BatchWriteBehindEntry e = new BatchWriteBehindEntry(dataPointId, dataType, value, time);
+                    e.sequence = sequence;
+                    enqueue(e, ejt);
+                }, replayLimit);
+                replaysPerSecond.hitMultiple(count);
+                updateEntriesMonitor();
+            }
+            updateSpoolMonitors();
+            if (spool.getFailedCount() > 0)
+                scheduleReplay(ejt);
+        }
+
+        private static void updateEntriesMonitor() {
+            int total = 0;
+            for (BatchWriteBehindShard shard : SHARDS)
+                total += shard.size();
+            ENTRIES_MONITOR.setValue(total);
+        }
+
+        private static void updateSpoolMonitors() {
+            PointValueSpool spool = BatchWriteBehind.spool;
+            if (spool == null)
+                return;
+            spoolSizeMonitor.setValue((int) (spool.getSize() / (1024 * 1024)));
+            spoolBacklogMonitor.setValue((int) Math.min(Integer.MAX_VALUE, spool.getFailedCount()));
+            long oldest = spool.getOldestSegmentTime();
+            spoolBacklogAgeMonitor.setValue(oldest == 0 ? 0 : (int) ((Common.timer.currentTimeMillis() - oldest) / 1000));
+            spoolReplaySpeedMonitor.setValue(replaysPerSecond.getEventCounts()[0] / 5);
+        }
+
+        /**
+         * Insert the batch using the strategy of the database proxy
+         */
+        private static void insert(ExtendedJdbcTemplate ejt, PointValueBatch batch) {
+            ejt.execute((ConnectionCallback<Void>) connection -> {
+                INSERT_STRATEGY.insert(connection, batch);
+                return null;
+            });
         }
 
         private final ExtendedJdbcTemplate ejt;
+        private final BatchWriteBehindShard shard;
+        private final String taskId;
 
-        public BatchWriteBehind(ExtendedJdbcTemplate ejt) {
+        public BatchWriteBehind(ExtendedJdbcTemplate ejt, BatchWriteBehindShard shard, int slot) {
             this.ejt = ejt;
+            this.shard = shard;
+            //Writers of different shards, and the writers of one shard, run in parallel
+            this.taskId = "BWB-" + shard.index + "-" + slot;
         }
 
         @Override
         public void execute() {
+            boolean retired = false;
             try {
-                BatchWriteBehindEntry[] inserts;
+                BatchWriteBehindEntry[] inserts = new BatchWriteBehindEntry[MAX_ROWS];
+                PointValueBatch batch = new PointValueBatch(MAX_ROWS);
                 while (true) {
-                    synchronized (ENTRIES) {
-                        if (ENTRIES.size() == 0)
+                    int count = shard.drain(inserts, shard.batchSize);
+                    if (count == 0) {
+                        if (shard.retire()) {
+                            retired = true;
                             break;
-
-                        inserts = new BatchWriteBehindEntry[ENTRIES.size() < MAX_ROWS ? ENTRIES.size() : MAX_ROWS];
-                        ENTRIES.pop(inserts);
-                        ENTRIES_MONITOR.setValue(ENTRIES.size());
+                        }
+                        continue;
                     }
+                    updateEntriesMonitor();
 
-                    // Create the sql and parameters
-                    Object[] params = new Object[inserts.length * POINT_VALUE_INSERT_VALUES_COUNT];
-                    StringBuilder sb = new StringBuilder();
-                    sb.append(POINT_VALUE_INSERT_START);
-                    for (int i = 0; i < inserts.length; i++) {
-                        if (i > 0)
-                            sb.append(',');
-                        sb.append(POINT_VALUE_INSERT_VALUES);
-                        inserts[i].writeInto(params, i);
+                    batch.clear();
+                    for (int i = 0; i < count; i++) {
+                        BatchWriteBehindEntry e = inserts[i];
+                        batch.add(e.dataPointId, e.dataType, e.dvalue, e.time);
                     }
 
                     // Insert the data
                     int retries = 10;
                     while (true) {
                         try {
-                            ejt.update(sb.toString(), params);
-                            writesPerSecond.hitMultiple(inserts.length);
+                            long start = System.nanoTime();
+                            insert(ejt, batch);
+                            long elapsedMs = (System.nanoTime() - start) / 1000000L;
+                            shard.flushLatencyMonitor.setValue((int) elapsedMs);
+                            shard.adapt(count, elapsedMs);
+                            writesPerSecond.hitMultiple(count);
                             BATCH_WRITE_SPEED_MONITOR.setValue(writesPerSecond.getEventCounts()[0] / 5);
+                            written(inserts, 0, count);
                             break;
                         }
                         catch (RuntimeException e) {
-                            if (retriedExceptions.contains(e.getClass())) {
+                            if (isRetried(e)) {
                                 if (retries <= 0) {
-                                    LOG.error("Concurrency failure saving " + inserts.length
-                                            + " batch inserts after 10 tries. Data lost.");
+                                    spoolForReplay(inserts, 0, count, e);
                                     break;
                                 }
 
@@ -1316,17 +1791,102 @@ public class PointValueDaoSQL extends BaseDao implements PointValueDao {
                                 retries--;
                             }
                             else {
-                                LOG.error("Error saving " + inserts.length + " batch inserts. Data lost.", e);
+                                LOG.warn("Error saving " + count + " batch inserts, saving them one at a time.", e);
+                                insertEach(inserts, count);
                                 break;
                             }
                         }
                     }
+                    Arrays.fill(inserts, 0, count, null);
                 }
             }
             finally {
-                instances.remove(this);
-                INSTANCES_MONITOR.setValue(instances.size());
+                if (!retired)
+                    shard.writers.decrementAndGet();
+                INSTANCES_MONITOR.decrement();
+                updateEntriesMonitor();
+            }
+        }
+
+        /**
+         * Insert the entries of a failed batch one at a time, only the rows that fail on their own are dropped.
+         * If the database becomes unavailable the rest are spooled for replay.
+         */
+        private void insertEach(BatchWriteBehindEntry[] inserts, int count) {
+            PointValueBatch single = new PointValueBatch(1);
+            int saved = 0;
+            for (int i = 0; i < count; i++) {
+                BatchWriteBehindEntry e = inserts[i];
+                single.clear();
+                single.add(e.dataPointId, e.dataType, e.dvalue, e.time);
+                try {
+                    insert(ejt, single);
+                    written(inserts, i, i + 1);
+                    saved++;
+                }
+                catch (RuntimeException ex) {
+                    if (isRetried(ex)) {
+                        spoolForReplay(inserts, i, count, ex);
+                        break;
+                    }
+                    LOG.error("Error saving value of data point " + e.dataPointId + " at " + e.time + ". Data lost.", ex);
+                    removeFromSpool(inserts, i, i + 1);
+                }
             }
+            writesPerSecond.hitMultiple(saved);
+        }
+
+        /**
+         * The entries from start (inclusive) to end (exclusive) are saved
+         */
+        private void written(BatchWriteBehindEntry[] entries, int start, int end) {
+            removeFromSpool(entries, start, end);
+            PointValueRollupDao rollups = PointValueRollupDao.getInstance();
+            if (rollups != null) {
+                for (int i = start; i < end; i++)
+                    rollups.written(entries[i].dataPointId, entries[i].dataType, entries[i].time);
+            }
+        }
+
+        private void removeFromSpool(BatchWriteBehindEntry[] entries, int start, int end) {
+            PointValueSpool spool = BatchWriteBehind.spool;
+            if (spool == null)
+                return;
+            for (int i = start; i < end; i++)
+                if (entries[i].sequence >= 0)
+                    spool.remove(entries[i].sequence);
+        }
+
+        /**
+         * Mark the entries from start (inclusive) to end (exclusive) to be replayed later, entries that
+         * could not be written to the spool when they were added are appended now.
+         */
+        private void spoolForReplay(BatchWriteBehindEntry[] entries, int start, int end, RuntimeException cause) {
+            PointValueSpool spool = BatchWriteBehind.spool;
+            if (spool == null) {
+                LOG.error("Failure saving " + (end - start) + " batch inserts and the write ahead spool is disabled. Data lost.", cause);
+                return;
+            }
+            int lost = 0;
+            for (int i = start; i < end; i++) {
+                BatchWriteBehindEntry e = entries[i];
+                if (e.sequence >= 0)
+                    spool.failed(e.sequence);
+                else {
+                    try {
+                        spool.append(PointValueSpool.FAILED, e.dataPointId, e.dataType, e.dvalue, e.time);
+                    } catch (IOException ex) {
+                        lost++;
+                    }
+                }
+            }
+            if (lost > 0)
+                LOG.error("Failure saving " + (end - start) + " batch inserts, " + lost
+                        + " could not be written to the write ahead spool. Data lost.", cause);
+            else
+                LOG.warn("Failure saving " + (end - start) + " batch inserts. Values were spooled for replay.", cause);
+            updateSpoolMonitors();
+            scheduleReplay(ejt);
         }
 
         @Override
@@ -1336,12 +1896,12 @@ public class PointValueDaoSQL extends BaseDao implements PointValueDao {
 
         @Override
         public String getDescription() {
-            return "Batch Writing from batch of size: " + ENTRIES.size();
+            return "Batch Writing from shard " + shard.index + " of size: " + shard.size();
         }
 
         @Override
         public String getTaskId() {
-            return "BWB";
+            return taskId;
         }
 
         @Override
@@ -1351,8 +1911,10 @@ public class PointValueDaoSQL extends BaseDao implements PointValueDao {
 
         @Override
         public void rejected(RejectedTaskReason reason) {
-            instances.remove(this);
-            INSTANCES_MONITOR.setValue(instances.size());
+            INSTANCES_MONITOR.decrement();
+            //Don't leave the entries waiting for the next value of the shard, try again shortly
+            if (!shard.retire())
+                scheduleSpawn(ejt, shard);
         }
     }
 
@@ -0,0 +1,539 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.db.dao;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.LongUnaryOperator;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import com.infiniteautomation.mango.quantize.BucketCalculator;
+import com.infiniteautomation.mango.statistics.PointValueRollup;
+import com.serotonin.ShouldNeverHappenException;
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.Common.TimePeriods;
+import com.serotonin.m2m2.util.timeout.TimeoutClient;
+import com.serotonin.m2m2.util.timeout.TimeoutTask;
+import com.serotonin.m2m2.vo.DataPointVO;
+
+/**
+ * Materialized 1 minute, 1 hour and 1 day {@link PointValueRollup}s of numeric, binary and multistate
+ *  point values, kept in the pointValueRollups table when db.rollups.enabled is set.
+ *
+ * Writes and deletes of point values mark the time ranges they touch as dirty. A background task
+ *  re-computes the minute summaries of dirty ranges from the point values, then the hour summaries
+ *  containing them from the minutes and the day summaries from the hours. Back dated values and purges
+ *  are handled the same way as new values.
+ *
+ * Summaries of a point are used from the start of its coverage, which is moved back a day at a time
+ *  until the first value of the point is covered. Hours and days are in the default time zone.
+ *
+ * Dirty ranges are held in memory. On start the summaries since the last minute saved for each point
+ *  are re-computed, back dated values saved just before the process died are summarized the next time
+ *  their range is written or purged.
+ */
+public class PointValueRollupDao extends BaseDao {
+
+    private static final Log LOG = LogFactory.getLog(PointValueRollupDao.class);
+
+    public static final long MINUTE = 60000L;
+    private static final long HOUR = 60 * MINUTE;
+    //Limit of dirty ranges per point, the closest ranges are merged past this
+    private static final int MAX_RANGES = 64;
+
+    private static final String SELECT_VALUES = "SELECT dataType, pointValue, ts FROM pointValues WHERE dataPointId=? AND ts>=? AND ts<? ORDER BY ts";
+    private static final String SELECT_ROLLUPS = "SELECT ts, data FROM pointValueRollups WHERE dataPointId=? AND rollupPeriod=? AND ts>=? AND ts<? ORDER BY ts";
+    private static final String DELETE_ROLLUPS = "DELETE FROM pointValueRollups WHERE dataPointId=? AND rollupPeriod=? AND ts>=? AND ts<?";
+    private static final String INSERT_ROLLUP = "INSERT INTO pointValueRollups (dataPointId, rollupPeriod, ts, data) VALUES (?,?,?,?)";
+
+    private static volatile PointValueRollupDao instance;
+
+    /**
+     * Start maintaining rollups if they are enabled, the background task is started by the first
+     *  write once the timer is running
+     */
+    public static void initialize() {
+        if (!Common.envProps.getBoolean("db.rollups.enabled", false))
+            return;
+        PointValueRollupDao dao = new PointValueRollupDao();
+        dao.load();
+        instance = dao;
+    }
+
+    public static void terminate() {
+        PointValueRollupDao dao = instance;
+        if (dao != null) {
+            instance = null;
+            dao.stop();
+        }
+    }
+
+    /**
+     * @return the rollups or null if they are not enabled
+     */
+    public static PointValueRollupDao getInstance() {
+        return instance;
+    }
+
+    private final ZoneId zone = ZoneId.of(TimeZone.getDefault().getID());
+    private final long reconcilePeriod = Common.envProps.getLong("db.rollups.reconcilePeriod", 5000);
+    private final int backfillDays = Common.envProps.getInt("db.rollups.backfillDays", 7);
+    private final ConcurrentHashMap<Integer, PointRollups> points = new ConcurrentHashMap<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile TimeoutTask task;
+
+    private PointValueRollupDao() {
+    }
+
+    /**
+     * Create the coverage of points that have none and re-compute everything since the last saved minute
+     */
+    private void load() {
+        long now = Common.timer.currentTimeMillis();
+        long today = dayStart(now);
+        ejt.update("INSERT INTO pointValueRollupStatus (dataPointId, since) SELECT id, ? FROM dataPoints "
+                + "WHERE id NOT IN (SELECT dataPointId FROM pointValueRollupStatus)", today);
+
+        Map<Integer, Long> latest = new HashMap<>();
+        ejt.query("SELECT dataPointId, MAX(ts) FROM pointValueRollups WHERE rollupPeriod=? GROUP BY dataPointId",
+                new Object[] {TimePeriods.MINUTES}, rs -> {
+                    latest.put(rs.getInt(1), rs.getLong(2));
+                });
+        ejt.query("SELECT dataPointId, since FROM pointValueRollupStatus", rs -> {
+            PointRollups p = new PointRollups(rs.getInt(1), rs.getLong(2), true);
+            Long last = latest.get(p.id);
+            p.mark(last == null ? p.since : Math.max(p.since, last), minuteStart(now) + MINUTE);
+            points.put(p.id, p);
+        });
+    }
+
+    private void schedule() {
+        task = new TimeoutTask(reconcilePeriod, new TimeoutClient() {
+            @Override
+            public void scheduleTimeout(long fireTime) {
+                try {
+                    for (PointRollups p : points.values())
+                        reconcile(p);
+                    backfill();
+                } finally {
+                    if (instance == PointValueRollupDao.this)
+                        schedule();
+                }
+            }
+
+            @Override
+            public String getThreadName() {
+                return "Point value rollups";
+            }
+        });
+    }
+
+    private void ensureScheduled() {
+        if (!scheduled.get() && Common.timer.isInitialized() && scheduled.compareAndSet(false, true))
+            schedule();
+    }
+
+    private void stop() {
+        TimeoutTask task = this.task;
+        if (task != null)
+            task.cancel();
+    }
+
+    /**
+     * A value was saved
+     * @param dataPointId
+     * @param dataType
+     * @param time
+     */
+    public void written(int dataPointId, int dataType, long time) {
+        if (!PointValueRollup.supports(dataType))
+            return;
+        ensureScheduled();
+        PointRollups p = points.get(dataPointId);
+        if (p == null)
+            p = points.computeIfAbsent(dataPointId, this::newPoint);
+        long minute = minuteStart(time);
+        p.mark(minute, minute + MINUTE);
+        if (time < p.since)
+            p.backfilled = false;
+    }
+
+    private PointRollups newPoint(int dataPointId) {
+        long now = Common.timer.currentTimeMillis();
+        PointRollups p = new PointRollups(dataPointId, dayStart(now), false);
+        p.mark(p.since, minuteStart(now) + MINUTE);
+        return p;
+    }
+
+    /**
+     * Values were deleted
+     * @param dataPointId
+     * @param from inclusive, Long.MIN_VALUE for all values before to
+     * @param to exclusive, Long.MAX_VALUE for all values after from
+     */
+    public void deleted(int dataPointId, long from, long to) {
+        PointRollups p = points.get(dataPointId);
+        if (p == null)
+            return;
+        synchronized (p) {
+            //Summaries that overlap the start or end are re-computed
+            for (int periodType : new int[] {TimePeriods.MINUTES, TimePeriods.HOURS, TimePeriods.DAYS})
+                ejt.update(DELETE_ROLLUPS, dataPointId, periodType, from, to);
+        }
+        if (from != Long.MIN_VALUE)
+            p.mark(minuteStart(from), minuteStart(from) + MINUTE);
+        if (to != Long.MAX_VALUE)
+            p.mark(minuteStart(to - 1), minuteStart(to) + MINUTE);
+    }
+
+    /**
+     * All values were deleted
+     */
+    public void deletedAll() {
+        for (PointRollups p : points.values()) {
+            synchronized (p) {
+                p.take();
+            }
+        }
+        ejt.update("DELETE FROM pointValueRollups");
+    }
+
+    /**
+     * Find the longest rollup period that exactly covers every period of the bucket calculator
+     *
+     * @param vos
+     * @param bucketCalculator a calculator that has not been used
+     * @return TimePeriods.DAYS, HOURS, MINUTES or -1 if the point values must be used
+     */
+    public int getRollupPeriodType(List<DataPointVO> vos, BucketCalculator bucketCalculator) {
+        long from = bucketCalculator.getStartTime().toInstant().toEpochMilli();
+        long to = bucketCalculator.getEndTime().toInstant().toEpochMilli();
+        for (DataPointVO vo : vos) {
+            if (vo == null)
+                continue;
+            if (!PointValueRollup.supports(vo.getPointLocator().getDataTypeId()))
+                return -1;
+            PointRollups p = points.get(vo.getId());
+            if (p == null || p.since > from)
+                return -1;
+        }
+
+        boolean minutes = true;
+        boolean hours = true;
+        boolean days = true;
+        long boundary = from;
+        while (minutes) {
+            minutes = boundary == minuteStart(boundary);
+            hours &= minutes && boundary == hourStart(boundary);
+            days &= hours && boundary == dayStart(boundary);
+            if (boundary == to)
+                break;
+            boundary = Math.min(to, bucketCalculator.getNextPeriodToMillis());
+        }
+
+        if (days)
+            return TimePeriods.DAYS;
+        else if (hours)
+            return TimePeriods.HOURS;
+        else if (minutes)
+            return TimePeriods.MINUTES;
+        return -1;
+    }
+
+    /**
+     * Bring the rollups of the point up to date and query them in time order
+     *
+     * @param vo
+     * @param periodType MINUTES, HOURS or DAYS
+     * @param from inclusive start of the first rollup
+     * @param to exclusive
+     * @param callback
+     */
+    public void query(DataPointVO vo, int periodType, long from, long to, Consumer<PointValueRollup> callback) {
+        PointRollups p = points.get(vo.getId());
+        if (p != null)
+            reconcile(p);
+        ejt.query(SELECT_ROLLUPS, new Object[] {vo.getId(), periodType, from, to}, rs -> {
+            callback.accept(decode(rs.getLong(1), rs.getBytes(2)));
+        });
+    }
+
+    /**
+     * Re-compute the dirty ranges of the point
+     * @return false if that failed, the ranges are kept to try again
+     */
+    private boolean reconcile(PointRollups p) {
+        synchronized (p) {
+            long[] ranges = p.take();
+            try {
+                if (!p.persisted) {
+                    ejt.update("INSERT INTO pointValueRollupStatus (dataPointId, since) VALUES (?,?)", p.id, p.since);
+                    p.persisted = true;
+                }
+                if (ranges != null)
+                    recompute(p.id, ranges);
+                return true;
+            } catch (DataIntegrityViolationException e) {
+                //The point was deleted
+                points.remove(p.id, p);
+                return false;
+            } catch (RuntimeException e) {
+                if (ranges != null)
+                    p.restore(ranges);
+                LOG.error("Failed to update the rollups of data point " + p.id, e);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Extend the coverage of points back by a day, up to backfillDays per run
+     */
+    void backfill() {
+        int budget = backfillDays;
+        for (PointRollups p : points.values()) {
+            if (budget <= 0)
+                break;
+            if (p.backfilled)
+                continue;
+            Long inception = ejt.queryForObject("SELECT MIN(ts) FROM pointValues WHERE dataPointId=?",
+                    new Object[] {p.id}, Long.class, null);
+            if (inception == null || inception >= p.since) {
+                p.backfilled = true;
+                continue;
+            }
+            while (budget > 0 && inception < p.since) {
+                long since = dayStart(p.since - 1);
+                p.mark(since, p.since);
+                if (!reconcile(p))
+                    return;
+                ejt.update("UPDATE pointValueRollupStatus SET since=? WHERE dataPointId=?", since, p.id);
+                p.since = since;
+                budget--;
+            }
+        }
+    }
+
+    private void recompute(int dataPointId, long[] minuteRanges) {
+        for (int i = 0; i < minuteRanges.length; i += 2)
+            replace(dataPointId, TimePeriods.MINUTES, minuteRanges[i], minuteRanges[i + 1],
+                    summarizeValues(dataPointId, minuteRanges[i], minuteRanges[i + 1]));
+
+        long[] hourRanges = expand(minuteRanges, this::hourStart, h -> h + HOUR);
+        for (int i = 0; i < hourRanges.length; i += 2)
+            replace(dataPointId, TimePeriods.HOURS, hourRanges[i], hourRanges[i + 1],
+                    summarizeRollups(dataPointId, TimePeriods.MINUTES, hourRanges[i], hourRanges[i + 1], this::hourStart, h -> h + HOUR));
+
+        long[] dayRanges = expand(hourRanges, this::dayStart, this::nextDay);
+        for (int i = 0; i < dayRanges.length; i += 2)
+            replace(dataPointId, TimePeriods.DAYS, dayRanges[i], dayRanges[i + 1],
+                    summarizeRollups(dataPointId, TimePeriods.HOURS, dayRanges[i], dayRanges[i + 1], this::dayStart, this::nextDay));
+    }
+
+    /**
+     * Widen sorted ranges to whole periods, merging any that then overlap
+     */
+    private static long[] expand(long[] ranges, LongUnaryOperator periodStart, LongUnaryOperator nextPeriod) {
+        long[] expanded = new long[ranges.length];
+        int count = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            long from = periodStart.applyAsLong(ranges[i]);
+            long to = nextPeriod.applyAsLong(periodStart.applyAsLong(ranges[i + 1] - 1));
+            if (count > 0 && from <= expanded[count - 1]) {
+                expanded[count - 1] = Math.max(to, expanded[count - 1]);
+            } else {
+                expanded[count++] = from;
+                expanded[count++] = to;
+            }
+        }
+        return Arrays.copyOf(expanded, count);
+    }
+
+    private List<PointValueRollup> summarizeValues(int dataPointId, long from, long to) {
+        List<PointValueRollup> rollups = new ArrayList<>();
+        ejt.query(SELECT_VALUES, new Object[] {dataPointId, from, to}, rs -> {
+            int dataType = rs.getInt(1);
+            if (!PointValueRollup.supports(dataType))
+                return;
+            long time = rs.getLong(3);
+            PointValueRollup current = rollups.isEmpty() ? null : rollups.get(rollups.size() - 1);
+            if (current == null || time >= current.getPeriodEnd()) {
+                long start = minuteStart(time);
+                current = new PointValueRollup(dataType, start, start + MINUTE);
+                rollups.add(current);
+            }
+            current.add(rs.getDouble(2), time);
+        });
+        return rollups;
+    }
+
+    private List<PointValueRollup> summarizeRollups(int dataPointId, int sourcePeriodType, long from, long to,
+            LongUnaryOperator periodStart, LongUnaryOperator nextPeriod) {
+        List<PointValueRollup> rollups = new ArrayList<>();
+        ejt.query(SELECT_ROLLUPS, new Object[] {dataPointId, sourcePeriodType, from, to}, rs -> {
+            PointValueRollup source = decode(rs.getLong(1), rs.getBytes(2));
+            PointValueRollup current = rollups.isEmpty() ? null : rollups.get(rollups.size() - 1);
+            if (current == null || source.getPeriodStart() >= current.getPeriodEnd()) {
+                long start = periodStart.applyAsLong(source.getPeriodStart());
+                current = new PointValueRollup(source.getDataType(), start, nextPeriod.applyAsLong(start));
+                rollups.add(current);
+            }
+            current.add(source);
+        });
+        return rollups;
+    }
+
+    private void replace(int dataPointId, int periodType, long from, long to, List<PointValueRollup> rollups) {
+        ejt.update(DELETE_ROLLUPS, dataPointId, periodType, from, to);
+        if (rollups.isEmpty())
+            return;
+        List<Object[]> args = new ArrayList<>(rollups.size());
+        for (PointValueRollup rollup : rollups)
+            args.add(new Object[] {dataPointId, periodType, rollup.getPeriodStart(), encode(rollup)});
+        ejt.batchUpdate(INSERT_ROLLUP, args);
+    }
+
+    private static byte[] encode(PointValueRollup rollup) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            rollup.write(out);
+        } catch (IOException e) {
+            throw new ShouldNeverHappenException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static PointValueRollup decode(long periodStart, byte[] data) {
+        try {
+            return PointValueRollup.read(periodStart, new DataInputStream(new ByteArrayInputStream(data)));
+        } catch (IOException e) {
+            throw new ShouldNeverHappenException(e);
+        }
+    }
+
+    long minuteStart(long time) {
+        return time - Math.floorMod(time, MINUTE);
+    }
+
+    long hourStart(long time) {
+        return ZonedDateTime.ofInstant(Instant.ofEpochMilli(time), zone).truncatedTo(ChronoUnit.HOURS).toInstant().toEpochMilli();
+    }
+
+    long dayStart(long time) {
+        return Instant.ofEpochMilli(time).atZone(zone).toLocalDate().atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    long nextDay(long dayStart) {
+        return Instant.ofEpochMilli(dayStart).atZone(zone).toLocalDate().plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Rollup state of a point, synchronize on it to re-compute
+     */
+    private static class PointRollups {
+        final int id;
+        //Start of the time covered by the rollups
+        volatile long since;
+        volatile boolean persisted;
+        volatile boolean backfilled;
+
+        //Sorted disjoint [from, to) pairs of dirty time
+        private final Object rangeLock = new Object();
+        private long[] ranges = new long[8];
+        private int rangeCount;
+
+        PointRollups(int id, long since, boolean persisted) {
+            this.id = id;
+            this.since = since;
+            this.persisted = persisted;
+        }
+
+        void mark(long from, long to) {
+            synchronized (rangeLock) {
+                markImpl(from, to);
+            }
+        }
+
+        private void markImpl(long from, long to) {
+            int n = rangeCount * 2;
+            //Most writes are to the latest range
+            if (n > 0 && from >= ranges[n - 2] && to <= ranges[n - 1])
+                return;
+
+            int i = 0;
+            while (i < rangeCount && ranges[2 * i] <= from)
+                i++;
+            if (i > 0 && ranges[2 * i - 1] >= from)
+                i--;
+            int j = i;
+            while (j < rangeCount && ranges[2 * j] <= to) {
+                from = Math.min(from, ranges[2 * j]);
+                to = Math.max(to, ranges[2 * j + 1]);
+                j++;
+            }
+
+            int removed = j - i;
+            if (removed == 0) {
+                if (n == ranges.length)
+                    ranges = Arrays.copyOf(ranges, n * 2);
+                System.arraycopy(ranges, 2 * i, ranges, 2 * i + 2, n - 2 * i);
+                rangeCount++;
+            } else if (removed > 1) {
+                System.arraycopy(ranges, 2 * j, ranges, 2 * i + 2, n - 2 * j);
+                rangeCount -= removed - 1;
+            }
+            ranges[2 * i] = from;
+            ranges[2 * i + 1] = to;
+
+            if (rangeCount > MAX_RANGES) {
+                int closest = 0;
+                for (int k = 1; k < rangeCount - 1; k++)
+                    if (ranges[2 * k + 2] - ranges[2 * k + 1] < ranges[2 * closest + 2] - ranges[2 * closest + 1])
+                        closest = k;
+                ranges[2 * closest + 1] = ranges[2 * closest + 3];
+                System.arraycopy(ranges, 2 * closest + 4, ranges, 2 * closest + 2, 2 * (rangeCount - closest - 2));
+                rangeCount--;
+            }
+        }
+
+        /**
+         * @return the dirty ranges or null if there are none
+         */
+        long[] take() {
+            synchronized (rangeLock) {
+                if (rangeCount == 0)
+                    return null;
+                long[] taken = Arrays.copyOf(ranges, rangeCount * 2);
+                rangeCount = 0;
+                return taken;
+            }
+        }
+
+        void restore(long[] taken) {
+            synchronized (rangeLock) {
+                for (int i = 0; i < taken.length; i += 2)
+                    markImpl(taken[i], taken[i + 1]);
+            }
+        }
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.db.dao;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Append only, memory mapped write ahead log for asynchronously saved point values. Every value is
+ * appended here before it is queued for the database and is marked as saved once its batch has been
+ * inserted. Records that could not be inserted, or that were still pending when Mango stopped, are
+ * handed back through {@link #replay(RecordCallback, int)}.
+ *
+ * The spool is split into fixed size segment files which are deleted once all of their records are saved.
+ * Because the segments are memory mapped the records survive a crash of the JVM, values are only
+ * forced to the storage device when a segment is filled and when the spool is closed.
+ */
+public class PointValueSpool {
+
+    private static final Log LOG = LogFactory.getLog(PointValueSpool.class);
+
+    public static final int EMPTY = 0;
+    public static final int PENDING = 1;
+    public static final int FAILED = 2;
+    public static final int SAVED = 3;
+
+    private static final int MAGIC = 0x4d505653;
+    private static final int VERSION = 1;
+    //magic, version, records, created
+    private static final int HEADER_SIZE = 24;
+    //state, dataPointId, dataType, unused, value, time
+    private static final int RECORD_SIZE = 32;
+    //8MB segments
+    private static final int SEGMENT_RECORDS = 262144;
+    private static final String PREFIX = "spool-";
+    private static final String SUFFIX = ".dat";
+
+    @FunctionalInterface
+    public interface RecordCallback {
+        void record(long sequence, int dataPointId, int dataType, double value, long time);
+    }
+
+    private final Path directory;
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile Segment current;
+
+    public PointValueSpool(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Map the segments left behind by a previous run, anything not yet saved is marked as failed
+     * so that it will be replayed.
+     *
+     * @return number of records to replay
+     * @throws IOException
+     */
+    public synchronized long open() throws IOException {
+        Files.createDirectories(directory);
+        long nextSegment = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                long index;
+                try {
+                    index = Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+                } catch (NumberFormatException e) {
+                    LOG.warn("Ignoring unknown file in point value spool " + path);
+                    continue;
+                }
+                nextSegment = Math.max(nextSegment, index + 1);
+                Segment segment = Segment.recover(index, path);
+                if (segment == null) {
+                    LOG.warn("Deleting invalid point value spool segment " + path);
+                    Files.deleteIfExists(path);
+                } else if (segment.isComplete()) {
+                    segment.delete();
+                } else {
+                    segments.put(index, segment);
+                    failed.addAndGet(segment.failed.get());
+                }
+            }
+        }
+        nextSequence.set(nextSegment * SEGMENT_RECORDS);
+        return failed.get();
+    }
+
+    /**
+     * Append a record
+     * @param state either PENDING if the value is queued for the database or FAILED if it should be replayed later
+     * @return the sequence number used to acknowledge the record
+     * @throws IOException if a new segment could not be created
+     */
+    public long append(int state, int dataPointId, int dataType, double value, long time) throws IOException {
+        long sequence = nextSequence.getAndIncrement();
+        Segment segment = segment(sequence / SEGMENT_RECORDS);
+        int position = HEADER_SIZE + (int)(sequence % SEGMENT_RECORDS) * RECORD_SIZE;
+        MappedByteBuffer buffer = segment.buffer;
+        buffer.putInt(position + 4, dataPointId);
+        buffer.putInt(position + 8, dataType);
+        buffer.putDouble(position + 16, value);
+        buffer.putLong(position + 24, time);
+        //Written last so a record is only valid once it is complete
+        buffer.putInt(position, state);
+        if (state == FAILED) {
+            segment.failed.incrementAndGet();
+            failed.incrementAndGet();
+        }
+        return sequence;
+    }
+
+    /**
+     * The record has been inserted into the database, or was discarded, and no longer needs to be kept
+     * @param sequence
+     */
+    public void remove(long sequence) {
+        Segment segment = segments.get(sequence / SEGMENT_RECORDS);
+        if (segment == null)
+            return;
+        segment.buffer.putInt(position(sequence), SAVED);
+        if (segment.saved.incrementAndGet() == segment.expected) {
+            segments.remove(segment.index);
+            segment.delete();
+        }
+    }
+
+    /**
+     * The record could not be inserted and must be replayed
+     * @param sequence
+     */
+    public void failed(long sequence) {
+        Segment segment = segments.get(sequence / SEGMENT_RECORDS);
+        if (segment == null)
+            return;
+        segment.buffer.putInt(position(sequence), FAILED);
+        segment.failed.incrementAndGet();
+        failed.incrementAndGet();
+    }
+
+    /**
+     * Hand failed records back to be saved, oldest first. The records are marked as pending again.
+     *
+     * @param callback
+     * @param limit maximum number of records to replay
+     * @return number of records replayed
+     */
+    public synchronized int replay(RecordCallback callback, int limit) {
+        int count = 0;
+        for (Segment segment : segments.values()) {
+            if (segment.failed.get() == 0)
+                continue;
+            MappedByteBuffer buffer = segment.buffer;
+            long first = segment.index * SEGMENT_RECORDS;
+            for (int i = 0; i < SEGMENT_RECORDS && count < limit; i++) {
+                int position = HEADER_SIZE + i * RECORD_SIZE;
+                if (buffer.getInt(position) != FAILED)
+                    continue;
+                buffer.putInt(position, PENDING);
+                segment.failed.decrementAndGet();
+                failed.decrementAndGet();
+                callback.record(first + i, buffer.getInt(position + 4), buffer.getInt(position + 8),
+                        buffer.getDouble(position + 16), buffer.getLong(position + 24));
+                count++;
+            }
+            if (count >= limit)
+                break;
+        }
+        return count;
+    }
+
+    /**
+     * @return number of records waiting to be replayed
+     */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * @return size of all segment files in bytes
+     */
+    public long getSize() {
+        return (long)segments.size() * (HEADER_SIZE + (long)SEGMENT_RECORDS * RECORD_SIZE);
+    }
+
+    /**
+     * @return creation time of the oldest segment that still holds records to save, or 0 if there is none
+     */
+    public long getOldestSegmentTime() {
+        Entry<Long, Segment> first = segments.firstEntry();
+        return first == null ? 0 : first.getValue().created;
+    }
+
+    public synchronized void close() {
+        for (Segment segment : segments.values()) {
+            try {
+                segment.buffer.force();
+                segment.channel.close();
+            } catch (IOException e) {
+                LOG.error("Failed to close point value spool segment " + segment.path, e);
+            }
+        }
+        segments.clear();
+        current = null;
+    }
+
+    private int position(long sequence) {
+        return HEADER_SIZE + (int)(sequence % SEGMENT_RECORDS) * RECORD_SIZE;
+    }
+
+    private Segment segment(long index) throws IOException {
+        Segment segment = current;
+        if (segment != null && segment.index == index)
+            return segment;
+        segment = segments.get(index);
+        if (segment != null)
+            return segment;
+
+        synchronized (this) {
+            segment = segments.get(index);
+            if (segment == null) {
+                Path path = directory.resolve(String.format("%s%016d%s", PREFIX, index, SUFFIX));
+                segment = Segment.create(index, path);
+                segments.put(index, segment);
+                Segment previous = current;
+                if (previous == null || previous.index < index) {
+                    current = segment;
+                    if (previous != null)
+                        previous.buffer.force();
+                }
+            }
+            return segment;
+        }
+    }
+
+    private static class Segment {
+        final long index;
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        final long created;
+        //Number of records that must be saved before the segment can be deleted
+        final int expected;
+        final AtomicInteger saved = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+
+        private Segment(long index, Path path, FileChannel channel, MappedByteBuffer buffer, long created, int expected) {
+            this.index = index;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.created = created;
+            this.expected = expected;
+        }
+
+        static Segment create(long index, Path path) throws IOException {
+            int records = SEGMENT_RECORDS;
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long created = System.currentTimeMillis();
+            MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, HEADER_SIZE + (long)records * RECORD_SIZE);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, records);
+            buffer.putLong(16, created);
+            return new Segment(index, path, channel, buffer, created, records);
+        }
+
+        /**
+         * Map an existing segment marking any pending records as failed
+         * @return the segment or null if it is not a valid segment file
+         */
+        static Segment recover(long index, Path path) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            if (channel.read(header, 0) != HEADER_SIZE || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                channel.close();
+                return null;
+            }
+            int records = header.getInt(8);
+            long created = header.getLong(16);
+            if (records != SEGMENT_RECORDS) {
+                channel.close();
+                return null;
+            }
+            long size = HEADER_SIZE + (long)records * RECORD_SIZE;
+            if (channel.size() < size) {
+                channel.close();
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, size);
+
+            int written = 0;
+            int saved = 0;
+            int failed = 0;
+            for (int i = 0; i < records; i++) {
+                int position = HEADER_SIZE + i * RECORD_SIZE;
+                int state = buffer.getInt(position);
+                if (state == EMPTY)
+                    continue;
+                written++;
+                if (state == SAVED) {
+                    saved++;
+                } else {
+                    buffer.putInt(position, FAILED);
+                    failed++;
+                }
+            }
+            Segment segment = new Segment(index, path, channel, buffer, created, written);
+            segment.saved.set(saved);
+            segment.failed.set(failed);
+            return segment;
+        }
+
+        boolean isComplete() {
+            return saved.get() == expected;
+        }
+
+        void delete() {
+            try {
+                channel.close();
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                //Still mapped on some platforms, it will be cleaned up on the next start
+                LOG.warn("Unable to delete point value spool segment " + path, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.db.upgrade;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.m2m2.vo.dataPoint.DataPointCodec;
+import com.serotonin.util.SerializationHelper;
+
+/**
+ * Re-write the data column of the dataPoints table from Java serialization to the binary format
+ *  of {@link DataPointCodec}. Points that can't be read are left as they are, they are still
+ *  readable and will be converted the next time they are saved.
+ */
+public class Upgrade33 extends DBUpgrade {
+
+    private final Log LOG = LogFactory.getLog(Upgrade33.class);
+    private static final int CHUNK_SIZE = 500;
+
+    @Override
+    protected void upgrade() throws Exception {
+        List<Integer> ids = ejt.queryForList("SELECT id FROM dataPoints ORDER BY id", Integer.class);
+        int converted = 0;
+        for (int from = 0; from < ids.size(); from += CHUNK_SIZE) {
+            List<Integer> chunk = ids.subList(from, Math.min(from + CHUNK_SIZE, ids.size()));
+            String in = chunk.stream().map(String::valueOf).collect(Collectors.joining(","));
+
+            List<Object[]> updates = new ArrayList<>(chunk.size());
+            ejt.query("SELECT id, data FROM dataPoints WHERE id IN (" + in + ")", rs -> {
+                int id = rs.getInt(1);
+                byte[] data = rs.getBytes(2);
+                if (data == null || DataPointCodec.isBinary(data))
+                    return;
+                try {
+                    DataPointVO vo = (DataPointVO) SerializationHelper.readObjectInContextFromArray(data);
+                    updates.add(new Object[] {DataPointCodec.encode(vo), id});
+                } catch (Exception e) {
+                    LOG.warn("Unable to convert data point with id " + id + ", it will remain serialized", e);
+                }
+            });
+
+            if (!updates.isEmpty()) {
+                ejt.batchUpdate("UPDATE dataPoints SET data=? WHERE id=?", updates);
+                converted += updates.size();
+            }
+        }
+        LOG.info("Converted " + converted + " data points to the binary format");
+    }
+
+    @Override
+    protected String getNewSchemaVersion() {
+        return "34";
+    }
+}
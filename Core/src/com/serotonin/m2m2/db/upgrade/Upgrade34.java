@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.db.upgrade;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.serotonin.m2m2.db.DatabaseProxy.DatabaseType;
+
+/**
+ * Adds the tables of the materialized point value rollups
+ */
+public class Upgrade34 extends DBUpgrade {
+
+    @Override
+    protected void upgrade() throws Exception {
+        Map<String, String[]> scripts = new HashMap<>();
+        scripts.put(DEFAULT_DATABASE_TYPE, tables("int", "longblob", ""));
+        scripts.put(DatabaseType.MYSQL.name(), tables("int", "longblob", " engine=InnoDB"));
+        scripts.put(DatabaseType.POSTGRES.name(), tables("integer", "bytea", ""));
+        scripts.put(DatabaseType.MSSQL.name(), tables("int", "image", ""));
+        runScript(scripts);
+    }
+
+    private String[] tables(String intType, String blobType, String options) {
+        return new String[] {
+                "CREATE TABLE pointValueRollups (dataPointId " + intType + " NOT NULL, rollupPeriod " + intType + " NOT NULL, "
+                        + "ts bigint NOT NULL, data " + blobType + " NOT NULL, PRIMARY KEY (dataPointId, rollupPeriod, ts))" + options + ";",
+                "ALTER TABLE pointValueRollups ADD CONSTRAINT pointValueRollupsFk1 FOREIGN KEY (dataPointId) REFERENCES dataPoints (id) ON DELETE CASCADE;",
+                "CREATE TABLE pointValueRollupStatus (dataPointId " + intType + " NOT NULL, since bigint NOT NULL, PRIMARY KEY (dataPointId))" + options + ";",
+                "ALTER TABLE pointValueRollupStatus ADD CONSTRAINT pointValueRollupStatusFk1 FOREIGN KEY (dataPointId) REFERENCES dataPoints (id) ON DELETE CASCADE;"
+        };
+    }
+
+    @Override
+    protected String getNewSchemaVersion() {
+        return "35";
+    }
+}
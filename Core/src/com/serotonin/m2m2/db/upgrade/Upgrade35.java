@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.db.upgrade;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.serotonin.m2m2.db.DatabaseProxy.DatabaseType;
+
+/**
+ * Adds the table of id blocks reserved from identity columns, used by the event journal
+ */
+public class Upgrade35 extends DBUpgrade {
+
+    @Override
+    protected void upgrade() throws Exception {
+        Map<String, String[]> scripts = new HashMap<>();
+        scripts.put(DEFAULT_DATABASE_TYPE, table("varchar(100)", ""));
+        scripts.put(DatabaseType.MYSQL.name(), table("varchar(100)", " engine=InnoDB"));
+        scripts.put(DatabaseType.MSSQL.name(), table("nvarchar(100)", ""));
+        runScript(scripts);
+    }
+
+    private String[] table(String nameType, String options) {
+        return new String[] {
+                "CREATE TABLE identityBlocks (tableName " + nameType + " NOT NULL, nextId bigint NOT NULL, PRIMARY KEY (tableName))" + options + ";"
+        };
+    }
+
+    @Override
+    protected String getNewSchemaVersion() {
+        return "36";
+    }
+}
@@ -6,6 +6,10 @@ package com.serotonin.m2m2.rt;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -22,6 +26,9 @@ import com.serotonin.timer.RejectedTaskReason;
  * The group is generally a list of all data sources with the same priority level.
  * The group is not initalized until all data sources have either started or failed to start.
  *
+ * Each thread takes the next data source from a shared queue so one slow data source does not hold
+ * up the others that would otherwise have been assigned to the same thread.
+ *
  * @author Terry Packer
  *
  */
@@ -30,7 +37,8 @@ public class DataSourceGroupInitializer {
 
     private List<DataSourceVO> group;
     private int threadPoolSize;
-    private List<DataSourceSubGroupInitializer> runningTasks;
+    private Queue<DataSourceVO> remaining;
+    private CountDownLatch runningTasks;
     private List<DataSourceVO> polling;
     private boolean useMetrics;
     private StartPriority startPriority;
@@ -62,55 +70,60 @@ public class DataSourceGroupInitializer {
             return polling;
         }
 
-        //Compute the size of the subGroup that each thread will use.
-        int subGroupSize = this.group.size() / this.threadPoolSize;
-        int lastGroup;
-        if(subGroupSize == 0){
-            subGroupSize = 1;
-            lastGroup = this.group.size() - 1;
-        }else{
-            lastGroup = this.threadPoolSize - 1;
-        }
-
+        int threads = Math.max(1, Math.min(this.threadPoolSize, this.group.size()));
 
         if(useMetrics)
-            LOG.info("Initializing " + this.group.size() + " " + this.startPriority.name() + " priority data sources in " + this.threadPoolSize + " threads.");
-
-        this.runningTasks = new ArrayList<DataSourceSubGroupInitializer>(this.threadPoolSize);
-        //Add and Start the tasks
-        int endPos;
-        for(int i=0; i<this.threadPoolSize; i++){
-
-            if(i==lastGroup){
-                //Last group may be larger
-                endPos = this.group.size();
-            }else{
-                endPos = (i*subGroupSize) + subGroupSize;
-            }
-
-            DataSourceSubGroupInitializer currentSubgroup = new DataSourceSubGroupInitializer(this.group.subList(i*subGroupSize, endPos), this);
+            LOG.info("Initializing " + this.group.size() + " " + this.startPriority.name() + " priority data sources in " + threads + " threads.");
 
-            synchronized(this.runningTasks){
-                this.runningTasks.add(currentSubgroup);
-            }
-            Common.backgroundProcessing.execute(currentSubgroup);
+        this.remaining = new ConcurrentLinkedQueue<DataSourceVO>(this.group);
+        this.runningTasks = new CountDownLatch(threads);
+        for(int i=0; i<threads; i++)
+            Common.backgroundProcessing.execute(new DataSourceSubGroupInitializer(this));
 
-            //When we have more threads than groups
-            if(i >= this.group.size() -1)
+        //Wait here until all threads are finished
+        boolean interrupted = false;
+        while(true){
+            try {
+                runningTasks.await();
                 break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
         }
 
-        //Wait here until all threads are finished
-        while(runningTasks.size() > 0){
-            try { Thread.sleep(100); } catch (InterruptedException e) { }
+        //Start anything left behind by rejected tasks
+        if(!remaining.isEmpty()) {
+            List<DataSourceVO> polling = new ArrayList<DataSourceVO>();
+            startRemaining(polling);
+            addPollingDataSources(polling);
         }
 
+        if(interrupted)
+            Thread.currentThread().interrupt();
+
         if(this.useMetrics)
             LOG.info("Initialization of " + this.group.size() + " " + this.startPriority.name() +  " priority data sources took " + (Common.timer.currentTimeMillis() - startTs) + "ms");
 
         return polling;
     }
 
+    /**
+     * Start data sources from the queue until it is empty
+     * @param polling list to add the data sources that need to begin polling to
+     */
+    private void startRemaining(List<DataSourceVO> polling) {
+        DataSourceVO config;
+        while((config = remaining.poll()) != null){
+            try{
+                if(Common.runtimeManager.initializeDataSourceStartup(config))
+                    polling.add(config);
+            }catch(Exception e){
+                //Ensure only 1 can fail at a time
+                LOG.error(e.getMessage(), e);
+            }
+        }
+    }
+
     public void addPollingDataSources(List<DataSourceVO> vos){
         synchronized(this.polling){
             this.polling.addAll(vos);
@@ -118,12 +131,12 @@ public class DataSourceGroupInitializer {
     }
 
     public void removeRunningTask(DataSourceSubGroupInitializer task){
-        synchronized(this.runningTasks){
-            this.runningTasks.remove(task);
-        }
+        //Only count each task once, it may be cancelled after it ran
+        if(task.finished.compareAndSet(false, true))
+            this.runningTasks.countDown();
     }
     /**
-     * Initialize a sub group of the data sources in one thread.
+     * Initialize data sources from the shared queue in one thread.
      * @author Terry Packer
      *
      */
@@ -131,12 +144,11 @@ public class DataSourceGroupInitializer {
 
         private final Log LOG = LogFactory.getLog(DataSourceSubGroupInitializer.class);
 
-        private List<DataSourceVO> subgroup;
         private DataSourceGroupInitializer parent;
+        private final AtomicBoolean finished = new AtomicBoolean();
 
-        public DataSourceSubGroupInitializer(List<DataSourceVO> subgroup, DataSourceGroupInitializer parent){
+        public DataSourceSubGroupInitializer(DataSourceGroupInitializer parent){
             super("Datasource subgroup initializer");
-            this.subgroup = subgroup;
             this.parent = parent;
         }
 
@@ -144,15 +156,7 @@ public class DataSourceGroupInitializer {
         public void run(long runtime) {
             try{
                 List<DataSourceVO> polling = new ArrayList<DataSourceVO>();
-                for(DataSourceVO config : subgroup){
-                    try{
-                        if(Common.runtimeManager.initializeDataSourceStartup(config))
-                            polling.add(config);
-                    }catch(Exception e){
-                        //Ensure only 1 can fail at a time
-                        LOG.error(e.getMessage(), e);
-                    }
-                }
+                this.parent.startRemaining(polling);
                 this.parent.addPollingDataSources(polling);
             }catch(Exception e){
                 LOG.error(e.getMessage(), e);
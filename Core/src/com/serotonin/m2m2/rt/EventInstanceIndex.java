@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.rt;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.rt.event.AlarmLevels;
+import com.serotonin.m2m2.rt.event.EventInstance;
+import com.serotonin.m2m2.rt.event.type.EventType;
+
+/**
+ * Event instances indexed by event type, id, data point, data source and publisher and ordered by
+ * their active time so that the event manager does not have to scan every event.
+ *
+ * Event instances are compared by identity and event types by their equals and hashCode methods.
+ * Not thread safe, the event manager guards each index with a read write lock.
+ */
+final class EventInstanceIndex {
+
+    private final Set<EventInstance> all = new LinkedHashSet<>();
+    //In the order they were added
+    private final Map<EventType, ArrayDeque<EventInstance>> byType = new HashMap<>();
+    private final Map<Integer, EventInstance> byId = new HashMap<>();
+    private final Map<Integer, Set<EventInstance>> byDataPoint = new HashMap<>();
+    private final Map<Integer, Set<EventInstance>> byDataSource = new HashMap<>();
+    private final Map<Integer, Set<EventInstance>> byPublisher = new HashMap<>();
+    private final TreeMap<Long, List<EventInstance>> byActiveTime = new TreeMap<>();
+    //Number of events at each alarm level, indexed by ordinal
+    private final int[] alarmLevelCounts = new int[AlarmLevels.values().length];
+
+    void add(EventInstance evt) {
+        if (!all.add(evt))
+            return;
+        EventType type = evt.getEventType();
+        byType.computeIfAbsent(type, k -> new ArrayDeque<>(2)).addLast(evt);
+        if (evt.getId() != Common.NEW_ID)
+            byId.put(evt.getId(), evt);
+        addTo(byDataPoint, type.getDataPointId(), evt);
+        addTo(byDataSource, type.getDataSourceId(), evt);
+        addTo(byPublisher, type.getPublisherId(), evt);
+        byActiveTime.computeIfAbsent(evt.getActiveTimestamp(), k -> new ArrayList<>(1)).add(evt);
+        alarmLevelCounts[evt.getAlarmLevel().ordinal()]++;
+    }
+
+    /**
+     * @return the first event added with this type or null
+     */
+    EventInstance getFirst(EventType type) {
+        ArrayDeque<EventInstance> events = byType.get(type);
+        return events == null ? null : events.peekFirst();
+    }
+
+    List<EventInstance> getAll(EventType type) {
+        ArrayDeque<EventInstance> events = byType.get(type);
+        return events == null ? Collections.emptyList() : new ArrayList<>(events);
+    }
+
+    EventInstance getById(int id) {
+        return byId.get(id);
+    }
+
+    /**
+     * Remove the first event added with this type
+     * @return the removed event or null
+     */
+    EventInstance removeFirst(EventType type) {
+        EventInstance evt = getFirst(type);
+        if (evt != null)
+            remove(evt);
+        return evt;
+    }
+
+    List<EventInstance> removeForDataPoint(int dataPointId) {
+        return removeAll(byDataPoint.get(dataPointId));
+    }
+
+    List<EventInstance> removeForDataSource(int dataSourceId) {
+        return removeAll(byDataSource.get(dataSourceId));
+    }
+
+    List<EventInstance> removeForPublisher(int publisherId) {
+        return removeAll(byPublisher.get(publisherId));
+    }
+
+    /**
+     * Remove the events that became active before the time
+     * @param time
+     * @param filter only remove the events matching the filter
+     * @return removed events
+     */
+    List<EventInstance> removeBefore(long time, Predicate<EventInstance> filter) {
+        List<EventInstance> removed = new ArrayList<>();
+        for (List<EventInstance> events : byActiveTime.headMap(time, false).values()) {
+            for (EventInstance evt : events) {
+                if (filter.test(evt))
+                    removed.add(evt);
+            }
+        }
+        for (EventInstance evt : removed)
+            remove(evt);
+        return removed;
+    }
+
+    List<EventInstance> removeBefore(long time) {
+        return removeBefore(time, e -> true);
+    }
+
+    /**
+     * @return highest alarm level value of the events, 0 if there are none
+     */
+    int getHighestAlarmLevel() {
+        int max = 0;
+        AlarmLevels[] levels = AlarmLevels.values();
+        for (int i = 0; i < levels.length; i++) {
+            if (alarmLevelCounts[i] > 0 && levels[i].value() > max)
+                max = levels[i].value();
+        }
+        return max;
+    }
+
+    /**
+     * @return all events in the order they were added
+     */
+    List<EventInstance> values() {
+        return new ArrayList<>(all);
+    }
+
+    int size() {
+        return all.size();
+    }
+
+    void clear() {
+        all.clear();
+        byType.clear();
+        byId.clear();
+        byDataPoint.clear();
+        byDataSource.clear();
+        byPublisher.clear();
+        byActiveTime.clear();
+        for (int i = 0; i < alarmLevelCounts.length; i++)
+            alarmLevelCounts[i] = 0;
+    }
+
+    private List<EventInstance> removeAll(Set<EventInstance> events) {
+        if (events == null)
+            return new ArrayList<>();
+        List<EventInstance> removed = new ArrayList<>(events);
+        for (EventInstance evt : removed)
+            remove(evt);
+        return removed;
+    }
+
+    private void remove(EventInstance evt) {
+        if (!all.remove(evt))
+            return;
+        EventType type = evt.getEventType();
+        ArrayDeque<EventInstance> events = byType.get(type);
+        events.removeFirstOccurrence(evt);
+        if (events.isEmpty())
+            byType.remove(type);
+        if (evt.getId() != Common.NEW_ID)
+            byId.remove(evt.getId(), evt);
+        removeFrom(byDataPoint, type.getDataPointId(), evt);
+        removeFrom(byDataSource, type.getDataSourceId(), evt);
+        removeFrom(byPublisher, type.getPublisherId(), evt);
+        List<EventInstance> sameTime = byActiveTime.get(evt.getActiveTimestamp());
+        Iterator<EventInstance> it = sameTime.iterator();
+        while (it.hasNext()) {
+            if (it.next() == evt) {
+                it.remove();
+                break;
+            }
+        }
+        if (sameTime.isEmpty())
+            byActiveTime.remove(evt.getActiveTimestamp());
+        alarmLevelCounts[evt.getAlarmLevel().ordinal()]--;
+    }
+
+    private static void addTo(Map<Integer, Set<EventInstance>> index, int id, EventInstance evt) {
+        if (id != -1)
+            index.computeIfAbsent(id, k -> new LinkedHashSet<>()).add(evt);
+    }
+
+    private static void removeFrom(Map<Integer, Set<EventInstance>> index, int id, EventInstance evt) {
+        if (id == -1)
+            return;
+        Set<EventInstance> events = index.get(id);
+        if (events != null) {
+            events.remove(evt);
+            if (events.isEmpty())
+                index.remove(id);
+        }
+    }
+}
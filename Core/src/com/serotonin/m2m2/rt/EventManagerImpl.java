@@ -8,25 +8,23 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import com.infiniteautomation.mango.spring.components.EventRecipientIndex;
 import com.infiniteautomation.mango.spring.service.MailingListService;
 import com.infiniteautomation.mango.spring.service.PermissionService;
 import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.db.dao.AuditEventDao;
 import com.serotonin.m2m2.db.dao.EventDao;
 import com.serotonin.m2m2.db.dao.EventHandlerDao;
-import com.serotonin.m2m2.db.dao.UserDao;
 import com.serotonin.m2m2.i18n.TranslatableMessage;
 import com.serotonin.m2m2.module.EventHandlerDefinition;
 import com.serotonin.m2m2.module.EventManagerListenerDefinition;
@@ -58,11 +56,11 @@ public class EventManagerImpl implements EventManager {
 
     private final List<EventManagerListenerDefinition> listeners = new CopyOnWriteArrayList<>();
     private final ReadWriteLock activeEventsLock = new ReentrantReadWriteLock();
-    private final List<EventInstance> activeEvents = new ArrayList<>();
+    private final EventInstanceIndex activeEvents = new EventInstanceIndex();
     private final ReadWriteLock recentEventsLock = new ReentrantReadWriteLock();
-    private final List<EventInstance> recentEvents = new ArrayList<>();
+    private final EventInstanceIndex recentEvents = new EventInstanceIndex();
     private EventDao eventDao;
-    private UserDao userDao;
+    private EventRecipientIndex recipientIndex;
     private long lastAlarmTimestamp = 0;
     private int highestActiveAlarmLevel = 0;
     private UserEventListener userEventMulticaster = null;
@@ -189,22 +187,20 @@ public class EventManagerImpl implements EventManager {
         List<Integer> userIdsToNotify = new ArrayList<>();
         UserEventListener multicaster = userEventMulticaster;
 
-        for (User user : userDao.getActiveUsers()) {
+        for (User user : recipientIndex.getRecipients(type)) {
             // Do not create an event for this user if the event type says the
             // user should be skipped.
             if (type.excludeUser(user))
                 continue;
 
-            if (permissionService.hasEventTypePermission(user, type)) {
-                eventUserIds.add(user.getId());
-                // add email addresses for users which have been configured to receive events over a certain level
-                if (user.getReceiveAlarmEmails().value() > AlarmLevels.IGNORE.value() && alarmLevel.value() >= user.getReceiveAlarmEmails().value() && !StringUtils.isEmpty(user.getEmail()))
-                    emailUsers.add(user.getEmail());
+            eventUserIds.add(user.getId());
+            // add email addresses for users which have been configured to receive events over a certain level
+            if (user.getReceiveAlarmEmails().value() > AlarmLevels.IGNORE.value() && alarmLevel.value() >= user.getReceiveAlarmEmails().value() && !StringUtils.isEmpty(user.getEmail()))
+                emailUsers.add(user.getEmail());
 
-                //Notify All User Event Listeners of the new event
-                if((alarmLevel != AlarmLevels.DO_NOT_LOG)&&(!evt.getEventType().getEventType().equals(EventType.EventTypeNames.AUDIT))){
-                    userIdsToNotify.add(user.getId());
-                }
+            //Notify All User Event Listeners of the new event
+            if((alarmLevel != AlarmLevels.DO_NOT_LOG)&&(!evt.getEventType().getEventType().equals(EventType.EventTypeNames.AUDIT))){
+                userIdsToNotify.add(user.getId());
             }
         }
 
@@ -235,6 +231,8 @@ public class EventManagerImpl implements EventManager {
         }else if (evt.getEventType().isRateLimited()) {
             recentEventsLock.writeLock().lock();
             try{
+                //Expire the events that are no longer recent
+                recentEvents.removeBefore(Common.timer.currentTimeMillis() - RECENT_EVENT_PERIOD);
                 recentEvents.add(evt);
             }finally{
                 recentEventsLock.writeLock().unlock();
@@ -296,20 +294,17 @@ public class EventManagerImpl implements EventManager {
     private boolean isRecent(EventType type, TranslatableMessage message) {
         long cutoff = Common.timer.currentTimeMillis() - RECENT_EVENT_PERIOD;
 
-        recentEventsLock.writeLock().lock();
+        recentEventsLock.readLock().lock();
         try{
-            for (int i = recentEvents.size() - 1; i >= 0; i--) {
-                EventInstance evt = recentEvents.get(i);
-                // This method also purges the list, so we need to check if the
-                // event instance has expired or not.
-                if (cutoff > evt.getActiveTimestamp())
-                    recentEvents.remove(i);
-                else if (evt.getEventType().equals(type)
+            // Expired events are only purged when another is added so check
+            // if the event instance has expired or not.
+            for (EventInstance evt : recentEvents.getAll(type)) {
+                if (cutoff <= evt.getActiveTimestamp()
                         && evt.getMessage().equals(message))
                     return true;
             }
         }finally{
-            recentEventsLock.writeLock().unlock();
+            recentEventsLock.readLock().unlock();
         }
 
         return false;
@@ -336,7 +331,7 @@ public class EventManagerImpl implements EventManager {
                     );
         }
 
-        List<User> activeUsers = userDao.getActiveUsers();
+        List<User> recipients = recipientIndex.getRecipients(type);
         UserEventListener multicaster = userEventMulticaster;
 
         // Loop in case of multiples
@@ -344,16 +339,12 @@ public class EventManagerImpl implements EventManager {
             evt.returnToNormal(time, cause);
 
             List<Integer> userIdsToNotify = new ArrayList<>();
-            for (User user : activeUsers) {
-                // Do not create an event for this user if the event type says the
-                // user should be skipped.
-                if (type.excludeUser(user))
-                    continue;
-
-                if(evt.getAlarmLevel() != AlarmLevels.DO_NOT_LOG){
-                    if (permissionService.hasEventTypePermission(user, type)) {
+            if(evt.getAlarmLevel() != AlarmLevels.DO_NOT_LOG){
+                for (User user : recipients) {
+                    // Do not create an event for this user if the event type says the
+                    // user should be skipped.
+                    if (!type.excludeUser(user))
                         userIdsToNotify.add(user.getId());
-                    }
                 }
             }
 
@@ -383,8 +374,6 @@ public class EventManagerImpl implements EventManager {
      * @param inactiveCause
      */
     private void deactivateEvents(List<EventInstance> evts, long time, ReturnCause inactiveCause) {
-        List<User> activeUsers = userDao.getActiveUsers();
-
         List<Integer> eventIds = new ArrayList<>();
         UserEventListener multicaster = userEventMulticaster;
 
@@ -395,15 +384,11 @@ public class EventManagerImpl implements EventManager {
             evt.returnToNormal(time, inactiveCause);
 
             List<Integer> userIdsToNotify = new ArrayList<>();
-            for (User user : activeUsers) {
+            for (User user : recipientIndex.getRecipients(evt.getEventType())) {
                 // Do not create an event for this user if the event type says the
                 // user should be skipped.
-                if (evt.getEventType().excludeUser(user))
-                    continue;
-
-                if (permissionService.hasEventTypePermission(user, evt.getEventType())) {
+                if (!evt.getEventType().excludeUser(user))
                     userIdsToNotify.add(user.getId());
-                }
             }
 
             if(multicaster != null)
@@ -448,16 +433,12 @@ public class EventManagerImpl implements EventManager {
         List<Integer> userIdsToNotify = new ArrayList<>();
         UserEventListener multicaster = userEventMulticaster;
 
-        for (User user : userDao.getActiveUsers()) {
+        for (User user : recipientIndex.getRecipients(evt.getEventType())) {
             // Do not create an event for this user if the event type says the
             // user should be skipped.
-            if (evt.getEventType().excludeUser(user))
-                continue;
-
-            if (permissionService.hasEventTypePermission(user, evt.getEventType())) {
+            if (!evt.getEventType().excludeUser(user))
                 //Notify All User Event Listeners of the new event
                 userIdsToNotify.add(user.getId());
-            }
         }
 
         if(multicaster != null)
@@ -546,14 +527,14 @@ public class EventManagerImpl implements EventManager {
 
         activeEventsLock.writeLock().lock();
         try{
-            activeEvents.removeIf(e -> e.getActiveTimestamp() < time);
+            activeEvents.removeBefore(time);
         }finally{
             activeEventsLock.writeLock().unlock();
         }
 
         recentEventsLock.writeLock().lock();
         try{
-            recentEvents.removeIf(e -> e.getActiveTimestamp() < time);
+            recentEvents.removeBefore(time);
         }finally{
             recentEventsLock.writeLock().unlock();
         }
@@ -573,14 +554,14 @@ public class EventManagerImpl implements EventManager {
 
         activeEventsLock.writeLock().lock();
         try{
-            activeEvents.removeIf(e -> (e.getActiveTimestamp() < time) && (e.getEventType().getEventType().equals(typeName)));
+            activeEvents.removeBefore(time, e -> e.getEventType().getEventType().equals(typeName));
         }finally{
             activeEventsLock.writeLock().unlock();
         }
 
         recentEventsLock.writeLock().lock();
         try{
-            recentEvents.removeIf(e -> (e.getActiveTimestamp() < time) && (e.getEventType().getEventType().equals(typeName)));
+            recentEvents.removeBefore(time, e -> e.getEventType().getEventType().equals(typeName));
         }finally{
             recentEventsLock.writeLock().unlock();
         }
@@ -603,14 +584,14 @@ public class EventManagerImpl implements EventManager {
 
         activeEventsLock.writeLock().lock();
         try{
-            activeEvents.removeIf(e -> (e.getActiveTimestamp() < time) && (e.getAlarmLevel() == alarmLevel));
+            activeEvents.removeBefore(time, e -> e.getAlarmLevel() == alarmLevel);
         }finally{
             activeEventsLock.writeLock().unlock();
         }
 
         recentEventsLock.writeLock().lock();
         try{
-            recentEvents.removeIf(e -> (e.getActiveTimestamp() < time) && (e.getAlarmLevel() == alarmLevel));
+            recentEvents.removeBefore(time, e -> e.getAlarmLevel() == alarmLevel);
         }finally{
             recentEventsLock.writeLock().unlock();
         }
@@ -626,17 +607,10 @@ public class EventManagerImpl implements EventManager {
     @Override
     public void cancelEventsForDataPoint(int dataPointId) {
 
-        List<EventInstance> dataPointEvents = new ArrayList<>();
+        List<EventInstance> dataPointEvents;
         activeEventsLock.writeLock().lock();
         try{
-            ListIterator<EventInstance> it = activeEvents.listIterator();
-            while(it.hasNext()){
-                EventInstance e = it.next();
-                if (e.getEventType().getDataPointId() == dataPointId){
-                    it.remove();
-                    dataPointEvents.add(e);
-                }
-            }
+            dataPointEvents = activeEvents.removeForDataPoint(dataPointId);
         }finally{
             activeEventsLock.writeLock().unlock();
         }
@@ -645,7 +619,7 @@ public class EventManagerImpl implements EventManager {
 
         recentEventsLock.writeLock().lock();
         try{
-            recentEvents.removeIf(e -> e.getEventType().getDataPointId() == dataPointId);
+            recentEvents.removeForDataPoint(dataPointId);
         }finally{
             recentEventsLock.writeLock().unlock();
         }
@@ -658,17 +632,10 @@ public class EventManagerImpl implements EventManager {
     @Override
     public void cancelEventsForDataSource(int dataSourceId) {
 
-        List<EventInstance> dataSourceEvents = new ArrayList<>();
+        List<EventInstance> dataSourceEvents;
         activeEventsLock.writeLock().lock();
         try{
-            ListIterator<EventInstance> it = activeEvents.listIterator();
-            while(it.hasNext()){
-                EventInstance e = it.next();
-                if(e.getEventType().getDataSourceId() == dataSourceId){
-                    it.remove();
-                    dataSourceEvents.add(e);
-                }
-            }
+            dataSourceEvents = activeEvents.removeForDataSource(dataSourceId);
         }finally{
             activeEventsLock.writeLock().unlock();
         }
@@ -677,7 +644,7 @@ public class EventManagerImpl implements EventManager {
 
         recentEventsLock.writeLock().lock();
         try{
-            recentEvents.removeIf(e -> e.getEventType().getDataSourceId() == dataSourceId);
+            recentEvents.removeForDataSource(dataSourceId);
         }finally{
             recentEventsLock.writeLock().unlock();
         }
@@ -690,17 +657,10 @@ public class EventManagerImpl implements EventManager {
     @Override
     public void cancelEventsForPublisher(int publisherId) {
 
-        List<EventInstance> publisherEvents = new ArrayList<>();
+        List<EventInstance> publisherEvents;
         activeEventsLock.writeLock().lock();
         try{
-            ListIterator<EventInstance> it = activeEvents.listIterator();
-            while(it.hasNext()){
-                EventInstance e = it.next();
-                if(e.getEventType().getPublisherId() == publisherId){
-                    it.remove();
-                    publisherEvents.add(e);
-                }
-            }
+            publisherEvents = activeEvents.removeForPublisher(publisherId);
         }finally{
             activeEventsLock.writeLock().unlock();
         }
@@ -709,7 +669,7 @@ public class EventManagerImpl implements EventManager {
 
         recentEventsLock.writeLock().lock();
         try{
-            recentEvents.removeIf(e -> e.getEventType().getPublisherId() == publisherId);
+            recentEvents.removeForPublisher(publisherId);
         }finally{
             recentEventsLock.writeLock().unlock();
         }
@@ -717,13 +677,10 @@ public class EventManagerImpl implements EventManager {
 
     private void resetHighestAlarmLevel(long time) {
 
-        int max = 0;
+        int max;
         activeEventsLock.readLock().lock();
         try{
-            for (EventInstance e : activeEvents) {
-                if (e.getAlarmLevel().value() > max)
-                    max = e.getAlarmLevel().value();
-            }
+            max = activeEvents.getHighestAlarmLevel();
         }finally{
             activeEventsLock.readLock().unlock();
         }
@@ -772,7 +729,7 @@ public class EventManagerImpl implements EventManager {
 
         permissionService = Common.getBean(PermissionService.class);
         eventDao = Common.getBean(EventDao.class);
-        userDao = Common.getBean(UserDao.class);
+        recipientIndex = Common.getBean(EventRecipientIndex.class);
         mailingListService = Common.getBean(MailingListService.class);
         auditEventDao = Common.getBean(AuditEventDao.class);
         eventHandlerDao = Common.getBean(EventHandlerDao.class);
@@ -780,7 +737,8 @@ public class EventManagerImpl implements EventManager {
         // Get all active events from the database.
         activeEventsLock.writeLock().lock();
         try{
-            activeEvents.addAll(eventDao.getActiveEvents());
+            for (EventInstance e : eventDao.getActiveEvents())
+                activeEvents.add(e);
         }finally{
             activeEventsLock.writeLock().unlock();
         }
@@ -795,6 +753,11 @@ public class EventManagerImpl implements EventManager {
         if (state != RUNNING)
             return;
         state = TERMINATE;
+        try {
+            eventDao.closeJournal();
+        } catch (Exception e) {
+            log.error("Failed to write events waiting in the event journal", e);
+        }
     }
 
     @Override
@@ -834,7 +797,7 @@ public class EventManagerImpl implements EventManager {
         List<EventInstance> userEvents;
         activeEventsLock.readLock().lock();
         try{
-            userEvents = new ArrayList<>(activeEvents);
+            userEvents = activeEvents.values();
         }finally{
             activeEventsLock.readLock().unlock();
         }
@@ -854,20 +817,12 @@ public class EventManagerImpl implements EventManager {
      * Gets an event from the activeEvents list/cache by its id
      */
     private EventInstance getById(int id) {
-        EventInstance e;
-
         activeEventsLock.readLock().lock();
         try{
-            for (EventInstance activeEvent : activeEvents) {
-                e = activeEvent;
-                if (e.getId() == id)
-                    return e;
-            }
+            return activeEvents.getById(id);
         }finally{
             activeEventsLock.readLock().unlock();
         }
-
-        return null;
     }
 
     /**
@@ -877,22 +832,16 @@ public class EventManagerImpl implements EventManager {
     private EventInstance get(EventType type) {
         activeEventsLock.readLock().lock();
         try{
-            for (EventInstance e : activeEvents) {
-                if (e.getEventType().equals(type))
-                    return e;
-            }
+            return activeEvents.getFirst(type);
         }finally{
             activeEventsLock.readLock().unlock();
         }
-        return null;
     }
 
     private List<EventInstance> getAll(EventType type) {
         activeEventsLock.readLock().lock();
         try{
-            return activeEvents.stream()
-                    .filter(e -> e.getEventType().equals(type))
-                    .collect(Collectors.toList());
+            return activeEvents.getAll(type);
         }finally{
             activeEventsLock.readLock().unlock();
         }
@@ -905,14 +854,12 @@ public class EventManagerImpl implements EventManager {
      */
     @Override
     public List<EventInstance> getAllActive() {
-        List<EventInstance> result = new ArrayList<>();
         activeEventsLock.readLock().lock();
         try{
-            result.addAll(activeEvents);
+            return activeEvents.values();
         }finally{
             activeEventsLock.readLock().unlock();
         }
-        return result;
     }
 
     /**
@@ -925,34 +872,23 @@ public class EventManagerImpl implements EventManager {
     private EventInstance remove(EventType type) {
         activeEventsLock.writeLock().lock();
         try{
-            ListIterator<EventInstance> it = activeEvents.listIterator();
-            while(it.hasNext()){
-                EventInstance e = it.next();
-                if (e.getEventType().equals(type)) {
-                    it.remove();
-                    return e;
-                }
-            }
+            return activeEvents.removeFirst(type);
         }finally{
             activeEventsLock.writeLock().unlock();
         }
-
-        return null;
     }
 
     private void setHandlers(EventInstance evt) {
-        List<AbstractEventHandlerVO> vos = eventHandlerDao.getEventHandlers(evt.getEventType());
-        List<EventHandlerRT<?>> rts = null;
+        List<AbstractEventHandlerVO> vos = eventHandlerDao.getEnabledEventHandlers(evt.getEventType());
+        if (vos.isEmpty())
+            return;
+        // Runtimes hold the state of the handler for this event
+        List<EventHandlerRT<?>> rts = new ArrayList<>(vos.size());
         for (AbstractEventHandlerVO vo : vos) {
-            if (!vo.isDisabled()) {
-                if (rts == null)
-                    rts = new ArrayList<>();
-                EventHandlerDefinition<AbstractEventHandlerVO> definition = vo.getDefinition();
-                rts.add(definition.createRuntime(vo));
-            }
+            EventHandlerDefinition<AbstractEventHandlerVO> definition = vo.getDefinition();
+            rts.add(definition.createRuntime(vo));
         }
-        if (rts != null)
-            evt.setHandlers(rts);
+        evt.setHandlers(rts);
     }
 
     /**
@@ -15,6 +15,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.util.Assert;
@@ -23,7 +24,6 @@ import com.serotonin.ShouldNeverHappenException;
 import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.db.dao.DataPointDao;
 import com.serotonin.m2m2.db.dao.DataSourceDao;
-import com.serotonin.m2m2.db.dao.EnhancedPointValueDao;
 import com.serotonin.m2m2.db.dao.PointValueDao;
 import com.serotonin.m2m2.db.dao.PublisherDao;
 import com.serotonin.m2m2.db.dao.SystemSettingsDao;
@@ -376,24 +376,22 @@ public class RuntimeManagerImpl implements RuntimeManager {
         // Add the enabled points to the data source.
         List<DataPointWithEventDetectors> dataSourcePoints = DataPointDao.getInstance().getDataPointsForDataSourceStart(vo.getId());
 
+        // Find the maximum cache size for all point in the datasource
+        // This number of values will be retrieved for all points in the datasource
+        // If even one point has a high cache size this *may* cause issues
+        int maxCacheSize = 0;
+        for (DataPointWithEventDetectors dataPoint : dataSourcePoints) {
+            if (dataPoint.getDataPoint().getDefaultCacheSize() > maxCacheSize)
+                maxCacheSize = dataPoint.getDataPoint().getDefaultCacheSize();
+        }
+
+        // Fetch the values for all the caches in one query if the dao supports it
         Map<Integer, List<PointValueTime>> latestValuesMap = null;
         PointValueDao pvDao = Common.databaseProxy.newPointValueDao();
-        if (pvDao instanceof EnhancedPointValueDao) {
-
-            // Find the maximum cache size for all point in the datasource
-            // This number of values will be retrieved for all points in the datasource
-            // If even one point has a high cache size this *may* cause issues
-            int maxCacheSize = 0;
-            for (DataPointWithEventDetectors dataPoint : dataSourcePoints) {
-                if (dataPoint.getDataPoint().getDefaultCacheSize() > maxCacheSize)
-                    maxCacheSize = dataPoint.getDataPoint().getDefaultCacheSize();
-            }
-
-            try {
-                latestValuesMap = ((EnhancedPointValueDao)pvDao).getLatestPointValuesForDataSource(vo, maxCacheSize);
-            } catch (Exception e) {
-                LOG.error("Failed to get latest point values for datasource " + vo.getXid() + ". Mango will try to retrieve latest point values per point which will take longer.", e);
-            }
+        try {
+            latestValuesMap = pvDao.getLatestPointValuesForDataSource(vo, maxCacheSize);
+        } catch (Exception e) {
+            LOG.error("Failed to get latest point values for datasource " + vo.getXid() + ". Mango will try to retrieve latest point values per point which will take longer.", e);
         }
 
         for (DataPointWithEventDetectors dataPoint : dataSourcePoints) {
@@ -846,6 +844,7 @@ public class RuntimeManagerImpl implements RuntimeManager {
         stopPublisher(publisherId);
         PublisherDao.getInstance().delete(publisherId);
         Common.eventManager.cancelEventsForPublisher(publisherId);
+        FileUtils.deleteQuietly(PublisherRT.getQueueDirectory(publisherId).toFile());
     }
 
     @Override
@@ -4,30 +4,36 @@
  */
 package com.serotonin.m2m2.rt.dataImage;
 
+import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.Map;
 
 import com.serotonin.m2m2.util.ExceptionListWrapper;
 import com.serotonin.m2m2.vo.DataPointVO;
 
+/**
+ * Immutable list of the listeners of a point. Adding or removing a listener returns a new
+ * multicaster so events can be dispatched while the listeners change. Each listener is only called
+ * for the events in its {@link DataPointListener#getEventInterests()}.
+ */
 public class DataPointEventMulticaster implements DataPointListener {
-    protected final DataPointListener a, b;
-
-    protected DataPointEventMulticaster(DataPointListener a, DataPointListener b) {
-        this.a = a;
-        this.b = b;
-    }
+    private final DataPointListener[] listeners;
+    private final int[] interests;
+    //Union of the interests of the listeners
+    private final int eventInterests;
+    private final boolean latestValueOnly;
 
-    protected DataPointListener remove(DataPointListener oldl) {
-        if (oldl == a)
-            return b;
-        if (oldl == b)
-            return a;
-        DataPointListener a2 = remove(a, oldl);
-        DataPointListener b2 = remove(b, oldl);
-        if (a2 == a && b2 == b) {
-            return this;
+    private DataPointEventMulticaster(DataPointListener[] listeners, int[] interests) {
+        this.listeners = listeners;
+        this.interests = interests;
+        int union = 0;
+        boolean latest = true;
+        for (int i = 0; i < listeners.length; i++) {
+            union |= interests[i];
+            latest &= listeners[i].isLatestValueOnly();
         }
-        return add(a2, b2);
+        this.eventInterests = union;
+        this.latestValueOnly = latest;
     }
 
     public static DataPointListener add(DataPointListener a, DataPointListener b) {
@@ -35,48 +41,92 @@ public class DataPointEventMulticaster implements DataPointListener {
             return b;
         if (b == null)
             return a;
-        return new DataPointEventMulticaster(a, b);
+
+        DataPointListener[] first = listenersOf(a);
+        DataPointListener[] second = listenersOf(b);
+        DataPointListener[] listeners = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, listeners, first.length, second.length);
+        int[] interests = new int[listeners.length];
+        for (int i = 0; i < listeners.length; i++)
+            interests[i] = listeners[i].getEventInterests();
+        return new DataPointEventMulticaster(listeners, interests);
     }
 
+    /**
+     * Remove the most recently added occurrence of a listener
+     *
+     * @param l current listener(s), may be null
+     * @param oldl listener to remove
+     * @return remaining listener(s) or null if there are none
+     */
     public static DataPointListener remove(DataPointListener l, DataPointListener oldl) {
         if (l == oldl || l == null)
             return null;
+        if (!(l instanceof DataPointEventMulticaster))
+            return l;
 
-        if (l instanceof DataPointEventMulticaster)
-            return ((DataPointEventMulticaster) l).remove(oldl);
+        DataPointEventMulticaster mc = (DataPointEventMulticaster) l;
+        int index = mc.listeners.length - 1;
+        while (index >= 0 && mc.listeners[index] != oldl)
+            index--;
+        if (index < 0)
+            return l;
+        if (mc.listeners.length == 2)
+            return mc.listeners[1 - index];
 
-        return l;
+        int remaining = mc.listeners.length - index - 1;
+        DataPointListener[] listeners = Arrays.copyOf(mc.listeners, mc.listeners.length - 1);
+        System.arraycopy(mc.listeners, index + 1, listeners, index, remaining);
+        int[] interests = Arrays.copyOf(mc.interests, mc.interests.length - 1);
+        System.arraycopy(mc.interests, index + 1, interests, index, remaining);
+        return new DataPointEventMulticaster(listeners, interests);
     }
 
-    private static int getListenerCount(DataPointListener l) {
-        if (l instanceof DataPointEventMulticaster) {
-            DataPointEventMulticaster mc = (DataPointEventMulticaster) l;
-            return getListenerCount(mc.a) + getListenerCount(mc.b);
-        }
-
-        return 1;
+    public static DataPointListener[] getListeners(DataPointListener l) {
+        if (l == null)
+            return new DataPointListener[0];
+        if (l instanceof DataPointEventMulticaster)
+            return ((DataPointEventMulticaster) l).listeners.clone();
+        return new DataPointListener[] { l };
     }
 
-    private static int populateListenerArray(DataPointListener[] a, DataPointListener l, int index) {
-        if (l instanceof DataPointEventMulticaster) {
-            DataPointEventMulticaster mc = (DataPointEventMulticaster) l;
-            int lhs = populateListenerArray(a, mc.a, index);
-            return populateListenerArray(a, mc.b, lhs);
-        }
-
-        if (a.getClass().getComponentType().isInstance(l)) {
-            a[index] = l;
-            return index + 1;
-        }
+    private static DataPointListener[] listenersOf(DataPointListener l) {
+        if (l instanceof DataPointEventMulticaster)
+            return ((DataPointEventMulticaster) l).listeners;
+        return new DataPointListener[] { l };
+    }
 
-        return index;
+    /**
+     * Find the events a listener class handles by the callbacks it overrides, for use by base
+     * classes that implement every callback as a no op.
+     *
+     * @param type listener class
+     * @param base class with the no op callbacks
+     * @return event flags of the callbacks that type overrides
+     */
+    public static int getOverriddenEvents(Class<? extends DataPointListener> type, Class<?> base) {
+        int events = 0;
+        events |= overridden(type, base, POINT_INITIALIZED, "pointInitialized");
+        events |= overridden(type, base, POINT_UPDATED, "pointUpdated", PointValueTime.class);
+        events |= overridden(type, base, POINT_CHANGED, "pointChanged", PointValueTime.class, PointValueTime.class);
+        events |= overridden(type, base, POINT_SET, "pointSet", PointValueTime.class, PointValueTime.class);
+        events |= overridden(type, base, POINT_BACKDATED, "pointBackdated", PointValueTime.class);
+        events |= overridden(type, base, POINT_TERMINATED, "pointTerminated", DataPointVO.class);
+        events |= overridden(type, base, POINT_LOGGED, "pointLogged", PointValueTime.class);
+        events |= overridden(type, base, ATTRIBUTE_CHANGED, "attributeChanged", Map.class);
+        return events;
     }
 
-    public static DataPointListener[] getListeners(DataPointListener l) {
-        int n = getListenerCount(l);
-        DataPointListener[] result = new DataPointListener[n];
-        populateListenerArray(result, l, 0);
-        return result;
+    private static int overridden(Class<?> type, Class<?> base, int event, String name, Class<?>... parameterTypes) {
+        try {
+            Method method = type.getMethod(name, parameterTypes);
+            //Declared by the base or above it, attributeChanged is a no op default in the interface
+            if (method.getDeclaringClass().isAssignableFrom(base))
+                return 0;
+        } catch (NoSuchMethodException e) {
+            //Can't tell, assume it is used
+        }
+        return event;
     }
 
     //
@@ -84,230 +134,166 @@ public class DataPointEventMulticaster implements DataPointListener {
     // / DataPointListener interface
     // /
     // /
-	@Override
+    @Override
     public void pointChanged(PointValueTime oldValue, PointValueTime newValue) throws ExceptionListWrapper {
-	    ExceptionListWrapper exceptionWrapper = null;
-	    try {
-	        a.pointChanged(oldValue, newValue);
-	    } catch(Exception e) {
-	        if(!(e instanceof ExceptionListWrapper)) 
-	            exceptionWrapper = new ExceptionListWrapper(e);
-	        else //If it is, it's already added
-	            exceptionWrapper = (ExceptionListWrapper)e;
-	    }
-	    
-	    try {
-	        b.pointChanged(oldValue, newValue);
-	    } catch(Exception e) {
-	        if(exceptionWrapper != null)
-	            exceptionWrapper.addException(e);
-	        else if(!(e instanceof ExceptionListWrapper))
-                exceptionWrapper = new ExceptionListWrapper(e);
-            else //If it is, it's already added
-                exceptionWrapper = (ExceptionListWrapper)e;
+        ExceptionListWrapper exceptionWrapper = null;
+        for (int i = 0; i < listeners.length; i++) {
+            if ((interests[i] & POINT_CHANGED) != 0) {
+                try {
+                    listeners[i].pointChanged(oldValue, newValue);
+                } catch(Exception e) {
+                    exceptionWrapper = addException(exceptionWrapper, e);
+                }
+            }
         }
-	    
-	    if(exceptionWrapper != null)
-	        throw exceptionWrapper;
+        if(exceptionWrapper != null)
+            throw exceptionWrapper;
     }
-	@Override
+
+    @Override
     public void pointSet(PointValueTime oldValue, PointValueTime newValue) throws ExceptionListWrapper {
-	    ExceptionListWrapper exceptionWrapper = null;
-        try {
-	        a.pointSet(oldValue, newValue);
-	    } catch(Exception e) {
-            if(!(e instanceof ExceptionListWrapper)) 
-                exceptionWrapper = new ExceptionListWrapper(e);
-            else //If it is, it's already added
-                exceptionWrapper = (ExceptionListWrapper)e;
-        }
-        
-        try {
-	        b.pointSet(oldValue, newValue);
-	    } catch(Exception e) {
-            if(exceptionWrapper != null)
-                exceptionWrapper.addException(e);
-            else if(!(e instanceof ExceptionListWrapper))
-                exceptionWrapper = new ExceptionListWrapper(e);
-            else //If it is, it's already added
-                exceptionWrapper = (ExceptionListWrapper)e;
+        ExceptionListWrapper exceptionWrapper = null;
+        for (int i = 0; i < listeners.length; i++) {
+            if ((interests[i] & POINT_SET) != 0) {
+                try {
+                    listeners[i].pointSet(oldValue, newValue);
+                } catch(Exception e) {
+                    exceptionWrapper = addException(exceptionWrapper, e);
+                }
+            }
         }
-        
         if(exceptionWrapper != null)
             throw exceptionWrapper;
     }
-	@Override
-    public void pointUpdated(PointValueTime newValue) throws ExceptionListWrapper {
-	    ExceptionListWrapper exceptionWrapper = null;
-	    try {
-	        a.pointUpdated(newValue);
-	    } catch(Exception e) {
-            if(!(e instanceof ExceptionListWrapper)) 
-                exceptionWrapper = new ExceptionListWrapper(e);
-            else //If it is, it's already added
-                exceptionWrapper = (ExceptionListWrapper)e;
-        }
 
-	    try {
-	        b.pointUpdated(newValue);
-	    } catch(Exception e) {
-            if(exceptionWrapper != null)
-                exceptionWrapper.addException(e);
-            else if(!(e instanceof ExceptionListWrapper))
-                exceptionWrapper = new ExceptionListWrapper(e);
-            else //If it is, it's already added
-                exceptionWrapper = (ExceptionListWrapper)e;
+    @Override
+    public void pointUpdated(PointValueTime newValue) throws ExceptionListWrapper {
+        ExceptionListWrapper exceptionWrapper = null;
+        for (int i = 0; i < listeners.length; i++) {
+            if ((interests[i] & POINT_UPDATED) != 0) {
+                try {
+                    listeners[i].pointUpdated(newValue);
+                } catch(Exception e) {
+                    exceptionWrapper = addException(exceptionWrapper, e);
+                }
+            }
         }
-        
         if(exceptionWrapper != null)
             throw exceptionWrapper;
     }
-	@Override
+
+    @Override
     public void pointBackdated(PointValueTime value) throws ExceptionListWrapper {
-	    ExceptionListWrapper exceptionWrapper = null;
-	    try {
-	        a.pointBackdated(value);
-	    } catch(Exception e) {
-            if(!(e instanceof ExceptionListWrapper)) 
-                exceptionWrapper = new ExceptionListWrapper(e);
-            else //If it is, it's already added
-                exceptionWrapper = (ExceptionListWrapper)e;
-        }
-	    
-	    try {
-	        b.pointBackdated(value);
-	    } catch(Exception e) {
-            if(exceptionWrapper != null)
-                exceptionWrapper.addException(e);
-            else if(!(e instanceof ExceptionListWrapper))
-                exceptionWrapper = new ExceptionListWrapper(e);
-            else //If it is, it's already added
-                exceptionWrapper = (ExceptionListWrapper)e;
+        ExceptionListWrapper exceptionWrapper = null;
+        for (int i = 0; i < listeners.length; i++) {
+            if ((interests[i] & POINT_BACKDATED) != 0) {
+                try {
+                    listeners[i].pointBackdated(value);
+                } catch(Exception e) {
+                    exceptionWrapper = addException(exceptionWrapper, e);
+                }
+            }
         }
-        
         if(exceptionWrapper != null)
             throw exceptionWrapper;
     }
-	@Override
-    public void pointInitialized() throws ExceptionListWrapper {
-	    ExceptionListWrapper exceptionWrapper = null;
-	    try {
-	        a.pointInitialized();
-	    } catch(Exception e) {
-            if(!(e instanceof ExceptionListWrapper)) 
-                exceptionWrapper = new ExceptionListWrapper(e);
-            else //If it is, it's already added
-                exceptionWrapper = (ExceptionListWrapper)e;
-        }
 
-	    try {
-	        b.pointInitialized();
-	    } catch(Exception e) {
-            if(exceptionWrapper != null)
-                exceptionWrapper.addException(e);
-            else if(!(e instanceof ExceptionListWrapper))
-                exceptionWrapper = new ExceptionListWrapper(e);
-            else //If it is, it's already added
-                exceptionWrapper = (ExceptionListWrapper)e;
+    @Override
+    public void pointInitialized() throws ExceptionListWrapper {
+        ExceptionListWrapper exceptionWrapper = null;
+        for (int i = 0; i < listeners.length; i++) {
+            if ((interests[i] & POINT_INITIALIZED) != 0) {
+                try {
+                    listeners[i].pointInitialized();
+                } catch(Exception e) {
+                    exceptionWrapper = addException(exceptionWrapper, e);
+                }
+            }
         }
-        
         if(exceptionWrapper != null)
             throw exceptionWrapper;
     }
-	@Override
+
+    @Override
     public void pointTerminated(DataPointVO vo) throws ExceptionListWrapper {
-	    ExceptionListWrapper exceptionWrapper = null;
-	    try {
-	        a.pointTerminated(vo);
-	    } catch(Exception e) {
-            if(!(e instanceof ExceptionListWrapper)) 
-                exceptionWrapper = new ExceptionListWrapper(e);
-            else //If it is, it's already added
-                exceptionWrapper = (ExceptionListWrapper)e;
-        }
-	    
-	    try {
-	        b.pointTerminated(vo);
-	    } catch(Exception e) {
-            if(exceptionWrapper != null)
-                exceptionWrapper.addException(e);
-            else if(!(e instanceof ExceptionListWrapper))
-                exceptionWrapper = new ExceptionListWrapper(e);
-            else //If it is, it's already added
-                exceptionWrapper = (ExceptionListWrapper)e;
+        ExceptionListWrapper exceptionWrapper = null;
+        for (int i = 0; i < listeners.length; i++) {
+            if ((interests[i] & POINT_TERMINATED) != 0) {
+                try {
+                    listeners[i].pointTerminated(vo);
+                } catch(Exception e) {
+                    exceptionWrapper = addException(exceptionWrapper, e);
+                }
+            }
         }
-        
         if(exceptionWrapper != null)
             throw exceptionWrapper;
     }
 
-	@Override
-	public void pointLogged(PointValueTime value) throws ExceptionListWrapper {
-	    ExceptionListWrapper exceptionWrapper = null;
-	    try {
-	        a.pointLogged(value);
-	    } catch(Exception e) {
-            if(!(e instanceof ExceptionListWrapper)) 
-                exceptionWrapper = new ExceptionListWrapper(e);
-            else //If it is, it's already added
-                exceptionWrapper = (ExceptionListWrapper)e;
-        }
-	    
-	    try {
-	        b.pointLogged(value);
-	    } catch(Exception e) {
-            if(exceptionWrapper != null)
-                exceptionWrapper.addException(e);
-            else if(!(e instanceof ExceptionListWrapper))
-                exceptionWrapper = new ExceptionListWrapper(e);
-            else //If it is, it's already added
-                exceptionWrapper = (ExceptionListWrapper)e;
+    @Override
+    public void pointLogged(PointValueTime value) throws ExceptionListWrapper {
+        ExceptionListWrapper exceptionWrapper = null;
+        for (int i = 0; i < listeners.length; i++) {
+            if ((interests[i] & POINT_LOGGED) != 0) {
+                try {
+                    listeners[i].pointLogged(value);
+                } catch(Exception e) {
+                    exceptionWrapper = addException(exceptionWrapper, e);
+                }
+            }
         }
-        
         if(exceptionWrapper != null)
             throw exceptionWrapper;
-	}
-	
-	/* (non-Javadoc)
-	 * @see com.serotonin.m2m2.rt.dataImage.DataPointListener#attributeChanged(java.util.Map)
-	 */
-	@Override
-	public void attributeChanged(Map<String, Object> attributes) throws ExceptionListWrapper {
-	    ExceptionListWrapper exceptionWrapper = null;
-	    try {
-	        a.attributeChanged(attributes);
-	    } catch(Exception e) {
-            if(!(e instanceof ExceptionListWrapper)) 
-                exceptionWrapper = new ExceptionListWrapper(e);
-            else //If it is, it's already added
-                exceptionWrapper = (ExceptionListWrapper)e;
-        }
+    }
 
-	    try {
-	        b.attributeChanged(attributes);
-	    } catch(Exception e) {
-            if(exceptionWrapper != null)
-                exceptionWrapper.addException(e);
-            else if(!(e instanceof ExceptionListWrapper))
-                exceptionWrapper = new ExceptionListWrapper(e);
-            else //If it is, it's already added
-                exceptionWrapper = (ExceptionListWrapper)e;
+    @Override
+    public void attributeChanged(Map<String, Object> attributes) throws ExceptionListWrapper {
+        ExceptionListWrapper exceptionWrapper = null;
+        for (int i = 0; i < listeners.length; i++) {
+            if ((interests[i] & ATTRIBUTE_CHANGED) != 0) {
+                try {
+                    listeners[i].attributeChanged(attributes);
+                } catch(Exception e) {
+                    exceptionWrapper = addException(exceptionWrapper, e);
+                }
+            }
         }
-        
         if(exceptionWrapper != null)
             throw exceptionWrapper;
-	}
+    }
+
+    private static ExceptionListWrapper addException(ExceptionListWrapper exceptionWrapper, Exception e) {
+        if(exceptionWrapper == null) {
+            if(e instanceof ExceptionListWrapper)
+                return (ExceptionListWrapper)e;
+            return new ExceptionListWrapper(e);
+        }
+        if(e instanceof ExceptionListWrapper && ((ExceptionListWrapper)e).getExceptions() != null) {
+            for(Exception e2 : ((ExceptionListWrapper)e).getExceptions())
+                exceptionWrapper.addException(e2);
+        }else
+            exceptionWrapper.addException(e);
+        return exceptionWrapper;
+    }
 
-	/* (non-Javadoc)
-	 * @see com.serotonin.m2m2.rt.dataImage.DataPointListener#getListenerName()
-	 */
-	@Override
-	public String getListenerName() {
-		String path = "";
-		if(a != null)
-			path += a.getListenerName();
-		if(b != null)
-			path += "," + b.getListenerName();
-		return path;
-	}
+    @Override
+    public boolean isLatestValueOnly() {
+        return latestValueOnly;
+    }
+
+    @Override
+    public int getEventInterests() {
+        return eventInterests;
+    }
+
+    @Override
+    public String getListenerName() {
+        StringBuilder path = new StringBuilder();
+        for (int i = 0; i < listeners.length; i++) {
+            if (i > 0)
+                path.append(',');
+            path.append(listeners[i].getListenerName());
+        }
+        return path.toString();
+    }
 }
@@ -9,6 +9,19 @@ import java.util.Map;
 import com.serotonin.m2m2.vo.DataPointVO;
 
 public interface DataPointListener {
+
+    /**
+     * Flags for {@link #getEventInterests()}, one per callback
+     */
+    int POINT_INITIALIZED = 1;
+    int POINT_UPDATED = 1 << 1;
+    int POINT_CHANGED = 1 << 2;
+    int POINT_SET = 1 << 3;
+    int POINT_BACKDATED = 1 << 4;
+    int POINT_TERMINATED = 1 << 5;
+    int POINT_LOGGED = 1 << 6;
+    int ATTRIBUTE_CHANGED = 1 << 7;
+    int ALL_EVENTS = (1 << 8) - 1;
 	
 	/**
 	 * For use in tracking who is listening to whom
@@ -70,4 +83,26 @@ public interface DataPointListener {
      * @param attributes
      */
     default void attributeChanged(Map<String, Object> attributes) { }
+
+    /**
+     * Listeners that only need the current value of the point can return true so that an update
+     * still waiting to be delivered to them is replaced by the next one. pointUpdated, pointChanged
+     * and pointSet are then called once for the latest value, with the value the point changed from
+     * before the first update that was replaced.
+     *
+     * @return
+     */
+    default boolean isLatestValueOnly() {
+        return false;
+    }
+
+    /**
+     * The callbacks this listener needs, callbacks not included may not be called. This is read once
+     * when the listener is added so it must not change while the listener is registered.
+     *
+     * @return combination of the event flags, ALL_EVENTS by default
+     */
+    default int getEventInterests() {
+        return ALL_EVENTS;
+    }
 }
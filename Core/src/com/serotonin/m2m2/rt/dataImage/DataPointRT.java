@@ -28,12 +28,11 @@ import com.serotonin.m2m2.rt.dataImage.types.DataValue;
 import com.serotonin.m2m2.rt.dataImage.types.ImageValue;
 import com.serotonin.m2m2.rt.dataImage.types.MultistateValue;
 import com.serotonin.m2m2.rt.dataImage.types.NumericValue;
+import com.serotonin.m2m2.rt.dataSource.DataSourceRT;
 import com.serotonin.m2m2.rt.dataSource.PointLocatorRT;
 import com.serotonin.m2m2.rt.event.detectors.PointEventDetectorRT;
-import com.serotonin.m2m2.rt.maint.work.WorkItem;
 import com.serotonin.m2m2.rt.script.AbstractPointWrapper;
 import com.serotonin.m2m2.rt.script.DataPointWrapper;
-import com.serotonin.m2m2.util.ExceptionListWrapper;
 import com.serotonin.m2m2.util.timeout.TimeoutClient;
 import com.serotonin.m2m2.util.timeout.TimeoutTask;
 import com.serotonin.m2m2.view.stats.IValueTime;
@@ -44,8 +43,6 @@ import com.serotonin.m2m2.vo.event.detector.AbstractPointEventDetectorVO;
 import com.serotonin.timer.AbstractTimer;
 import com.serotonin.timer.FixedRateTrigger;
 import com.serotonin.timer.OneTimeTrigger;
-import com.serotonin.timer.RejectedTaskReason;
-import com.serotonin.timer.Task;
 import com.serotonin.timer.TimerTask;
 import com.serotonin.util.ILifecycle;
 
@@ -63,8 +60,12 @@ public class DataPointRT implements IDataPointValueSource, ILifecycle {
     // Runtime data.
     private volatile PointValueTime pointValue;
     private final PointValueCache valueCache;
+    //In memory history, null if not enabled for the point
+    private final PointValueHistory history;
     private List<PointEventDetectorRT<?>> detectors;
     private final Map<String, Object> attributes = new HashMap<String, Object>();
+    //Listener notifications waiting to be delivered
+    private final PointEventMailbox listenerEvents;
 
     // Interval logging data.
     private PointValueTime intervalValue;
@@ -96,11 +97,18 @@ public class DataPointRT implements IDataPointValueSource, ILifecycle {
         }
         this.dsVo = dsVo;
         this.pointLocator = pointLocator;
+        this.listenerEvents = new PointEventMailbox(vo.getXid());
         if (enhanced) {
             valueCache = new EnhancedPointValueCache(vo, dsVo, vo.getDefaultCacheSize(), initialCache);
         } else {
             valueCache = new PointValueCache(vo, vo.getDefaultCacheSize(), initialCache);
         }
+        if (vo.getHistoryWindowPeriods() > 0 && PointValueHistory.isSupported(vo.getPointLocator().getDataTypeId())) {
+            history = new PointValueHistory(vo.getPointLocator().getDataTypeId(),
+                    Common.getMillis(vo.getHistoryWindowPeriodType(), vo.getHistoryWindowPeriods()), this::updateHistoryMemory);
+        } else {
+            history = null;
+        }
         if(vo.getIntervalLoggingType() == DataPointVO.IntervalLoggingTypes.AVERAGE)
             averagingValues = new ArrayList<IValueTime>();
     }
@@ -181,23 +189,37 @@ public class DataPointRT implements IDataPointValueSource, ILifecycle {
 
     @Override
     public List<PointValueTime> getPointValues(long since) {
-        List<PointValueTime> result = Common.databaseProxy.newPointValueDao().getPointValues(vo, since);
-
-        for (PointValueTime pvt : valueCache.getCacheContents()) {
-            if (pvt.getTime() >= since) {
-                int index = Collections.binarySearch(result, pvt, pvtTimeComparator);
-                if (index < 0)
-                    result.add(-index - 1, pvt);
-            }
+        if (history != null) {
+            List<PointValueTime> result = history.getPointValues(since);
+            if (result != null)
+                return result;
         }
 
+        List<PointValueTime> result = Common.databaseProxy.newPointValueDao().getPointValues(vo, since);
+        addCachedValues(result, since, Long.MAX_VALUE);
         return result;
     }
 
     @Override
     public List<PointValueTime> getPointValuesBetween(long from, long to) {
+        if (history != null) {
+            List<PointValueTime> result = history.getPointValuesBetween(from, to);
+            if (result != null)
+                return result;
+        }
+
         List<PointValueTime> result = Common.databaseProxy.newPointValueDao().getPointValuesBetween(vo, from, to);
+        addCachedValues(result, from, to);
+        return result;
+    }
 
+    /**
+     * Merge the cached values in the range into values from the database, they may not be written yet
+     * @param result ordered by time
+     * @param from inclusive
+     * @param to exclusive
+     */
+    private void addCachedValues(List<PointValueTime> result, long from, long to) {
         for (PointValueTime pvt : valueCache.getCacheContents()) {
             if (pvt.getTime() >= from && pvt.getTime() < to) {
                 int index = Collections.binarySearch(result, pvt, pvtTimeComparator);
@@ -205,8 +227,6 @@ public class DataPointRT implements IDataPointValueSource, ILifecycle {
                     result.add(-index - 1, pvt);
             }
         }
-
-        return result;
     }
 
     /**
@@ -354,6 +374,10 @@ public class DataPointRT implements IDataPointValueSource, ILifecycle {
                     newValue.getTime(), source.getSetPointSourceMessage());
         }
 
+        //The history only holds logged values, as the database would
+        if (logValue && history != null)
+            history.add(newValue);
+
         // Ignore historical values.
         if (pointValue == null || newValue.getTime() >= pointValue.getTime()) {
             PointValueTime oldValue = pointValue;
@@ -422,6 +446,8 @@ public class DataPointRT implements IDataPointValueSource, ILifecycle {
         }
 
         valueCache.savePointValue(newValue, source, logValue, async);
+        if (logValue && history != null)
+            history.add(newValue);
 
         //Update our value if it is newer
         if (pointValue == null || newValue.getTime() >= pointValue.getTime()) {
@@ -466,6 +492,8 @@ public class DataPointRT implements IDataPointValueSource, ILifecycle {
                         AnalogStatistics stats = new AnalogStatistics(intervalStartTime-loggingPeriodMillis, intervalStartTime, null, averagingValues);
                         PointValueTime newValue = new PointValueTime(stats.getAverage(), intervalStartTime);
                         valueCache.logPointValueAsync(newValue, null);
+                        if (history != null)
+                            history.add(newValue);
                         //Fire logged Events
                         fireEvents(null, newValue, null, false, false, true, false, false);
                         averagingValues.clear();
@@ -641,6 +669,8 @@ public class DataPointRT implements IDataPointValueSource, ILifecycle {
             if (value != null){
                 PointValueTime newValue = new PointValueTime(value, fireTime);
                 valueCache.logPointValueAsync(newValue, null);
+                if (history != null)
+                    history.add(newValue);
                 //Fire logged Events
                 fireEvents(null, newValue, null, false, false, true, false, false);
             }
@@ -654,10 +684,14 @@ public class DataPointRT implements IDataPointValueSource, ILifecycle {
         valueCache.reset();
         if (vo.getLoggingType() != DataPointVO.LoggingTypes.NONE)
             pointValue = valueCache.getLatestPointValue();
+        if (history != null)
+            loadHistory();
     }
 
     public void resetValues(long before) {
         valueCache.reset(before);
+        if (history != null)
+            history.removeBefore(before);
         if (vo.getLoggingType() != DataPointVO.LoggingTypes.NONE)
             pointValue = valueCache.getLatestPointValue();
     }
@@ -719,6 +753,13 @@ public class DataPointRT implements IDataPointValueSource, ILifecycle {
         return attributes.get(key);
     }
 
+    /**
+     * @return approximate bytes used by the in memory history of this point, 0 if it does not keep one
+     */
+    public long getHistoryMemoryUsage() {
+        return history == null ? 0 : history.getMemoryUsage();
+    }
+
     @Override
     public int hashCode() {
         final int PRIME = 31;
@@ -755,97 +796,7 @@ public class DataPointRT implements IDataPointValueSource, ILifecycle {
             boolean backdate, boolean logged, boolean updated, boolean attributesChanged) {
         DataPointListener l = Common.runtimeManager.getDataPointListeners(vo.getId());
         if (l != null)
-            Common.backgroundProcessing.addWorkItem(new EventNotifyWorkItem(vo.getXid(), l, oldValue, newValue,
-                    attributes, set, backdate, logged, updated, attributesChanged));
-    }
-
-    class EventNotifyWorkItem implements WorkItem {
-        private static final String descriptionPrefix = "Point event for: ";
-        private static final String prefix = "EN-";
-        private final String sourceXid;
-        private final DataPointListener listener;
-        private final PointValueTime oldValue;
-        private final PointValueTime newValue;
-        private final Map<String, Object> attributes;
-        private final boolean set;
-        private final boolean backdate;
-        private final boolean logged;
-        private final boolean updated;
-        private final boolean attributesChanged;
-
-        EventNotifyWorkItem(String xid, DataPointListener listener, PointValueTime oldValue, PointValueTime newValue, Map<String, Object> attributes, boolean set,
-                boolean backdate, boolean logged, boolean updated, boolean attributesChanged) {
-            this.sourceXid = xid;
-            this.listener = listener;
-            this.oldValue = oldValue;
-            this.newValue = newValue;
-            this.attributes = attributes;
-            this.set = set;
-            this.backdate = backdate;
-            this.logged = logged;
-            this.updated = updated;
-            this.attributesChanged = attributesChanged;
-        }
-
-        @Override
-        public void execute() {
-            try {
-                if (attributesChanged) {
-                    listener.attributeChanged(attributes);
-                    return;
-                }
-
-                if (backdate)
-                    listener.pointBackdated(newValue);
-                else if (updated) {
-                    // Updated
-                    listener.pointUpdated(newValue);
-
-                    // Fire if the point has changed.
-                    if (!PointValueTime.equalValues(oldValue, newValue))
-                        listener.pointChanged(oldValue, newValue);
-
-                    // Fire if the point was set.
-                    if (set)
-                        listener.pointSet(oldValue, newValue);
-                }
-
-                // Was this value actually logged
-                if (logged)
-                    listener.pointLogged(newValue);
-            } catch(ExceptionListWrapper e) {
-                LOG.warn("Exceptions in event notify work item.");
-                for(Exception e2 : e.getExceptions())
-                    LOG.warn("Listener exception: " + e2.getMessage(), e2);
-            }
-        }
-
-        @Override
-        public int getPriority() {
-            return WorkItem.PRIORITY_MEDIUM;
-        }
-
-        @Override
-        public String getDescription() {
-            return descriptionPrefix + sourceXid;
-        }
-
-        @Override
-        public String getTaskId() {
-            //So there is one task for each listener
-            return prefix + sourceXid + "-" + listener.hashCode();
-        }
-
-        @Override
-        public int getQueueSize() {
-            return Task.UNLIMITED_QUEUE_SIZE;
-        }
-
-        @Override
-        public void rejected(RejectedTaskReason reason) {
-            //No special handling, tracking/logging is handled by the WorkItemRunnable
-        }
-
+            listenerEvents.post(l, oldValue, newValue, attributes, set, backdate, logged, updated, attributesChanged);
     }
 
     //
@@ -871,6 +822,10 @@ public class DataPointRT implements IDataPointValueSource, ILifecycle {
         if (pointValue != null && pointValue.getValue() instanceof NumericValue)
             toleranceOrigin = pointValue.getDoubleValue();
 
+        // Load the history before the detectors so they can use it to initialize
+        if (history != null)
+            loadHistory();
+
         // Add point event listeners
         for (PointEventDetectorRT<?> pedRT : detectors) {
             pedRT.initialize();
@@ -889,6 +844,30 @@ public class DataPointRT implements IDataPointValueSource, ILifecycle {
             }
         }
         Common.eventManager.cancelEventsForDataPoint(vo.getId());
+
+        if (history != null)
+            history.clear();
+    }
+
+    /**
+     * Fill the history from the database, it is not used for queries until it is loaded. Values logged
+     * while the database is read are held by the history and added once it is loaded.
+     */
+    private void loadHistory() {
+        history.startLoad();
+        long from = (timer == null ? Common.timer.currentTimeMillis() : timer.currentTimeMillis()) - history.getDuration();
+        List<PointValueTime> values = Common.databaseProxy.newPointValueDao().getPointValues(vo, from);
+        //Values saved asynchronously may not be written yet, unless the point logs on an interval or not
+        // at all every cached value was logged
+        if (vo.getLoggingType() != DataPointVO.LoggingTypes.INTERVAL && vo.getLoggingType() != DataPointVO.LoggingTypes.NONE)
+            addCachedValues(values, from, Long.MAX_VALUE);
+        history.load(values, from);
+    }
+
+    private void updateHistoryMemory(long delta) {
+        DataSourceRT<?> ds = Common.runtimeManager.getRunningDataSource(vo.getDataSourceId());
+        if (ds != null)
+            ds.updatePointValueHistoryMemory(delta);
     }
 
     @Override
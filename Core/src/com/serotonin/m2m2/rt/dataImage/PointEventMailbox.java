@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.rt.dataImage;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.rt.maint.work.WorkItem;
+import com.serotonin.m2m2.util.ExceptionListWrapper;
+import com.serotonin.timer.RejectedTaskReason;
+import com.serotonin.timer.Task;
+
+/**
+ * Queue of the listener notifications of a data point. Notifications are posted as the point is
+ * updated and delivered in order by a single medium priority work item that drains the queue, so
+ * there is at most one work item per point waiting or running instead of one per update.
+ *
+ * If the listeners of the point only need the current value
+ * ({@link DataPointListener#isLatestValueOnly()}) an update that is still waiting to be delivered is
+ * replaced by the next one.
+ */
+class PointEventMailbox implements WorkItem {
+    private static final Log LOG = LogFactory.getLog(PointEventMailbox.class);
+
+    private static final String descriptionPrefix = "Point event for: ";
+    private static final String prefix = "EN-";
+    private static final int BATCH_SIZE = Math.max(1, Common.envProps.getInt("runtime.pointEvents.batchSize", 1000));
+
+    private final String description;
+    private final String taskId;
+
+    //Guards pending and scheduled
+    private final Object lock = new Object();
+    private ArrayDeque<PointEvent> pending = new ArrayDeque<>();
+    //True while a work item is waiting to drain or draining the queue
+    private boolean scheduled;
+
+    PointEventMailbox(String xid) {
+        this.description = descriptionPrefix + xid;
+        this.taskId = prefix + xid;
+    }
+
+    void post(DataPointListener listener, PointValueTime oldValue, PointValueTime newValue, Map<String, Object> attributes,
+            boolean set, boolean backdate, boolean logged, boolean updated, boolean attributesChanged) {
+        if ((listener.getEventInterests() & events(backdate, logged, updated, attributesChanged)) == 0)
+            return;
+
+        synchronized (lock) {
+            PointEvent last = pending.peekLast();
+            if (last != null && last.listener == listener && last.isUpdate() && updated && !backdate && !attributesChanged
+                    && listener.isLatestValueOnly()) {
+                //Keep the value the point changed from and replace the rest
+                last.newValue = newValue;
+                last.set |= set;
+                last.logged = logged;
+            } else {
+                pending.add(new PointEvent(listener, oldValue, newValue, attributes, set, backdate, logged, updated, attributesChanged));
+            }
+            if (scheduled)
+                return;
+            scheduled = true;
+        }
+        schedule();
+    }
+
+    /**
+     * Queue the work item, if it is not queued the waiting notifications are delivered after the next update
+     */
+    private void schedule() {
+        boolean queued = false;
+        try {
+            //Rejection is reported to rejected() unless an exception is thrown
+            Common.backgroundProcessing.addWorkItem(this);
+            queued = true;
+        } catch (RuntimeException e) {
+            LOG.error("Failed to queue " + description, e);
+        } finally {
+            if (!queued) {
+                synchronized (lock) {
+                    scheduled = false;
+                }
+            }
+        }
+    }
+
+    private static int events(boolean backdate, boolean logged, boolean updated, boolean attributesChanged) {
+        if (attributesChanged)
+            return DataPointListener.ATTRIBUTE_CHANGED;
+        int events = 0;
+        if (backdate)
+            events |= DataPointListener.POINT_BACKDATED;
+        else if (updated)
+            events |= DataPointListener.POINT_UPDATED | DataPointListener.POINT_CHANGED | DataPointListener.POINT_SET;
+        if (logged)
+            events |= DataPointListener.POINT_LOGGED;
+        return events;
+    }
+
+    /**
+     * @return number of notifications waiting to be delivered
+     */
+    int size() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    @Override
+    public void execute() {
+        //Only cleared here if draining stopped unexpectedly, the work item may be queued again as soon as it is cleared
+        boolean finished = false;
+        try {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                PointEvent event;
+                synchronized (lock) {
+                    event = pending.poll();
+                    if (event == null) {
+                        scheduled = false;
+                        finished = true;
+                        return;
+                    }
+                }
+                event.deliver();
+            }
+            finished = true;
+        } finally {
+            if (!finished) {
+                synchronized (lock) {
+                    scheduled = false;
+                }
+            }
+        }
+        //Let other work run, this is queued behind anything already waiting
+        schedule();
+    }
+
+    @Override
+    public int getPriority() {
+        return WorkItem.PRIORITY_MEDIUM;
+    }
+
+    @Override
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public String getTaskId() {
+        return taskId;
+    }
+
+    @Override
+    public int getQueueSize() {
+        return Task.UNLIMITED_QUEUE_SIZE;
+    }
+
+    @Override
+    public void rejected(RejectedTaskReason reason) {
+        //Tracking/logging is handled by the WorkItemRunnable, the waiting notifications are delivered after the next update
+        synchronized (lock) {
+            scheduled = false;
+        }
+    }
+
+    private static class PointEvent {
+        private final DataPointListener listener;
+        private final PointValueTime oldValue;
+        private PointValueTime newValue;
+        private final Map<String, Object> attributes;
+        private boolean set;
+        private final boolean backdate;
+        private boolean logged;
+        private final boolean updated;
+        private final boolean attributesChanged;
+
+        PointEvent(DataPointListener listener, PointValueTime oldValue, PointValueTime newValue, Map<String, Object> attributes, boolean set,
+                boolean backdate, boolean logged, boolean updated, boolean attributesChanged) {
+            this.listener = listener;
+            this.oldValue = oldValue;
+            this.newValue = newValue;
+            this.attributes = attributes;
+            this.set = set;
+            this.backdate = backdate;
+            this.logged = logged;
+            this.updated = updated;
+            this.attributesChanged = attributesChanged;
+        }
+
+        boolean isUpdate() {
+            return updated && !backdate && !attributesChanged;
+        }
+
+        void deliver() {
+            int interests = listener.getEventInterests();
+            try {
+                if (attributesChanged) {
+                    listener.attributeChanged(attributes);
+                    return;
+                }
+
+                if (backdate) {
+                    if ((interests & DataPointListener.POINT_BACKDATED) != 0)
+                        listener.pointBackdated(newValue);
+                } else if (updated) {
+                    // Updated
+                    if ((interests & DataPointListener.POINT_UPDATED) != 0)
+                        listener.pointUpdated(newValue);
+
+                    // Fire if the point has changed.
+                    if ((interests & DataPointListener.POINT_CHANGED) != 0 && !PointValueTime.equalValues(oldValue, newValue))
+                        listener.pointChanged(oldValue, newValue);
+
+                    // Fire if the point was set.
+                    if (set && (interests & DataPointListener.POINT_SET) != 0)
+                        listener.pointSet(oldValue, newValue);
+                }
+
+                // Was this value actually logged
+                if (logged && (interests & DataPointListener.POINT_LOGGED) != 0)
+                    listener.pointLogged(newValue);
+            } catch(ExceptionListWrapper e) {
+                LOG.warn("Exceptions in event notify work item.");
+                for(Exception e2 : e.getExceptions())
+                    LOG.warn("Listener exception: " + e2.getMessage(), e2);
+            } catch(Exception e) {
+                LOG.warn("Listener exception: " + e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -5,7 +5,6 @@
 package com.serotonin.m2m2.rt.dataImage;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
 import com.serotonin.m2m2.Common;
@@ -24,7 +23,7 @@ import com.serotonin.m2m2.vo.DataPointVO;
 public class PointValueCache {
     private final DataPointVO vo;
     private final int defaultSize;
-    private int maxSize = 0;
+    private volatile int maxSize = 0;
 
     //This would not be the advised thing to do if we were to be deleting any data through here
     // as some properties of the delete are system settings that can be changed
@@ -32,27 +31,26 @@ public class PointValueCache {
     protected static final PointValueDao dao = Common.databaseProxy.newPointValueDao();
 
     /**
-     * IMPORTANT: The list object should never be written to! The implementation here is for performance. Never call
-     * methods like add() or remove() on the cache object. Further, since the cache object can be replaced from time to
-     * time, always use a local copy of the variable for read purposes.
+     * Newest first snapshot of the cached values, replaced on every change. Readers never need to copy it,
+     * changes are made while holding the lock on this cache.
      */
-    private List<PointValueTime> cache;
+    private volatile PointValueRingBuffer cache;
 
     public PointValueCache(DataPointVO vo, int defaultSize, List<PointValueTime> cache) {
         this.vo = vo;
         this.defaultSize = defaultSize;
 
         if (cache == null) {
-            this.cache = new ArrayList<>();
+            this.cache = PointValueRingBuffer.EMPTY;
             if (defaultSize > 0) {
                 refreshCache(defaultSize);
             }
         } else {
             if (cache.size() > defaultSize) {
                 // dont keep excess point values hanging around
-                this.cache = new ArrayList<>(cache.subList(0, defaultSize));
+                this.cache = PointValueRingBuffer.of(cache.subList(0, defaultSize), defaultSize);
             } else {
-                this.cache = cache;
+                this.cache = PointValueRingBuffer.of(cache, defaultSize);
             }
             this.maxSize = defaultSize;
         }
@@ -74,26 +72,10 @@ public class PointValueCache {
                 pvt = savePointValueSync(pvt, source);
         }
 
-        List<PointValueTime> c = cache;
-        List<PointValueTime> newCache = new ArrayList<PointValueTime>(c.size() + 1);
-        newCache.addAll(c);
-
-        // Insert the value in the cache.
-        int pos = 0;
-        if (newCache.size() == 0)
-            newCache.add(pvt);
-        else {
-            while (pos < newCache.size() && newCache.get(pos).getTime() > pvt.getTime())
-                pos++;
-            if (pos < maxSize)
-                newCache.add(pos, pvt);
+        // Insert the value in the cache, in order values are appended in place
+        synchronized (this) {
+            cache = cache.add(pvt, maxSize);
         }
-
-        // Check if we need to clean up the list
-        while (newCache.size() > maxSize)
-            newCache.remove(newCache.size() - 1);
-
-        cache = newCache;
     }
 
     /**
@@ -132,7 +114,7 @@ public class PointValueCache {
      * Refresh the cache, keeping existing cached values if they are not already logged.
      * @param size
      */
-    private void refreshCache(int size) {
+    private synchronized void refreshCache(int size) {
         if (size > maxSize) {
             maxSize = size;
             if (size == 1) {
@@ -141,7 +123,7 @@ public class PointValueCache {
                 if (pvt != null) {
                     List<PointValueTime> c = new ArrayList<PointValueTime>();
                     c.add(pvt);
-                    cache = c;
+                    cache = PointValueRingBuffer.of(c, size);
                 }
             }
             else {
@@ -166,37 +148,30 @@ public class PointValueCache {
                             nc.add(value);
                     }
                 });
-                cache = nc;
+                cache = PointValueRingBuffer.of(nc, size);
             }
         }
     }
 
     /**
-     * Never manipulate the contents of this list!
+     * Never manipulate the contents of this list! It is an immutable snapshot, newest value first.
      */
     public List<PointValueTime> getCacheContents() {
         return cache;
     }
 
-    public void reset() {
+    public synchronized void reset() {
         List<PointValueTime> nc = dao.getLatestPointValues(vo, defaultSize);
         maxSize = defaultSize;
-        cache = nc;
+        cache = PointValueRingBuffer.of(nc, defaultSize);
     }
 
-    public void reset(long before) {
-        List<PointValueTime> nc = new ArrayList<PointValueTime>(cache.size());
-        nc.addAll(cache);
-        Iterator<PointValueTime> iter = nc.iterator();
-        while(iter.hasNext())
-            if(iter.next().getTime() < before)
-                iter.remove();
+    public synchronized void reset(long before) {
+        cache = cache.removeBefore(before);
 
-        if(nc.size() < defaultSize) {
+        if(cache.size() < defaultSize) {
             maxSize = 0;
-            cache = nc;
             refreshCache(defaultSize);
-        } else
-            cache = nc;
+        }
     }
 }
@@ -0,0 +1,356 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.rt.dataImage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+import com.serotonin.ShouldNeverHappenException;
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.rt.dataImage.types.BinaryValue;
+import com.serotonin.m2m2.rt.dataImage.types.DataValue;
+import com.serotonin.m2m2.rt.dataImage.types.MultistateValue;
+import com.serotonin.m2m2.rt.dataImage.types.NumericValue;
+
+/**
+ * In memory history of a data point's values for a fixed duration, kept in primitive arrays ordered
+ * by time. Once loaded it contains every value from the start of its coverage onwards so range
+ * queries that start within the coverage can be answered without the database. Only values that
+ * are logged are added, so that the history answers as the database would.
+ *
+ * Only numeric, binary and multistate points are supported.
+ */
+public class PointValueHistory {
+
+    private static final int INITIAL_CAPACITY = 64;
+    //Approximate size of the object and its array headers
+    private static final long OVERHEAD = 96;
+
+    private final int dataTypeId;
+    private final long duration;
+    private final LongConsumer memoryListener;
+
+    private long[] times = new long[0];
+    private double[] values = new double[0];
+    //Only allocated once an annotated value is added
+    private TranslatableMessage[] annotations;
+    private int start;
+    private int end;
+    //Every value at or after this time is in the history
+    private long coveredFrom = Long.MAX_VALUE;
+    //Values up to this time were loaded, a value added while loading may already be among them
+    private long loadedTo = Long.MIN_VALUE;
+    //Values added while loading, null when not loading
+    private List<PointValueTime> pending;
+    private long memory;
+
+    /**
+     * @param dataTypeId
+     * @param duration how long to keep values for in ms, relative to the newest value
+     * @param memoryListener notified with the change in bytes whenever the arrays are resized
+     */
+    public PointValueHistory(int dataTypeId, long duration, LongConsumer memoryListener) {
+        if (!isSupported(dataTypeId))
+            throw new ShouldNeverHappenException("Unsupported data type for point value history: " + DataTypes.CODES.getCode(dataTypeId));
+        this.dataTypeId = dataTypeId;
+        this.duration = duration;
+        this.memoryListener = memoryListener;
+    }
+
+    public static boolean isSupported(int dataTypeId) {
+        return dataTypeId == DataTypes.NUMERIC || dataTypeId == DataTypes.BINARY || dataTypeId == DataTypes.MULTISTATE;
+    }
+
+    /**
+     * Empty the history and hold the values added from now on until it is loaded, so that values
+     * logged while the database is read are not lost
+     */
+    public synchronized void startLoad() {
+        clear();
+        pending = new ArrayList<>();
+    }
+
+    /**
+     * Replace the contents with values from the database, then add the values held since
+     * {@link #startLoad()} that are not among them
+     * @param values ordered by time, oldest first
+     * @param from the time the values were queried from
+     */
+    public synchronized void load(List<PointValueTime> values, long from) {
+        start = end = 0;
+        annotations = null;
+        ensureCapacity(values.size());
+        for (PointValueTime pvt : values)
+            set(end++, pvt);
+        coveredFrom = from;
+        loadedTo = end > 0 ? times[end - 1] : Long.MIN_VALUE;
+        List<PointValueTime> added = pending;
+        pending = null;
+        if (added != null) {
+            for (PointValueTime pvt : added)
+                add(pvt);
+        }
+        trim();
+        updateMemory();
+    }
+
+    /**
+     * Add a value, backdated values are inserted in order after any values with the same time.
+     * Values older than the coverage are ignored as the database is consulted for those times.
+     * @param pvt
+     */
+    public synchronized void add(PointValueTime pvt) {
+        if (pending != null) {
+            pending.add(pvt);
+            return;
+        }
+        long time = pvt.getTime();
+        if (time < coveredFrom || (time <= loadedTo && contains(pvt)))
+            return;
+
+        int position = end;
+        if (end > start && time < times[end - 1])
+            position = upperBound(time);
+
+        if (end == times.length) {
+            int size = end - start;
+            position -= start;
+            if (size * 2 < times.length) {
+                //Plenty of room, move the values to the front
+                move(start, 0, size);
+                clear(size, end);
+            } else {
+                resize(Math.max(INITIAL_CAPACITY, times.length * 2), size);
+            }
+            start = 0;
+            end = size;
+        }
+
+        if (position < end)
+            move(position, position + 1, end - position);
+        end++;
+        set(position, pvt);
+        trim();
+    }
+
+    /**
+     * @param since
+     * @return values at or after since or null if the history does not cover that time
+     */
+    public synchronized List<PointValueTime> getPointValues(long since) {
+        if (since < coveredFrom)
+            return null;
+        return copy(lowerBound(since), end);
+    }
+
+    /**
+     * @param from inclusive
+     * @param to exclusive
+     * @return values in the range or null if the history does not cover from
+     */
+    public synchronized List<PointValueTime> getPointValuesBetween(long from, long to) {
+        if (from < coveredFrom)
+            return null;
+        return copy(lowerBound(from), Math.max(lowerBound(from), lowerBound(to)));
+    }
+
+    /**
+     * Values before the time were purged from the database
+     * @param before
+     */
+    public synchronized void removeBefore(long before) {
+        int index = lowerBound(before);
+        clear(start, index);
+        start = index;
+    }
+
+    /**
+     * Release the memory held by the history, it no longer covers any time
+     */
+    public synchronized void clear() {
+        times = new long[0];
+        values = new double[0];
+        annotations = null;
+        start = end = 0;
+        coveredFrom = Long.MAX_VALUE;
+        loadedTo = Long.MIN_VALUE;
+        pending = null;
+        updateMemory();
+    }
+
+    public synchronized int size() {
+        return end - start;
+    }
+
+    /**
+     * @return the earliest time from which all values are in the history
+     */
+    public synchronized long getCoveredFrom() {
+        return coveredFrom;
+    }
+
+    /**
+     * @return approximate size of the history in bytes
+     */
+    public synchronized long getMemoryUsage() {
+        return memory;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * Drop the values that are older than the duration relative to the newest value
+     */
+    private void trim() {
+        if (end == start)
+            return;
+        long cutoff = times[end - 1] - duration;
+        if (cutoff > coveredFrom)
+            coveredFrom = cutoff;
+        int index = lowerBound(cutoff);
+        clear(start, index);
+        start = index;
+
+        //Shrink once the history is mostly empty
+        int size = end - start;
+        if (times.length > INITIAL_CAPACITY && size * 4 < times.length)
+            resize(Math.max(INITIAL_CAPACITY, size * 2), size);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (times.length < capacity)
+            resize(Math.max(INITIAL_CAPACITY, capacity), 0);
+    }
+
+    /**
+     * Copy the values into new arrays starting at index 0, start and end must be adjusted by the caller
+     */
+    private void resize(int capacity, int size) {
+        long[] t = new long[capacity];
+        double[] v = new double[capacity];
+        System.arraycopy(times, start, t, 0, size);
+        System.arraycopy(values, start, v, 0, size);
+        if (annotations != null) {
+            TranslatableMessage[] a = new TranslatableMessage[capacity];
+            System.arraycopy(annotations, start, a, 0, size);
+            annotations = a;
+        }
+        times = t;
+        values = v;
+        start = 0;
+        end = size;
+        updateMemory();
+    }
+
+    private void updateMemory() {
+        long current = times.length == 0 ? 0 : OVERHEAD + times.length * 16L
+                + (annotations == null ? 0 : annotations.length * 8L);
+        long delta = current - memory;
+        memory = current;
+        if (delta != 0 && memoryListener != null)
+            memoryListener.accept(delta);
+    }
+
+    private void move(int from, int to, int length) {
+        System.arraycopy(times, from, times, to, length);
+        System.arraycopy(values, from, values, to, length);
+        if (annotations != null)
+            System.arraycopy(annotations, from, annotations, to, length);
+    }
+
+    /**
+     * Release references to annotations no longer in the window
+     */
+    private void clear(int from, int to) {
+        if (annotations != null && from < to)
+            Arrays.fill(annotations, from, to, null);
+    }
+
+    private void set(int index, PointValueTime pvt) {
+        times[index] = pvt.getTime();
+        values[index] = pvt.getValue().getDoubleValue();
+        TranslatableMessage annotation = null;
+        if (pvt instanceof AnnotatedPointValueTime)
+            annotation = ((AnnotatedPointValueTime) pvt).getSourceMessage();
+        if (annotation != null && annotations == null) {
+            annotations = new TranslatableMessage[times.length];
+            updateMemory();
+        }
+        if (annotations != null)
+            annotations[index] = annotation;
+    }
+
+    private List<PointValueTime> copy(int from, int to) {
+        List<PointValueTime> result = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            DataValue value = toDataValue(values[i]);
+            TranslatableMessage annotation = annotations == null ? null : annotations[i];
+            if (annotation == null)
+                result.add(new PointValueTime(value, times[i]));
+            else
+                result.add(new AnnotatedPointValueTime(value, times[i], annotation));
+        }
+        return result;
+    }
+
+    private DataValue toDataValue(double value) {
+        switch (dataTypeId) {
+            case DataTypes.BINARY:
+                return value != 0 ? BinaryValue.ONE : BinaryValue.ZERO;
+            case DataTypes.MULTISTATE:
+                return new MultistateValue((int) value);
+            default:
+                return new NumericValue(value);
+        }
+    }
+
+    /**
+     * @return true if a value with the same time and value is in the history
+     */
+    private boolean contains(PointValueTime pvt) {
+        double value = pvt.getValue().getDoubleValue();
+        for (int i = lowerBound(pvt.getTime()); i < end && times[i] == pvt.getTime(); i++) {
+            if (values[i] == value)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return index of the first value at or after time
+     */
+    private int lowerBound(long time) {
+        int low = start;
+        int high = end;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] < time)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * @return index of the first value after time
+     */
+    private int upperBound(long time) {
+        int low = start;
+        int high = end;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] <= time)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+}
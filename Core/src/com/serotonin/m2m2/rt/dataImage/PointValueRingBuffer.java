@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.rt.dataImage;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Immutable, newest first view over a time ordered window of a backing array. New values are
+ * appended in place after the window, so adding an in order value costs O(1) and produces a new
+ * view without copying. Slots inside a window are never written again which makes every view a
+ * stable snapshot for readers.
+ *
+ * When the backing array is full the newest values are moved into a new array, backdated values
+ * are inserted into a new array at the position found by binary search.
+ *
+ * Only the most recent buffer may be added to, and only by one thread at a time.
+ */
+final class PointValueRingBuffer extends AbstractList<PointValueTime> implements RandomAccess {
+
+    static final PointValueRingBuffer EMPTY = new PointValueRingBuffer(new PointValueTime[0], 0, 0);
+
+    //Oldest value first
+    private final PointValueTime[] values;
+    //Index of the oldest value in the window
+    private final int start;
+    //Index after the newest value in the window
+    private final int end;
+
+    private PointValueRingBuffer(PointValueTime[] values, int start, int end) {
+        this.values = values;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Create a buffer from a list of values
+     * @param newestFirst values ordered by time, newest first
+     * @param maxSize expected maximum size of the buffer
+     * @return
+     */
+    static PointValueRingBuffer of(List<PointValueTime> newestFirst, int maxSize) {
+        int size = newestFirst.size();
+        if (size == 0)
+            return EMPTY;
+        PointValueTime[] values = new PointValueTime[capacityFor(Math.max(size, maxSize))];
+        for (int i = 0; i < size; i++)
+            values[i] = newestFirst.get(size - 1 - i);
+        return new PointValueRingBuffer(values, 0, size);
+    }
+
+    private static int capacityFor(int maxSize) {
+        return maxSize * 2 + 16;
+    }
+
+    @Override
+    public PointValueTime get(int index) {
+        if (index < 0 || index >= end - start)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (end - start));
+        return values[end - 1 - index];
+    }
+
+    @Override
+    public int size() {
+        return end - start;
+    }
+
+    /**
+     * Add a value keeping at most maxSize values, values with the same time as an existing value are
+     * considered newer. A backdated value older than all the values that would be kept is ignored.
+     *
+     * @param pvt
+     * @param maxSize
+     * @return the buffer containing the value
+     */
+    PointValueRingBuffer add(PointValueTime pvt, int maxSize) {
+        if (maxSize <= 0)
+            return EMPTY;
+
+        int size = end - start;
+        long time = pvt.getTime();
+        //Existing values to keep
+        int keep = Math.min(size, maxSize - 1);
+
+        if (size == 0 || time >= values[end - 1].getTime()) {
+            if (end < values.length) {
+                values[end] = pvt;
+                return new PointValueRingBuffer(values, end - keep, end + 1);
+            }
+            PointValueTime[] next = new PointValueTime[capacityFor(maxSize)];
+            System.arraycopy(values, end - keep, next, 0, keep);
+            next[keep] = pvt;
+            return new PointValueRingBuffer(next, 0, keep + 1);
+        }
+
+        int position = upperBound(time);
+        int newer = end - position;
+        if (newer >= maxSize)
+            return this;
+
+        int from = end - keep;
+        int older = position - from;
+        PointValueTime[] next = new PointValueTime[capacityFor(maxSize)];
+        System.arraycopy(values, from, next, 0, older);
+        next[older] = pvt;
+        System.arraycopy(values, position, next, older + 1, newer);
+        return new PointValueRingBuffer(next, 0, keep + 1);
+    }
+
+    /**
+     * @param time
+     * @return buffer without the values older than time
+     */
+    PointValueRingBuffer removeBefore(long time) {
+        int low = start;
+        int high = end;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid].getTime() < time)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        if (low == start)
+            return this;
+        return new PointValueRingBuffer(values, low, end);
+    }
+
+    /**
+     * @return index of the first value newer than time
+     */
+    private int upperBound(long time) {
+        int low = start;
+        int high = end;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid].getTime() <= time)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+}
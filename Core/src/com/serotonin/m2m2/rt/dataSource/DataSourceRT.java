@@ -13,6 +13,7 @@ import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import com.infiniteautomation.mango.io.serial.SerialPortException;
+import com.infiniteautomation.mango.monitor.ValueMonitor;
 import com.infiniteautomation.mango.spring.events.DaoEvent;
 import com.infiniteautomation.mango.spring.events.DaoEventType;
 import com.serotonin.ShouldNeverHappenException;
@@ -76,6 +77,11 @@ abstract public class DataSourceRT<VO extends DataSourceVO> implements ILifecycl
 
     protected final VO vo;
 
+    /* Memory used by the in memory value history of this data source's points */
+    private final Object pointValueHistoryLock = new Object();
+    private long pointValueHistoryMemory;
+    private ValueMonitor<Long> pointValueHistoryMonitor;
+
     public DataSourceRT(VO vo) {
         this.vo = vo;
         this.eventTypes = new ArrayList<DataSourceEventType>();
@@ -144,6 +150,35 @@ abstract public class DataSourceRT<VO extends DataSourceVO> implements ILifecycl
         }
     }
 
+    /**
+     * Track the memory used by the in memory value history of a point on this data source, the
+     *  monitor is only created once a point keeps history.
+     *
+     * @param delta change in bytes
+     */
+    public void updatePointValueHistoryMemory(long delta) {
+        synchronized (pointValueHistoryLock) {
+            pointValueHistoryMemory += delta;
+            if (pointValueHistoryMonitor != null) {
+                pointValueHistoryMonitor.setValue(pointValueHistoryMemory);
+            } else if (!terminated) {
+                pointValueHistoryMonitor = Common.MONITORED_VALUES.<Long>create("com.serotonin.m2m2.rt.dataSource.DataSourceRT_" + vo.getXid() + "_HISTORY_MEMORY")
+                        .name(new TranslatableMessage("internal.monitor.dataSource.HISTORY_MEMORY", vo.getName()))
+                        .value(pointValueHistoryMemory)
+                        .build();
+            }
+        }
+    }
+
+    /**
+     * @return approximate bytes used by the in memory value history of this data source's points
+     */
+    public long getPointValueHistoryMemory() {
+        synchronized (pointValueHistoryLock) {
+            return pointValueHistoryMemory;
+        }
+    }
+
     public void setPointValue(DataPointRT dataPoint, PointValueTime valueTime, SetPointSource source) {
         if(dataPoint.getVO().isPreventSetExtremeValues()) {
             double transformedValue = valueTime.getDoubleValue();
@@ -272,6 +307,13 @@ abstract public class DataSourceRT<VO extends DataSourceVO> implements ILifecycl
 
         // Remove any outstanding events.
         Common.eventManager.cancelEventsForDataSource(vo.getId());
+
+        synchronized (pointValueHistoryLock) {
+            if (pointValueHistoryMonitor != null) {
+                Common.MONITORED_VALUES.remove(pointValueHistoryMonitor.getId());
+                pointValueHistoryMonitor = null;
+            }
+        }
     }
 
     @Override
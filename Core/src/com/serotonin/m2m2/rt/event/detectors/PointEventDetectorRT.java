@@ -12,6 +12,7 @@ import org.apache.commons.lang3.StringUtils;
 import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.db.dao.DataPointTagsDao;
 import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.rt.dataImage.DataPointEventMulticaster;
 import com.serotonin.m2m2.rt.dataImage.DataPointListener;
 import com.serotonin.m2m2.rt.dataImage.PointValueTime;
 import com.serotonin.m2m2.rt.event.type.DataPointEventType;
@@ -25,6 +26,15 @@ abstract public class PointEventDetectorRT<T extends AbstractPointEventDetectorV
     public static final String EVENT_DETECTOR_CONTEXT_KEY = "pointEventDetector";
     public static final String DATA_POINT_CONTEXT_KEY = "point";
 
+    //Detectors only handle the callbacks they override
+    private static final ClassValue<Integer> EVENT_INTERESTS = new ClassValue<Integer>() {
+        @SuppressWarnings("unchecked")
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            return DataPointEventMulticaster.getOverriddenEvents((Class<? extends DataPointListener>) type, PointEventDetectorRT.class);
+        }
+    };
+
     public PointEventDetectorRT(T vo) {
         super(vo);
     }
@@ -78,6 +88,11 @@ abstract public class PointEventDetectorRT<T extends AbstractPointEventDetectorV
         return vo.getXid();
     }
 
+    @Override
+    public int getEventInterests() {
+        return EVENT_INTERESTS.get(getClass());
+    }
+
     //
     //
     // Lifecycle interface
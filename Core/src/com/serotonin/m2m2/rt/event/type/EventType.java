@@ -5,6 +5,7 @@
 package com.serotonin.m2m2.rt.event.type;
 
 import java.io.IOException;
+import java.util.Objects;
 
 import org.apache.commons.lang3.StringUtils;
 
@@ -262,6 +263,20 @@ abstract public class EventType implements JsonSerializable {
         return pb;
     }
 
+    /**
+     * Consistent with {@link #equals(Object)} so that types which do not override both can be used as map keys
+     */
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + getReferenceId1();
+        result = prime * result + getReferenceId2();
+        result = prime * result + Objects.hashCode(getEventType());
+        result = prime * result + Objects.hashCode(getEventSubtype());
+        return result;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj) {
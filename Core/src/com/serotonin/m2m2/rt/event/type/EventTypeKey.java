@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.rt.event.type;
+
+import java.util.Objects;
+
+/**
+ * Identifies an event type by its type name, subtype and reference ids, the same way event
+ * handler mappings are stored. Used as a key for in memory caches of event type lookups.
+ */
+public final class EventTypeKey {
+
+    private final String type;
+    private final String subtype;
+    private final int referenceId1;
+    private final int referenceId2;
+
+    public EventTypeKey(EventType eventType) {
+        this.type = eventType.getEventType();
+        this.subtype = eventType.getEventSubtype();
+        this.referenceId1 = eventType.getReferenceId1();
+        this.referenceId2 = eventType.getReferenceId2();
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getSubtype() {
+        return subtype;
+    }
+
+    public int getReferenceId1() {
+        return referenceId1;
+    }
+
+    public int getReferenceId2() {
+        return referenceId2;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = type.hashCode();
+        result = 31 * result + Objects.hashCode(subtype);
+        result = 31 * result + referenceId1;
+        result = 31 * result + referenceId2;
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof EventTypeKey))
+            return false;
+        EventTypeKey other = (EventTypeKey) obj;
+        return referenceId1 == other.referenceId1 && referenceId2 == other.referenceId2
+                && type.equals(other.type) && Objects.equals(subtype, other.subtype);
+    }
+
+    @Override
+    public String toString() {
+        return type + "/" + subtype + "/" + referenceId1 + "/" + referenceId2;
+    }
+}
@@ -81,18 +81,24 @@ public class BackgroundProcessingImpl implements BackgroundProcessing {
 
     @Override
     public void addWorkItem(final WorkItem item) {
+        RejectableWorkItemRunnable runnable = null;
         try{
             if (item.getPriority() == WorkItem.PRIORITY_HIGH){
-                timer.execute(new RejectableWorkItemRunnable(item, this.highPriorityRejectionHandler));
+                runnable = new RejectableWorkItemRunnable(item, this.highPriorityRejectionHandler);
+                timer.execute(runnable);
             }
             else if (item.getPriority() == WorkItem.PRIORITY_MEDIUM){
-                mediumPriorityService.execute(new TaskWrapper(new RejectableWorkItemRunnable(item, this.mediumPriorityRejectionHandler), this.timer.currentTimeMillis()));
+                runnable = new RejectableWorkItemRunnable(item, this.mediumPriorityRejectionHandler);
+                mediumPriorityService.execute(new TaskWrapper(runnable, this.timer.currentTimeMillis()));
             }
             else{
                 lowPriorityService.execute(new WorkItemRunnable(item));
             }
         }catch(RejectedExecutionException e){
             log.fatal(new TranslatableMessage("event.system.rejectedWorkItemMessage", e.getMessage()).translate(Common.getTranslations()), e);
+            //Let the item know it will not run, as the rejection handlers would have
+            if (runnable != null)
+                runnable.rejected(new RejectedTaskReason(RejectedTaskReason.POOL_FULL, this.timer.currentTimeMillis(), runnable, null));
         }
     }
 
@@ -17,6 +17,7 @@ import org.joda.time.DateTime;
 import com.serotonin.ShouldNeverHappenException;
 import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.db.PointValuePartitions;
 import com.serotonin.m2m2.db.dao.DataPointDao;
 import com.serotonin.m2m2.db.dao.DataSourceDao;
 import com.serotonin.m2m2.db.dao.PointValueDao;
@@ -70,6 +71,15 @@ public class DataPurge {
         boolean purgePoints = SystemSettingsDao.instance.getBooleanValue(ENABLE_POINT_DATA_PURGE);
         boolean countPointValues = SystemSettingsDao.instance.getBooleanValue(SystemSettingsDao.POINT_DATA_PURGE_COUNT);
 
+        PointValuePartitions partitions = Common.databaseProxy.getPointValuePartitions();
+        if (partitions != null) {
+            try {
+                partitions.maintain(runtime);
+            } catch (Exception e) {
+                log.error("Failed to create point value partitions", e);
+            }
+        }
+
         if(purgePoints){
             // Get any filters for the data purge from the modules
             List<PurgeFilter> purgeFilters = new ArrayList<PurgeFilter>();
@@ -78,6 +88,8 @@ public class DataPurge {
 
             // Get the data point information.
             List<DataPointVO> dataPoints = dataPointDao.getAll();
+            if (partitions != null)
+                dropPartitions(partitions, dataPoints, purgeFilters);
             for (DataPointVO dataPoint : dataPoints)
                 purgePoint(dataPoint, countPointValues, purgeFilters);
 
@@ -121,32 +133,7 @@ public class DataPurge {
             }
         }
         else {
-            // Determine the purging properties to use.
-            int purgeType;
-            int purgePeriod;
-
-            if (dataPoint.isPurgeOverride()) {
-                purgeType = dataPoint.getPurgeType();
-                purgePeriod = dataPoint.getPurgePeriod();
-            }
-            else {
-                // Check the data source level.
-                DataSourceVO ds = DataSourceDao.getInstance().get(dataPoint.getDataSourceId());
-                if (ds.isPurgeOverride()) {
-                    purgeType = ds.getPurgeType();
-                    purgePeriod = ds.getPurgePeriod();
-                }
-                else {
-                    // Use the system settings.
-                    purgeType = SystemSettingsDao.instance.getIntValue(SystemSettingsDao.POINT_DATA_PURGE_PERIOD_TYPE);
-                    purgePeriod = SystemSettingsDao.instance.getIntValue(SystemSettingsDao.POINT_DATA_PURGE_PERIODS);
-                }
-            }
-
-            // No matter when this purge actually runs, we want it to act like it's midnight.
-            DateTime cutoff = new DateTime(runtime);
-            cutoff = DateUtils.truncateDateTime(cutoff, Common.TimePeriods.DAYS);
-            cutoff = DateUtils.minus(cutoff, purgeType, purgePeriod);
+            DateTime cutoff = getPurgeCutoff(dataPoint);
             if (Common.runtimeManager.getState() == RuntimeManager.RUNNING) {
                 long millis = cutoff.getMillis();
                 for(PurgeFilter pf : purgeFilters)
@@ -167,6 +154,70 @@ public class DataPurge {
         }
     }
 
+    /**
+     * Determine the time before which the values of a point are purged
+     * @param dataPoint
+     * @return
+     */
+    private DateTime getPurgeCutoff(DataPointVO dataPoint) {
+        // Determine the purging properties to use.
+        int purgeType;
+        int purgePeriod;
+
+        if (dataPoint.isPurgeOverride()) {
+            purgeType = dataPoint.getPurgeType();
+            purgePeriod = dataPoint.getPurgePeriod();
+        }
+        else {
+            // Check the data source level.
+            DataSourceVO ds = DataSourceDao.getInstance().get(dataPoint.getDataSourceId());
+            if (ds.isPurgeOverride()) {
+                purgeType = ds.getPurgeType();
+                purgePeriod = ds.getPurgePeriod();
+            }
+            else {
+                // Use the system settings.
+                purgeType = SystemSettingsDao.instance.getIntValue(SystemSettingsDao.POINT_DATA_PURGE_PERIOD_TYPE);
+                purgePeriod = SystemSettingsDao.instance.getIntValue(SystemSettingsDao.POINT_DATA_PURGE_PERIODS);
+            }
+        }
+
+        // No matter when this purge actually runs, we want it to act like it's midnight.
+        DateTime cutoff = new DateTime(runtime);
+        cutoff = DateUtils.truncateDateTime(cutoff, Common.TimePeriods.DAYS);
+        return DateUtils.minus(cutoff, purgeType, purgePeriod);
+    }
+
+    /**
+     * Drop the partitions of point values that every point would purge, the remaining values are
+     * deleted point by point
+     */
+    private void dropPartitions(PointValuePartitions partitions, List<DataPointVO> dataPoints, List<PurgeFilter> purgeFilters) {
+        if (Common.runtimeManager.getState() != RuntimeManager.RUNNING)
+            return;
+
+        long before = DateUtils.truncateDateTime(new DateTime(runtime), Common.TimePeriods.DAYS).getMillis();
+        for (DataPointVO dataPoint : dataPoints) {
+            // Points that don't log have all of their values purged
+            if (dataPoint.getLoggingType() == DataPointVO.LoggingTypes.NONE)
+                continue;
+            long millis = getPurgeCutoff(dataPoint).getMillis();
+            before = Math.min(before, millis);
+            for (PurgeFilter pf : purgeFilters)
+                before = Math.min(before, pf.adjustPurgeTime(dataPoint, millis));
+        }
+
+        try {
+            int dropped = partitions.dropBefore(before);
+            if (dropped > 0) {
+                anyDeletedSamples = true;
+                log.info("Dropped " + dropped + " point value partitions before " + new DateTime(before));
+            }
+        } catch (Exception e) {
+            log.error("Failed to drop point value partitions", e);
+        }
+    }
+
     private void filedataPurge() {
         // The file ids for points will have been filled in by the purge point method calls. Now get the ids from
         // elsewhere.
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.rt.publish;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.i18n.TranslatableMessage;
+import com.serotonin.m2m2.i18n.TranslatableMessageParseException;
+import com.serotonin.m2m2.rt.dataImage.AnnotatedPointValueTime;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
+import com.serotonin.m2m2.rt.dataImage.types.AlphanumericValue;
+import com.serotonin.m2m2.rt.dataImage.types.BinaryValue;
+import com.serotonin.m2m2.rt.dataImage.types.DataValue;
+import com.serotonin.m2m2.rt.dataImage.types.ImageValue;
+import com.serotonin.m2m2.rt.dataImage.types.MultistateValue;
+import com.serotonin.m2m2.rt.dataImage.types.NumericValue;
+import com.serotonin.util.queue.SequencedQueue;
+
+/**
+ * Binary form of a point value and its annotation for disk backed publish queues
+ */
+public class PointValueTimeSerializer implements SequencedQueue.Serializer<PointValueTime> {
+
+    @Override
+    public void write(PointValueTime pvt, DataOutput out) throws IOException {
+        DataValue value = pvt.getValue();
+        out.writeLong(pvt.getTime());
+        out.writeByte(value.getDataType());
+        switch (value.getDataType()) {
+            case DataTypes.BINARY:
+                out.writeBoolean(value.getBooleanValue());
+                break;
+            case DataTypes.MULTISTATE:
+                out.writeInt(value.getIntegerValue());
+                break;
+            case DataTypes.NUMERIC:
+                out.writeDouble(value.getDoubleValue());
+                break;
+            case DataTypes.ALPHANUMERIC:
+                writeString(value.getStringValue(), out);
+                break;
+            case DataTypes.IMAGE:
+                ImageValue image = (ImageValue) value;
+                out.writeLong(image.getId());
+                out.writeInt(image.getType());
+                byte[] data = image.getData();
+                out.writeInt(data == null ? -1 : data.length);
+                if (data != null)
+                    out.write(data);
+                break;
+            default:
+                throw new IOException("Unsupported data type " + value.getDataType());
+        }
+
+        if (pvt instanceof AnnotatedPointValueTime && ((AnnotatedPointValueTime) pvt).getSourceMessage() != null) {
+            out.writeBoolean(true);
+            writeString(((AnnotatedPointValueTime) pvt).getSourceMessage().serialize(), out);
+        } else
+            out.writeBoolean(false);
+    }
+
+    @Override
+    public PointValueTime read(DataInput in) throws IOException {
+        long time = in.readLong();
+        int dataType = in.readByte();
+        DataValue value;
+        switch (dataType) {
+            case DataTypes.BINARY:
+                value = new BinaryValue(in.readBoolean());
+                break;
+            case DataTypes.MULTISTATE:
+                value = new MultistateValue(in.readInt());
+                break;
+            case DataTypes.NUMERIC:
+                value = new NumericValue(in.readDouble());
+                break;
+            case DataTypes.ALPHANUMERIC:
+                value = new AlphanumericValue(readString(in));
+                break;
+            case DataTypes.IMAGE:
+                long id = in.readLong();
+                int type = in.readInt();
+                int length = in.readInt();
+                if (length < 0)
+                    value = new ImageValue(id, type);
+                else {
+                    byte[] data = new byte[length];
+                    in.readFully(data);
+                    ImageValue image = new ImageValue(data, type);
+                    image.setId(id);
+                    value = image;
+                }
+                break;
+            default:
+                throw new IOException("Unsupported data type " + dataType);
+        }
+
+        if (in.readBoolean()) {
+            try {
+                return new AnnotatedPointValueTime(value, time, TranslatableMessage.deserialize(readString(in)));
+            } catch (TranslatableMessageParseException e) {
+                throw new IOException(e);
+            }
+        }
+        return new PointValueTime(value, time);
+    }
+
+    private static void writeString(String s, DataOutput out) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0)
+            return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -4,27 +4,38 @@
  */
 package com.serotonin.m2m2.rt.publish;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.List;
-import java.util.NoSuchElementException;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.vo.publish.PublishedPointVO;
+import com.serotonin.util.queue.SequencedQueue;
 
 /**
- * 
+ * Values waiting to be published. Entries stay in the queue until they are removed, or acknowledged by
+ * their sequence number, after being sent. Send threads can either read from the start of the queue
+ * each time with {@link #get(int)} or keep a cursor and read on from the last entry they were given
+ * with {@link #read(long, int)}.
+ *
+ * The queue can be backed by segment files so that it is kept across restarts and only a limited
+ * number of entries are held in memory.
+ *
  * @author Matthew Lohbihler
  */
 public class PublishQueue<T extends PublishedPointVO, V> {
     private static final Log LOG = LogFactory.getLog(PublishQueue.class);
     private static final long SIZE_CHECK_DELAY = 5000;
 
-    protected final ConcurrentLinkedQueue<PublishQueueEntry<T, V>> queue = new ConcurrentLinkedQueue<PublishQueueEntry<T, V>>();
+    protected final SequencedQueue<PublishQueueEntry<T, V>> queue;
     private final PublisherRT<T> owner;
     private final int warningSize;
     private final int dewarningSize;
@@ -33,74 +44,158 @@ public class PublishQueue<T extends PublishedPointVO, V> {
     private long lastSizeCheck;
 
     public PublishQueue(PublisherRT<T> owner, int warningSize, int discardSize) {
+        this(owner, warningSize, discardSize, new SequencedQueue<>());
+    }
+
+    /**
+     * Queue backed by segment files, entries left in the directory by a previous run are recovered
+     *
+     * @param owner
+     * @param warningSize
+     * @param discardSize
+     * @param directory for the segment files
+     * @param valueSerializer
+     * @param memoryLimit maximum number of entries to hold in memory
+     * @param segmentSize size in bytes of each segment file
+     * @throws IOException if the queue could not be recovered
+     */
+    public PublishQueue(PublisherRT<T> owner, int warningSize, int discardSize, Path directory,
+            SequencedQueue.Serializer<V> valueSerializer, int memoryLimit, long segmentSize) throws IOException {
+        this(owner, warningSize, discardSize,
+                new SequencedQueue<>(directory, new EntrySerializer<>(owner.getVo().getPoints(), valueSerializer), memoryLimit, segmentSize));
+        long recovered = queue.open();
+        if (recovered > 0)
+            LOG.info("Publisher queue " + owner.getVo().getName() + " recovered " + recovered + " entries");
+    }
+
+    private PublishQueue(PublisherRT<T> owner, int warningSize, int discardSize, SequencedQueue<PublishQueueEntry<T, V>> queue) {
         this.owner = owner;
         this.warningSize = warningSize;
         this.dewarningSize = (int) (warningSize * 0.9); // Deactivate the size warning at 90% of the warning size.
         this.discardSize = discardSize;
+        this.queue = queue;
     }
 
     public void add(T vo, V pvt) {
-        queue.add(new PublishQueueEntry<T, V>(vo, pvt));
+        append(new PublishQueueEntry<T, V>(vo, pvt));
         sizeCheck();
     }
 
     public void add(T vo, List<V> pvts) {
         for (V pvt : pvts)
-            queue.add(new PublishQueueEntry<T, V>(vo, pvt));
+            append(new PublishQueueEntry<T, V>(vo, pvt));
         sizeCheck();
     }
 
+    private void append(PublishQueueEntry<T, V> entry) {
+        try {
+            queue.append(entry);
+        } catch (IOException e) {
+            LOG.error("Publisher queue " + owner.getVo().getName() + " failed to save an entry, it will not be published", e);
+        }
+    }
+
     public PublishQueueEntry<T,V> next() {
-        return queue.peek();
+        List<PublishQueueEntry<T,V>> result = read(0, 1);
+        return result.isEmpty() ? null : result.get(0);
     }
 
+    /**
+     * @param max
+     * @return the oldest entries or null if the queue is empty
+     */
     public List<PublishQueueEntry<T,V>> get(int max) {
-        if (queue.isEmpty())
-            return null;
-
-        Iterator<PublishQueueEntry<T,V>> iter = queue.iterator();
-        List<PublishQueueEntry<T,V>> result = new ArrayList<PublishQueueEntry<T,V>>(max);
-        while (iter.hasNext() && result.size() < max)
-            result.add(iter.next());
+        List<PublishQueueEntry<T,V>> result = read(0, max);
+        return result.isEmpty() ? null : result;
+    }
 
+    /**
+     * Read the entries after those already read, entries are returned until they are removed
+     *
+     * @param fromSequence sequence number of the last entry read plus one
+     * @param max
+     * @return entries in order, empty if there are none
+     */
+    public List<PublishQueueEntry<T,V>> read(long fromSequence, int max) {
+        List<PublishQueueEntry<T,V>> result = new ArrayList<PublishQueueEntry<T,V>>(Math.min(max, 1024));
+        try {
+            queue.read(fromSequence, max, (sequence, entry) -> {
+                entry.setSequence(sequence);
+                result.add(entry);
+            });
+        } catch (IOException e) {
+            LOG.error("Publisher queue " + owner.getVo().getName() + " failed to read entries", e);
+        }
         return result;
     }
 
     public void remove(PublishQueueEntry<T,V> e) {
-        queue.remove(e);
+        acknowledge(e.getSequence());
+    }
+
+    /**
+     * Remove an entry by its sequence number
+     * @param sequence
+     */
+    public void acknowledge(long sequence) {
+        try {
+            queue.acknowledge(sequence);
+        } catch (IOException e) {
+            LOG.warn("Publisher queue " + owner.getVo().getName() + " failed to save its position", e);
+        }
         sizeCheck();
     }
 
     public void removeAll(List<PublishQueueEntry<T,V>> list) {
-        queue.removeAll(list);
+        long[] sequences = new long[list.size()];
+        for (int i = 0; i < sequences.length; i++)
+            sequences[i] = list.get(i).getSequence();
+        try {
+            queue.acknowledgeAll(sequences);
+        } catch (IOException e) {
+            LOG.warn("Publisher queue " + owner.getVo().getName() + " failed to save its position", e);
+        }
         sizeCheck();
     }
-    
+
     public void removeAll() {
-    	queue.clear();
+        try {
+            queue.clear();
+        } catch (IOException e) {
+            LOG.warn("Publisher queue " + owner.getVo().getName() + " failed to save its position", e);
+        }
     }
 
     public int getSize() {
-        return queue.size();
+        return (int) Math.min(Integer.MAX_VALUE, queue.size());
+    }
+
+    /**
+     * Close the segment files, the remaining entries are published after a restart
+     */
+    public void close() {
+        try {
+            queue.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close publisher queue " + owner.getVo().getName(), e);
+        }
     }
 
     private void sizeCheck() {
         long now = Common.timer.currentTimeMillis();
         if (lastSizeCheck + SIZE_CHECK_DELAY < now) {
             lastSizeCheck = now;
-            int size = queue.size();
+            long size = queue.size();
 
             synchronized (owner) {
                 if (size > discardSize) {
-                	try {
-                		for (int i = discardSize; i < size; i++)
-                			queue.remove();
-                	} catch(NoSuchElementException e) {
-                		//Queue is emptied, nothing to do
-                	}
-                	
-                    LOG.warn("Publisher queue " + owner.getVo().getName() + " discarded " + (size - discardSize)
-                            + " entries");
+                    try {
+                        long discarded = queue.discard(size - discardSize);
+                        LOG.warn("Publisher queue " + owner.getVo().getName() + " discarded " + discarded
+                                + " entries");
+                    } catch (IOException e) {
+                        LOG.warn("Publisher queue " + owner.getVo().getName() + " failed to save its position", e);
+                    }
                 }
 
                 if (warningActive) {
@@ -118,4 +213,34 @@ public class PublishQueue<T extends PublishedPointVO, V> {
             }
         }
     }
+
+    /**
+     * Saves the data point id of the published point, entries for points that are no longer
+     * published are dropped when they are read back
+     */
+    private static class EntrySerializer<T extends PublishedPointVO, V> implements SequencedQueue.Serializer<PublishQueueEntry<T, V>> {
+        private final Map<Integer, T> points = new HashMap<>();
+        private final SequencedQueue.Serializer<V> valueSerializer;
+
+        EntrySerializer(List<T> points, SequencedQueue.Serializer<V> valueSerializer) {
+            for (T point : points)
+                this.points.put(point.getDataPointId(), point);
+            this.valueSerializer = valueSerializer;
+        }
+
+        @Override
+        public void write(PublishQueueEntry<T, V> entry, DataOutput out) throws IOException {
+            out.writeInt(entry.getVo().getDataPointId());
+            valueSerializer.write(entry.getValue(), out);
+        }
+
+        @Override
+        public PublishQueueEntry<T, V> read(DataInput in) throws IOException {
+            T vo = points.get(in.readInt());
+            V value = valueSerializer.read(in);
+            if (vo == null || value == null)
+                return null;
+            return new PublishQueueEntry<T, V>(vo, value);
+        }
+    }
 }
@@ -12,6 +12,7 @@ import com.serotonin.m2m2.vo.publish.PublishedPointVO;
 public class PublishQueueEntry<T extends PublishedPointVO, V> {
     private final T vo;
     private final V value;
+    private long sequence = -1;
 
     public PublishQueueEntry(T vo, V pvt) {
         this.vo = vo;
@@ -25,4 +26,15 @@ public class PublishQueueEntry<T extends PublishedPointVO, V> {
     public V getValue() {
         return value;
     }
+
+    /**
+     * @return position of the entry in its queue, used to acknowledge it and to read on from it
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
 }
@@ -8,6 +8,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import com.serotonin.m2m2.Common;
+import com.serotonin.m2m2.rt.dataImage.DataPointEventMulticaster;
 import com.serotonin.m2m2.rt.dataImage.DataPointListener;
 import com.serotonin.m2m2.rt.dataImage.DataPointRT;
 import com.serotonin.m2m2.rt.dataImage.PointValueTime;
@@ -91,6 +92,24 @@ public class PublishedPointRT<T extends PublishedPointVO> implements DataPointLi
     public String getListenerName(){
     	return "Published Point With Id" + vo.getDataPointId();
     }
+
+    @Override
+    public int getEventInterests() {
+        int interests = POINT_INITIALIZED | POINT_TERMINATED | ATTRIBUTE_CHANGED
+                | DataPointEventMulticaster.getOverriddenEvents(getClass(), PublishedPointRT.class);
+        switch (parent.getVo().getPublishType()) {
+            case PublishType.ALL:
+                return interests | POINT_UPDATED;
+            case PublishType.CHANGES_ONLY:
+                return interests | POINT_CHANGED;
+            case PublishType.LOGGED_ONLY:
+                return interests | POINT_LOGGED;
+            case PublishType.NONE:
+                return interests;
+            default:
+                return ALL_EVENTS;
+        }
+    }
     
     public T getVo() {
         return vo;
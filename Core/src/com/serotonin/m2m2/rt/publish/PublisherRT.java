@@ -4,11 +4,16 @@
  */
 package com.serotonin.m2m2.rt.publish;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
 import com.infiniteautomation.mango.spring.events.DaoEvent;
 import com.serotonin.ShouldNeverHappenException;
 import com.serotonin.m2m2.Common;
@@ -32,6 +37,8 @@ import com.serotonin.timer.TimerTask;
  * @author Matthew Lohbihler
  */
 abstract public class PublisherRT<T extends PublishedPointVO> extends TimeoutClient {
+    private static final Log LOG = LogFactory.getLog(PublisherRT.class);
+
     public static final int POINT_DISABLED_EVENT = 1;
     public static final int QUEUE_SIZE_WARNING_EVENT = 2;
 
@@ -62,9 +69,28 @@ abstract public class PublisherRT<T extends PublishedPointVO> extends TimeoutCli
     }
 
     protected PublishQueue<T, PointValueTime> createPublishQueue(PublisherVO<T> vo) {
+        if (Common.envProps.getBoolean("publisher.queue.diskBacked", false)) {
+            Path directory = getQueueDirectory(vo.getId());
+            try {
+                return new PublishQueue<T, PointValueTime>(this, vo.getCacheWarningSize(), vo.getCacheDiscardSize(), directory,
+                        new PointValueTimeSerializer(), Common.envProps.getInt("publisher.queue.memoryEntries", 10000),
+                        Common.envProps.getLong("publisher.queue.segmentSize", 16777216));
+            } catch (IOException e) {
+                LOG.error("Unable to open the queue of publisher " + vo.getXid() + " in " + directory + ", queueing in memory", e);
+            }
+        }
         return new PublishQueue<T, PointValueTime>(this, vo.getCacheWarningSize(), vo.getCacheDiscardSize());
     }
 
+    /**
+     * @param publisherId
+     * @return directory of the disk backed publish queue of a publisher
+     */
+    public static Path getQueueDirectory(int publisherId) {
+        return Common.MA_HOME_PATH.resolve(Common.envProps.getString("publisher.queue.location", "databases/publishers"))
+                .resolve(Integer.toString(publisherId)).normalize();
+    }
+
     protected AttributePublishQueue<T> createAttirbutesChangedQueue() {
         return new AttributePublishQueue<T>(vo.getPoints().size());
     }
@@ -230,6 +256,8 @@ abstract public class PublisherRT<T extends PublishedPointVO> extends TimeoutCli
         for (PublishedPointRT<T> rt : pointRTs)
             rt.terminate();
 
+        queue.close();
+
         // Remove any outstanding events.
         Common.eventManager.cancelEventsForPublisher(getId());
     }
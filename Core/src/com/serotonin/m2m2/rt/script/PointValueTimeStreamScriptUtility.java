@@ -23,6 +23,7 @@ import com.infiniteautomation.mango.db.query.QueryCancelledException;
 import com.infiniteautomation.mango.quantize.AbstractPointValueTimeQuantizer;
 import com.infiniteautomation.mango.quantize.AnalogStatisticsQuantizer;
 import com.infiniteautomation.mango.quantize.BucketCalculator;
+import com.infiniteautomation.mango.quantize.ParallelRollupExecutor;
 import com.infiniteautomation.mango.quantize.StartsAndRuntimeListQuantizer;
 import com.infiniteautomation.mango.quantize.StatisticsGeneratorQuantizerCallback;
 import com.infiniteautomation.mango.quantize.TimePeriodBucketCalculator;
@@ -37,7 +38,10 @@ import com.infiniteautomation.mango.util.script.ScriptUtility;
 import com.serotonin.m2m2.Common;
 import com.serotonin.m2m2.Common.Rollups;
 import com.serotonin.m2m2.DataTypes;
+import com.serotonin.m2m2.db.dao.PointValueDao;
+import com.serotonin.m2m2.db.dao.PointValueRollupDao;
 import com.serotonin.m2m2.rt.dataImage.IdPointValueTime;
+import com.serotonin.m2m2.rt.dataImage.PointValueTime;
 import com.serotonin.m2m2.view.stats.StatisticsGenerator;
 import com.serotonin.m2m2.vo.DataPointVO;
 
@@ -190,13 +194,44 @@ public class PointValueTimeStreamScriptUtility extends ScriptUtility {
 
         public void execute() throws QueryCancelledException, ScriptPermissionsException {
             createQuantizerMap();
-            Common.databaseProxy.newPointValueDao().wideBookendQuery(vos, from.toInstant().toEpochMilli(), to.toInstant().toEpochMilli(), false, null, this);
+            long fromMs = from.toInstant().toEpochMilli();
+            long toMs = to.toInstant().toEpochMilli();
+            PointValueRollupDao rollups = PointValueRollupDao.getInstance();
+            int periodType = rollups == null || !supportsRollups() ? -1 : rollups.getRollupPeriodType(vos, getBucketCalculator());
+            if (periodType != -1) {
+                //Every period is made of whole saved rollups, only the value in force at the start is needed
+                PointValueDao dao = Common.databaseProxy.newPointValueDao();
+                for (DataPointVO vo : vos) {
+                    if (vo == null)
+                        continue;
+                    DataPointStatisticsQuantizer<?> quantizer = this.quantizerMap.get(vo.getId());
+                    PointValueTime start = dao.getPointValueBefore(vo, fromMs + 1);
+                    quantizer.firstValue(new IdPointValueTime(vo.getId(), start == null ? null : start.getValue(), fromMs), 0, true);
+                    rollups.query(vo, periodType, fromMs, toMs, quantizer.quantizer::rollup);
+                    quantizer.done();
+                }
+                return;
+            }
+            if (ParallelRollupExecutor.isEnabled() && quantizerMap.size() > 1) {
+                //Query each point on its own connection, periods come back here in time order
+                new ParallelRollupExecutor(Common.databaseProxy.newPointValueDao())
+                    .execute(vos, fromMs, toMs, this::createQuantizer, this::quantizedStatistics);
+                return;
+            }
+            Common.databaseProxy.newPointValueDao().wideBookendQuery(vos, fromMs, toMs, false, null, this);
             //Fast forward to end to fill any gaps at the end
             for(DataPointStatisticsQuantizer<?> quant : this.quantizerMap.values())
                 if(!quant.isDone())
                     quant.done();
         }
 
+        private boolean supportsRollups() {
+            for (DataPointStatisticsQuantizer<?> quantizer : quantizerMap.values())
+                if (!quantizer.quantizer.supportsRollups())
+                    return false;
+            return true;
+        }
+
         @Override
         public void firstValue(IdPointValueTime value, int index, boolean bookend) throws QueryCancelledException {
             DataPointStatisticsQuantizer<?> quantizer = this.quantizerMap.get(value.getId());
@@ -216,6 +251,15 @@ public class PointValueTimeStreamScriptUtility extends ScriptUtility {
             quantizer.lastValue(value, index, bookend);
         }
 
+        public void quantizedStatistics(StatisticsGenerator statisticsGenerator) {
+            if (statisticsGenerator instanceof AnalogStatistics)
+                quantizedStatistics((AnalogStatistics) statisticsGenerator);
+            else if (statisticsGenerator instanceof StartsAndRuntimeList)
+                quantizedStatistics((StartsAndRuntimeList) statisticsGenerator);
+            else if (statisticsGenerator instanceof ValueChangeCounter)
+                quantizedStatistics((ValueChangeCounter) statisticsGenerator);
+        }
+
         public void quantizedStatistics(AnalogStatistics statisticsGenerator) {
             switch(rollup) {
                 case Rollups.ALL :
@@ -351,6 +395,21 @@ public class PointValueTimeStreamScriptUtility extends ScriptUtility {
             }
         }
 
+        private AbstractPointValueTimeQuantizer<?> createQuantizer(DataPointVO vo, StatisticsGeneratorQuantizerCallback<StatisticsGenerator> callback) {
+            switch(vo.getPointLocator().getDataTypeId()) {
+                case DataTypes.ALPHANUMERIC:
+                case DataTypes.IMAGE:
+                    return new ValueChangeCounterQuantizer(getBucketCalculator(), callback::quantizedStatistics);
+                case DataTypes.BINARY:
+                case DataTypes.MULTISTATE:
+                    return new StartsAndRuntimeListQuantizer(getBucketCalculator(), callback::quantizedStatistics);
+                case DataTypes.NUMERIC:
+                    return new AnalogStatisticsQuantizer(getBucketCalculator(), callback::quantizedStatistics);
+                default:
+                    throw new RuntimeException("Unknown Data Type: " + vo.getPointLocator().getDataTypeId());
+            }
+        }
+
         BucketCalculator getBucketCalculator(){
             return new TimePeriodBucketCalculator(from, to, rollupPeriodType, rollupPeriod);
         }
@@ -4,6 +4,8 @@
  */
 package com.serotonin.m2m2.view.text;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
@@ -28,6 +30,7 @@ import com.serotonin.m2m2.rt.dataImage.types.DataValue;
 import com.serotonin.m2m2.rt.dataImage.types.NumericValue;
 import com.serotonin.m2m2.util.JUnitUtil;
 import com.serotonin.m2m2.view.ImplDefinition;
+import com.serotonin.m2m2.vo.dataPoint.DataPointCodec;
 import com.serotonin.util.SerializationHelper;
 
 public class AnalogRenderer extends ConvertingRenderer {
@@ -209,6 +212,26 @@ public class AnalogRenderer extends ConvertingRenderer {
         }
     }
 
+    private static final int binaryVersion = 1;
+
+    @Override
+    public void writeBinary(DataOutput out) throws IOException {
+        super.writeBinary(out);
+        out.writeByte(binaryVersion);
+        DataPointCodec.writeString(out, format);
+        DataPointCodec.writeString(out, suffix);
+    }
+
+    @Override
+    public void readBinary(DataInput in) throws IOException {
+        super.readBinary(in);
+        int ver = in.readUnsignedByte();
+        if (ver == 1) {
+            format = DataPointCodec.readString(in);
+            suffix = DataPointCodec.readString(in);
+        }
+    }
+
     @Override
     public void jsonWrite(ObjectWriter writer) throws IOException, JsonException {
         super.jsonWrite(writer);
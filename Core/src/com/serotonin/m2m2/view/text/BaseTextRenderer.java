@@ -4,6 +4,8 @@
  */
 package com.serotonin.m2m2.view.text;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
@@ -24,8 +26,9 @@ import com.serotonin.m2m2.i18n.TranslatableJsonException;
 import com.serotonin.m2m2.rt.dataImage.PointValueTime;
 import com.serotonin.m2m2.rt.dataImage.types.DataValue;
 import com.serotonin.m2m2.view.ImplDefinition;
+import com.serotonin.m2m2.vo.dataPoint.BinarySerializable;
 
-abstract public class BaseTextRenderer implements TextRenderer, JsonSerializable {
+abstract public class BaseTextRenderer implements TextRenderer, JsonSerializable, BinarySerializable {
     static List<ImplDefinition> definitions;
 
     static void ensureDefinitions() {
@@ -173,6 +176,16 @@ abstract public class BaseTextRenderer implements TextRenderer, JsonSerializable
         in.readInt(); // Read the version. Value is currently not used.
     }
 
+    @Override
+    public void writeBinary(DataOutput out) throws IOException {
+        // No fields
+    }
+
+    @Override
+    public void readBinary(DataInput in) throws IOException {
+        // No fields
+    }
+
     @Override
     public void jsonWrite(ObjectWriter writer) throws IOException, JsonException {
         writer.writeEntry("type", getDef().getExportName());
@@ -4,6 +4,8 @@
  */
 package com.serotonin.m2m2.view.text;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
@@ -19,6 +21,7 @@ import com.serotonin.m2m2.rt.dataImage.types.BinaryValue;
 import com.serotonin.m2m2.rt.dataImage.types.DataValue;
 import com.serotonin.m2m2.util.ColorUtils;
 import com.serotonin.m2m2.view.ImplDefinition;
+import com.serotonin.m2m2.vo.dataPoint.DataPointCodec;
 import com.serotonin.util.SerializationHelper;
 
 /**
@@ -174,6 +177,30 @@ public class BinaryTextRenderer extends BaseTextRenderer {
         }
     }
 
+    private static final int binaryVersion = 1;
+
+    @Override
+    public void writeBinary(DataOutput out) throws IOException {
+        super.writeBinary(out);
+        out.writeByte(binaryVersion);
+        DataPointCodec.writeString(out, zeroLabel);
+        DataPointCodec.writeString(out, zeroColour);
+        DataPointCodec.writeString(out, oneLabel);
+        DataPointCodec.writeString(out, oneColour);
+    }
+
+    @Override
+    public void readBinary(DataInput in) throws IOException {
+        super.readBinary(in);
+        int ver = in.readUnsignedByte();
+        if (ver == 1) {
+            zeroLabel = DataPointCodec.readString(in);
+            zeroColour = DataPointCodec.readString(in);
+            oneLabel = DataPointCodec.readString(in);
+            oneColour = DataPointCodec.readString(in);
+        }
+    }
+
 	@Override
 	public void validate(ProcessResult result, int sourcePointDataType) {
 	    super.validate(result, sourcePointDataType);
@@ -3,6 +3,8 @@
  */
 package com.serotonin.m2m2.view.text;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
@@ -94,6 +96,27 @@ public abstract class ConvertingRenderer extends BaseTextRenderer {
         }
     }
 
+    private static final int binaryVersion = 1;
+
+    /**
+     * The units are not saved, they are set from the data point
+     */
+    @Override
+    public void writeBinary(DataOutput out) throws IOException {
+        super.writeBinary(out);
+        out.writeByte(binaryVersion);
+        out.writeBoolean(useUnitAsSuffix);
+    }
+
+    @Override
+    public void readBinary(DataInput in) throws IOException {
+        super.readBinary(in);
+        int ver = in.readUnsignedByte();
+        if (ver == 1) {
+            useUnitAsSuffix = in.readBoolean();
+        }
+    }
+
     @Override
     public void jsonWrite(ObjectWriter writer) throws IOException, JsonException {
         super.jsonWrite(writer);
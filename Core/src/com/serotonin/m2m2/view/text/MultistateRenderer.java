@@ -4,6 +4,8 @@
  */
 package com.serotonin.m2m2.view.text;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
@@ -16,6 +18,7 @@ import com.serotonin.m2m2.DataTypes;
 import com.serotonin.m2m2.i18n.ProcessResult;
 import com.serotonin.m2m2.rt.dataImage.types.DataValue;
 import com.serotonin.m2m2.view.ImplDefinition;
+import com.serotonin.m2m2.vo.dataPoint.DataPointCodec;
 
 public class MultistateRenderer extends BaseTextRenderer {
     private static ImplDefinition definition = new ImplDefinition("textRendererMultistate", "MULTISTATE",
@@ -133,6 +136,40 @@ public class MultistateRenderer extends BaseTextRenderer {
         }
     }
 
+    private static final int binaryVersion = 1;
+
+    @Override
+    public void writeBinary(DataOutput out) throws IOException {
+        super.writeBinary(out);
+        out.writeByte(binaryVersion);
+        if (multistateValues == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(multistateValues.size());
+            for (MultistateValue value : multistateValues) {
+                out.writeInt(value.getKey());
+                DataPointCodec.writeString(out, value.getText());
+                DataPointCodec.writeString(out, value.getColour());
+            }
+        }
+    }
+
+    @Override
+    public void readBinary(DataInput in) throws IOException {
+        super.readBinary(in);
+        int ver = in.readUnsignedByte();
+        if (ver == 1) {
+            int size = in.readInt();
+            if (size < 0) {
+                multistateValues = null;
+            } else {
+                multistateValues = new ArrayList<>(size);
+                for (int i = 0; i < size; i++)
+                    multistateValues.add(new MultistateValue(in.readInt(), DataPointCodec.readString(in), DataPointCodec.readString(in)));
+            }
+        }
+    }
+
 	@Override
 	public void validate(ProcessResult result, int sourcePointDataTypeId) {
 	    super.validate(result, sourcePointDataTypeId);
@@ -4,6 +4,8 @@
  */
 package com.serotonin.m2m2.view.text;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
@@ -78,6 +80,20 @@ public class NoneRenderer extends BaseTextRenderer {
         }
     }
 
+    private static final int binaryVersion = 1;
+
+    @Override
+    public void writeBinary(DataOutput out) throws IOException {
+        super.writeBinary(out);
+        out.writeByte(binaryVersion);
+    }
+
+    @Override
+    public void readBinary(DataInput in) throws IOException {
+        super.readBinary(in);
+        in.readUnsignedByte(); // Read the version. Value is currently not used.
+    }
+
     @Override
     public void validate(ProcessResult result, int sourcePointDataTypeId) {
         super.validate(result, sourcePointDataTypeId);
@@ -4,6 +4,8 @@
  */
 package com.serotonin.m2m2.view.text;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
@@ -21,6 +23,7 @@ import com.serotonin.m2m2.rt.dataImage.types.DataValue;
 import com.serotonin.m2m2.rt.dataImage.types.NumericValue;
 import com.serotonin.m2m2.util.JUnitUtil;
 import com.serotonin.m2m2.view.ImplDefinition;
+import com.serotonin.m2m2.vo.dataPoint.DataPointCodec;
 import com.serotonin.util.SerializationHelper;
 
 public class RangeRenderer extends ConvertingRenderer {
@@ -193,6 +196,44 @@ public class RangeRenderer extends ConvertingRenderer {
         }
     }
 
+    private static final int binaryVersion = 1;
+
+    @Override
+    public void writeBinary(DataOutput out) throws IOException {
+        super.writeBinary(out);
+        out.writeByte(binaryVersion);
+        DataPointCodec.writeString(out, format);
+        if (rangeValues == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(rangeValues.size());
+            for (RangeValue value : rangeValues) {
+                out.writeDouble(value.getFrom());
+                out.writeDouble(value.getTo());
+                DataPointCodec.writeString(out, value.getText());
+                DataPointCodec.writeString(out, value.getColour());
+            }
+        }
+    }
+
+    @Override
+    public void readBinary(DataInput in) throws IOException {
+        super.readBinary(in);
+        int ver = in.readUnsignedByte();
+        if (ver == 1) {
+            format = DataPointCodec.readString(in);
+            int size = in.readInt();
+            if (size < 0) {
+                rangeValues = null;
+            } else {
+                // rangeValues are written in sorted order
+                rangeValues = new ArrayList<>(size);
+                for (int i = 0; i < size; i++)
+                    rangeValues.add(new RangeValue(in.readDouble(), in.readDouble(), DataPointCodec.readString(in), DataPointCodec.readString(in)));
+            }
+        }
+    }
+
     @Override
     public void validate(ProcessResult result, int sourcePointDataTypeId) {
         super.validate(result, sourcePointDataTypeId);
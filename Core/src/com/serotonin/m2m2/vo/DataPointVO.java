@@ -4,6 +4,8 @@
  */
 package com.serotonin.m2m2.vo;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
@@ -37,10 +39,12 @@ import com.serotonin.m2m2.view.text.ConvertingRenderer;
 import com.serotonin.m2m2.view.text.NoneRenderer;
 import com.serotonin.m2m2.view.text.PlainRenderer;
 import com.serotonin.m2m2.view.text.TextRenderer;
+import com.serotonin.m2m2.vo.dataPoint.BinarySerializable;
+import com.serotonin.m2m2.vo.dataPoint.DataPointCodec;
 import com.serotonin.m2m2.vo.dataSource.PointLocatorVO;
 import com.serotonin.util.SerializationHelper;
 
-public class DataPointVO extends AbstractActionVO implements IDataPoint {
+public class DataPointVO extends AbstractActionVO implements IDataPoint, BinarySerializable {
     private static final long serialVersionUID = -1;
     public static final String XID_PREFIX = "DP_";
 
@@ -192,6 +196,11 @@ public class DataPointVO extends AbstractActionVO implements IDataPoint {
     private double simplifyTolerance = 10.0;
     private int simplifyTarget = 5000;
 
+    // In memory history of values, disabled when there are no periods
+    private int historyWindowPeriodType = Common.TimePeriods.HOURS;
+    @JsonProperty
+    private int historyWindowPeriods = 0;
+
     private PointLocatorVO<?> pointLocator;
 
     @JsonProperty
@@ -595,6 +604,22 @@ public class DataPointVO extends AbstractActionVO implements IDataPoint {
         this.simplifyTarget = simplifyTarget;
     }
 
+    public int getHistoryWindowPeriodType() {
+        return historyWindowPeriodType;
+    }
+
+    public void setHistoryWindowPeriodType(int historyWindowPeriodType) {
+        this.historyWindowPeriodType = historyWindowPeriodType;
+    }
+
+    public int getHistoryWindowPeriods() {
+        return historyWindowPeriods;
+    }
+
+    public void setHistoryWindowPeriods(int historyWindowPeriods) {
+        this.historyWindowPeriods = historyWindowPeriods;
+    }
+
     public boolean isOverrideIntervalLoggingSamples() {
         return overrideIntervalLoggingSamples;
     }
@@ -676,6 +701,8 @@ public class DataPointVO extends AbstractActionVO implements IDataPoint {
             copy.setSimplifyType(simplifyType);
             copy.setSimplifyTolerance(simplifyTolerance);
             copy.setSimplifyTarget(simplifyTarget);
+            copy.setHistoryWindowPeriodType(historyWindowPeriodType);
+            copy.setHistoryWindowPeriods(historyWindowPeriods);
             copy.setTextRenderer(textRenderer);
             copy.setPointLocator(pointLocator);
             copy.setPurgeOverride(purgeOverride);
@@ -757,7 +784,8 @@ public class DataPointVO extends AbstractActionVO implements IDataPoint {
                 + ", loggingType=" + loggingType + ", intervalLoggingPeriodType=" + intervalLoggingPeriodType
                 + ", intervalLoggingPeriod=" + intervalLoggingPeriod + ", intervalLoggingType=" + intervalLoggingType
                 + ", tolerance=" + tolerance + ", purgeOverride=" + purgeOverride + ", purgeType=" + purgeType
-                + ", purgePeriod=" + purgePeriod + ", textRenderer=" + textRenderer
+                + ", purgePeriod=" + purgePeriod + ", historyWindowPeriodType=" + historyWindowPeriodType
+                + ", historyWindowPeriods=" + historyWindowPeriods + ", textRenderer=" + textRenderer
                 + ", tags=" + tags
                 + ", defaultCacheSize=" + defaultCacheSize + ", discardExtremeValues=" + discardExtremeValues
                 + ", discardLowLimit=" + discardLowLimit + ", discardHighLimit=" + discardHighLimit + ", unit=" + unit
@@ -776,7 +804,7 @@ public class DataPointVO extends AbstractActionVO implements IDataPoint {
     //
     // Serialization
     //
-    private static final int version = 14; //Skipped 7,8
+    private static final int version = 15; //Skipped 7,8
 
     private void writeObject(ObjectOutputStream out) throws IOException {
         ensureUnitsCorrect();
@@ -800,6 +828,8 @@ public class DataPointVO extends AbstractActionVO implements IDataPoint {
         out.writeInt(simplifyType);
         out.writeDouble(simplifyTolerance);
         out.writeInt(simplifyTarget);
+        out.writeInt(historyWindowPeriodType);
+        out.writeInt(historyWindowPeriods);
     }
 
     private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
@@ -1251,6 +1281,43 @@ public class DataPointVO extends AbstractActionVO implements IDataPoint {
             simplifyTolerance = in.readDouble();
             simplifyTarget = in.readInt();
         }
+        else if (ver == 15) {
+            textRenderer = (TextRenderer) in.readObject();
+            pointLocator = (PointLocatorVO<?>) in.readObject();
+            discardLowLimit = in.readDouble();
+            discardHighLimit = in.readDouble();
+            chartColour = SerializationHelper.readSafeUTF(in);
+            plotType = in.readInt();
+
+            try{
+                unit = JUnitUtil.parseDefault(SerializationHelper.readSafeUTF(in));
+            }catch(Exception e){
+                unit = defaultUnit();
+            }
+            try{
+                integralUnit = JUnitUtil.parseDefault(SerializationHelper.readSafeUTF(in));
+            }catch(Exception e){
+                integralUnit = defaultUnit();
+            }
+
+            try{
+                renderedUnit = JUnitUtil.parseDefault(SerializationHelper.readSafeUTF(in));
+            }catch(Exception e){
+                renderedUnit = defaultUnit();
+            }
+            useIntegralUnit = in.readBoolean();
+            useRenderedUnit = in.readBoolean();
+            overrideIntervalLoggingSamples = in.readBoolean();
+            intervalLoggingSampleWindowSize = in.readInt();
+            preventSetExtremeValues = in.readBoolean();
+            setExtremeLowLimit = in.readDouble();
+            setExtremeHighLimit = in.readDouble();
+            simplifyType = in.readInt();
+            simplifyTolerance = in.readDouble();
+            simplifyTarget = in.readInt();
+            historyWindowPeriodType = in.readInt();
+            historyWindowPeriods = in.readInt();
+        }
         //Units no longer stored with text renderer
         setUnitsOnTextRenderer();
 
@@ -1262,6 +1329,83 @@ public class DataPointVO extends AbstractActionVO implements IDataPoint {
             purgePeriod = 1;
     }
 
+    //
+    // Binary format, see DataPointCodec
+    //
+    private static final int binaryVersion = 1;
+
+    @Override
+    public void writeBinary(DataOutput out) throws IOException {
+        ensureUnitsCorrect();
+        out.writeByte(binaryVersion);
+        DataPointCodec.writeObject(out, textRenderer);
+        DataPointCodec.writeObject(out, pointLocator);
+        out.writeDouble(discardLowLimit);
+        out.writeDouble(discardHighLimit);
+        DataPointCodec.writeString(out, chartColour);
+        out.writeInt(plotType);
+        DataPointCodec.writeString(out, JUnitUtil.formatDefault(unit));
+        DataPointCodec.writeString(out, JUnitUtil.formatDefault(integralUnit));
+        DataPointCodec.writeString(out, JUnitUtil.formatDefault(renderedUnit));
+        out.writeBoolean(useIntegralUnit);
+        out.writeBoolean(useRenderedUnit);
+        out.writeBoolean(overrideIntervalLoggingSamples);
+        out.writeInt(intervalLoggingSampleWindowSize);
+        out.writeBoolean(preventSetExtremeValues);
+        out.writeDouble(setExtremeLowLimit);
+        out.writeDouble(setExtremeHighLimit);
+        out.writeInt(simplifyType);
+        out.writeDouble(simplifyTolerance);
+        out.writeInt(simplifyTarget);
+        out.writeInt(historyWindowPeriodType);
+        out.writeInt(historyWindowPeriods);
+    }
+
+    @Override
+    public void readBinary(DataInput in) throws IOException {
+        int ver = in.readUnsignedByte();
+        if (ver == 1) {
+            textRenderer = DataPointCodec.readObject(in);
+            pointLocator = DataPointCodec.readObject(in);
+            discardLowLimit = in.readDouble();
+            discardHighLimit = in.readDouble();
+            chartColour = DataPointCodec.readString(in);
+            plotType = in.readInt();
+
+            try{
+                unit = JUnitUtil.parseDefault(DataPointCodec.readString(in));
+            }catch(Exception e){
+                unit = defaultUnit();
+            }
+            try{
+                integralUnit = JUnitUtil.parseDefault(DataPointCodec.readString(in));
+            }catch(Exception e){
+                integralUnit = defaultUnit();
+            }
+            try{
+                renderedUnit = JUnitUtil.parseDefault(DataPointCodec.readString(in));
+            }catch(Exception e){
+                renderedUnit = defaultUnit();
+            }
+            useIntegralUnit = in.readBoolean();
+            useRenderedUnit = in.readBoolean();
+            overrideIntervalLoggingSamples = in.readBoolean();
+            intervalLoggingSampleWindowSize = in.readInt();
+            preventSetExtremeValues = in.readBoolean();
+            setExtremeLowLimit = in.readDouble();
+            setExtremeHighLimit = in.readDouble();
+            simplifyType = in.readInt();
+            simplifyTolerance = in.readDouble();
+            simplifyTarget = in.readInt();
+            historyWindowPeriodType = in.readInt();
+            historyWindowPeriods = in.readInt();
+        } else {
+            throw new IOException("Unknown data point binary version " + ver);
+        }
+        //Units are not stored with text renderer
+        setUnitsOnTextRenderer();
+    }
+
     private void setUnitsOnTextRenderer() {
         if (textRenderer instanceof ConvertingRenderer) {
             ConvertingRenderer cr = (ConvertingRenderer) textRenderer;
@@ -1298,6 +1442,7 @@ public class DataPointVO extends AbstractActionVO implements IDataPoint {
         writer.writeEntry("intervalLoggingPeriodType", Common.TIME_PERIOD_CODES.getCode(intervalLoggingPeriodType));
         writer.writeEntry("intervalLoggingType", INTERVAL_LOGGING_TYPE_CODES.getCode(intervalLoggingType));
         writer.writeEntry("purgeType", Common.TIME_PERIOD_CODES.getCode(purgeType));
+        writer.writeEntry("historyWindowPeriodType", Common.TIME_PERIOD_CODES.getCode(historyWindowPeriodType));
         writer.writeEntry("pointLocator", pointLocator);
         writer.writeEntry("eventDetectors", EventDetectorDao.getInstance().getWithSource(id, this));
         writer.writeEntry("plotType", PLOT_TYPE_CODES.getCode(plotType));
@@ -1357,6 +1502,14 @@ public class DataPointVO extends AbstractActionVO implements IDataPoint {
                         Common.TIME_PERIOD_CODES.getCodeList(TimePeriods.MILLISECONDS, TimePeriods.SECONDS, TimePeriods.MINUTES, TimePeriods.HOURS));
         }
 
+        text = jsonObject.getString("historyWindowPeriodType");
+        if (text != null) {
+            historyWindowPeriodType = Common.TIME_PERIOD_CODES.getId(text);
+            if (historyWindowPeriodType == -1)
+                throw new TranslatableJsonException("emport.error.invalid", "historyWindowPeriodType", text,
+                        Common.TIME_PERIOD_CODES.getCodeList());
+        }
+
         JsonObject locatorJson = jsonObject.getJsonObject("pointLocator");
         if (locatorJson != null)
             reader.readInto(pointLocator, locatorJson);
@@ -0,0 +1,25 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.vo.dataPoint;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Point locators and text renderers that save themselves in the binary data point format instead
+ *  of with Java serialization, see {@link DataPointCodec}.
+ *
+ * As with Java serialization write a version first so that older data can still be read.
+ *  Implementations must have a public no argument constructor and subclasses must override both
+ *  methods, otherwise they are saved with Java serialization.
+ *
+ * @see DataPointCodec#writeString(DataOutput, String)
+ */
+public interface BinarySerializable {
+
+    void writeBinary(DataOutput out) throws IOException;
+
+    void readBinary(DataInput in) throws IOException;
+}
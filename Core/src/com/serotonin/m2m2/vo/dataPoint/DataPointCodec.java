@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.m2m2.vo.dataPoint;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+
+import com.serotonin.ShouldNeverHappenException;
+import com.serotonin.m2m2.vo.DataPointVO;
+import com.serotonin.util.SerializationHelper;
+
+/**
+ * Binary format of the data column of the dataPoints table. The point writes its own fields and its
+ *  text renderer and point locator are saved with {@link BinarySerializable} where they support it,
+ *  otherwise with Java serialization.
+ *
+ * Data saved with Java serialization before this format existed is still read.
+ */
+public final class DataPointCodec {
+
+    //Java serialization streams start with 0xACED
+    private static final int MAGIC = 0x4D50;
+
+    private static final byte NULL_OBJECT = 0;
+    private static final byte BINARY_OBJECT = 1;
+    private static final byte SERIALIZED_OBJECT = 2;
+
+    /**
+     * Only classes that declare writeBinary themselves are written in the binary format, a module
+     *  subclass that adds fields to a core renderer is still saved with Java serialization
+     */
+    private static final ClassValue<Boolean> BINARY_CLASSES = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            if (!BinarySerializable.class.isAssignableFrom(type))
+                return false;
+            try {
+                type.getDeclaredMethod("writeBinary", DataOutput.class);
+                return true;
+            } catch (NoSuchMethodException e) {
+                return false;
+            }
+        }
+    };
+
+    private DataPointCodec() { }
+
+    public static byte[] encode(DataPointVO vo) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeShort(MAGIC);
+            vo.writeBinary(out);
+        } catch (IOException e) {
+            throw new ShouldNeverHappenException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param in binary or Java serialized data point
+     * @return the point or null if there is no data
+     */
+    public static DataPointVO decode(InputStream in) {
+        if (in == null)
+            return null;
+        try {
+            PushbackInputStream pushback = new PushbackInputStream(in, 2);
+            byte[] header = new byte[2];
+            int read = 0;
+            while (read < 2) {
+                int count = pushback.read(header, read, 2 - read);
+                if (count < 0)
+                    break;
+                read += count;
+            }
+            pushback.unread(header, 0, read);
+
+            if (read == 2 && ((header[0] & 0xFF) << 8 | (header[1] & 0xFF)) == MAGIC) {
+                DataInputStream data = new DataInputStream(pushback);
+                data.readShort();
+                DataPointVO vo = new DataPointVO();
+                vo.readBinary(data);
+                return vo;
+            }
+            return (DataPointVO) SerializationHelper.readObjectInContext(pushback);
+        } catch (IOException e) {
+            throw new ShouldNeverHappenException(e);
+        }
+    }
+
+    /**
+     * @param data
+     * @return true if the data is in the binary format
+     */
+    public static boolean isBinary(byte[] data) {
+        return data != null && data.length >= 2 && ((data[0] & 0xFF) << 8 | (data[1] & 0xFF)) == MAGIC;
+    }
+
+    /**
+     * Write a text renderer, point locator or other part of a point
+     * @param out
+     * @param o
+     * @throws IOException
+     */
+    public static void writeObject(DataOutput out, Object o) throws IOException {
+        if (o == null) {
+            out.writeByte(NULL_OBJECT);
+        } else if (BINARY_CLASSES.get(o.getClass())) {
+            out.writeByte(BINARY_OBJECT);
+            out.writeUTF(o.getClass().getName());
+            ((BinarySerializable) o).writeBinary(out);
+        } else {
+            byte[] serialized = SerializationHelper.writeObjectToArray(o);
+            out.writeByte(SERIALIZED_OBJECT);
+            out.writeInt(serialized.length);
+            out.write(serialized);
+        }
+    }
+
+    /**
+     * Read an object saved with {@link #writeObject(DataOutput, Object)}, classes are loaded
+     *  by the context class loader so module classes can be read
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T readObject(DataInput in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case NULL_OBJECT:
+                return null;
+            case BINARY_OBJECT:
+                String className = in.readUTF();
+                BinarySerializable o;
+                try {
+                    Class<?> clazz = Class.forName(className, true, Thread.currentThread().getContextClassLoader());
+                    o = (BinarySerializable) clazz.newInstance();
+                } catch (ReflectiveOperationException | ClassCastException e) {
+                    throw new IOException("Unable to create " + className, e);
+                }
+                o.readBinary(in);
+                return (T) o;
+            case SERIALIZED_OBJECT:
+                byte[] serialized = new byte[in.readInt()];
+                in.readFully(serialized);
+                return (T) SerializationHelper.readObjectInContextFromArray(serialized);
+            default:
+                throw new IOException("Unknown object type " + type);
+        }
+    }
+
+    /**
+     * Write a string of any length that may be null
+     * @param out
+     * @param s
+     * @throws IOException
+     */
+    public static void writeString(DataOutput out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0)
+            return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
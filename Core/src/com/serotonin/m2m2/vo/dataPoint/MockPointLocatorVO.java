@@ -4,6 +4,8 @@
  */
 package com.serotonin.m2m2.vo.dataPoint;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
@@ -26,7 +28,7 @@ import com.serotonin.m2m2.vo.dataSource.mock.MockDataSourceDefinition;
  * @author Terry Packer
  *
  */
-public class MockPointLocatorVO extends AbstractPointLocatorVO<MockPointLocatorVO> implements JsonSerializable {
+public class MockPointLocatorVO extends AbstractPointLocatorVO<MockPointLocatorVO> implements JsonSerializable, BinarySerializable {
 
     private int dataTypeId = DataTypes.NUMERIC;
     private boolean settable = false;
@@ -98,6 +100,24 @@ public class MockPointLocatorVO extends AbstractPointLocatorVO<MockPointLocatorV
         }
     }
 
+    private static final int binaryVersion = 1;
+
+    @Override
+    public void writeBinary(DataOutput out) throws IOException {
+        out.writeByte(binaryVersion);
+        out.writeInt(dataTypeId);
+        out.writeBoolean(settable);
+    }
+
+    @Override
+    public void readBinary(DataInput in) throws IOException {
+        int ver = in.readUnsignedByte();
+        if (ver == 1) {
+            dataTypeId = in.readInt();
+            settable = in.readBoolean();
+        }
+    }
+
     @Override
     public String getDataSourceType() {
         return MockDataSourceDefinition.TYPE_NAME;
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.timer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Hashed hierarchical timing wheel holding timer tasks by their next execution time. Time is divided
+ * into ticks, the first level has a slot for each of the next 256 ticks and each level above it has
+ * slots 256 times as wide. Tasks are added to the slot of the lowest level that reaches their tick and
+ * moved down a level when the wheel below completes a rotation, so adding a task is constant time.
+ *
+ * Cancelled tasks are left in their slot and dropped when it is reached or the wheel is purged.
+ * A task is due at the first tick boundary at or after its execution time so it never runs early.
+ * Not thread safe.
+ */
+final class TimingWheel {
+
+    private static final int BITS = 8;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    //Beyond this many ticks it is quicker to rebuild the wheel than to step through them
+    private static final long MAX_STEPS = 1L << (2 * BITS);
+
+    private final long tickDuration;
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<TimerTask>[][] wheels = new ArrayDeque[LEVELS][SLOTS];
+    //Tasks too far in the future for the top level
+    private final List<TimerTask> overflow = new ArrayList<>();
+    //Next tick to expire, everything before it has been expired
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param tickDuration ms
+     * @param time ms of the first tick to expire
+     */
+    TimingWheel(long tickDuration, long time) {
+        if (tickDuration <= 0)
+            throw new IllegalArgumentException("Tick duration must be positive");
+        this.tickDuration = tickDuration;
+        this.currentTick = Math.floorDiv(time, tickDuration);
+    }
+
+    /**
+     * Add a task at its next execution time
+     */
+    void add(TimerTask task) {
+        insert(task);
+        size++;
+    }
+
+    /**
+     * Expire all ticks up to the time
+     * @param time ms
+     * @param due tasks that are due are added in the order of their execution time
+     */
+    void expire(long time, List<TimerTask> due) {
+        long lastTick = Math.floorDiv(time, tickDuration);
+        if (lastTick - currentTick > MAX_STEPS)
+            rebuild(lastTick);
+
+        int start = due.size();
+        while (currentTick <= lastTick) {
+            if ((currentTick & MASK) == 0)
+                cascade();
+            ArrayDeque<TimerTask> slot = wheels[0][(int) (currentTick & MASK)];
+            if (slot != null) {
+                TimerTask task;
+                while ((task = slot.poll()) != null) {
+                    size--;
+                    if (task.state != TimerTask.CANCELLED)
+                        due.add(task);
+                }
+            }
+            currentTick++;
+        }
+        if (due.size() - start > 1)
+            due.subList(start, due.size()).sort((a, b) -> Long.compare(a.trigger.nextExecutionTime, b.trigger.nextExecutionTime));
+    }
+
+    /**
+     * Remove the cancelled tasks
+     * @return number removed
+     */
+    int purge() {
+        int removed = 0;
+        for (ArrayDeque<TimerTask>[] wheel : wheels) {
+            for (ArrayDeque<TimerTask> slot : wheel) {
+                if (slot != null)
+                    removed += removeCancelled(slot);
+            }
+        }
+        removed += removeCancelled(overflow);
+        size -= removed;
+        return removed;
+    }
+
+    /**
+     * @param tasks all tasks including those cancelled are added to this
+     */
+    void getTasks(List<TimerTask> tasks) {
+        for (ArrayDeque<TimerTask>[] wheel : wheels) {
+            for (ArrayDeque<TimerTask> slot : wheel) {
+                if (slot != null)
+                    tasks.addAll(slot);
+            }
+        }
+        tasks.addAll(overflow);
+    }
+
+    /**
+     * @return number of tasks including those cancelled
+     */
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        for (ArrayDeque<TimerTask>[] wheel : wheels) {
+            for (int i = 0; i < SLOTS; i++)
+                wheel[i] = null;
+        }
+        overflow.clear();
+        size = 0;
+    }
+
+    private void insert(TimerTask task) {
+        long tick = Math.max(currentTick, ceilDiv(task.trigger.nextExecutionTime, tickDuration));
+        long delta = tick - currentTick;
+        for (int level = 0; level < LEVELS; level++) {
+            if (delta < 1L << (BITS * (level + 1))) {
+                int index = (int) ((tick >>> (BITS * level)) & MASK);
+                ArrayDeque<TimerTask> slot = wheels[level][index];
+                if (slot == null)
+                    wheels[level][index] = slot = new ArrayDeque<>();
+                slot.add(task);
+                return;
+            }
+        }
+        overflow.add(task);
+    }
+
+    /**
+     * The first level is starting a new rotation, move the tasks of the slots above it that start now
+     * down to the levels below
+     */
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            int index = (int) ((currentTick >>> (BITS * level)) & MASK);
+            ArrayDeque<TimerTask> slot = wheels[level][index];
+            if (slot != null) {
+                wheels[level][index] = null;
+                for (TimerTask task : slot)
+                    insert(task);
+            }
+            if (index != 0)
+                return;
+        }
+        //Every level has completed a rotation
+        if (!overflow.isEmpty()) {
+            List<TimerTask> tasks = new ArrayList<>(overflow);
+            overflow.clear();
+            for (TimerTask task : tasks)
+                insert(task);
+        }
+    }
+
+    /**
+     * Jump to a tick, re-adding every task relative to it
+     */
+    private void rebuild(long tick) {
+        List<TimerTask> tasks = new ArrayList<>(size);
+        getTasks(tasks);
+        int count = size;
+        clear();
+        currentTick = tick;
+        for (TimerTask task : tasks)
+            insert(task);
+        size = count;
+    }
+
+    private static int removeCancelled(Collection<TimerTask> tasks) {
+        int before = tasks.size();
+        tasks.removeIf(t -> t.state == TimerTask.CANCELLED);
+        return before - tasks.size();
+    }
+
+    private static long ceilDiv(long x, long y) {
+        return -Math.floorDiv(-x, y);
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.timer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Timer that keeps its tasks in hashed hierarchical timing wheels instead of a single binary heap.
+ * Scheduling a task is constant time and only locks one of several wheels, chosen by the task, so
+ * threads scheduling and cancelling tasks rarely contend with each other or the timer thread.
+ *
+ * Tasks run at the first tick after their execution time so they can be up to one tick late. Tasks
+ * are passed to the executor the same way as the {@link OrderedRealTimeTimer}, in order of their id
+ * if it is an {@link OrderedThreadPoolExecutor}.
+ */
+public class TimingWheelTimer extends AbstractTimer {
+    private static final Log LOG = LogFactory.getLog(TimingWheelTimer.class);
+
+    private final long tickDuration;
+    private final TimingWheel[] wheels;
+    private final AtomicInteger size = new AtomicInteger();
+    //Notified when a task is scheduled on an empty timer
+    private final Object signal = new Object();
+
+    private TimeSource timeSource = new SystemTimeSource();
+    private ExecutorService executorService;
+    private boolean ownsExecutor;
+    private volatile Thread thread;
+    private volatile boolean cancelled;
+
+    /**
+     * @param tickDuration resolution of the timer in ms
+     * @param shards number of wheels, 0 for one per available processor
+     */
+    public TimingWheelTimer(long tickDuration, int shards) {
+        if (tickDuration <= 0)
+            throw new IllegalArgumentException("Tick duration must be positive");
+        if (shards <= 0)
+            shards = Runtime.getRuntime().availableProcessors();
+        this.tickDuration = tickDuration;
+        this.wheels = new TimingWheel[shards];
+    }
+
+    public void setTimeSource(TimeSource timeSource) {
+        this.timeSource = timeSource;
+    }
+
+    public void init(OrderedThreadPoolExecutor executorService, int threadPriority) {
+        start(executorService, threadPriority);
+    }
+
+    @Override
+    public void init() {
+        ownsExecutor = true;
+        init(new OrderedThreadPoolExecutor(0, 1000, 30L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), false, timeSource));
+    }
+
+    @Override
+    public void init(ExecutorService executorService) {
+        start(executorService, Thread.MAX_PRIORITY);
+    }
+
+    /**
+     * The wheels are expired by the timer's own loop, only the executor of the thread is used. The
+     * thread is never started.
+     */
+    @Override
+    public void init(TimerThread timer) {
+        start(timer.getExecutorService(), timer.getPriority());
+    }
+
+    @Override
+    public boolean isInitialized() {
+        return thread != null;
+    }
+
+    private synchronized void start(ExecutorService executorService, int threadPriority) {
+        if (thread != null)
+            throw new IllegalStateException("Already initialized");
+        this.executorService = executorService;
+        long now = timeSource.currentTimeMillis();
+        for (int i = 0; i < wheels.length; i++)
+            wheels[i] = new TimingWheel(tickDuration, now);
+
+        Thread t = new Thread(this::mainLoop, "Timing Wheel Timer");
+        t.setDaemon(false);
+        t.setPriority(threadPriority);
+        thread = t;
+        t.start();
+    }
+
+    @Override
+    public void execute(Task command) {
+        if (thread == null)
+            throw new IllegalStateException("Run init first");
+        dispatch(new TaskWrapper(command, currentTimeMillis()));
+    }
+
+    @Override
+    protected void scheduleImpl(TimerTask task) {
+        if (thread == null)
+            throw new IllegalStateException("Run init first");
+        if (cancelled)
+            throw new IllegalStateException("Timer already cancelled.");
+
+        synchronized (task.lock) {
+            if (task.state == TimerTask.CANCELLED || task.state == TimerTask.EXECUTED)
+                throw new IllegalStateException("Task already executed or cancelled");
+            if (task.state == TimerTask.VIRGIN) {
+                long time = task.trigger.getFirstExecutionTime();
+                if (time < 0)
+                    throw new IllegalArgumentException("Illegal execution time.");
+                task.trigger.nextExecutionTime = time;
+                task.state = TimerTask.SCHEDULED;
+            }
+        }
+        add(task);
+    }
+
+    private void add(TimerTask task) {
+        TimingWheel wheel = wheelFor(task);
+        synchronized (wheel) {
+            wheel.add(task);
+        }
+        if (size.getAndIncrement() == 0) {
+            synchronized (signal) {
+                signal.notify();
+            }
+        }
+    }
+
+    private TimingWheel wheelFor(TimerTask task) {
+        return wheels[Math.floorMod(System.identityHashCode(task), wheels.length)];
+    }
+
+    private void mainLoop() {
+        List<TimerTask> due = new ArrayList<>();
+        try {
+            while (!cancelled) {
+                long now = timeSource.currentTimeMillis();
+                for (TimingWheel wheel : wheels) {
+                    synchronized (wheel) {
+                        int before = wheel.size();
+                        wheel.expire(now, due);
+                        size.addAndGet(wheel.size() - before);
+                    }
+                }
+                for (TimerTask task : due)
+                    fire(task);
+                due.clear();
+
+                synchronized (signal) {
+                    if (cancelled)
+                        break;
+                    try {
+                        if (size.get() == 0)
+                            signal.wait();
+                        else
+                            signal.wait(tickDuration - Math.floorMod(timeSource.currentTimeMillis(), tickDuration));
+                    } catch (InterruptedException e) {
+                        // no op
+                    }
+                }
+            }
+        } catch (Throwable t) {
+            LOG.fatal("TimingWheelTimer failed", t);
+            cancelled = true;
+        }
+    }
+
+    private void fire(TimerTask task) {
+        long executionTime;
+        boolean repeat = false;
+        synchronized (task.lock) {
+            if (task.state == TimerTask.CANCELLED)
+                return;
+            executionTime = task.trigger.nextExecutionTime;
+            long next = task.trigger.calculateNextExecutionTime();
+            if (next <= 0)
+                task.state = TimerTask.EXECUTED;
+            else {
+                task.trigger.nextExecutionTime = next;
+                repeat = true;
+            }
+        }
+        if (repeat)
+            add(task);
+
+        try {
+            dispatch(new TaskWrapper(task, task.trigger.mostRecentExecutionTime()));
+        } catch (RejectedExecutionException e) {
+            task.rejected(new RejectedTaskReason(RejectedTaskReason.POOL_FULL, executionTime, task, executorService));
+        }
+    }
+
+    private void dispatch(TaskWrapper wrapper) {
+        if (executorService instanceof OrderedThreadPoolExecutor)
+            ((OrderedThreadPoolExecutor) executorService).execute(wrapper);
+        else
+            executorService.execute(wrapper);
+    }
+
+    /**
+     * Terminates this timer, discarding any scheduled tasks. Does not interfere with tasks that are
+     * running. May be called repeatedly.
+     */
+    @Override
+    public List<TimerTask> cancel() {
+        cancelled = true;
+        List<TimerTask> tasks = getTasks();
+        for (TimingWheel wheel : wheels) {
+            if (wheel == null)
+                continue;
+            synchronized (wheel) {
+                wheel.clear();
+            }
+        }
+        size.set(0);
+        synchronized (signal) {
+            signal.notify();
+        }
+
+        if (ownsExecutor && executorService != null)
+            executorService.shutdown();
+        return tasks;
+    }
+
+    @Override
+    public int purge() {
+        int result = 0;
+        for (TimingWheel wheel : wheels) {
+            if (wheel == null)
+                continue;
+            synchronized (wheel) {
+                result += wheel.purge();
+            }
+        }
+        size.addAndGet(-result);
+        return result;
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public List<TimerTask> getTasks() {
+        List<TimerTask> result = new ArrayList<>();
+        for (TimingWheel wheel : wheels) {
+            if (wheel == null)
+                continue;
+            synchronized (wheel) {
+                wheel.getTasks(result);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return timeSource.currentTimeMillis();
+    }
+
+    @Override
+    public TimeSource getTimeSource() {
+        return timeSource;
+    }
+}
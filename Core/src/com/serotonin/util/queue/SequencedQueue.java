@@ -0,0 +1,561 @@
+/*
+ * Copyright (C) 2020 Infinite Automation Software. All rights reserved.
+ */
+package com.serotonin.util.queue;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Queue that numbers its entries and only removes them once they are acknowledged, in any order.
+ * Readers hold a cursor (the sequence number to read from) so reading the next batch does not
+ * revisit entries already handed out, and acknowledging an entry is constant time.
+ *
+ * Given a directory, every entry is also appended to segment files there and the queue is recovered
+ * from them by {@link #open()}. Only up to a limit of entries from the oldest unacknowledged one are
+ * kept in memory, the rest are read back from the files as the queue drains. Segment files are
+ * deleted once all of their entries are acknowledged. The position of the oldest unacknowledged
+ * entry is written on every acknowledgement but not forced to the storage device, entries
+ * acknowledged out of order are only tracked in memory so after a crash they are delivered again.
+ *
+ * Without a directory the entries are only kept in memory.
+ */
+public class SequencedQueue<E> implements Closeable {
+    private static final Log LOG = LogFactory.getLog(SequencedQueue.class);
+
+    private static final Object ACKNOWLEDGED = new Object();
+    private static final int INITIAL_CAPACITY = 16;
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".dat";
+    private static final String HEAD_FILE = "head.dat";
+    //length of sequence and payload, sequence
+    private static final int RECORD_HEADER_SIZE = 12;
+
+    /**
+     * Writes entries to the segment files and reads them back
+     */
+    public interface Serializer<E> {
+        void write(E value, DataOutput out) throws IOException;
+
+        /**
+         * @return the entry or null if it should be dropped
+         */
+        E read(DataInput in) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer<E> {
+        void accept(long sequence, E value);
+    }
+
+    private final Path directory;
+    private final Serializer<E> serializer;
+    private final int memoryLimit;
+    private final long segmentSize;
+
+    //Ring of the entries from head to windowEnd indexed by sequence, acknowledged entries are replaced by ACKNOWLEDGED
+    private Object[] window = new Object[INITIAL_CAPACITY];
+    //Oldest unacknowledged entry, everything before it is acknowledged
+    private long head;
+    //Entries from here to next are only in the segment files
+    private long windowEnd;
+    private long next;
+    //Number of acknowledged entries in the window
+    private int acknowledged;
+
+    //First sequence of each segment file
+    private final NavigableMap<Long, Path> segments = new TreeMap<>();
+    private final RecordBuffer buffer = new RecordBuffer();
+    private final DataOutputStream out = new DataOutputStream(buffer);
+    private FileChannel headChannel;
+    private FileChannel writeChannel;
+    private long writeSegmentBytes;
+    private long readSegment = -1;
+    private DataInputStream reader;
+    private boolean closed;
+
+    /**
+     * Queue that is only kept in memory
+     */
+    public SequencedQueue() {
+        this.directory = null;
+        this.serializer = null;
+        this.memoryLimit = Integer.MAX_VALUE;
+        this.segmentSize = 0;
+    }
+
+    /**
+     * Queue backed by segment files, {@link #open()} must be called before it is used
+     *
+     * @param directory for the segment files
+     * @param serializer
+     * @param memoryLimit maximum number of entries to hold in memory
+     * @param segmentSize size in bytes after which a new segment file is started
+     */
+    public SequencedQueue(Path directory, Serializer<E> serializer, int memoryLimit, long segmentSize) {
+        if (memoryLimit <= 0)
+            throw new IllegalArgumentException("Memory limit must be positive");
+        this.directory = directory;
+        this.serializer = serializer;
+        this.memoryLimit = memoryLimit;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Recover the entries left in the directory by a previous run
+     *
+     * @return number of entries recovered
+     * @throws IOException
+     */
+    public synchronized long open() throws IOException {
+        if (directory == null)
+            return 0;
+        Files.createDirectories(directory);
+        headChannel = FileChannel.open(directory.resolve(HEAD_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer mark = ByteBuffer.allocate(8);
+        long first = headChannel.read(mark, 0) == 8 ? mark.getLong(0) : 0;
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                try {
+                    segments.put(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())), path);
+                } catch (NumberFormatException e) {
+                    LOG.warn("Ignoring unknown file in queue " + path);
+                }
+            }
+        }
+
+        long last = -1;
+        for (Entry<Long, Path> segment : new ArrayList<>(segments.entrySet())) {
+            long lastInSegment = recover(segment.getValue());
+            if (lastInSegment < 0) {
+                segments.remove(segment.getKey());
+                Files.deleteIfExists(segment.getValue());
+            } else
+                last = Math.max(last, lastInSegment);
+        }
+
+        head = first;
+        windowEnd = first;
+        next = Math.max(first, last + 1);
+        deleteAcknowledgedSegments();
+        return next - head;
+    }
+
+    /**
+     * Add an entry to the end of the queue
+     *
+     * @return the sequence number of the entry
+     * @throws IOException if it could not be written to the segment file
+     */
+    public synchronized long append(E value) throws IOException {
+        long sequence = next;
+        if (directory != null)
+            write(sequence, value);
+        next++;
+        if (windowEnd == sequence && windowEnd - head < memoryLimit) {
+            ensureCapacity(windowEnd - head + 1);
+            window[index(sequence)] = value;
+            windowEnd++;
+        }
+        return sequence;
+    }
+
+    /**
+     * Read unacknowledged entries in order. If the entries from the cursor are not in memory and the
+     * memory limit has been reached fewer entries than are available may be returned.
+     *
+     * @param from sequence number to start from, anything before the oldest entry reads from the oldest entry
+     * @param max maximum number of entries
+     * @param consumer
+     * @return number of entries read
+     * @throws IOException if the entries could not be read from the segment files
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized int read(long from, int max, EntryConsumer<E> consumer) throws IOException {
+        int count = 0;
+        long sequence = Math.max(from, head);
+        while (count < max && sequence < next) {
+            if (sequence >= windowEnd) {
+                if (!load())
+                    break;
+                sequence = Math.max(sequence, head);
+                continue;
+            }
+            Object value = window[index(sequence)];
+            if (value != ACKNOWLEDGED) {
+                consumer.accept(sequence, (E) value);
+                count++;
+            }
+            sequence++;
+        }
+        return count;
+    }
+
+    /**
+     * Remove an entry
+     *
+     * @param sequence
+     * @return true if the entry was in the queue
+     * @throws IOException if the position of the queue could not be saved
+     */
+    public synchronized boolean acknowledge(long sequence) throws IOException {
+        long before = head;
+        boolean removed = remove(sequence);
+        if (head != before)
+            headMoved();
+        return removed;
+    }
+
+    /**
+     * Remove entries
+     *
+     * @param sequences
+     * @return number of entries that were in the queue
+     * @throws IOException if the position of the queue could not be saved
+     */
+    public synchronized int acknowledgeAll(long[] sequences) throws IOException {
+        long before = head;
+        int removed = 0;
+        for (long sequence : sequences) {
+            if (remove(sequence))
+                removed++;
+        }
+        if (head != before)
+            headMoved();
+        return removed;
+    }
+
+    /**
+     * Remove the oldest entries
+     *
+     * @param count number of unacknowledged entries to remove
+     * @return number removed
+     * @throws IOException if the position of the queue could not be saved
+     */
+    public synchronized long discard(long count) throws IOException {
+        long removed = 0;
+        long sequence = head;
+        while (removed < count && sequence < windowEnd) {
+            int index = index(sequence);
+            if (window[index] == ACKNOWLEDGED)
+                acknowledged--;
+            else
+                removed++;
+            window[index] = null;
+            sequence++;
+        }
+        if (removed < count && sequence < next) {
+            //Not in memory, nothing in the files has been acknowledged
+            long skipped = Math.min(count - removed, next - sequence);
+            sequence += skipped;
+            removed += skipped;
+        }
+        if (sequence != head) {
+            head = sequence;
+            windowEnd = Math.max(windowEnd, head);
+            if (head == windowEnd && window.length > INITIAL_CAPACITY)
+                window = new Object[INITIAL_CAPACITY];
+            headMoved();
+        }
+        return removed;
+    }
+
+    /**
+     * Remove every entry
+     *
+     * @throws IOException if the position of the queue could not be saved
+     */
+    public synchronized void clear() throws IOException {
+        discard(Long.MAX_VALUE);
+    }
+
+    /**
+     * @return number of unacknowledged entries
+     */
+    public synchronized long size() {
+        return next - head - acknowledged;
+    }
+
+    /**
+     * @return sequence number of the oldest unacknowledged entry, or of the next entry if the queue is empty
+     */
+    public synchronized long getHead() {
+        return head;
+    }
+
+    /**
+     * Force the files to the storage device and close them, entries that were not acknowledged
+     * are recovered by the next {@link #open()}
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (directory == null)
+            return;
+        closed = true;
+        closeReader();
+        if (writeChannel != null) {
+            writeChannel.force(false);
+            writeChannel.close();
+            writeChannel = null;
+        }
+        if (headChannel != null) {
+            headChannel.force(false);
+            headChannel.close();
+            headChannel = null;
+        }
+    }
+
+    private boolean remove(long sequence) {
+        if (sequence < head || sequence >= windowEnd)
+            return false;
+        int index = index(sequence);
+        if (window[index] == ACKNOWLEDGED)
+            return false;
+        window[index] = ACKNOWLEDGED;
+        acknowledged++;
+        advance();
+        return true;
+    }
+
+    /**
+     * Move the head past the acknowledged entries at the start of the window
+     */
+    private void advance() {
+        while (head < windowEnd) {
+            int index = index(head);
+            if (window[index] != ACKNOWLEDGED)
+                break;
+            window[index] = null;
+            acknowledged--;
+            head++;
+        }
+        if (head == windowEnd && window.length > INITIAL_CAPACITY && windowEnd == next)
+            window = new Object[INITIAL_CAPACITY];
+    }
+
+    private void headMoved() throws IOException {
+        if (directory == null || closed)
+            return;
+        ByteBuffer mark = ByteBuffer.allocate(8);
+        mark.putLong(0, head);
+        headChannel.write(mark, 0);
+        deleteAcknowledgedSegments();
+    }
+
+    private void deleteAcknowledgedSegments() throws IOException {
+        Entry<Long, Path> first;
+        Long second;
+        //A segment is done when the one after it starts at or before the head, the last segment is still written
+        while ((first = segments.firstEntry()) != null && (second = segments.higherKey(first.getKey())) != null && second <= head) {
+            segments.remove(first.getKey());
+            if (readSegment == first.getKey())
+                closeReader();
+            Files.deleteIfExists(first.getValue());
+        }
+    }
+
+    private int index(long sequence) {
+        return (int) (sequence & (window.length - 1));
+    }
+
+    private void ensureCapacity(long size) {
+        if (size <= window.length)
+            return;
+        int capacity = window.length;
+        while (capacity < size)
+            capacity <<= 1;
+        Object[] grown = new Object[capacity];
+        for (long sequence = head; sequence < windowEnd; sequence++)
+            grown[(int) (sequence & (capacity - 1))] = window[index(sequence)];
+        window = grown;
+    }
+
+    private void write(long sequence, E value) throws IOException {
+        if (closed)
+            throw new IOException("Queue " + directory + " is closed");
+        buffer.reset();
+        out.writeInt(0);
+        out.writeLong(sequence);
+        serializer.write(value, out);
+        out.flush();
+        ByteBuffer record = buffer.toByteBuffer();
+        record.putInt(0, record.remaining() - 4);
+
+        if (writeChannel == null || writeSegmentBytes >= segmentSize)
+            startSegment(sequence);
+        long position = writeChannel.position();
+        try {
+            while (record.hasRemaining())
+                writeChannel.write(record);
+        } catch (IOException e) {
+            //Don't leave part of a record behind
+            writeChannel.truncate(position);
+            writeChannel.position(position);
+            throw e;
+        }
+        writeSegmentBytes += record.limit();
+    }
+
+    private void startSegment(long sequence) throws IOException {
+        if (writeChannel != null) {
+            writeChannel.force(false);
+            writeChannel.close();
+            writeChannel = null;
+        }
+        Path path = directory.resolve(String.format("%s%016d%s", PREFIX, sequence, SUFFIX));
+        writeChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        writeSegmentBytes = 0;
+        segments.put(sequence, path);
+    }
+
+    /**
+     * Load entries from the segment files into the window
+     * @return true if anything was loaded
+     */
+    private boolean load() throws IOException {
+        if (directory == null || windowEnd >= next)
+            return false;
+        long room = memoryLimit - (windowEnd - head);
+        if (room <= 0)
+            return false;
+
+        long loadedTo = windowEnd + Math.min(room, next - windowEnd);
+        ensureCapacity(loadedTo - head);
+        boolean loaded = false;
+        while (windowEnd < loadedTo) {
+            Long segment = segments.floorKey(windowEnd);
+            if (segment == null) {
+                //Lost, continue from the first entry we have
+                if (!skipTo(segments.isEmpty() ? next : segments.firstKey()))
+                    break;
+                continue;
+            }
+            if (readSegment != segment)
+                openReader(segment);
+
+            long sequence;
+            byte[] payload;
+            try {
+                int length = reader.readInt();
+                sequence = reader.readLong();
+                payload = new byte[length - 8];
+                reader.readFully(payload);
+            } catch (EOFException e) {
+                //The rest of this segment is missing, continue from the next one
+                Long following = segments.higherKey(segment);
+                if (!skipTo(following == null ? next : following))
+                    break;
+                continue;
+            }
+            if (sequence < windowEnd)
+                continue;
+            if (sequence > windowEnd && !skipTo(sequence))
+                break;
+
+            E value;
+            try {
+                value = serializer.read(new DataInputStream(new ByteArrayInputStream(payload)));
+            } catch (IOException | RuntimeException e) {
+                LOG.warn("Dropping unreadable entry " + sequence + " from queue " + directory, e);
+                value = null;
+            }
+            if (value == null) {
+                window[index(sequence)] = ACKNOWLEDGED;
+                acknowledged++;
+            } else
+                window[index(sequence)] = value;
+            windowEnd++;
+            loaded = true;
+        }
+
+        long before = head;
+        advance();
+        if (head != before)
+            headMoved();
+        return loaded;
+    }
+
+    /**
+     * Entries are missing from the files, skip over them if there is nothing else in memory
+     */
+    private boolean skipTo(long sequence) {
+        if (head != windowEnd)
+            return false;
+        LOG.warn("Entries " + windowEnd + " to " + (sequence - 1) + " are missing from queue " + directory);
+        head = windowEnd = sequence;
+        return true;
+    }
+
+    private void openReader(long segment) throws IOException {
+        closeReader();
+        FileChannel channel = FileChannel.open(segments.get(segment), StandardOpenOption.READ);
+        reader = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        readSegment = segment;
+    }
+
+    private void closeReader() throws IOException {
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+        readSegment = -1;
+    }
+
+    /**
+     * Find the last complete record in a segment, removing any partly written record after it
+     *
+     * @return sequence of the last record or -1 if there are none
+     */
+    private long recover(Path path) throws IOException {
+        long last = -1;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            long position = 0;
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            while (position + RECORD_HEADER_SIZE <= size) {
+                header.clear();
+                while (header.hasRemaining() && channel.read(header, position + header.position()) > 0);
+                int length = header.getInt(0);
+                if (length < 8 || position + 4 + length > size)
+                    break;
+                last = header.getLong(4);
+                position += 4 + length;
+            }
+            if (position < size) {
+                LOG.warn("Removing incomplete entry from queue segment " + path);
+                channel.truncate(position);
+            }
+        }
+        return last;
+    }
+
+    private static class RecordBuffer extends ByteArrayOutputStream {
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+}